@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import java.net.SocketAddress;
+
+/**
+ * A transport which accepts and discards every packet, so that benchmarks measure the reporting path only.
+ */
+public class DiscardingTransport implements Transport {
+
+  /**
+   * Creates discarding transports.
+   */
+  public static final TransportFactory FACTORY = new TransportFactory() {
+    @Override
+    public Transport createTransport() {
+      return new DiscardingTransport();
+    }
+  };
+
+  private long bytes;
+
+  @Override
+  public void connect(final SocketAddress address) {
+  }
+
+  @Override
+  public boolean send(final byte[] packet, final int length) {
+    bytes += length;
+    return true;
+  }
+
+  /**
+   * Returns the number of bytes sent so far.
+   *
+   * @return the number of bytes
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  @Override
+  public void close() {
+  }
+}
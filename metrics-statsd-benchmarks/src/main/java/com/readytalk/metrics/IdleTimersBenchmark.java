@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a report cycle over a large registry of timers which saw traffic once but are idle since, with and without
+ * reusing their snapshots.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class IdleTimersBenchmark {
+
+  private static final int SAMPLES_PER_TIMER = 2000;
+
+  @Param({"8000"})
+  private int timers;
+
+  @Param({"false", "true"})
+  private boolean reuseSnapshots;
+
+  @SuppressWarnings("rawtypes")
+  private final SortedMap<String, Gauge> gauges = new TreeMap<String, Gauge>();
+  private final SortedMap<String, Counter> counters = new TreeMap<String, Counter>();
+  private final SortedMap<String, Histogram> histograms = new TreeMap<String, Histogram>();
+  private final SortedMap<String, Meter> meters = new TreeMap<String, Meter>();
+  private SortedMap<String, Timer> timerMap;
+  private StatsDReporter reporter;
+
+  @Setup
+  public void setUp() {
+    final MetricRegistry registry = new MetricRegistry();
+    final Random random = new Random(42);
+    for (int i = 0; i < timers; i++) {
+      final Timer timer = registry.timer("endpoint." + i + ".requests");
+      for (int j = 0; j < SAMPLES_PER_TIMER; j++) {
+        timer.update(random.nextInt(1000), TimeUnit.MILLISECONDS);
+      }
+    }
+    timerMap = registry.getTimers();
+
+    final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 8125);
+    reporter = StatsDReporter.forRegistry(registry)
+        .withSnapshotReuse(reuseSnapshots)
+        .build(new StatsD(address, DiscardingTransport.FACTORY, StatsD.DEFAULT_MAX_PACKET_SIZE));
+  }
+
+  @Benchmark
+  public void report() {
+    reporter.report(gauges, counters, histograms, meters, timerMap);
+  }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full metrics3 report cycle over a synthetic registry with equal numbers of gauges, counters,
+ * histograms, meters and timers, sending to a {@link LoopbackSink}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class Metrics3ReportBenchmark {
+
+  private static final int KINDS = 5;
+  private static final int UPDATES = 100;
+
+  @Param({"1000", "10000", "100000"})
+  private int metrics;
+
+  private LoopbackSink sink;
+  private StatsDReporter reporter;
+
+  @Setup
+  public void setUp() throws IOException {
+    final MetricRegistry registry = new MetricRegistry();
+    final Random random = new Random(42);
+    for (int i = 0; i < metrics; i++) {
+      final String name = "service." + i / KINDS + ".metric" + i % KINDS;
+      switch (i % KINDS) {
+        case 0:
+          final long value = i;
+          registry.register(name, new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+              return value;
+            }
+          });
+          break;
+        case 1:
+          registry.counter(name).inc(random.nextInt(UPDATES));
+          break;
+        case 2:
+          for (int j = 0; j < UPDATES; j++) {
+            registry.histogram(name).update(random.nextInt(1000));
+          }
+          break;
+        case 3:
+          registry.meter(name).mark(random.nextInt(UPDATES));
+          break;
+        default:
+          for (int j = 0; j < UPDATES; j++) {
+            registry.timer(name).update(random.nextInt(1000), TimeUnit.MILLISECONDS);
+          }
+          break;
+      }
+    }
+
+    sink = new LoopbackSink();
+    reporter = StatsDReporter.forRegistry(registry)
+        .build(new StatsD(sink.getAddress(), new DatagramSocketTransport.Factory(), StatsD.DEFAULT_MAX_PACKET_SIZE));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    reporter.stop();
+    sink.close();
+  }
+
+  @Benchmark
+  public void report() {
+    reporter.report();
+  }
+}
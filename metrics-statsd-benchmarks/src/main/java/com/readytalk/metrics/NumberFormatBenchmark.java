@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link NumberFormatter} with the {@code formatNumber} methods the reporters used before, which went
+ * through {@link String#format(String, Object...)} and {@link Long#toString(long)} and then encoded the result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class NumberFormatBenchmark {
+
+  @Param({"0.0042", "12.5", "1234567.891"})
+  private double value;
+
+  private final byte[] buffer = new byte[NumberFormatter.MAX_DOUBLE_LENGTH + NumberFormatter.MAX_DECIMALS];
+
+  @Benchmark
+  public byte[] stringFormatDouble() {
+    return String.format(Locale.US, "%2.2f", value).getBytes(StatsD.UTF_8);
+  }
+
+  @Benchmark
+  public int formatterDoubleNoDecimals() {
+    return NumberFormatter.format(value, 0, buffer, 0);
+  }
+
+  @Benchmark
+  public int formatterDoubleTwoDecimals() {
+    return NumberFormatter.format(value, 2, buffer, 0);
+  }
+
+  @Benchmark
+  public int formatterDoubleFourDecimals() {
+    return NumberFormatter.format(value, 4, buffer, 0);
+  }
+
+  @Benchmark
+  public byte[] toStringLong() {
+    return Long.toString((long) value).getBytes(StatsD.UTF_8);
+  }
+
+  @Benchmark
+  public int formatterLong() {
+    return NumberFormatter.format((long) value, buffer, 0);
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures queueing a single measurement with {@link StatsD#send}, including its share of the packets sent to a
+ * {@link LoopbackSink} whenever the batch fills up.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SendBenchmark {
+
+  private static final String NAME = "app.endpoint.requests.p99";
+  private static final EncodedName ENCODED_NAME = EncodedName.of(NAME);
+
+  private LoopbackSink sink;
+  private StatsD statsD;
+  private long value;
+
+  @Setup
+  public void setUp() throws IOException {
+    sink = new LoopbackSink();
+    statsD = new StatsD(sink.getAddress(), new DatagramSocketTransport.Factory(), StatsD.DEFAULT_MAX_PACKET_SIZE);
+    statsD.connect();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    statsD.close();
+    sink.close();
+  }
+
+  @Benchmark
+  public void sendLong() {
+    statsD.send(NAME, value++);
+  }
+
+  @Benchmark
+  public void sendDouble() {
+    statsD.send(NAME, value++ / 7.0);
+  }
+
+  @Benchmark
+  public void sendString() {
+    statsD.send(NAME, "12.34");
+  }
+
+  @Benchmark
+  public void sendEncodedLong() {
+    statsD.send(ENCODED_NAME, value++);
+  }
+
+  @Benchmark
+  public void sendEncodedDouble() {
+    statsD.send(ENCODED_NAME, value++ / 7.0);
+  }
+
+  @Benchmark
+  public void sendEncodedCounter() {
+    statsD.send(ENCODED_NAME, value++, MetricType.COUNTER);
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full metrics2 report cycle over a synthetic registry with equal numbers of gauges, counters,
+ * histograms, meters and timers, sending to a {@link LoopbackSink}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class Metrics2ReportBenchmark {
+
+  private static final int KINDS = 5;
+  private static final int UPDATES = 100;
+
+  @Param({"1000", "10000", "100000"})
+  private int metrics;
+
+  private MetricsRegistry registry;
+  private LoopbackSink sink;
+  private StatsDReporter reporter;
+
+  @Setup
+  public void setUp() throws IOException {
+    registry = new MetricsRegistry();
+    final Random random = new Random(42);
+    for (int i = 0; i < metrics; i++) {
+      final MetricName name = new MetricName("service", String.valueOf(i / KINDS), "metric" + i % KINDS);
+      switch (i % KINDS) {
+        case 0:
+          final long value = i;
+          registry.newGauge(name, new Gauge<Long>() {
+            @Override
+            public Long value() {
+              return value;
+            }
+          });
+          break;
+        case 1:
+          registry.newCounter(name).inc(random.nextInt(UPDATES));
+          break;
+        case 2:
+          for (int j = 0; j < UPDATES; j++) {
+            registry.newHistogram(name, false).update(random.nextInt(1000));
+          }
+          break;
+        case 3:
+          registry.newMeter(name, "events", TimeUnit.SECONDS).mark(random.nextInt(UPDATES));
+          break;
+        default:
+          for (int j = 0; j < UPDATES; j++) {
+            registry.newTimer(name, TimeUnit.MILLISECONDS, TimeUnit.SECONDS)
+                .update(random.nextInt(1000), TimeUnit.MILLISECONDS);
+          }
+          break;
+      }
+    }
+
+    sink = new LoopbackSink();
+    reporter = StatsDReporter.forRegistry(registry)
+        .build(new StatsD(sink.getAddress(), new DatagramSocketTransport.Factory(), StatsD.DEFAULT_MAX_PACKET_SIZE));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    reporter.shutdown();
+    registry.shutdown();
+    sink.close();
+  }
+
+  @Benchmark
+  public void run() {
+    reporter.run();
+  }
+}
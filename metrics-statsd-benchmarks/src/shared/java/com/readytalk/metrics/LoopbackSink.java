@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+
+/**
+ * A StatsD server stand-in which receives and discards packets on a loopback UDP port, so that benchmarks include the
+ * cost of actually sending packets without depending on a real server.
+ */
+public class LoopbackSink implements Closeable {
+
+  private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+  private final DatagramSocket socket;
+  private final Thread receiver;
+  private volatile long packets;
+
+  /**
+   * Binds a socket to an ephemeral loopback port and starts receiving from it on a daemon thread.
+   *
+   * @throws IOException if the socket cannot be bound
+   */
+  public LoopbackSink() throws IOException {
+    this.socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    socket.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+    this.receiver = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        receive();
+      }
+    }, "loopback-sink");
+    receiver.setDaemon(true);
+    receiver.start();
+  }
+
+  /**
+   * Returns the address to send packets to.
+   *
+   * @return the loopback address and port of the sink
+   */
+  public InetSocketAddress getAddress() {
+    return (InetSocketAddress) socket.getLocalSocketAddress();
+  }
+
+  /**
+   * Returns the number of packets received so far.
+   *
+   * @return the number of packets
+   */
+  public long getPackets() {
+    return packets;
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+    try {
+      receiver.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void receive() {
+    final DatagramPacket packet = new DatagramPacket(new byte[StatsD.DEFAULT_MAX_PACKET_SIZE * 2],
+        StatsD.DEFAULT_MAX_PACKET_SIZE * 2);
+    try {
+      while (true) {
+        socket.receive(packet);
+        packets++;
+      }
+    } catch (SocketException e) {
+      // Closed.
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves and caches the address of a StatsD server.
+ *
+ * Only the very first lookup happens on the calling thread. Once the cached address is older than the configured
+ * time-to-live, the next call to {@link #getAddress()} still returns it immediately but kicks off a refresh in the
+ * background, so a slow DNS server never delays a report. If a refresh fails, the last good address is kept. If the
+ * very first lookup fails, its exception is rethrown without another lookup until the time-to-live has passed again.
+ */
+@ThreadSafe
+public class AddressResolver {
+
+  /**
+   * The default time-to-live of a resolved address in seconds.
+   */
+  public static final long DEFAULT_TTL_SECONDS = 60;
+
+  private static final Logger LOG = LoggerFactory.getLogger(AddressResolver.class);
+
+  private final String host;
+  private final int port;
+  private final long ttlNanos;
+  private final Executor executor;
+
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+  private final AtomicLong resolutions = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong totalResolutionNanos = new AtomicLong();
+
+  private volatile InetSocketAddress address;
+  private volatile UnknownHostException lastFailure;
+  private volatile long expiresAt;
+  private volatile long lastResolutionNanos;
+
+  /**
+   * Creates a resolver for the given host and port which refreshes the address every
+   * {@link #DEFAULT_TTL_SECONDS} seconds.
+   *
+   * @param host the hostname of the StatsD server.
+   * @param port the port of the StatsD server. This is typically 8125.
+   */
+  public AddressResolver(final String host, final int port) {
+    this(host, port, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Creates a resolver for the given host and port.
+   *
+   * @param host    the hostname of the StatsD server.
+   * @param port    the port of the StatsD server. This is typically 8125.
+   * @param ttl     how long a resolved address is used before it is refreshed
+   * @param ttlUnit the unit of {@code ttl}
+   */
+  public AddressResolver(final String host, final int port, final long ttl, final TimeUnit ttlUnit) {
+    this(host, port, ttlUnit.toNanos(ttl), SharedExecutor.INSTANCE);
+  }
+
+  /**
+   * Creates a resolver for the given address, which is used as is until it expires if it is already resolved.
+   *
+   * @param address the address of the StatsD server
+   */
+  public AddressResolver(final InetSocketAddress address) {
+    this(address.getHostString(), address.getPort());
+    if (!address.isUnresolved()) {
+      this.address = address;
+      this.expiresAt = System.nanoTime() + ttlNanos;
+    }
+  }
+
+  AddressResolver(final String host, final int port, final long ttlNanos, final Executor executor) {
+    if (ttlNanos < 0) {
+      throw new IllegalArgumentException("ttl must not be negative: " + ttlNanos);
+    }
+    this.host = host;
+    this.port = port;
+    this.ttlNanos = ttlNanos;
+    this.executor = executor;
+  }
+
+  /**
+   * Returns the cached address, resolving it on the calling thread only if it has never been resolved before.
+   *
+   * @return the resolved address of the StatsD server
+   * @throws UnknownHostException if the address has never been resolved successfully and either the last lookup
+   *                              failed less than a time-to-live ago or it cannot be resolved now
+   */
+  public InetSocketAddress getAddress() throws UnknownHostException {
+    final InetSocketAddress current = address;
+    if (current == null) {
+      final UnknownHostException failure = lastFailure;
+      if (failure != null && System.nanoTime() - expiresAt < 0) {
+        throw failure;
+      }
+      return resolveNow();
+    }
+
+    if (System.nanoTime() - expiresAt >= 0 && refreshing.compareAndSet(false, true)) {
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              resolveNow();
+            } catch (UnknownHostException e) {
+              LOG.debug("Unable to refresh the address of statsd at '{}', keeping {}", host, address);
+            } finally {
+              refreshing.set(false);
+            }
+          }
+        });
+      } catch (RuntimeException e) {
+        refreshing.set(false);
+        LOG.debug("Unable to schedule a refresh of the address of statsd at '{}'", host, e);
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Returns the hostname of the StatsD server.
+   *
+   * @return the hostname
+   */
+  public String getHost() {
+    return host;
+  }
+
+  /**
+   * Returns the port of the StatsD server.
+   *
+   * @return the port
+   */
+  public int getPort() {
+    return port;
+  }
+
+  /**
+   * Returns the number of lookups, successful or not.
+   *
+   * @return the number of lookups
+   */
+  public long getResolutionCount() {
+    return resolutions.get();
+  }
+
+  /**
+   * Returns the number of failed lookups.
+   *
+   * @return the number of failed lookups
+   */
+  public long getFailureCount() {
+    return failures.get();
+  }
+
+  /**
+   * Returns how long the most recent lookup took.
+   *
+   * @param unit the unit of the result
+   * @return the duration of the most recent lookup
+   */
+  public long getLastResolutionTime(final TimeUnit unit) {
+    return unit.convert(lastResolutionNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the total time spent in lookups, which divided by {@link #getResolutionCount()} gives the mean.
+   *
+   * @param unit the unit of the result
+   * @return the total duration of all lookups
+   */
+  public long getTotalResolutionTime(final TimeUnit unit) {
+    return unit.convert(totalResolutionNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Looks up the address of the given host. Overridden in tests.
+   *
+   * @param hostname the hostname to look up
+   * @return the address of the host
+   * @throws UnknownHostException if the host cannot be resolved
+   */
+  InetAddress lookup(final String hostname) throws UnknownHostException {
+    return InetAddress.getByName(hostname);
+  }
+
+  private InetSocketAddress resolveNow() throws UnknownHostException {
+    final long start = System.nanoTime();
+    try {
+      final InetSocketAddress resolved = new InetSocketAddress(lookup(host), port);
+      this.address = resolved;
+      this.lastFailure = null;
+      return resolved;
+    } catch (UnknownHostException e) {
+      failures.incrementAndGet();
+      this.lastFailure = e;
+      throw e;
+    } finally {
+      // Failed lookups are retried after another TTL rather than on every call.
+      final long end = System.nanoTime();
+      final long elapsed = end - start;
+      this.expiresAt = end + ttlNanos;
+      this.lastResolutionNanos = elapsed;
+      totalResolutionNanos.addAndGet(elapsed);
+      resolutions.incrementAndGet();
+    }
+  }
+
+  /**
+   * A single daemon thread shared by all resolvers, created on first use.
+   */
+  private static final class SharedExecutor {
+    static final ExecutorService INSTANCE = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable r) {
+        final Thread thread = new Thread(r, "statsd-address-resolver");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    private SharedExecutor() {
+    }
+  }
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A client to a StatsD server which hands encoded lines to a dedicated sender thread instead of writing to the
+ * network on the calling thread, so a slow network doesn't stretch the report cycle.
+ *
+ * Lines are queued in a bounded lock-free {@link LineRingBuffer}, and the sender thread drains them into packets,
+ * sending a partially filled packet once {@link #flush()} is called or the queue runs dry. When the queue is full,
+ * the {@link OverflowPolicy} decides which line is dropped. {@link #connect()} only asks the sender thread to
+ * (re)connect, so connection failures are logged rather than thrown. Lines sent after {@link #close()} are dropped.
+ *
+ * Like {@link StatsD}, this must only be called from one thread at a time.
+ */
+@NotThreadSafe
+public class AsyncStatsD extends StatsD {
+
+  /**
+   * The default maximum number of queued lines.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncStatsD.class);
+
+  /**
+   * How long the sender thread sleeps when the queue is empty, unless woken up earlier.
+   */
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  /**
+   * How long the caller sleeps between retries while blocked on a full queue.
+   */
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+  private static final AtomicInteger SENDER_COUNT = new AtomicInteger();
+
+  private final LineRingBuffer queue;
+  private final OverflowPolicy overflowPolicy;
+  private final long blockTimeoutNanos;
+  private final Thread sender;
+
+  private final AtomicLong enqueued = new AtomicLong();
+  private final AtomicLong droppedLines = new AtomicLong();
+
+  private volatile boolean running = true;
+  private volatile boolean waiting;
+  private volatile boolean connectRequested;
+  private volatile boolean flushRequested;
+  private boolean started;
+  private long closeTimeoutMillis = CLOSE_TIMEOUT_MILLIS;
+
+  /**
+   * Creates a new client which connects to the address provided by the given resolver through transports from the
+   * given factory, and queues up to {@code queueCapacity} lines for the sender thread.
+   *
+   * @param resolver         the resolver for the address of the StatsD server
+   * @param transportFactory the transport factory
+   * @param maxPacketSize    the maximum payload size of a single packet in bytes
+   * @param queueCapacity    the maximum number of queued lines, rounded up to a power of two
+   * @param overflowPolicy   what to do with a line when the queue is full
+   * @param blockTimeout     how long to wait for room in the queue with {@link OverflowPolicy#BLOCK}
+   * @param blockTimeoutUnit the unit of {@code blockTimeout}
+   */
+  AsyncStatsD(final AddressResolver resolver, final TransportFactory transportFactory, final int maxPacketSize,
+              final int queueCapacity, final OverflowPolicy overflowPolicy, final long blockTimeout,
+              final TimeUnit blockTimeoutUnit) {
+    this(Collections.singletonList(resolver), transportFactory, maxPacketSize, queueCapacity, overflowPolicy,
+        blockTimeout, blockTimeoutUnit);
+  }
+
+  /**
+   * Creates a new client which sends every packet to each of the addresses provided by the given resolvers, as
+   * described for {@link StatsD#StatsD(List, TransportFactory, int)}, and queues up to {@code queueCapacity} lines for
+   * the sender thread.
+   *
+   * @param resolvers        the resolvers for the addresses of the StatsD servers
+   * @param transportFactory the transport factory
+   * @param maxPacketSize    the maximum payload size of a single packet in bytes
+   * @param queueCapacity    the maximum number of queued lines, rounded up to a power of two
+   * @param overflowPolicy   what to do with a line when the queue is full
+   * @param blockTimeout     how long to wait for room in the queue with {@link OverflowPolicy#BLOCK}
+   * @param blockTimeoutUnit the unit of {@code blockTimeout}
+   */
+  AsyncStatsD(final List<AddressResolver> resolvers, final TransportFactory transportFactory, final int maxPacketSize,
+              final int queueCapacity, final OverflowPolicy overflowPolicy, final long blockTimeout,
+              final TimeUnit blockTimeoutUnit) {
+    super(resolvers, transportFactory, maxPacketSize);
+    if (blockTimeout < 0) {
+      throw new IllegalArgumentException("blockTimeout must not be negative: " + blockTimeout);
+    }
+    this.queue = new LineRingBuffer(queueCapacity, LineEncoder.INITIAL_CAPACITY);
+    this.overflowPolicy = overflowPolicy;
+    this.blockTimeoutNanos = blockTimeoutUnit.toNanos(blockTimeout);
+    this.sender = new Thread(new Sender(), "statsd-sender-" + SENDER_COUNT.incrementAndGet());
+    sender.setDaemon(true);
+  }
+
+  /**
+   * Asks the sender thread to (re)connect the transport as described for {@link StatsD#connect()}, starting the
+   * thread on the first call. Errors are logged by the sender thread.
+   */
+  @Override
+  public void connect() {
+    start();
+    connectRequested = true;
+    LockSupport.unpark(sender);
+  }
+
+  /**
+   * Asks the sender thread to send all lines queued so far without waiting for a full packet. Does not wait for them
+   * to be sent.
+   */
+  @Override
+  public void flush() {
+    flushRequested = true;
+    LockSupport.unpark(sender);
+  }
+
+  /**
+   * Returns the number of lines queued for the sender thread.
+   *
+   * @return the number of queued lines
+   */
+  public long getEnqueuedLines() {
+    return enqueued.get();
+  }
+
+  /**
+   * Returns the number of lines dropped because the queue was full or the client was closed.
+   *
+   * @return the number of dropped lines
+   */
+  public long getDroppedLines() {
+    return droppedLines.get();
+  }
+
+  /**
+   * Returns the number of lines currently waiting in the queue.
+   *
+   * @return the queue size
+   */
+  public int getQueueSize() {
+    return queue.size();
+  }
+
+  @Override
+  boolean sendsOnCallingThread() {
+    return false;
+  }
+
+  /**
+   * Sets how long {@link #close()} waits for the sender thread. Overridden in tests.
+   *
+   * @param timeout the timeout
+   * @param unit    the unit of {@code timeout}
+   */
+  void setCloseTimeout(final long timeout, final TimeUnit unit) {
+    this.closeTimeoutMillis = unit.toMillis(timeout);
+  }
+
+  /**
+   * Stops the sender thread once it has sent all queued lines, waiting up to five seconds for it, and closes the
+   * transport.
+   *
+   * If the sender thread is still busy after that, e.g. blocked on a slow transport, it is interrupted and given
+   * another five seconds to stop, and the lines it has not sent are dropped rather than sent from the calling thread,
+   * since the packet buffer must never be used by two threads at once.
+   *
+   * @throws IOException if there is an error closing the transport
+   */
+  @Override
+  public void close() throws IOException {
+    running = false;
+    if (started && !awaitSender()) {
+      sender.interrupt();
+      if (!awaitSender()) {
+        LOG.warn("statsd sender thread did not stop within {} ms, closing the transport under it",
+            2 * closeTimeoutMillis);
+      }
+      closeDestinations();
+      return;
+    }
+    super.close();
+  }
+
+  @Override
+  void append(final LineEncoder line) {
+    if (!running) {
+      droppedLines.incrementAndGet();
+      return;
+    }
+    start();
+    if (queue.offer(line.bytes(), line.length()) || offerOnOverflow(line)) {
+      enqueued.incrementAndGet();
+      if (waiting) {
+        LockSupport.unpark(sender);
+      }
+    }
+  }
+
+  private boolean offerOnOverflow(final LineEncoder line) {
+    switch (overflowPolicy) {
+      case DROP_OLDEST:
+        while (!queue.offer(line.bytes(), line.length())) {
+          if (queue.dropOldest()) {
+            droppedLines.incrementAndGet();
+          }
+        }
+        return true;
+      case BLOCK:
+        final long deadline = System.nanoTime() + blockTimeoutNanos;
+        do {
+          LockSupport.unpark(sender);
+          LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+          if (queue.offer(line.bytes(), line.length())) {
+            return true;
+          }
+        } while (System.nanoTime() - deadline < 0);
+        break;
+      default:
+        break;
+    }
+    droppedLines.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Waits up to the close timeout for the sender thread to stop.
+   *
+   * @return whether the sender thread has stopped
+   */
+  private boolean awaitSender() {
+    LockSupport.unpark(sender);
+    try {
+      sender.join(closeTimeoutMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return !sender.isAlive();
+  }
+
+  private void start() {
+    if (!started && running) {
+      started = true;
+      sender.start();
+    }
+  }
+
+  /**
+   * Drains the queue into packets until the client is closed and the queue is empty, or the thread is interrupted.
+   */
+  private final class Sender implements Runnable {
+    private final LineRingBuffer.Line line = new LineRingBuffer.Line(LineEncoder.INITIAL_CAPACITY);
+
+    @Override
+    public void run() {
+      while (running || queue.size() > 0 && !Thread.currentThread().isInterrupted()) {
+        if (connectRequested) {
+          connectRequested = false;
+          connectQuietly();
+        }
+
+        drain();
+        if (flushRequested) {
+          flushRequested = false;
+          drain();
+          sendBuffered();
+          flushTransports();
+        }
+
+        if (running && queue.size() == 0) {
+          waiting = true;
+          if (queue.size() == 0 && !flushRequested && !connectRequested && running) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            if (queue.size() == 0) {
+              // Don't hold on to a partial packet while idle.
+              sendBuffered();
+              flushTransports();
+            }
+          }
+          waiting = false;
+        }
+      }
+    }
+
+    private void drain() {
+      while (!Thread.currentThread().isInterrupted() && queue.poll(line)) {
+        append(line.bytes(), line.length());
+      }
+    }
+
+    private void connectQuietly() {
+      try {
+        connectTransport();
+      } catch (IOException e) {
+        LOG.warn("unable to connect to statsd at '{}:{}'", getAddressResolver().getHost(),
+            getAddressResolver().getPort());
+      } catch (RuntimeException e) {
+        LOG.warn("unable to connect to statsd", e);
+      }
+    }
+  }
+}
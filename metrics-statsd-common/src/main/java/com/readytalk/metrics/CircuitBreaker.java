@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending to a {@link Destination} which keeps failing, so that an unreachable server doesn't cost a failed
+ * write, and often an exception, for every packet of a report.
+ *
+ * The breaker is closed while sends succeed. Once the given number of consecutive sends have failed, it opens and
+ * suppresses every packet for the rest of the report. At the start of the first report once the backoff has passed, it
+ * turns half-open and lets packets through as probes: once the {@link Destination} confirms a successful write, the
+ * breaker closes again, and if a probe fails it opens for twice the previous backoff, up to a maximum.
+ *
+ * The state and counters may be read from any thread.
+ */
+@NotThreadSafe
+public final class CircuitBreaker {
+
+  /**
+   * The default number of consecutive failed sends after which the breaker opens.
+   */
+  public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+  /**
+   * The default time the breaker stays open after it first opens, in milliseconds.
+   */
+  public static final long DEFAULT_MIN_BACKOFF_MILLIS = 1000;
+
+  /**
+   * The default maximum time the breaker stays open, in milliseconds.
+   */
+  public static final long DEFAULT_MAX_BACKOFF_MILLIS = 60000;
+
+  /**
+   * The state of a circuit breaker.
+   */
+  public enum State {
+    /**
+     * Every packet is sent.
+     */
+    CLOSED,
+    /**
+     * Every packet is suppressed.
+     */
+    OPEN,
+    /**
+     * The next packet is sent as a probe.
+     */
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long minBackoffNanos;
+  private final long maxBackoffNanos;
+  private volatile State state = State.CLOSED;
+  private int failures;
+  private long backoffNanos;
+  private long probeAt;
+  private volatile long suppressed;
+
+  /**
+   * Creates a new breaker with the default threshold and backoffs.
+   */
+  CircuitBreaker() {
+    this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_MIN_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates a new breaker.
+   *
+   * @param failureThreshold the number of consecutive failed sends after which the breaker opens
+   * @param minBackoff       the time the breaker stays open after it first opens
+   * @param maxBackoff       the maximum time the breaker stays open
+   * @param backoffUnit      the unit of the backoffs
+   */
+  CircuitBreaker(final int failureThreshold, final long minBackoff, final long maxBackoff,
+                 final TimeUnit backoffUnit) {
+    if (failureThreshold <= 0) {
+      throw new IllegalArgumentException("failureThreshold must be positive: " + failureThreshold);
+    }
+    if (minBackoff <= 0 || maxBackoff < minBackoff) {
+      throw new IllegalArgumentException("backoffs must be positive and ordered: " + minBackoff + ", " + maxBackoff);
+    }
+    this.failureThreshold = failureThreshold;
+    this.minBackoffNanos = backoffUnit.toNanos(minBackoff);
+    this.maxBackoffNanos = backoffUnit.toNanos(maxBackoff);
+    this.backoffNanos = minBackoffNanos;
+  }
+
+  /**
+   * Returns the state of the breaker.
+   *
+   * @return the state
+   */
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * Returns the number of packets suppressed while the breaker was open.
+   *
+   * @return the number of suppressed packets
+   */
+  public long getSuppressedSends() {
+    return suppressed;
+  }
+
+  /**
+   * Marks the start of a report, which lets an open breaker turn half-open once its backoff has passed. Only reads
+   * the clock while the breaker is open.
+   *
+   * @return whether packets may be sent, i.e. the breaker is not open
+   */
+  boolean startCycle() {
+    if (state == State.OPEN && System.nanoTime() - probeAt >= 0) {
+      state = State.HALF_OPEN;
+    }
+    return state != State.OPEN;
+  }
+
+  /**
+   * Returns whether the next packet may be sent, and counts it as suppressed otherwise.
+   *
+   * @return whether the breaker is not open
+   */
+  boolean allowsSend() {
+    if (state == State.OPEN) {
+      suppressed++;
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Records a successful send, which closes the breaker.
+   *
+   * @return whether the breaker was not closed before, i.e. the server has recovered
+   */
+  boolean recordSuccess() {
+    failures = 0;
+    if (state == State.CLOSED) {
+      return false;
+    }
+    state = State.CLOSED;
+    backoffNanos = minBackoffNanos;
+    return true;
+  }
+
+  /**
+   * Records a failed send, which opens the breaker once the threshold is reached or if the send was a probe.
+   *
+   * @return whether the breaker opened
+   */
+  boolean recordFailure() {
+    failures++;
+    if (state == State.HALF_OPEN) {
+      backoffNanos = Math.min(backoffNanos * 2, maxBackoffNanos);
+    } else if (state != State.CLOSED || failures < failureThreshold) {
+      return false;
+    }
+    state = State.OPEN;
+    probeAt = System.nanoTime() + backoffNanos;
+    return true;
+  }
+
+  /**
+   * Returns the time the breaker stays open when it next opens, in nanoseconds.
+   *
+   * @return the current backoff in nanoseconds
+   */
+  long getBackoffNanos() {
+    return backoffNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "CircuitBreaker{state=" + state + ", suppressed=" + suppressed + '}';
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps keys to nodes by consistent hashing, so that a key always maps to the same node and adding or removing a node
+ * only moves the keys which map to that node.
+ *
+ * Each node is placed at a number of pseudo-random points on a ring of 64-bit hashes, derived from its name alone, and
+ * a key maps to the node of the first point at or after the hash of the key. The more points per node, the more evenly
+ * keys spread across nodes.
+ */
+@Immutable
+final class ConsistentHashRing {
+
+  /**
+   * The default number of points per node, as used by ketama.
+   */
+  static final int DEFAULT_POINTS_PER_NODE = 160;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+  private static final long FMIX_C1 = 0xff51afd7ed558ccdL;
+  private static final long FMIX_C2 = 0xc4ceb9fe1a85ec53L;
+  private static final int FMIX_SHIFT = 33;
+  private static final int BYTE_MASK = 0xff;
+
+  private final long[] points;
+  private final int[] nodes;
+
+  /**
+   * Creates a new ring.
+   *
+   * @param nodeNames     the distinct names of the nodes, which decide where they are placed on the ring
+   * @param pointsPerNode the number of points per node
+   */
+  ConsistentHashRing(final List<String> nodeNames, final int pointsPerNode) {
+    if (nodeNames.isEmpty()) {
+      throw new IllegalArgumentException("at least one node is required");
+    }
+    if (pointsPerNode <= 0) {
+      throw new IllegalArgumentException("pointsPerNode must be positive: " + pointsPerNode);
+    }
+    if (new HashSet<String>(nodeNames).size() < nodeNames.size()) {
+      throw new IllegalArgumentException("node names must be distinct: " + nodeNames);
+    }
+
+    final int size = nodeNames.size() * pointsPerNode;
+    final long[] unsorted = new long[size];
+    final Set<Long> taken = new HashSet<Long>(size * 2);
+    for (int node = 0; node < nodeNames.size(); node++) {
+      for (int i = 0; i < pointsPerNode; i++) {
+        final byte[] key = (nodeNames.get(node) + "#" + i).getBytes(StatsD.UTF_8);
+        long point = hash(key, 0, key.length);
+        while (!taken.add(point)) {
+          // Practically never happens, but two nodes must not share a point.
+          point++;
+        }
+        unsorted[node * pointsPerNode + i] = point;
+      }
+    }
+
+    this.points = unsorted.clone();
+    Arrays.sort(points);
+    this.nodes = new int[size];
+    for (int i = 0; i < size; i++) {
+      nodes[Arrays.binarySearch(points, unsorted[i])] = i / pointsPerNode;
+    }
+  }
+
+  /**
+   * Returns the index of the node the given key maps to.
+   *
+   * @param bytes  the key
+   * @param offset the offset of the key in {@code bytes}
+   * @param length the length of the key in bytes
+   * @return the index of the node in the list the ring was created with
+   */
+  int node(final byte[] bytes, final int offset, final int length) {
+    final long hash = hash(bytes, offset, length);
+    int i = Arrays.binarySearch(points, hash);
+    if (i < 0) {
+      i = -i - 1;
+      if (i == points.length) {
+        i = 0;
+      }
+    }
+    return nodes[i];
+  }
+
+  /**
+   * Hashes the given bytes with 64-bit FNV-1a, followed by the MurmurHash3 finalizer to spread similar keys, such as
+   * metric names differing only in their last character, across the ring.
+   */
+  static long hash(final byte[] bytes, final int offset, final int length) {
+    long h = FNV_OFFSET_BASIS;
+    for (int i = offset; i < offset + length; i++) {
+      h ^= bytes[i] & BYTE_MASK;
+      h *= FNV_PRIME;
+    }
+    h ^= h >>> FMIX_SHIFT;
+    h *= FMIX_C1;
+    h ^= h >>> FMIX_SHIFT;
+    h *= FMIX_C2;
+    h ^= h >>> FMIX_SHIFT;
+    return h;
+  }
+}
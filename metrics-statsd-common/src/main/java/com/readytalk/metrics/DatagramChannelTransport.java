@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * A {@link Transport} which sends packets through a connected NIO {@link DatagramChannel}, writing from a reused
+ * direct {@link ByteBuffer} so the JDK does not have to copy each packet into a temporary native buffer.
+ *
+ * In non-blocking mode a packet which does not fit into the socket send buffer is dropped instead of stalling the
+ * reporter thread.
+ */
+@NotThreadSafe
+public class DatagramChannelTransport implements Transport {
+
+  private static final int INITIAL_BUFFER_SIZE = StatsD.DEFAULT_MAX_PACKET_SIZE;
+
+  private final boolean nonBlocking;
+  private final int sendBufferSize;
+
+  private DatagramChannel channel;
+  private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_BUFFER_SIZE);
+
+  /**
+   * Creates a new transport.
+   *
+   * @param nonBlocking    whether to drop packets rather than block when the socket send buffer is full
+   * @param sendBufferSize the {@code SO_SNDBUF} size in bytes, or {@code 0} to use the operating system default
+   */
+  public DatagramChannelTransport(final boolean nonBlocking, final int sendBufferSize) {
+    if (sendBufferSize < 0) {
+      throw new IllegalArgumentException("sendBufferSize must not be negative: " + sendBufferSize);
+    }
+    this.nonBlocking = nonBlocking;
+    this.sendBufferSize = sendBufferSize;
+  }
+
+  @Override
+  public void connect(final SocketAddress address) throws IOException {
+    final DatagramChannel newChannel = DatagramChannel.open();
+    try {
+      if (sendBufferSize > 0) {
+        newChannel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+      }
+      newChannel.configureBlocking(!nonBlocking);
+      newChannel.connect(address);
+    } catch (IOException e) {
+      newChannel.close();
+      throw e;
+    }
+    this.channel = newChannel;
+  }
+
+  @Override
+  public boolean send(final byte[] bytes, final int length) throws IOException {
+    if (length > buffer.capacity()) {
+      buffer = ByteBuffer.allocateDirect(length);
+    }
+    buffer.clear();
+    buffer.put(bytes, 0, length);
+    buffer.flip();
+    return channel.write(buffer) > 0 || length == 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+    this.channel = null;
+  }
+
+  /**
+   * Returns the effective {@code SO_SNDBUF} size of the connected channel, which the operating system may have
+   * rounded or capped.
+   *
+   * @return the send buffer size in bytes
+   * @throws IOException if the size cannot be read
+   */
+  public int getSendBufferSize() throws IOException {
+    return channel.getOption(StandardSocketOptions.SO_SNDBUF);
+  }
+
+  /**
+   * A {@link TransportFactory} for {@link DatagramChannelTransport}s. Defaults to blocking mode and the operating
+   * system's default send buffer size.
+   */
+  public static final class Factory implements TransportFactory {
+    private boolean nonBlocking;
+    private int sendBufferSize;
+
+    /**
+     * Drop packets rather than block the reporter thread when the socket send buffer is full.
+     *
+     * @param _nonBlocking whether to use non-blocking mode
+     * @return {@code this}
+     */
+    public Factory nonBlocking(final boolean _nonBlocking) {
+      this.nonBlocking = _nonBlocking;
+      return this;
+    }
+
+    /**
+     * Set the {@code SO_SNDBUF} size of the channel. A larger buffer absorbs bigger bursts of packets before
+     * blocking or dropping.
+     *
+     * @param _sendBufferSize the send buffer size in bytes, or {@code 0} for the operating system default
+     * @return {@code this}
+     */
+    public Factory withSendBufferSize(final int _sendBufferSize) {
+      this.sendBufferSize = _sendBufferSize;
+      return this;
+    }
+
+    @Override
+    public Transport createTransport() {
+      return new DatagramChannelTransport(nonBlocking, sendBufferSize);
+    }
+  }
+}
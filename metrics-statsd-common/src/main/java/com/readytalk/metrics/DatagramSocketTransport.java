@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * A {@link Transport} which sends packets through a classic blocking {@link DatagramSocket}. The socket is connected
+ * to the server, which lets the kernel cache the route instead of looking it up for every packet.
+ */
+@NotThreadSafe
+public class DatagramSocketTransport implements Transport {
+
+  private static final byte[] EMPTY = new byte[0];
+
+  private final DatagramSocketFactory socketFactory;
+
+  private DatagramSocket socket;
+  private DatagramPacket packet;
+
+  /**
+   * Creates a new transport which creates sockets and packets through the given factory.
+   *
+   * @param socketFactory the socket factory
+   */
+  public DatagramSocketTransport(final DatagramSocketFactory socketFactory) {
+    this.socketFactory = socketFactory;
+  }
+
+  @Override
+  public void connect(final SocketAddress address) throws IOException {
+    final DatagramSocket newSocket = socketFactory.createSocket();
+    try {
+      newSocket.connect(address);
+      this.packet = socketFactory.createPacket(EMPTY, 0, (InetSocketAddress) address);
+    } catch (IOException e) {
+      newSocket.close();
+      throw e;
+    }
+    this.socket = newSocket;
+  }
+
+  @Override
+  public boolean send(final byte[] bytes, final int length) throws IOException {
+    packet.setData(bytes, 0, length);
+    socket.send(packet);
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (socket != null) {
+      socket.close();
+    }
+    this.socket = null;
+    this.packet = null;
+  }
+
+  /**
+   * A {@link TransportFactory} for {@link DatagramSocketTransport}s.
+   */
+  public static final class Factory implements TransportFactory {
+    private final DatagramSocketFactory socketFactory;
+
+    /**
+     * Creates a factory which uses the default {@link DatagramSocketFactory}.
+     */
+    public Factory() {
+      this(new DatagramSocketFactory());
+    }
+
+    /**
+     * Creates a factory which uses the given {@link DatagramSocketFactory}.
+     *
+     * @param socketFactory the socket factory
+     */
+    public Factory(final DatagramSocketFactory socketFactory) {
+      this.socketFactory = socketFactory;
+    }
+
+    @Override
+    public Transport createTransport() {
+      return new DatagramSocketTransport(socketFactory);
+    }
+  }
+}
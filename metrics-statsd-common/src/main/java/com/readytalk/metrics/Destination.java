@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Flushable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One StatsD server a {@link StatsD} client sends its packets to, with its own transport and failure counters.
+ *
+ * A client usually has a single destination, but may mirror every packet to several, in which case each of them
+ * connects, fails and recovers on its own. After a failed reconnect, a destination discards packets for a second
+ * instead of trying to connect for every packet, so that a dead server costs the others next to nothing. After several
+ * failed writes in a row, its {@link CircuitBreaker} suppresses packets for the rest of the report, and only probes the
+ * server again after a growing backoff.
+ *
+ * A datagram socket only reports that a server is unreachable on the write after the one the ICMP error was for, so
+ * the first write through a fresh transport always succeeds. A write therefore only counts as a success once the next
+ * write through the same transport has succeeded too, and a transport which failed with a
+ * {@link PortUnreachableException} is kept open rather than replaced by another fresh one.
+ *
+ * The counters may be read from any thread.
+ */
+@NotThreadSafe
+public final class Destination {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Destination.class);
+
+  private static final long RECONNECT_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final AddressResolver resolver;
+  private final TransportFactory transportFactory;
+  private Transport transport;
+  private InetSocketAddress connectedAddress;
+  private long reconnectAt;
+  private boolean reconnectDelayed;
+  private boolean unconfirmedWrite;
+  private CircuitBreaker breaker = new CircuitBreaker();
+  private int failures;
+  private volatile long totalFailures;
+  private volatile long dropped;
+
+  Destination(final AddressResolver resolver, final TransportFactory transportFactory) {
+    this.resolver = resolver;
+    this.transportFactory = transportFactory;
+  }
+
+  /**
+   * Returns the resolver for the address of the server.
+   *
+   * @return the address resolver
+   */
+  public AddressResolver getAddressResolver() {
+    return resolver;
+  }
+
+  /**
+   * Returns the number of consecutive failed writes to the server.
+   *
+   * @return the number of failed writes since the last confirmed successful one
+   */
+  public int getFailures() {
+    return failures;
+  }
+
+  /**
+   * Returns the total number of failed writes to the server, including packets discarded while waiting to reconnect.
+   *
+   * @return the total number of failed writes
+   */
+  public long getTotalFailures() {
+    return totalFailures;
+  }
+
+  /**
+   * Returns the circuit breaker, which tells whether packets are currently suppressed and how many were.
+   *
+   * @return the circuit breaker
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return breaker;
+  }
+
+  /**
+   * Replaces the circuit breaker. Must be called before the first packet is sent.
+   *
+   * @param _breaker the circuit breaker
+   */
+  void setCircuitBreaker(final CircuitBreaker _breaker) {
+    this.breaker = _breaker;
+  }
+
+  /**
+   * Returns the number of packets the transport dropped rather than block.
+   *
+   * @return the number of dropped packets
+   */
+  public long getDroppedPackets() {
+    return dropped;
+  }
+
+  /**
+   * Connects a transport unless one is already connected to the resolved address, as described for
+   * {@link StatsD#connect()}. Called at the start of every report, so does nothing while the circuit breaker is open.
+   *
+   * @throws IOException if there is an error resolving the address or connecting
+   */
+  void connect() throws IOException {
+    if (!breaker.startCycle()) {
+      return;
+    }
+    try {
+      open();
+    } catch (IOException e) {
+      // A probe which can't even connect fails like one which can't be sent.
+      if (breaker.getState() == CircuitBreaker.State.HALF_OPEN) {
+        breaker.recordFailure();
+      }
+      throw e;
+    }
+  }
+
+  private void open() throws IOException {
+    final InetSocketAddress address = resolver.getAddress();
+
+    if (transport != null && address.equals(connectedAddress)) {
+      return;
+    }
+
+    disconnect();
+    final Transport newTransport = transportFactory.createTransport();
+    newTransport.connect(address);
+    this.transport = newTransport;
+    this.connectedAddress = address;
+    this.unconfirmedWrite = false;
+  }
+
+  /**
+   * Sends the given packet, reconnecting first if the previous send failed, unless the circuit breaker is open. Logs
+   * failures.
+   *
+   * @param bytes  the packet
+   * @param length the length of the packet in bytes
+   */
+  void send(final byte[] bytes, final int length) {
+    if (!breaker.allowsSend()) {
+      return;
+    }
+    try {
+      if (transport == null) {
+        // The previous transport failed, so try a fresh one unless that just failed too.
+        if (reconnectDelayed && System.nanoTime() - reconnectAt < 0) {
+          failures++;
+          totalFailures++;
+          return;
+        }
+        reconnectAt = System.nanoTime() + RECONNECT_DELAY_NANOS;
+        reconnectDelayed = true;
+        open();
+      }
+      if (!transport.send(bytes, length)) {
+        dropped++;
+      }
+      succeed();
+    } catch (PortUnreachableException e) {
+      // The socket itself is fine, and a new one would just hide the next error behind another successful write.
+      fail(false);
+    } catch (IOException e) {
+      fail(true);
+    }
+  }
+
+  /**
+   * Writes out the packets a buffering transport such as {@link TcpTransport} holds back, if any. Logs failures.
+   */
+  void flush() {
+    if (transport instanceof Flushable) {
+      try {
+        ((Flushable) transport).flush();
+      } catch (IOException e) {
+        fail(true);
+      }
+    }
+  }
+
+  /**
+   * Returns whether a transport is connected.
+   *
+   * @return whether a transport is connected
+   */
+  boolean isConnected() {
+    return transport != null;
+  }
+
+  /**
+   * Closes the transport.
+   *
+   * @throws IOException if there is an error closing the transport
+   */
+  void close() throws IOException {
+    final Transport closing = transport;
+    this.transport = null;
+    this.connectedAddress = null;
+    if (closing != null) {
+      closing.close();
+    }
+  }
+
+  /**
+   * Records a successful write, which confirms the previous one through the same transport.
+   */
+  private void succeed() {
+    if (!unconfirmedWrite) {
+      unconfirmedWrite = true;
+      return;
+    }
+    failures = 0;
+    reconnectDelayed = false;
+    if (breaker.recordSuccess()) {
+      LOG.info("statsd at '{}:{}' is reachable again", resolver.getHost(), resolver.getPort());
+    }
+  }
+
+  private void fail(final boolean disconnect) {
+    unconfirmedWrite = false;
+    failures++;
+    totalFailures++;
+
+    if (failures == 1) {
+      LOG.warn("unable to send packet to statsd at '{}:{}'", resolver.getHost(), resolver.getPort());
+    } else {
+      LOG.debug("unable to send packet to statsd at '{}:{}'", resolver.getHost(), resolver.getPort());
+    }
+    if (breaker.recordFailure()) {
+      LOG.warn("suppressing packets to statsd at '{}:{}' for {} ms after {} failed writes", resolver.getHost(),
+          resolver.getPort(), TimeUnit.NANOSECONDS.toMillis(breaker.getBackoffNanos()), failures);
+    }
+    if (disconnect) {
+      disconnect();
+    }
+  }
+
+  private void disconnect() {
+    if (transport != null) {
+      try {
+        transport.close();
+      } catch (IOException e) {
+        LOG.debug("Error closing transport to statsd", e);
+      }
+    }
+    this.transport = null;
+    this.connectedAddress = null;
+  }
+}
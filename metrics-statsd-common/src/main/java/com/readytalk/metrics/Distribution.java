@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Sends the values of a timer or histogram reservoir as individual StatsD samples, so that the server can compute
+ * percentiles across every instance instead of each instance sending its own.
+ *
+ * Reservoirs don't tell which of their values were recorded since the last report, so this sends evenly spaced values
+ * of a sorted snapshot, at most one per new event and at most a fixed number per metric and report, along with the
+ * sample rate which scales them back up to the number of new events.
+ */
+@Immutable
+final class Distribution {
+
+  private final MetricType type;
+  private final int maxSamples;
+
+  /**
+   * Creates a new distribution mode.
+   *
+   * @param type       the type the samples are sent as, {@link MetricType#TIMER} or {@link MetricType#DISTRIBUTION}
+   * @param maxSamples the maximum number of samples sent per metric and report
+   */
+  Distribution(final MetricType type, final int maxSamples) {
+    if (type != MetricType.TIMER && type != MetricType.DISTRIBUTION) {
+      throw new IllegalArgumentException("samples can only be sent as timers or distributions: " + type);
+    }
+    if (maxSamples <= 0) {
+      throw new IllegalArgumentException("maxSamples must be positive: " + maxSamples);
+    }
+    this.type = type;
+    this.maxSamples = maxSamples;
+  }
+
+  /**
+   * Sends samples of the given integral values.
+   *
+   * @param statsD     the client to send through
+   * @param name       the name of the metric
+   * @param values     the sorted values of a snapshot
+   * @param newSamples the number of events recorded since the last report
+   */
+  void send(final StatsDSender statsD, final EncodedName name, final long[] values, final long newSamples) {
+    final int count = count(values.length, newSamples);
+    final double rate = (double) count / newSamples;
+    for (int i = 0; i < count; i++) {
+      statsD.send(name, values[index(i, count, values.length)], type, rate);
+    }
+  }
+
+  /**
+   * Sends samples of the given integral values, scaled by a factor, e.g. durations in nanoseconds converted to
+   * milliseconds.
+   *
+   * @param statsD     the client to send through
+   * @param name       the name of the metric
+   * @param values     the sorted values of a snapshot
+   * @param scale      the factor each value is multiplied with
+   * @param decimals   the number of decimal places of the scaled values
+   * @param newSamples the number of events recorded since the last report
+   */
+  void send(final StatsDSender statsD, final EncodedName name, final long[] values, final double scale,
+            final int decimals, final long newSamples) {
+    final int count = count(values.length, newSamples);
+    final double rate = (double) count / newSamples;
+    for (int i = 0; i < count; i++) {
+      statsD.send(name, values[index(i, count, values.length)] * scale, decimals, type, rate);
+    }
+  }
+
+  /**
+   * Sends samples of the given values.
+   *
+   * @param statsD     the client to send through
+   * @param name       the name of the metric
+   * @param values     the sorted values of a snapshot
+   * @param decimals   the number of decimal places
+   * @param newSamples the number of events recorded since the last report
+   */
+  void send(final StatsDSender statsD, final EncodedName name, final double[] values, final int decimals,
+            final long newSamples) {
+    final int count = count(values.length, newSamples);
+    final double rate = (double) count / newSamples;
+    for (int i = 0; i < count; i++) {
+      statsD.send(name, values[index(i, count, values.length)], decimals, type, rate);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Distribution{type=" + type + ", maxSamples=" + maxSamples + '}';
+  }
+
+  private int count(final int available, final long newSamples) {
+    return (int) Math.min(Math.min(newSamples, maxSamples), available);
+  }
+
+  /**
+   * Returns the index of the middle value of the {@code i}-th of {@code count} equal slices of the values.
+   */
+  private static int index(final int i, final int count, final int available) {
+    return (int) ((2L * i + 1) * available / (2L * count));
+  }
+}
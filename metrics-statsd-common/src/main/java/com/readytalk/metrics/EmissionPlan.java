@@ -0,0 +1,350 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Which fields reporters send for each timer, histogram and meter, e.g. only the count, the one-minute rate and the
+ * 99th percentile of timers instead of all fifteen.
+ *
+ * The fields can be chosen separately for each metric type, and overridden for metrics whose names match a regular
+ * expression. Reporters compile the plan once into a fixed selection of fields and names per metric type and
+ * override, so a report only reads, and a snapshot is only taken, for the fields which are sent. A field the reporter
+ * does not send for a metric type, such as the count of a Metrics 2 histogram, is never sent.
+ */
+@Immutable
+public final class EmissionPlan {
+
+  /**
+   * Every field of every metric type.
+   */
+  public static final EmissionPlan ALL = new EmissionPlan(Kind.TIMER.supported, Kind.HISTOGRAM.supported,
+      Kind.METER.supported, Collections.<NameOverride>emptyList());
+
+  private final Set<Field> timers;
+  private final Set<Field> histograms;
+  private final Set<Field> meters;
+  private final List<NameOverride> overrides;
+
+  private EmissionPlan(final Set<Field> timers, final Set<Field> histograms, final Set<Field> meters,
+                       final List<NameOverride> overrides) {
+    this.timers = timers;
+    this.histograms = histograms;
+    this.meters = meters;
+    this.overrides = overrides;
+  }
+
+  /**
+   * Returns a copy which sends the given fields of timers.
+   *
+   * @param fields the fields to send
+   * @return an {@link EmissionPlan}
+   */
+  public EmissionPlan withTimers(final Field... fields) {
+    return new EmissionPlan(Kind.TIMER.check(fields), histograms, meters, overrides);
+  }
+
+  /**
+   * Returns a copy which sends the given fields of histograms.
+   *
+   * @param fields the fields to send, which must not include rates
+   * @return an {@link EmissionPlan}
+   */
+  public EmissionPlan withHistograms(final Field... fields) {
+    return new EmissionPlan(timers, Kind.HISTOGRAM.check(fields), meters, overrides);
+  }
+
+  /**
+   * Returns a copy which sends the given fields of meters.
+   *
+   * @param fields the fields to send, which must only include the count and rates
+   * @return an {@link EmissionPlan}
+   */
+  public EmissionPlan withMeters(final Field... fields) {
+    return new EmissionPlan(timers, histograms, Kind.METER.check(fields), overrides);
+  }
+
+  /**
+   * Returns a copy which sends only the given fields of timers, histograms and meters whose names match the given
+   * regular expression, ignoring the fields a metric type doesn't have. The first matching override applies.
+   *
+   * @param namePattern a regular expression matching whole metric names, before any prefix is added
+   * @param fields      the fields to send
+   * @return an {@link EmissionPlan}
+   */
+  public EmissionPlan withOverride(final String namePattern, final Field... fields) {
+    final List<NameOverride> newOverrides = new ArrayList<NameOverride>(overrides);
+    newOverrides.add(new NameOverride(Pattern.compile(namePattern), toSet(fields)));
+    return new EmissionPlan(timers, histograms, meters, Collections.unmodifiableList(newOverrides));
+  }
+
+  /**
+   * Compiles the plan for a reporter which sends the fields of each metric type in the given layouts.
+   *
+   * @param timerLayout     the fields and suffixes of timers
+   * @param histogramLayout the fields and suffixes of histograms
+   * @param meterLayout     the fields and suffixes of meters
+   * @return the compiled plan
+   */
+  Compiled compile(final Layout timerLayout, final Layout histogramLayout, final Layout meterLayout) {
+    final Pattern[] patterns = new Pattern[overrides.size()];
+    final Selection[][] overridden = new Selection[overrides.size()][];
+    for (int i = 0; i < patterns.length; i++) {
+      final NameOverride override = overrides.get(i);
+      patterns[i] = override.pattern;
+      overridden[i] = new Selection[] {
+          timerLayout.select(Kind.TIMER, override.fields),
+          histogramLayout.select(Kind.HISTOGRAM, override.fields),
+          meterLayout.select(Kind.METER, override.fields)
+      };
+    }
+    final Selection[] defaults = {
+        timerLayout.select(Kind.TIMER, timers),
+        histogramLayout.select(Kind.HISTOGRAM, histograms),
+        meterLayout.select(Kind.METER, meters)
+    };
+    return new Compiled(defaults, patterns, overridden);
+  }
+
+  @Override
+  public String toString() {
+    return "EmissionPlan{timers=" + timers + ", histograms=" + histograms + ", meters=" + meters
+        + ", overrides=" + overrides + '}';
+  }
+
+  private static Set<Field> toSet(final Field... fields) {
+    final Set<Field> set = EnumSet.noneOf(Field.class);
+    set.addAll(Arrays.asList(fields));
+    return Collections.unmodifiableSet(set);
+  }
+
+  /**
+   * A field of a timer, histogram or meter.
+   */
+  public enum Field {
+    COUNT, MAX, MEAN, MIN, STDDEV, P50, P75, P95, P98, P99, P999, MEAN_RATE, M1_RATE, M5_RATE, M15_RATE;
+
+    /**
+     * Returns whether the field is computed from a snapshot of the metric.
+     *
+     * @return whether the field is a snapshot field
+     */
+    boolean isSnapshot() {
+      return this != COUNT && compareTo(P999) <= 0;
+    }
+  }
+
+  /**
+   * A metric type with a plan.
+   */
+  enum Kind {
+    TIMER(EnumSet.allOf(Field.class)),
+    HISTOGRAM(EnumSet.range(Field.COUNT, Field.P999)),
+    METER(EnumSet.of(Field.COUNT, Field.MEAN_RATE, Field.M1_RATE, Field.M5_RATE, Field.M15_RATE));
+
+    private final Set<Field> supported;
+
+    Kind(final Set<Field> supported) {
+      this.supported = Collections.unmodifiableSet(supported);
+    }
+
+    private Set<Field> check(final Field... fields) {
+      final Set<Field> set = toSet(fields);
+      if (!supported.containsAll(set)) {
+        throw new IllegalArgumentException("A " + name().toLowerCase(Locale.ROOT) + " only has the fields " + supported
+            + ": " + set);
+      }
+      return set;
+    }
+  }
+
+  /**
+   * The fields a reporter sends for a metric type, in the order it sends them, and the suffix of each.
+   */
+  static final class Layout {
+    private final List<Field> fields = new ArrayList<Field>();
+    private final List<String> suffixes = new ArrayList<String>();
+
+    /**
+     * Appends a field.
+     *
+     * @param field  the field
+     * @param suffix the suffix the field is sent under
+     * @return {@code this}
+     */
+    Layout add(final Field field, final String suffix) {
+      fields.add(field);
+      suffixes.add(suffix);
+      return this;
+    }
+
+    private Selection select(final Kind kind, final Set<Field> selected) {
+      final List<Field> selectedFields = new ArrayList<Field>();
+      final List<String> selectedSuffixes = new ArrayList<String>();
+      for (int i = 0; i < fields.size(); i++) {
+        if (selected.contains(fields.get(i))) {
+          selectedFields.add(fields.get(i));
+          selectedSuffixes.add(suffixes.get(i));
+        }
+      }
+      return new Selection(kind, selectedFields.toArray(new Field[selectedFields.size()]),
+          selectedSuffixes.toArray(new String[selectedSuffixes.size()]));
+    }
+  }
+
+  /**
+   * The fields sent for the metrics of one type which match one override, or no override.
+   */
+  @Immutable
+  static final class Selection {
+    private final Kind kind;
+    private final Field[] fields;
+    private final String[] suffixes;
+    private final boolean snapshot;
+
+    private Selection(final Kind kind, final Field[] fields, final String[] suffixes) {
+      this.kind = kind;
+      this.fields = fields;
+      this.suffixes = suffixes;
+      boolean anySnapshot = false;
+      for (Field field : fields) {
+        anySnapshot |= field.isSnapshot();
+      }
+      this.snapshot = anySnapshot;
+    }
+
+    /**
+     * Returns the metric type the fields were selected for.
+     *
+     * @return the metric type
+     */
+    Kind kind() {
+      return kind;
+    }
+
+    /**
+     * Returns the fields to send, in order.
+     *
+     * @return the fields, which must not be modified
+     */
+    Field[] fields() {
+      return fields;
+    }
+
+    /**
+     * Returns the suffixes of the fields, always the same instance for {@link NameCache#get(Object, String[])}.
+     *
+     * @return the suffixes, which must not be modified
+     */
+    String[] suffixes() {
+      return suffixes;
+    }
+
+    /**
+     * Returns whether any field is read from a snapshot.
+     *
+     * @return whether to take a snapshot
+     */
+    boolean needsSnapshot() {
+      return snapshot;
+    }
+
+    /**
+     * Returns whether nothing is sent.
+     *
+     * @return whether the selection is empty
+     */
+    boolean isEmpty() {
+      return fields.length == 0;
+    }
+  }
+
+  /**
+   * An {@link EmissionPlan} resolved against the layouts of a reporter.
+   */
+  @Immutable
+  static final class Compiled {
+    private final Selection[] defaults;
+    private final Pattern[] patterns;
+    private final Selection[][] overridden;
+
+    private Compiled(final Selection[] defaults, final Pattern[] patterns, final Selection[][] overridden) {
+      this.defaults = defaults;
+      this.patterns = patterns;
+      this.overridden = overridden;
+    }
+
+    /**
+     * Returns the fields to send for metrics of the given type when there are no overrides.
+     *
+     * @param kind the type of the metrics
+     * @return the selection
+     */
+    Selection select(final Kind kind) {
+      return defaults[kind.ordinal()];
+    }
+
+    /**
+     * Returns the fields to send for the given metric, matching its name against the overrides. Reporters keep the
+     * result for each metric, so that names are only matched once.
+     *
+     * @param kind the type of the metric
+     * @param name the unprefixed name of the metric
+     * @return the selection
+     */
+    Selection select(final Kind kind, final String name) {
+      for (int i = 0; i < patterns.length; i++) {
+        if (patterns[i].matcher(name).matches()) {
+          return overridden[i][kind.ordinal()];
+        }
+      }
+      return defaults[kind.ordinal()];
+    }
+
+    /**
+     * Returns whether the selection depends on the metric name.
+     *
+     * @return whether there are overrides
+     */
+    boolean hasOverrides() {
+      return patterns.length > 0;
+    }
+  }
+
+  private static final class NameOverride {
+    private final Pattern pattern;
+    private final Set<Field> fields;
+
+    private NameOverride(final Pattern pattern, final Set<Field> fields) {
+      this.pattern = pattern;
+      this.fields = fields;
+    }
+
+    @Override
+    public String toString() {
+      return pattern + "=" + fields;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Arrays;
+
+/**
+ * A metric name which has already been sanitized and encoded as UTF-8, so it can be written to packets again and
+ * again without any further string work. The name may carry {@link Tags}, which are appended to each of its lines.
+ */
+@Immutable
+public final class EncodedName {
+  private final byte[] bytes;
+  private final Tags tags;
+  private final int hashCode;
+
+  private EncodedName(final byte[] bytes, final Tags tags) {
+    this.bytes = bytes;
+    this.tags = tags;
+    this.hashCode = 31 * Arrays.hashCode(bytes) + tags.hashCode();
+  }
+
+  /**
+   * Sanitizes and encodes the given name the same way {@link StatsD#send(String, String)} would.
+   *
+   * @param name the name of the metric
+   * @return the encoded name
+   */
+  public static EncodedName of(final CharSequence name) {
+    return of(name, Tags.NONE);
+  }
+
+  /**
+   * Sanitizes and encodes the given name, and attaches the given tags to it.
+   *
+   * @param name the name of the metric
+   * @param tags the tags appended to each line of the metric
+   * @return the encoded name
+   */
+  public static EncodedName of(final CharSequence name, final Tags tags) {
+    final LineEncoder encoder = new LineEncoder().name(name);
+    return new EncodedName(Arrays.copyOf(encoder.bytes(), encoder.length()), tags);
+  }
+
+  /**
+   * Returns the encoded bytes. The returned array must not be modified.
+   *
+   * @return the encoded bytes
+   */
+  byte[] bytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the tags appended to each line of the metric.
+   *
+   * @return the tags
+   */
+  Tags tags() {
+    return tags;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    return this == o || (o instanceof EncodedName && Arrays.equals(bytes, ((EncodedName) o).bytes)
+        && tags.equals(((EncodedName) o).tags));
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  public String toString() {
+    return new String(bytes, StatsD.UTF_8) + tags;
+  }
+}
@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+
+/**
+ * Encodes single StatsD lines ({@code name:value|type|@rate|#tags}) as UTF-8 into a reusable byte buffer.
+ *
+ * Names and string values are sanitized on the fly by replacing runs of whitespace with a single {@code '-'}, and
+ * numbers are written digit by digit, so encoding a line does not allocate once the buffer has grown to fit the
+ * longest line.
+ */
+@NotThreadSafe
+public class LineEncoder {
+
+  /**
+   * The number of decimal places doubles are rounded to unless specified otherwise.
+   */
+  public static final int DEFAULT_DECIMALS = 2;
+
+  static final int INITIAL_CAPACITY = 512;
+
+  private static final double MIN_SAMPLE_RATE = 1e-9;
+
+  private byte[] bytes = new byte[INITIAL_CAPACITY];
+  private int length;
+
+  /**
+   * Discards the current line and starts a new one.
+   *
+   * @return {@code this}
+   */
+  public LineEncoder reset() {
+    length = 0;
+    return this;
+  }
+
+  /**
+   * Appends the sanitized metric name.
+   *
+   * @param name the name of the metric
+   * @return {@code this}
+   */
+  public LineEncoder name(final CharSequence name) {
+    appendSanitized(name);
+    return this;
+  }
+
+  /**
+   * Appends the pre-encoded metric name.
+   *
+   * @param name the name of the metric
+   * @return {@code this}
+   */
+  public LineEncoder name(final EncodedName name) {
+    appendBytes(name.bytes(), 0, name.bytes().length);
+    return this;
+  }
+
+  /**
+   * Appends the {@code ':'} separator followed by the given value.
+   *
+   * @param value the value of the metric
+   * @return {@code this}
+   */
+  public LineEncoder value(final long value) {
+    appendByte(':');
+    appendLong(value);
+    return this;
+  }
+
+  /**
+   * Appends the {@code ':'} separator followed by the given value, rounded half-up to two decimal places.
+   *
+   * @param value the value of the metric
+   * @return {@code this}
+   * @see NumberFormatter#format(double, int, byte[], int)
+   */
+  public LineEncoder value(final double value) {
+    return value(value, DEFAULT_DECIMALS);
+  }
+
+  /**
+   * Appends the {@code ':'} separator followed by the given value, rounded half-up to the given number of decimal
+   * places.
+   *
+   * @param value    the value of the metric
+   * @param decimals the number of decimal places, between 0 and {@link NumberFormatter#MAX_DECIMALS}
+   * @return {@code this}
+   * @see NumberFormatter#format(double, int, byte[], int)
+   */
+  public LineEncoder value(final double value, final int decimals) {
+    NumberFormatter.checkDecimals(decimals);
+    appendByte(':');
+    appendDouble(value, decimals);
+    return this;
+  }
+
+  /**
+   * Appends the {@code ':'} separator followed by the given sanitized value.
+   *
+   * @param value the value of the metric
+   * @return {@code this}
+   */
+  public LineEncoder value(final CharSequence value) {
+    appendByte(':');
+    appendSanitized(value);
+    return this;
+  }
+
+  /**
+   * Appends the type suffix, e.g. {@code |g}.
+   *
+   * @param type the type of the metric
+   * @return {@code this}
+   */
+  public LineEncoder type(final MetricType type) {
+    appendBytes(type.suffix(), 0, type.suffix().length);
+    return this;
+  }
+
+  /**
+   * Appends the sample rate suffix, e.g. {@code |@0.1}, which tells the server that only this fraction of the
+   * measurements was sent. Appends nothing for a rate of 1. The rate is written with at most nine decimal places and
+   * rounded up to the smallest rate that can be written so, since a rate of 0 would make the server divide by zero.
+   *
+   * @param rate the sample rate, greater than 0 and at most 1
+   * @return {@code this}
+   */
+  public LineEncoder sampleRate(final double rate) {
+    if (rate >= 1) {
+      return this;
+    }
+    appendByte('|');
+    appendByte('@');
+    appendDouble(Math.max(rate, MIN_SAMPLE_RATE), NumberFormatter.MAX_DECIMALS);
+    while (bytes[length - 1] == '0') {
+      length--;
+    }
+    if (bytes[length - 1] == '.') {
+      length--;
+    }
+    return this;
+  }
+
+  /**
+   * Appends the pre-encoded tags suffix, e.g. {@code |#env:prod}. Appends nothing for {@link Tags#NONE}.
+   *
+   * @param tags the tags of the metric
+   * @return {@code this}
+   */
+  public LineEncoder tags(final Tags tags) {
+    appendBytes(tags.bytes(), 0, tags.bytes().length);
+    return this;
+  }
+
+  /**
+   * Returns the buffer holding the encoded line. Only the first {@link #length()} bytes are valid, and the contents
+   * change as soon as the encoder is reused.
+   *
+   * @return the encoded bytes
+   */
+  public byte[] bytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the length of the encoded line in bytes.
+   *
+   * @return the length of the encoded line
+   */
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public String toString() {
+    return new String(bytes, 0, length, StatsD.UTF_8);
+  }
+
+  private void appendSanitized(final CharSequence s) {
+    final int n = s.length();
+    ensureCapacity(length + n * 3);
+
+    boolean inWhitespace = false;
+    for (int i = 0; i < n; i++) {
+      final char c = s.charAt(i);
+      if (isWhitespace(c)) {
+        if (!inWhitespace) {
+          bytes[length++] = '-';
+          inWhitespace = true;
+        }
+        continue;
+      }
+      inWhitespace = false;
+
+      if (c < 0x80) {
+        bytes[length++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[length++] = (byte) (0xc0 | (c >> 6));
+        bytes[length++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, s.charAt(++i));
+        bytes[length++] = (byte) (0xf0 | (cp >> 18));
+        bytes[length++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        bytes[length++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        bytes[length++] = (byte) (0x80 | (cp & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        bytes[length++] = '?';
+      } else {
+        bytes[length++] = (byte) (0xe0 | (c >> 12));
+        bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        bytes[length++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  /**
+   * Matches the {@code \s} character class used by the regular expression this replaces.
+   */
+  private static boolean isWhitespace(final char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0b || c == '\f' || c == '\r';
+  }
+
+  private void appendLong(final long value) {
+    ensureCapacity(length + NumberFormatter.MAX_LONG_LENGTH);
+    length = NumberFormatter.format(value, bytes, length);
+  }
+
+  private void appendDouble(final double value, final int decimals) {
+    ensureCapacity(length + NumberFormatter.MAX_DOUBLE_LENGTH + decimals);
+    length = NumberFormatter.format(value, decimals, bytes, length);
+  }
+
+  private void appendByte(final char c) {
+    ensureCapacity(length + 1);
+    bytes[length++] = (byte) c;
+  }
+
+  private void appendBytes(final byte[] src, final int offset, final int count) {
+    ensureCapacity(length + count);
+    System.arraycopy(src, offset, bytes, length, count);
+    length += count;
+  }
+
+  private void ensureCapacity(final int capacity) {
+    if (capacity > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free queue of encoded lines between a single producer and a single consumer thread.
+ *
+ * Each slot owns a byte array which is reused for every line passing through it, so queueing a line only copies it.
+ * The producer may also drop the oldest line to make room for a new one. The consumer therefore copies a line out
+ * first and then claims it with a compare-and-set on the head, discarding the copy if the producer dropped the line
+ * in the meantime.
+ */
+@ThreadSafe
+final class LineRingBuffer {
+
+  private final Line[] slots;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * Creates a new queue.
+   *
+   * @param capacity the maximum number of lines, rounded up to a power of two
+   * @param lineSize the initial size of each slot in bytes; slots grow to fit longer lines
+   */
+  LineRingBuffer(final int capacity, final int lineSize) {
+    if (capacity <= 0 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("capacity must be between 1 and 2^30: " + capacity);
+    }
+    final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+    this.slots = new Line[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Line(lineSize);
+    }
+    this.mask = size - 1;
+  }
+
+  /**
+   * Returns the maximum number of lines.
+   *
+   * @return the capacity
+   */
+  int capacity() {
+    return slots.length;
+  }
+
+  /**
+   * Returns the number of queued lines.
+   *
+   * @return the number of queued lines
+   */
+  int size() {
+    return (int) Math.max(0, tail.get() - head.get());
+  }
+
+  /**
+   * Queues a copy of the given line unless the queue is full. Must only be called by the producer thread.
+   *
+   * @param bytes  the encoded line
+   * @param length the length of the line in bytes
+   * @return whether the line was queued
+   */
+  boolean offer(final byte[] bytes, final int length) {
+    final long t = tail.get();
+    if (t - head.get() >= slots.length) {
+      return false;
+    }
+    slots[(int) t & mask].set(bytes, length);
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /**
+   * Drops the oldest queued line unless the consumer takes it first. Must only be called by the producer thread.
+   *
+   * @return whether a line was dropped
+   */
+  boolean dropOldest() {
+    final long h = head.get();
+    return h < tail.get() && head.compareAndSet(h, h + 1);
+  }
+
+  /**
+   * Copies the oldest queued line into the given line and removes it from the queue. Must only be called by the
+   * consumer thread.
+   *
+   * @param into the line to copy into
+   * @return whether a line was taken, {@code false} if the queue was empty
+   */
+  boolean poll(final Line into) {
+    while (true) {
+      final long h = head.get();
+      if (h >= tail.get()) {
+        return false;
+      }
+      into.copyFrom(slots[(int) h & mask]);
+      if (head.compareAndSet(h, h + 1)) {
+        return true;
+      }
+      // The producer dropped the line while we copied it, so the copy may be torn.
+    }
+  }
+
+  /**
+   * An encoded line in a reusable, growable byte array.
+   */
+  static final class Line {
+    private byte[] bytes;
+    private int length;
+
+    Line(final int size) {
+      this.bytes = new byte[size];
+    }
+
+    byte[] bytes() {
+      return bytes;
+    }
+
+    int length() {
+      return length;
+    }
+
+    private void set(final byte[] src, final int srcLength) {
+      if (srcLength > bytes.length) {
+        bytes = Arrays.copyOf(src, srcLength);
+      } else {
+        System.arraycopy(src, 0, bytes, 0, srcLength);
+      }
+      length = srcLength;
+    }
+
+    private void copyFrom(final Line other) {
+      // Read the fields once, since the producer may be replacing them if the line is being dropped.
+      final byte[] src = other.bytes;
+      final int srcLength = Math.min(other.length, src.length);
+      set(src, srcLength);
+    }
+  }
+}
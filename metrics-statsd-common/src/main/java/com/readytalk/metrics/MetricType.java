@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import java.nio.charset.Charset;
+
+/**
+ * The StatsD metric types, along with the suffix which identifies each of them on the wire.
+ */
+public enum MetricType {
+  GAUGE("g"),
+  COUNTER("c"),
+  TIMER("ms"),
+  SET("s"),
+  DISTRIBUTION("d");
+
+  private final byte[] suffix;
+
+  MetricType(final String code) {
+    this.suffix = ("|" + code).getBytes(Charset.forName("US-ASCII"));
+  }
+
+  /**
+   * Returns the encoded type suffix, including the leading {@code '|'}. The returned array must not be modified.
+   *
+   * @return the encoded type suffix
+   */
+  byte[] suffix() {
+    return suffix;
+  }
+}
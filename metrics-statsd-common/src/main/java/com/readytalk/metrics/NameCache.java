@@ -0,0 +1,450 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the final, prefixed and encoded StatsD names of each reported metric, so that reporting a metric does not
+ * rebuild the same strings every cycle.
+ *
+ * Names are looked up by registry key along with the list of suffixes the metric type reports, and are built by a
+ * {@link Namer} and tagged by an optional {@link Tagger} on a miss. Call {@link #evictUnused()} after each complete
+ * report to drop the names of metrics which were not reported, i.e. which have been removed from the registry. The
+ * cache also holds the names of at most a fixed number of metrics, evicting the least recently used ones beyond that,
+ * so that a registry larger than the cache rebuilds the names of every metric every report.
+ *
+ * The cache also remembers the count each metric was last reported with, so that counts can be sent as deltas without
+ * a separate map from every metric to a boxed {@code Long}. Likewise it remembers the count or formatted value and
+ * time each metric was last reported with, so that idle metrics can be skipped until a heartbeat is due, and the
+ * values last computed from a snapshot, so that idle timers and histograms don't copy and sort their reservoirs every
+ * report. This state is kept apart from the names and is not limited by the maximum size, since losing a previous
+ * count would send a whole running total as a delta. It is only dropped by {@link #evictUnused()}, once a metric
+ * whose state was used during a report is no longer reported.
+ *
+ * Each metric with state gets a dense int slot from an {@link ObjectIntMap}, and its state is kept in primitive arrays
+ * indexed by that slot, so that it costs no entry or state object per metric. The arrays of state a reporter doesn't
+ * use, e.g. the previous counts without delta counters, are never allocated. Slots freed by {@link #evictUnused()}
+ * are reused.
+ *
+ * @param <K> the type of the registry key
+ */
+@NotThreadSafe
+public class NameCache<K> {
+
+  /**
+   * The default maximum number of metrics whose names are cached.
+   */
+  public static final int DEFAULT_MAX_SIZE = 100000;
+
+  /**
+   * The suffixes of a metric which is reported under its own name only, such as a gauge or counter.
+   */
+  static final String[] NO_SUFFIX = {""};
+
+  private static final int INITIAL_SLOTS = 16;
+  private static final byte COUNTED = 1;
+  private static final byte REPORTED = 2;
+
+  private final Namer<K> namer;
+  @Nullable
+  private final Tagger<K> tagger;
+  private final Map<K, CachedNames> entries;
+  private final ObjectIntMap<K> slots = new ObjectIntMap<K>();
+  private int generation;
+
+  // The state of each metric, indexed by its slot. Arrays of state which was never used stay null.
+  private Object[] slotKeys = new Object[INITIAL_SLOTS];
+  private int[] slotGenerations = new int[INITIAL_SLOTS];
+  private byte[] flags = new byte[INITIAL_SLOTS];
+  @Nullable
+  private long[] previousCounts;
+  @Nullable
+  private long[] reportedAts;
+  @Nullable
+  private long[] reportedCounts;
+  @Nullable
+  private byte[][] reportedValues;
+  @Nullable
+  private long[] snapshotCounts;
+  @Nullable
+  private double[][] snapshots;
+  private int slotCount;
+  private int[] freeSlots = new int[INITIAL_SLOTS];
+  private int freeCount;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxSize the maximum number of metrics whose names are cached
+   * @param namer   builds the name of a metric with a given suffix on a cache miss
+   */
+  public NameCache(final int maxSize, final Namer<K> namer) {
+    this(maxSize, namer, null);
+  }
+
+  /**
+   * Creates a new cache whose names carry tags.
+   *
+   * @param maxSize the maximum number of metrics whose names are cached
+   * @param namer   builds the name of a metric with a given suffix on a cache miss
+   * @param tagger  looks up the tags of a metric on a cache miss, or {@code null} for no tags
+   */
+  public NameCache(final int maxSize, final Namer<K> namer, @Nullable final Tagger<K> tagger) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+    }
+    this.namer = namer;
+    this.tagger = tagger;
+    this.entries = new LinkedHashMap<K, CachedNames>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<K, CachedNames> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the encoded names of the given metric, one for each suffix, in the same order as {@code suffixes}.
+   *
+   * @param key      the registry key of the metric
+   * @param suffixes the suffixes reported for the metric; use the same array instance every time
+   * @return the encoded names, which must not be modified
+   */
+  public EncodedName[] get(final K key, final String[] suffixes) {
+    return lookUp(key, suffixes).names;
+  }
+
+  /**
+   * Returns the encoded names of the given metric, one for each field of the given selection, and remembers the
+   * selection for {@link #selection(Object)}.
+   *
+   * @param key       the registry key of the metric
+   * @param selection the fields reported for the metric
+   * @return the encoded names, which must not be modified
+   */
+  EncodedName[] get(final K key, final EmissionPlan.Selection selection) {
+    final CachedNames entry = lookUp(key, selection.suffixes());
+    entry.selection = selection;
+    return entry.names;
+  }
+
+  /**
+   * Returns the selection the names of the given metric were last looked up with, without counting as a lookup.
+   *
+   * @param key the registry key of the metric
+   * @return the selection, or {@code null} if the metric isn't cached or was looked up by suffixes
+   */
+  @Nullable
+  EmissionPlan.Selection selection(final K key) {
+    final CachedNames entry = entries.get(key);
+    return entry == null ? null : entry.selection;
+  }
+
+  /**
+   * Returns the change in the count of the given metric since the previous call for it, and remembers the given
+   * count for the next one. The first call for a metric returns the whole count, since every event was counted after
+   * the previous report.
+   *
+   * @param key   the registry key of the metric
+   * @param count the current count of the metric
+   * @return the change in the count
+   */
+  public long delta(final K key, final long count) {
+    final int slot = slot(key);
+    if (previousCounts == null) {
+      previousCounts = new long[slotKeys.length];
+    }
+    final long delta = (flags[slot] & COUNTED) != 0 ? count - previousCounts[slot] : count;
+    previousCounts[slot] = count;
+    flags[slot] |= COUNTED;
+    return delta;
+  }
+
+  /**
+   * Returns whether a metric with the given count should be reported, i.e. it has not been reported before, its count
+   * has changed since it was last reported, or it was last reported at least {@code heartbeat} ago. If so, remembers
+   * the count and time for the next call.
+   *
+   * @param key       the registry key of the metric
+   * @param count     the current count or integral value of the metric
+   * @param now       the current time in nanoseconds
+   * @param heartbeat the longest time in nanoseconds an unchanged metric goes unreported
+   * @return whether to report the metric
+   */
+  public boolean shouldReport(final K key, final long count, final long now, final long heartbeat) {
+    final int slot = reportSlot(key);
+    if (reportedCounts == null) {
+      reportedCounts = new long[slotKeys.length];
+    }
+    if ((flags[slot] & REPORTED) != 0 && reportedCounts[slot] == count && now - reportedAts[slot] < heartbeat) {
+      return false;
+    }
+    flags[slot] |= REPORTED;
+    reportedAts[slot] = now;
+    reportedCounts[slot] = count;
+    return true;
+  }
+
+  /**
+   * Returns whether a metric with the given formatted value should be reported, i.e. it has not been reported
+   * before, its formatted value has changed since it was last reported, or it was last reported at least
+   * {@code heartbeat} ago. If so, remembers a copy of the value and the time for the next call.
+   *
+   * @param key       the registry key of the metric
+   * @param value     the formatted value of the metric
+   * @param now       the current time in nanoseconds
+   * @param heartbeat the longest time in nanoseconds an unchanged metric goes unreported
+   * @return whether to report the metric
+   */
+  public boolean shouldReport(final K key, final LineEncoder value, final long now, final long heartbeat) {
+    final int slot = reportSlot(key);
+    if (reportedValues == null) {
+      reportedValues = new byte[slotKeys.length][];
+    }
+    if ((flags[slot] & REPORTED) != 0 && hasReportedValue(slot, value) && now - reportedAts[slot] < heartbeat) {
+      return false;
+    }
+    flags[slot] |= REPORTED;
+    reportedAts[slot] = now;
+    byte[] reported = reportedValues[slot];
+    if (reported == null || reported.length != value.length()) {
+      reported = new byte[value.length()];
+      reportedValues[slot] = reported;
+    }
+    System.arraycopy(value.bytes(), 0, reported, 0, reported.length);
+    return true;
+  }
+
+  /**
+   * Returns the snapshot values stored for the given metric through {@link #snapshotBuffer(Object, long, int)}, if
+   * they were computed at the same count.
+   *
+   * @param key   the registry key of the metric
+   * @param count the current count of the metric
+   * @return the stored values, or {@code null} if the count has changed or none are stored
+   */
+  @Nullable
+  public double[] cachedSnapshot(final K key, final long count) {
+    final int slot = slot(key);
+    if (snapshots == null || snapshots[slot] == null || snapshotCounts[slot] != count) {
+      return null;
+    }
+    return snapshots[slot];
+  }
+
+  /**
+   * Returns an array to store the values computed from a snapshot of the given metric in, which
+   * {@link #cachedSnapshot(Object, long)} returns until the count changes. The array is reused for the metric.
+   *
+   * @param key    the registry key of the metric
+   * @param count  the count of the metric when the snapshot was taken
+   * @param length the number of values
+   * @return the array to store the values in
+   */
+  public double[] snapshotBuffer(final K key, final long count, final int length) {
+    final int slot = slot(key);
+    if (snapshots == null) {
+      snapshots = new double[slotKeys.length][];
+      snapshotCounts = new long[slotKeys.length];
+    }
+    double[] snapshot = snapshots[slot];
+    if (snapshot == null || snapshot.length != length) {
+      snapshot = new double[length];
+      snapshots[slot] = snapshot;
+    }
+    snapshotCounts[slot] = count;
+    return snapshot;
+  }
+
+  /**
+   * Evicts the names of all metrics which have not been looked up since the last call, and the state of all metrics
+   * whose state has not been used since.
+   */
+  public void evictUnused() {
+    final Iterator<CachedNames> iterator = entries.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().generation != generation) {
+        iterator.remove();
+      }
+    }
+    for (int slot = 0; slot < slotCount; slot++) {
+      if (slotKeys[slot] != null && slotGenerations[slot] != generation) {
+        freeSlot(slot);
+      }
+    }
+    generation++;
+  }
+
+  /**
+   * Returns the number of metrics whose names are cached.
+   *
+   * @return the number of cached metrics
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private CachedNames lookUp(final K key, final String[] suffixes) {
+    CachedNames entry = entries.get(key);
+    if (entry == null || entry.suffixes != suffixes) {
+      final EncodedName[] names = new EncodedName[suffixes.length];
+      final Tags tags = tagger == null ? Tags.NONE : tagger.tags(key);
+      for (int i = 0; i < suffixes.length; i++) {
+        names[i] = EncodedName.of(namer.name(key, suffixes[i]), tags);
+      }
+      entry = new CachedNames(suffixes, names);
+      entries.put(key, entry);
+    }
+    entry.generation = generation;
+    return entry;
+  }
+
+  /**
+   * Returns the slot of the given metric's state, assigning a free one if it has none, and marks the state as used.
+   */
+  private int slot(final K key) {
+    int slot = slots.get(key);
+    if (slot == ObjectIntMap.MISSING) {
+      if (freeCount > 0) {
+        slot = freeSlots[--freeCount];
+      } else {
+        if (slotCount == slotKeys.length) {
+          growSlots(slotCount * 2);
+        }
+        slot = slotCount++;
+      }
+      slots.put(key, slot);
+      slotKeys[slot] = key;
+      flags[slot] = 0;
+    }
+    slotGenerations[slot] = generation;
+    return slot;
+  }
+
+  private int reportSlot(final K key) {
+    final int slot = slot(key);
+    if (reportedAts == null) {
+      reportedAts = new long[slotKeys.length];
+    }
+    return slot;
+  }
+
+  private boolean hasReportedValue(final int slot, final LineEncoder value) {
+    final byte[] reported = reportedValues[slot];
+    if (reported == null || reported.length != value.length()) {
+      return false;
+    }
+    final byte[] bytes = value.bytes();
+    for (int i = 0; i < reported.length; i++) {
+      if (reported[i] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void freeSlot(final int slot) {
+    slots.remove((K) slotKeys[slot]);
+    slotKeys[slot] = null;
+    if (reportedValues != null) {
+      reportedValues[slot] = null;
+    }
+    if (snapshots != null) {
+      snapshots[slot] = null;
+    }
+    freeSlots[freeCount++] = slot;
+  }
+
+  private void growSlots(final int capacity) {
+    slotKeys = Arrays.copyOf(slotKeys, capacity);
+    slotGenerations = Arrays.copyOf(slotGenerations, capacity);
+    flags = Arrays.copyOf(flags, capacity);
+    freeSlots = Arrays.copyOf(freeSlots, capacity);
+    if (previousCounts != null) {
+      previousCounts = Arrays.copyOf(previousCounts, capacity);
+    }
+    if (reportedAts != null) {
+      reportedAts = Arrays.copyOf(reportedAts, capacity);
+    }
+    if (reportedCounts != null) {
+      reportedCounts = Arrays.copyOf(reportedCounts, capacity);
+    }
+    if (reportedValues != null) {
+      reportedValues = Arrays.copyOf(reportedValues, capacity);
+    }
+    if (snapshotCounts != null) {
+      snapshotCounts = Arrays.copyOf(snapshotCounts, capacity);
+    }
+    if (snapshots != null) {
+      snapshots = Arrays.copyOf(snapshots, capacity);
+    }
+  }
+
+  /**
+   * Builds the full StatsD name of a metric.
+   *
+   * @param <K> the type of the registry key
+   */
+  public interface Namer<K> {
+
+    /**
+     * Builds the full, prefixed StatsD name of the given metric with the given suffix.
+     *
+     * @param key    the registry key of the metric
+     * @param suffix the suffix, or the empty string if the metric is reported under its own name
+     * @return the full name
+     */
+    String name(K key, String suffix);
+  }
+
+  /**
+   * Looks up the tags of a metric.
+   *
+   * @param <K> the type of the registry key
+   */
+  public interface Tagger<K> {
+
+    /**
+     * Returns the tags appended to every line of the given metric.
+     *
+     * @param key the registry key of the metric
+     * @return the tags
+     */
+    Tags tags(K key);
+  }
+
+  private static final class CachedNames {
+    private final String[] suffixes;
+    private final EncodedName[] names;
+    private int generation;
+    private EmissionPlan.Selection selection;
+
+    private CachedNames(final String[] suffixes, final EncodedName[] names) {
+      this.suffixes = suffixes;
+      this.names = names;
+    }
+  }
+
+}
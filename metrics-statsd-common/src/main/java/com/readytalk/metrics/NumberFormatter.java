@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Locale;
+
+/**
+ * Writes numbers as ASCII digits straight into a byte array, replacing {@code String.format("%2.2f")} and
+ * {@link Long#toString(long)} on the reporting path.
+ *
+ * Doubles are rounded half-up to a fixed number of decimal places. The rounding is done on the exact binary value,
+ * so decimal ties such as {@code 1.005} (really {@code 1.00499999...}) round down where
+ * {@link String#format(String, Object...)} would round them up. Values which don't fit into a {@code long}, NaN and
+ * infinities fall back to {@link String#format(String, Object...)}.
+ */
+@ThreadSafe
+public final class NumberFormatter {
+
+  /**
+   * The largest supported number of decimal places.
+   */
+  public static final int MAX_DECIMALS = 9;
+
+  /**
+   * The longest output of {@link #format(long, byte[], int)}.
+   */
+  public static final int MAX_LONG_LENGTH = 20;
+
+  /**
+   * The longest output of {@link #format(double, int, byte[], int)} with no decimal places. Add the number of
+   * decimal places to get the longest output for that precision.
+   */
+  public static final int MAX_DOUBLE_LENGTH = 311;
+
+  /**
+   * Doubles at or above this magnitude do not fit into a {@code long}.
+   */
+  private static final double MAX_FAST_DOUBLE = 1e18;
+
+  private static final byte[] DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+  private static final byte[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE).getBytes(StatsD.UTF_8);
+
+  private static final long[] POWERS_OF_TEN = {
+      1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+  };
+
+  private static final String[] FORMATS = new String[MAX_DECIMALS + 1];
+
+  static {
+    for (int i = 0; i < FORMATS.length; i++) {
+      FORMATS[i] = "%." + i + "f";
+    }
+  }
+
+  private NumberFormatter() {
+  }
+
+  /**
+   * Writes the given value as decimal digits.
+   *
+   * @param value  the value to write
+   * @param dest   the array to write to, with room for at least {@link #MAX_LONG_LENGTH} bytes after {@code offset}
+   * @param offset the index of the first byte to write
+   * @return the index after the last byte written
+   */
+  public static int format(final long value, final byte[] dest, final int offset) {
+    if (value == Long.MIN_VALUE) {
+      System.arraycopy(LONG_MIN_VALUE, 0, dest, offset, LONG_MIN_VALUE.length);
+      return offset + LONG_MIN_VALUE.length;
+    }
+
+    int pos = offset;
+    long v = value;
+    if (v < 0) {
+      dest[pos++] = '-';
+      v = -v;
+    }
+
+    final int end = pos + digits(v);
+    pos = end;
+    do {
+      dest[--pos] = DIGITS[(int) (v % 10)];
+      v /= 10;
+    } while (v != 0);
+    return end;
+  }
+
+  /**
+   * Writes the given value rounded half-up to the given number of decimal places. No decimal point is written for
+   * zero decimal places.
+   *
+   * @param value    the value to write
+   * @param decimals the number of decimal places, between 0 and {@link #MAX_DECIMALS}
+   * @param dest     the array to write to, with room for at least {@code MAX_DOUBLE_LENGTH + decimals} bytes after
+   *                 {@code offset}
+   * @param offset   the index of the first byte to write
+   * @return the index after the last byte written
+   * @throws IllegalArgumentException if {@code decimals} is out of range
+   */
+  public static int format(final double value, final int decimals, final byte[] dest, final int offset) {
+    checkDecimals(decimals);
+
+    final double abs = Math.abs(value);
+    if (Double.isNaN(value) || abs >= MAX_FAST_DOUBLE) {
+      // Rare enough that it isn't worth avoiding the allocation.
+      final String s = String.format(Locale.US, FORMATS[decimals], value);
+      for (int i = 0; i < s.length(); i++) {
+        dest[offset + i] = (byte) s.charAt(i);
+      }
+      return offset + s.length();
+    }
+
+    int pos = offset;
+    if (Double.doubleToRawLongBits(value) < 0) {
+      dest[pos++] = '-';
+    }
+
+    // Round the fractional part on its own so that large values don't lose precision to the scaling.
+    final long scale = POWERS_OF_TEN[decimals];
+    long integer = (long) abs;
+    long fraction = Math.round((abs - integer) * scale);
+    if (fraction == scale) {
+      integer++;
+      fraction = 0;
+    }
+    pos = format(integer, dest, pos);
+    if (decimals == 0) {
+      return pos;
+    }
+
+    dest[pos++] = '.';
+    for (int i = pos + decimals - 1; i >= pos; i--) {
+      dest[i] = DIGITS[(int) (fraction % 10)];
+      fraction /= 10;
+    }
+    return pos + decimals;
+  }
+
+  /**
+   * Checks that the given number of decimal places is supported.
+   *
+   * @param decimals the number of decimal places
+   * @return {@code decimals}
+   * @throws IllegalArgumentException if {@code decimals} is out of range
+   */
+  static int checkDecimals(final int decimals) {
+    if (decimals < 0 || decimals > MAX_DECIMALS) {
+      throw new IllegalArgumentException("decimals must be between 0 and " + MAX_DECIMALS + ": " + decimals);
+    }
+    return decimals;
+  }
+
+  private static int digits(final long v) {
+    long limit = 10;
+    for (int digits = 1; digits < 19; digits++) {
+      if (v < limit) {
+        return digits;
+      }
+      limit *= 10;
+    }
+    return 19;
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A hash map from objects to non-negative ints, which keeps its keys and values in two parallel arrays with linear
+ * probing instead of allocating an entry and a boxed {@code Integer} for each key.
+ *
+ * @param <K> the type of the keys
+ */
+@NotThreadSafe
+final class ObjectIntMap<K> {
+
+  /**
+   * Returned by {@link #get(Object)} and {@link #remove(Object)} for a key which isn't in the map.
+   */
+  static final int MISSING = -1;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private Object[] keys = new Object[INITIAL_CAPACITY];
+  private int[] values = new int[INITIAL_CAPACITY];
+  private int size;
+
+  /**
+   * Returns the value of the given key.
+   *
+   * @param key the key
+   * @return the value, or {@link #MISSING} if the key isn't in the map
+   */
+  int get(final K key) {
+    final int mask = keys.length - 1;
+    for (int i = index(key, mask); keys[i] != null; i = (i + 1) & mask) {
+      if (keys[i].equals(key)) {
+        return values[i];
+      }
+    }
+    return MISSING;
+  }
+
+  /**
+   * Sets the value of the given key.
+   *
+   * @param key   the key
+   * @param value the value, which must not be negative
+   */
+  void put(final K key, final int value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("value must not be negative: " + value);
+    }
+    final int mask = keys.length - 1;
+    int i = index(key, mask);
+    while (keys[i] != null) {
+      if (keys[i].equals(key)) {
+        values[i] = value;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    // Kept at most half full, so that probe sequences stay short.
+    if (++size * 2 > keys.length) {
+      resize(keys.length * 2);
+    }
+  }
+
+  /**
+   * Removes the given key.
+   *
+   * @param key the key
+   * @return the value the key had, or {@link #MISSING} if it wasn't in the map
+   */
+  int remove(final K key) {
+    final int mask = keys.length - 1;
+    int i = index(key, mask);
+    while (keys[i] != null) {
+      if (keys[i].equals(key)) {
+        final int value = values[i];
+        closeGap(i, mask);
+        size--;
+        return value;
+      }
+      i = (i + 1) & mask;
+    }
+    return MISSING;
+  }
+
+  /**
+   * Returns the number of keys.
+   *
+   * @return the number of keys
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Empties the given slot and moves later keys of the same probe sequence back into it, so that lookups never stop
+   * at a gap before reaching them.
+   */
+  private void closeGap(final int slot, final int mask) {
+    int gap = slot;
+    int i = (gap + 1) & mask;
+    while (keys[i] != null) {
+      final int home = index(keys[i], mask);
+      // Move the key unless its home lies cyclically after the gap and up to its current slot.
+      if (((i - home) & mask) >= ((i - gap) & mask)) {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        gap = i;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[gap] = null;
+  }
+
+  private void resize(final int capacity) {
+    final Object[] oldKeys = keys;
+    final int[] oldValues = values;
+    keys = new Object[capacity];
+    values = new int[capacity];
+    final int mask = capacity - 1;
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldKeys[j] != null) {
+        int i = index(oldKeys[j], mask);
+        while (keys[i] != null) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        values[i] = oldValues[j];
+      }
+    }
+  }
+
+  private static int index(final Object key, final int mask) {
+    // Spreads the hash codes of keys such as Strings, whose low bits are often alike.
+    final int h = key.hashCode() * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
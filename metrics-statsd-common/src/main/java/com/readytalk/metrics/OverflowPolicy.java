@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+/**
+ * What an {@link AsyncStatsD} does with a measurement when its queue is full.
+ */
+public enum OverflowPolicy {
+
+  /**
+   * Drops the new measurement.
+   */
+  DROP_NEWEST,
+
+  /**
+   * Drops the oldest queued measurement to make room for the new one.
+   */
+  DROP_OLDEST,
+
+  /**
+   * Waits for the sender thread to make room, up to a timeout, and drops the new measurement after that.
+   */
+  BLOCK
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+/**
+ * Receives every packet a {@link StatsD} client sends, e.g. to record the latency of the transport in a histogram.
+ */
+public interface PacketListener {
+
+  /**
+   * Called after the transport sent, or dropped, a packet, on the thread which sent it. Not called when sending
+   * failed.
+   *
+   * @param lines the number of lines in the packet
+   * @param bytes the payload size of the packet in bytes
+   * @param nanos the time the transport took to send the packet, in nanoseconds
+   */
+  void packetSent(int lines, int bytes, long nanos);
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The number of decimal places reporters round each kind of measurement to, e.g. whole milliseconds for durations
+ * but four decimal places for rates so that rare events don't show up as {@code 0.00}.
+ *
+ * Counts and integral gauges are always sent as integers.
+ */
+@Immutable
+public final class Precision {
+
+  /**
+   * Two decimal places for every kind of measurement.
+   */
+  public static final Precision DEFAULT = decimals(2);
+
+  private final int durations;
+  private final int rates;
+  private final int values;
+  private final int gauges;
+
+  private Precision(final int durations, final int rates, final int values, final int gauges) {
+    this.durations = NumberFormatter.checkDecimals(durations);
+    this.rates = NumberFormatter.checkDecimals(rates);
+    this.values = NumberFormatter.checkDecimals(values);
+    this.gauges = NumberFormatter.checkDecimals(gauges);
+  }
+
+  /**
+   * Returns a precision using the given number of decimal places for every kind of measurement.
+   *
+   * @param decimals the number of decimal places, between 0 and {@link NumberFormatter#MAX_DECIMALS}
+   * @return a {@link Precision}
+   */
+  public static Precision decimals(final int decimals) {
+    return new Precision(decimals, decimals, decimals, decimals);
+  }
+
+  /**
+   * Returns a copy which rounds timer durations to the given number of decimal places.
+   *
+   * @param decimals the number of decimal places
+   * @return a {@link Precision}
+   */
+  public Precision withDurations(final int decimals) {
+    return new Precision(decimals, rates, values, gauges);
+  }
+
+  /**
+   * Returns a copy which rounds meter and timer rates to the given number of decimal places.
+   *
+   * @param decimals the number of decimal places
+   * @return a {@link Precision}
+   */
+  public Precision withRates(final int decimals) {
+    return new Precision(durations, decimals, values, gauges);
+  }
+
+  /**
+   * Returns a copy which rounds histogram values to the given number of decimal places.
+   *
+   * @param decimals the number of decimal places
+   * @return a {@link Precision}
+   */
+  public Precision withValues(final int decimals) {
+    return new Precision(durations, rates, decimals, gauges);
+  }
+
+  /**
+   * Returns a copy which rounds floating point gauges to the given number of decimal places.
+   *
+   * @param decimals the number of decimal places
+   * @return a {@link Precision}
+   */
+  public Precision withGauges(final int decimals) {
+    return new Precision(durations, rates, values, decimals);
+  }
+
+  /**
+   * Returns the number of decimal places for timer durations.
+   *
+   * @return the number of decimal places
+   */
+  public int getDurations() {
+    return durations;
+  }
+
+  /**
+   * Returns the number of decimal places for meter and timer rates.
+   *
+   * @return the number of decimal places
+   */
+  public int getRates() {
+    return rates;
+  }
+
+  /**
+   * Returns the number of decimal places for histogram values.
+   *
+   * @return the number of decimal places
+   */
+  public int getValues() {
+    return values;
+  }
+
+  /**
+   * Returns the number of decimal places for floating point gauges.
+   *
+   * @return the number of decimal places
+   */
+  public int getGauges() {
+    return gauges;
+  }
+
+  @Override
+  public String toString() {
+    return "Precision{durations=" + durations + ", rates=" + rates + ", values=" + values + ", gauges=" + gauges + '}';
+  }
+}
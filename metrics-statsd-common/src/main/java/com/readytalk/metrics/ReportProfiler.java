@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the evaluation of each gauge and the snapshot of each timer and histogram during a report cycle, to find the
+ * metrics which stall it.
+ *
+ * Keeps the slowest evaluations of each cycle, and logs every evaluation which takes longer than a threshold. The
+ * results of the last completed cycle can be read from any thread, and the worker threads of a parallel reporter
+ * may record evaluations concurrently.
+ *
+ * @param <K> the type of the registry key
+ */
+@ThreadSafe
+public class ReportProfiler<K> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReportProfiler.class);
+
+  private final int topN;
+  private final long thresholdNanos;
+  private final List<Timing<K>> current;
+  private final List<Timing<K>> currentSlow = new ArrayList<Timing<K>>();
+  private volatile List<Timing<K>> slowest = Collections.emptyList();
+  private volatile List<Timing<K>> overThreshold = Collections.emptyList();
+
+  /**
+   * Creates a new profiler.
+   *
+   * @param topN          the number of slowest evaluations to keep per cycle
+   * @param threshold     the time above which an evaluation is logged
+   * @param thresholdUnit the unit of {@code threshold}
+   */
+  public ReportProfiler(final int topN, final long threshold, final TimeUnit thresholdUnit) {
+    if (topN <= 0) {
+      throw new IllegalArgumentException("topN must be positive: " + topN);
+    }
+    this.topN = topN;
+    this.thresholdNanos = thresholdUnit.toNanos(threshold);
+    this.current = new ArrayList<Timing<K>>(topN + 1);
+  }
+
+  /**
+   * Starts a new report cycle, discarding the timings of an incomplete one.
+   */
+  public synchronized void startCycle() {
+    current.clear();
+    currentSlow.clear();
+  }
+
+  /**
+   * Returns the current time, to pass to {@link #record(Object, Kind, long)} once the evaluation is done.
+   *
+   * @return the current time in nanoseconds
+   */
+  public long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records an evaluation which started at the given time and ended now. May be called from several threads at once.
+   *
+   * @param key   the registry key of the metric
+   * @param kind  what was evaluated
+   * @param start the time returned by {@link #start()} before the evaluation
+   */
+  public void record(final K key, final Kind kind, final long start) {
+    // Measured before taking the lock, so that waiting for another worker doesn't count.
+    final long nanos = System.nanoTime() - start;
+    if (nanos > thresholdNanos) {
+      LOG.warn("Evaluating the {} of {} took {} ms", kind.description, key,
+          TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+    synchronized (this) {
+      if (nanos > thresholdNanos) {
+        final Timing<K> timing = new Timing<K>(key, kind, nanos);
+        currentSlow.add(timing);
+        insert(timing);
+      } else if (current.size() < topN || nanos > current.get(current.size() - 1).nanos) {
+        insert(new Timing<K>(key, kind, nanos));
+      }
+    }
+  }
+
+  /**
+   * Ends the report cycle, making its timings available through {@link #getSlowest()} and
+   * {@link #getOverThreshold()}.
+   */
+  public synchronized void endCycle() {
+    slowest = Collections.unmodifiableList(new ArrayList<Timing<K>>(current));
+    overThreshold = Collections.unmodifiableList(new ArrayList<Timing<K>>(currentSlow));
+    if (LOG.isDebugEnabled() && !current.isEmpty()) {
+      LOG.debug("Slowest metrics of the last report: {}", slowest);
+    }
+  }
+
+  /**
+   * Returns the slowest evaluations of the last completed report cycle, slowest first.
+   *
+   * @return at most {@code topN} timings
+   */
+  public List<Timing<K>> getSlowest() {
+    return slowest;
+  }
+
+  /**
+   * Returns every evaluation of the last completed report cycle which took longer than the threshold, in the order
+   * they happened.
+   *
+   * @return the slow timings
+   */
+  public List<Timing<K>> getOverThreshold() {
+    return overThreshold;
+  }
+
+  /**
+   * Inserts the timing into the top-N list, which is sorted slowest first and short enough to search linearly.
+   */
+  private void insert(final Timing<K> timing) {
+    int i = current.size();
+    while (i > 0 && current.get(i - 1).nanos < timing.nanos) {
+      i--;
+    }
+    if (i < topN) {
+      current.add(i, timing);
+      if (current.size() > topN) {
+        current.remove(topN);
+      }
+    }
+  }
+
+  /**
+   * What a timing measured.
+   */
+  public enum Kind {
+    GAUGE("value"),
+    SNAPSHOT("snapshot");
+
+    private final String description;
+
+    Kind(final String description) {
+      this.description = description;
+    }
+  }
+
+  /**
+   * The time one evaluation of a metric took.
+   *
+   * @param <K> the type of the registry key
+   */
+  public static final class Timing<K> {
+    private final K key;
+    private final Kind kind;
+    private final long nanos;
+
+    private Timing(final K key, final Kind kind, final long nanos) {
+      this.key = key;
+      this.kind = kind;
+      this.nanos = nanos;
+    }
+
+    /**
+     * Returns the registry key of the metric.
+     *
+     * @return the registry key
+     */
+    public K getKey() {
+      return key;
+    }
+
+    /**
+     * Returns what was evaluated.
+     *
+     * @return the kind of evaluation
+     */
+    public Kind getKind() {
+      return kind;
+    }
+
+    /**
+     * Returns how long the evaluation took.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getNanos() {
+      return nanos;
+    }
+
+    @Override
+    public String toString() {
+      return key + " " + kind.description + ": " + nanos + " ns";
+    }
+  }
+}
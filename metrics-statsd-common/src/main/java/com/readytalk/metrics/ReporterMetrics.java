@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Times the report cycles of a reporter and the packets its {@link StatsD} client sends, so that the reporter can
+ * publish its own cost as metrics.
+ *
+ * The time a cycle spends encoding is its duration less the time spent sending packets on the reporting thread. When
+ * the client sends in the background, e.g. an {@link AsyncStatsD}, the whole cycle counts as encoding. Subclasses
+ * record both times in the metrics library of the reporter.
+ */
+@NotThreadSafe
+public abstract class ReporterMetrics implements PacketListener {
+
+  private final boolean sendsOnReportingThread;
+  private long cycleStart;
+  private long cycleSendNanos;
+
+  /**
+   * Creates new reporter metrics and starts listening to the packets the given client sends.
+   *
+   * @param statsD the client the reporter sends through
+   */
+  protected ReporterMetrics(final StatsDSender statsD) {
+    this.sendsOnReportingThread = statsD.sendsOnCallingThread();
+    statsD.setPacketListener(this);
+  }
+
+  /**
+   * Also listens to the packets another client of the reporter sends, e.g. one used by a worker thread of a parallel
+   * reporter. Their send times are recorded, but not subtracted from the encode time of the cycle.
+   *
+   * @param statsD another client the reporter sends through
+   */
+  public final void listenTo(final StatsDSender statsD) {
+    statsD.setPacketListener(new PacketListener() {
+      @Override
+      public void packetSent(final int lines, final int bytes, final long nanos) {
+        recordSend(nanos);
+      }
+    });
+  }
+
+  /**
+   * Marks the start of a report cycle.
+   */
+  public final void startCycle() {
+    cycleSendNanos = 0;
+    cycleStart = System.nanoTime();
+  }
+
+  /**
+   * Marks the end of the report cycle, and records the time it spent encoding.
+   */
+  public final void endCycle() {
+    recordEncode(Math.max(0, System.nanoTime() - cycleStart - cycleSendNanos));
+  }
+
+  @Override
+  public final void packetSent(final int lines, final int bytes, final long nanos) {
+    if (sendsOnReportingThread) {
+      cycleSendNanos += nanos;
+    }
+    recordSend(nanos);
+  }
+
+  /**
+   * Records the time the transport took to send a single packet. Called on the thread which sent it, which may be
+   * one of several at once for the clients passed to {@link #listenTo(StatsDSender)}.
+   *
+   * @param nanos the send time in nanoseconds
+   */
+  protected abstract void recordSend(long nanos);
+
+  /**
+   * Records the time a report cycle spent reading and encoding metrics. Called on the reporting thread.
+   *
+   * @param nanos the encode time in nanoseconds
+   */
+  protected abstract void recordEncode(long nanos);
+}
@@ -0,0 +1,328 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client to several StatsD servers, which sends each metric to one of them by consistent hashing of its name.
+ *
+ * A given name always goes to the same server, so the servers can aggregate the metrics they own independently, and
+ * adding or removing a server only moves the names of roughly one server's share. Servers are placed on the
+ * {@link ConsistentHashRing} by host and port, not by their position in the list. Every server has its own
+ * {@link StatsD} client, so measurements are still batched into packets per server.
+ *
+ * The counters of this client are the sums of those of the servers' clients, which are available from
+ * {@link #getShards()}, except for {@link #getFailures()}, which is the largest number among them, as for a
+ * {@link StatsD} client mirroring to several servers. Like {@link StatsD}, this must only be called from one thread
+ * at a time.
+ */
+@NotThreadSafe
+public class ShardedStatsD extends StatsDSender {
+
+  private final List<StatsD> shards;
+  private final StatsD[] shardArray;
+  private final ConsistentHashRing ring;
+  private final LineEncoder nameEncoder = new LineEncoder();
+
+  /**
+   * Creates a new client which sends through the given clients, one per server.
+   *
+   * @param shards the clients of the servers, each with a distinct host and port
+   */
+  ShardedStatsD(final List<? extends StatsD> shards) {
+    if (shards.isEmpty()) {
+      throw new IllegalArgumentException("at least one server is required");
+    }
+    this.shards = Collections.unmodifiableList(new ArrayList<StatsD>(shards));
+    this.shardArray = shards.toArray(new StatsD[shards.size()]);
+    final List<String> nodeNames = new ArrayList<String>(shards.size());
+    for (StatsD shard : shards) {
+      nodeNames.add(shard.getAddressResolver().getHost() + ":" + shard.getAddressResolver().getPort());
+    }
+    this.ring = new ConsistentHashRing(nodeNames, ConsistentHashRing.DEFAULT_POINTS_PER_NODE);
+  }
+
+  /**
+   * Returns the clients of the servers, in the order they were given.
+   *
+   * @return the clients of the servers
+   */
+  public List<StatsD> getShards() {
+    return shards;
+  }
+
+  /**
+   * Returns the client of the server the given metric is sent to.
+   *
+   * @param name the name of the metric
+   * @return the client of the server
+   */
+  public StatsD shardFor(final CharSequence name) {
+    nameEncoder.reset().name(name);
+    return shardArray[ring.node(nameEncoder.bytes(), 0, nameEncoder.length())];
+  }
+
+  /**
+   * Returns the client of the server the given metric is sent to.
+   *
+   * @param name the pre-encoded name of the metric
+   * @return the client of the server
+   */
+  public StatsD shardFor(final EncodedName name) {
+    return shardArray[ring.node(name.bytes(), 0, name.bytes().length)];
+  }
+
+  /**
+   * Connects the clients of all servers. Tries every server even if connecting to one fails.
+   *
+   * @throws IOException the error connecting to the first server which failed
+   */
+  @Override
+  public void connect() throws IOException {
+    IOException failure = null;
+    for (StatsD shard : shardArray) {
+      try {
+        shard.connect();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void send(final String name, final String value) {
+    shardFor(name).send(name, value);
+  }
+
+  @Override
+  public void send(final String name, final long value) {
+    shardFor(name).send(name, value);
+  }
+
+  @Override
+  public void send(final String name, final double value) {
+    shardFor(name).send(name, value);
+  }
+
+  @Override
+  public void send(final String name, final double value, final int decimals) {
+    shardFor(name).send(name, value, decimals);
+  }
+
+  @Override
+  public void send(final EncodedName name, final String value) {
+    shardFor(name).send(name, value);
+  }
+
+  @Override
+  public void send(final EncodedName name, final long value) {
+    shardFor(name).send(name, value);
+  }
+
+  @Override
+  public void send(final EncodedName name, final double value) {
+    shardFor(name).send(name, value);
+  }
+
+  @Override
+  public void send(final EncodedName name, final double value, final int decimals) {
+    shardFor(name).send(name, value, decimals);
+  }
+
+  @Override
+  public void send(final String name, final long value, final MetricType type) {
+    shardFor(name).send(name, value, type);
+  }
+
+  @Override
+  public void send(final EncodedName name, final long value, final MetricType type) {
+    shardFor(name).send(name, value, type);
+  }
+
+  @Override
+  public void send(final String name, final long value, final MetricType type, final double sampleRate) {
+    shardFor(name).send(name, value, type, sampleRate);
+  }
+
+  @Override
+  public void send(final EncodedName name, final long value, final MetricType type, final double sampleRate) {
+    shardFor(name).send(name, value, type, sampleRate);
+  }
+
+  @Override
+  public void send(final EncodedName name, final double value, final int decimals, final MetricType type,
+                   final double sampleRate) {
+    shardFor(name).send(name, value, decimals, type, sampleRate);
+  }
+
+  @Override
+  public void send(final EncodedName name, final String value, final MetricType type) {
+    shardFor(name).send(name, value, type);
+  }
+
+  @Override
+  void setGauge(final EncodedName name, final double value) {
+    shardFor(name).setGauge(name, value);
+  }
+
+  /**
+   * Sends the buffered measurements of all servers.
+   */
+  @Override
+  public void flush() {
+    for (StatsD shard : shardArray) {
+      shard.flush();
+    }
+  }
+
+  @Override
+  public int getFailures() {
+    int max = 0;
+    for (StatsD shard : shardArray) {
+      max = Math.max(max, shard.getFailures());
+    }
+    return max;
+  }
+
+  @Override
+  public long getTotalFailures() {
+    long sum = 0;
+    for (StatsD shard : shardArray) {
+      sum += shard.getTotalFailures();
+    }
+    return sum;
+  }
+
+  @Override
+  public long getSentLines() {
+    long sum = 0;
+    for (StatsD shard : shardArray) {
+      sum += shard.getSentLines();
+    }
+    return sum;
+  }
+
+  @Override
+  public long getSentPackets() {
+    long sum = 0;
+    for (StatsD shard : shardArray) {
+      sum += shard.getSentPackets();
+    }
+    return sum;
+  }
+
+  @Override
+  public long getSentBytes() {
+    long sum = 0;
+    for (StatsD shard : shardArray) {
+      sum += shard.getSentBytes();
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the average fill ratio of the packets sent to all servers, weighted by the number of packets.
+   *
+   * @return the average packet fill ratio, or 0 if no packets were sent
+   */
+  @Override
+  public double getAverageFillRatio() {
+    double filled = 0;
+    long packets = 0;
+    for (StatsD shard : shardArray) {
+      filled += shard.getAverageFillRatio() * shard.getSentPackets();
+      packets += shard.getSentPackets();
+    }
+    return packets == 0 ? 0 : filled / packets;
+  }
+
+  @Override
+  public long getDroppedPackets() {
+    long sum = 0;
+    for (StatsD shard : shardArray) {
+      sum += shard.getDroppedPackets();
+    }
+    return sum;
+  }
+
+  @Override
+  public long getSuppressedSends() {
+    long sum = 0;
+    for (StatsD shard : shardArray) {
+      sum += shard.getSuppressedSends();
+    }
+    return sum;
+  }
+
+  @Override
+  void setCircuitBreakers(final int failureThreshold, final long minBackoff, final long maxBackoff,
+                          final TimeUnit backoffUnit) {
+    for (StatsD shard : shardArray) {
+      shard.setCircuitBreakers(failureThreshold, minBackoff, maxBackoff, backoffUnit);
+    }
+  }
+
+  /**
+   * Sets the listener on the clients of all servers.
+   *
+   * @param listener the listener, or {@code null} to remove it
+   */
+  @Override
+  public void setPacketListener(@Nullable final PacketListener listener) {
+    for (StatsD shard : shardArray) {
+      shard.setPacketListener(listener);
+    }
+  }
+
+  /**
+   * Closes the clients of all servers, flushing their buffered measurements.
+   *
+   * @throws IOException the error closing the first server which failed
+   */
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    for (StatsD shard : shardArray) {
+      try {
+        shard.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  boolean sendsOnCallingThread() {
+    return shardArray[0].sendsOnCallingThread();
+  }
+}
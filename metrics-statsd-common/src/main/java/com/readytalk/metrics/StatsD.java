@@ -18,31 +18,54 @@ package com.readytalk.metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
-import java.io.Closeable;
 import java.io.IOException;
-import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.nio.charset.Charset;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A client to a StatsD server.
+ *
+ * The client counts the lines, packets and bytes it sends, along with failures and drops. These counters are updated
+ * once per packet and may be read from any thread, e.g. by gauges reporting on the client itself.
+ *
+ * A client may also mirror its packets to several servers, e.g. while migrating from one backend to another. Each
+ * packet is then encoded once and the same buffer is sent to every {@link Destination}, each of which tracks its own
+ * failures.
  */
 @NotThreadSafe
-public class StatsD implements Closeable {
+public class StatsD extends StatsDSender {
 
-  private static final Logger LOG = LoggerFactory.getLogger(StatsD.class);
+  /**
+   * The default maximum payload size of a single packet. This fits into a single Ethernet frame on most WAN links
+   * (1500 byte MTU less IP/UDP headers and some slack for tunnels).
+   */
+  public static final int DEFAULT_MAX_PACKET_SIZE = 1432;
 
-  private static final Pattern WHITESPACE = Pattern.compile("[\\s]+");
+  static final Charset UTF_8 = Charset.forName("UTF-8");
 
-  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Logger LOG = LoggerFactory.getLogger(StatsD.class);
 
-  private final DatagramSocketFactory socketFactory;
+  private static final byte NEWLINE = '\n';
 
-  private InetSocketAddress address;
-  private DatagramSocket socket;
-  private int failures;
+  private final LineEncoder encoder = new LineEncoder();
+  private final LineEncoder gaugeReset = new LineEncoder();
+  private final byte[] buffer;
+
+  private final Destination[] destinations;
+  private final List<Destination> destinationList;
+  private int position;
+  private int bufferedLines;
+  private volatile long sentLines;
+  private volatile long sentPackets;
+  private volatile long sentBytes;
+  @Nullable
+  private PacketListener packetListener;
 
   /**
    * Creates a new client which connects to the given address using the default {@link DatagramSocketFactory}.
@@ -51,7 +74,7 @@ public class StatsD implements Closeable {
    * @param port the port of the StatsD server. This is typically 8125.
    */
   StatsD(final String host, final int port) {
-    this(new InetSocketAddress(host, port), new DatagramSocketFactory());
+    this(new AddressResolver(host, port), new DatagramSocketTransport.Factory(), DEFAULT_MAX_PACKET_SIZE);
   }
 
   /**
@@ -61,71 +84,430 @@ public class StatsD implements Closeable {
    * @param socketFactory the socket factory
    */
   StatsD(final InetSocketAddress address, final DatagramSocketFactory socketFactory) {
-    this.address = address;
-    this.socketFactory = socketFactory;
+    this(address, socketFactory, DEFAULT_MAX_PACKET_SIZE);
+  }
+
+  /**
+   * Creates a new client which connects to the given address and socket factory, batching measurements into
+   * packets of at most {@code maxPacketSize} bytes.
+   *
+   * @param address       the address of the StatsD server
+   * @param socketFactory the socket factory
+   * @param maxPacketSize the maximum payload size of a single packet in bytes
+   */
+  StatsD(final InetSocketAddress address, final DatagramSocketFactory socketFactory, final int maxPacketSize) {
+    this(address, new DatagramSocketTransport.Factory(socketFactory), maxPacketSize);
   }
 
   /**
-   * Resolves the address hostname if present.
+   * Creates a new client which connects to the given address through transports from the given factory, batching
+   * measurements into packets of at most {@code maxPacketSize} bytes.
    *
-   * Creates a datagram socket through the factory.
+   * @param address          the address of the StatsD server
+   * @param transportFactory the transport factory
+   * @param maxPacketSize    the maximum payload size of a single packet in bytes
+   */
+  StatsD(final InetSocketAddress address, final TransportFactory transportFactory, final int maxPacketSize) {
+    this(new AddressResolver(address), transportFactory, maxPacketSize);
+  }
+
+  /**
+   * Creates a new client which connects to the address provided by the given resolver through transports from the
+   * given factory, batching measurements into packets of at most {@code maxPacketSize} bytes.
    *
-   * @throws IllegalStateException if the client is already connected
-   * @throws IOException           if there is an error connecting
+   * @param resolver         the resolver for the address of the StatsD server
+   * @param transportFactory the transport factory
+   * @param maxPacketSize    the maximum payload size of a single packet in bytes
    */
-  public void connect() throws IOException {
-    if (socket != null) {
-      throw new IllegalStateException("Already connected");
+  StatsD(final AddressResolver resolver, final TransportFactory transportFactory, final int maxPacketSize) {
+    this(Collections.singletonList(resolver), transportFactory, maxPacketSize);
+  }
+
+  /**
+   * Creates a new client which encodes every packet once and sends it to each of the addresses provided by the given
+   * resolvers, through transports from the given factory. See {@link Destination}.
+   *
+   * @param resolvers        the resolvers for the addresses of the StatsD servers
+   * @param transportFactory the transport factory
+   * @param maxPacketSize    the maximum payload size of a single packet in bytes
+   */
+  StatsD(final List<AddressResolver> resolvers, final TransportFactory transportFactory, final int maxPacketSize) {
+    if (maxPacketSize <= 0) {
+      throw new IllegalArgumentException("maxPacketSize must be positive: " + maxPacketSize);
+    }
+    if (resolvers.isEmpty()) {
+      throw new IllegalArgumentException("at least one destination is required");
+    }
+    this.buffer = new byte[maxPacketSize];
+    this.destinations = new Destination[resolvers.size()];
+    for (int i = 0; i < destinations.length; i++) {
+      destinations[i] = new Destination(resolvers.get(i), transportFactory);
     }
+    this.destinationList = Collections.unmodifiableList(Arrays.asList(destinations));
+  }
+
+  /**
+   * Gets the server address from the resolver, which caches it and refreshes it in the background.
+   *
+   * Creates and connects a transport through the factory unless one is already connected to the resolved address.
+   * The transport is kept open across calls, so this is cheap to call at the start of every report, and is only
+   * re-created when the address resolves differently or after a send failed.
+   *
+   * @throws IOException if there is an error resolving the address or connecting
+   */
+  @Override
+  public void connect() throws IOException {
+    connectTransport();
+  }
 
-    if (address.getHostName() != null) {
-      this.address = new InetSocketAddress(address.getHostName(), address.getPort());
+  /**
+   * Connects the transport as described for {@link #connect()}.
+   *
+   * @throws IOException if there is an error resolving the address or connecting
+   */
+  final void connectTransport() throws IOException {
+    if (destinations.length == 1) {
+      destinations[0].connect();
+      return;
     }
 
-    this.socket = socketFactory.createSocket();
+    // Connect every destination even if one of them fails.
+    IOException failure = null;
+    for (Destination destination : destinations) {
+      try {
+        destination.connect();
+      } catch (IOException e) {
+        LOG.warn("unable to connect to statsd at '{}:{}'", destination.getAddressResolver().getHost(),
+            destination.getAddressResolver().getPort());
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
   }
 
   /**
-   * Sends the given measurement to the server. Logs exceptions.
+   * Queues the given measurement for sending to the server as a gauge. Measurements are batched into
+   * newline-separated packets, which are sent once the next measurement would not fit or when {@link #flush()} is
+   * called.
    *
    * @param name  the name of the metric
    * @param value the value of the metric
    */
+  @Override
   public void send(final String name, final String value) {
-    try {
-      String formatted = String.format("%s:%s|g", sanitize(name), sanitize(value));
-      byte[] bytes = formatted.getBytes(UTF_8);
-      socket.send(socketFactory.createPacket(bytes, bytes.length, address));
-      failures = 0;
-    } catch (IOException e) {
-      failures++;
-
-      if (failures == 1) {
-        LOG.warn("unable to send packet to statsd at '{}:{}'", address.getHostName(), address.getPort());
-      } else {
-        LOG.debug("unable to send packet to statsd at '{}:{}'", address.getHostName(), address.getPort());
-      }
+    encoder.reset().name(name).value(value).type(MetricType.GAUGE);
+    append(encoder);
+  }
+
+  @Override
+  public void send(final String name, final long value) {
+    encoder.reset().name(name).value(value).type(MetricType.GAUGE);
+    append(encoder);
+  }
+
+  @Override
+  public void send(final String name, final double value) {
+    encoder.reset().name(name).value(value).type(MetricType.GAUGE);
+    append(encoder);
+  }
+
+  @Override
+  public void send(final String name, final double value, final int decimals) {
+    encoder.reset().name(name).value(value, decimals).type(MetricType.GAUGE);
+    append(encoder);
+  }
+
+  @Override
+  public void send(final EncodedName name, final String value) {
+    encoder.reset().name(name).value(value).type(MetricType.GAUGE).tags(name.tags());
+    append(encoder);
+  }
+
+  @Override
+  public void send(final EncodedName name, final long value) {
+    encoder.reset().name(name).value(value).type(MetricType.GAUGE).tags(name.tags());
+    append(encoder);
+  }
+
+  @Override
+  public void send(final EncodedName name, final double value) {
+    encoder.reset().name(name).value(value).type(MetricType.GAUGE).tags(name.tags());
+    append(encoder);
+  }
+
+  @Override
+  public void send(final EncodedName name, final double value, final int decimals) {
+    encoder.reset().name(name).value(value, decimals).type(MetricType.GAUGE).tags(name.tags());
+    append(encoder);
+  }
+
+  @Override
+  public void send(final String name, final long value, final MetricType type) {
+    encoder.reset().name(name).value(value).type(type);
+    append(encoder);
+  }
+
+  @Override
+  public void send(final EncodedName name, final long value, final MetricType type) {
+    encoder.reset().name(name).value(value).type(type).tags(name.tags());
+    append(encoder);
+  }
+
+  @Override
+  public void send(final String name, final long value, final MetricType type, final double sampleRate) {
+    encoder.reset().name(name).value(value).type(type).sampleRate(sampleRate);
+    append(encoder);
+  }
+
+  @Override
+  public void send(final EncodedName name, final long value, final MetricType type, final double sampleRate) {
+    encoder.reset().name(name).value(value).type(type).sampleRate(sampleRate).tags(name.tags());
+    append(encoder);
+  }
+
+  @Override
+  public void send(final EncodedName name, final double value, final int decimals, final MetricType type,
+                   final double sampleRate) {
+    encoder.reset().name(name).value(value, decimals).type(type).sampleRate(sampleRate).tags(name.tags());
+    append(encoder);
+  }
+
+  @Override
+  public void send(final EncodedName name, final String value, final MetricType type) {
+    encoder.reset().name(name).value(value).type(type).tags(name.tags());
+    append(encoder);
+  }
+
+  @Override
+  public void flush() {
+    sendBuffered();
+    flushTransports();
+  }
+
+  @Override
+  public int getFailures() {
+    int max = 0;
+    for (Destination destination : destinations) {
+      max = Math.max(max, destination.getFailures());
+    }
+    return max;
+  }
+
+  @Override
+  public long getTotalFailures() {
+    long sum = 0;
+    for (Destination destination : destinations) {
+      sum += destination.getTotalFailures();
+    }
+    return sum;
+  }
+
+  @Override
+  public long getSentLines() {
+    return sentLines;
+  }
+
+  @Override
+  public long getSentPackets() {
+    return sentPackets;
+  }
+
+  @Override
+  public long getSentBytes() {
+    return sentBytes;
+  }
+
+  @Override
+  public double getAverageFillRatio() {
+    final long packets = sentPackets;
+    return packets == 0 ? 0 : (double) sentBytes / (packets * buffer.length);
+  }
+
+  @Override
+  public void setPacketListener(@Nullable final PacketListener listener) {
+    this.packetListener = listener;
+  }
+
+  @Override
+  public long getDroppedPackets() {
+    long sum = 0;
+    for (Destination destination : destinations) {
+      sum += destination.getDroppedPackets();
+    }
+    return sum;
+  }
+
+  @Override
+  public long getSuppressedSends() {
+    long sum = 0;
+    for (Destination destination : destinations) {
+      sum += destination.getCircuitBreaker().getSuppressedSends();
+    }
+    return sum;
+  }
+
+  @Override
+  void setCircuitBreakers(final int failureThreshold, final long minBackoff, final long maxBackoff,
+                          final TimeUnit backoffUnit) {
+    for (Destination destination : destinations) {
+      destination.setCircuitBreaker(new CircuitBreaker(failureThreshold, minBackoff, maxBackoff, backoffUnit));
     }
   }
 
   /**
-   * Returns the number of failed writes to the server.
+   * Returns the resolver for the server address, which tracks lookup latency and failures.
    *
-   * @return the number of failed writes to the server
+   * @return the address resolver
    */
-  public int getFailures() {
-    return failures;
+  public AddressResolver getAddressResolver() {
+    return destinations[0].getAddressResolver();
+  }
+
+  /**
+   * Returns the servers every packet is sent to, each with its own failure counters.
+   *
+   * @return the destinations
+   */
+  public List<Destination> getDestinations() {
+    return destinationList;
   }
 
   @Override
   public void close() throws IOException {
-    if (socket != null) {
-      socket.close();
+    if (isConnected()) {
+      sendBuffered();
+    }
+    this.position = 0;
+    this.bufferedLines = 0;
+    closeDestinations();
+  }
+
+  /**
+   * Closes the transports without sending the current packet.
+   *
+   * @throws IOException if there is an error closing a transport
+   */
+  final void closeDestinations() throws IOException {
+    IOException failure = null;
+    for (Destination destination : destinations) {
+      try {
+        destination.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
     }
-    this.socket = null;
   }
 
-  private String sanitize(final String s) {
-    return WHITESPACE.matcher(s).replaceAll("-");
+  @Override
+  void setGauge(final EncodedName name, final double value) {
+    encoder.reset().name(name);
+    if (value == (long) value) {
+      encoder.value((long) value);
+    } else {
+      encoder.value(value);
+    }
+    encoder.type(MetricType.GAUGE).tags(name.tags());
+    if (value < 0) {
+      gaugeReset.reset().name(name).value(0L).type(MetricType.GAUGE).tags(name.tags());
+      if (sendsOnCallingThread() && position > 0
+          && position + gaugeReset.length() + encoder.length() + 2 > buffer.length) {
+        sendBuffered();
+      }
+      append(gaugeReset);
+    }
+    append(encoder);
+  }
+
+  /**
+   * Adds the encoded line to the current packet.
+   *
+   * @param line the encoded line
+   */
+  void append(final LineEncoder line) {
+    append(line.bytes(), line.length());
+  }
+
+  /**
+   * Adds the given encoded line to the current packet, sending the packet first if the line doesn't fit.
+   *
+   * @param bytes  the encoded line
+   * @param length the length of the line in bytes
+   */
+  final void append(final byte[] bytes, final int length) {
+    final int required = position == 0 ? length : position + 1 + length;
+    if (required > buffer.length && position > 0) {
+      sendBuffered();
+    }
+
+    if (length > buffer.length) {
+      // Larger than a whole packet, so send it on its own and let IP fragmentation deal with it.
+      sendPacket(bytes, length, 1);
+      return;
+    }
+
+    if (position > 0) {
+      buffer[position++] = NEWLINE;
+    }
+    System.arraycopy(bytes, 0, buffer, position, length);
+    position += length;
+    bufferedLines++;
+  }
+
+  /**
+   * Sends the current packet, if any.
+   */
+  final void sendBuffered() {
+    if (position > 0) {
+      sendPacket(buffer, position, bufferedLines);
+      position = 0;
+      bufferedLines = 0;
+    }
+  }
+
+  /**
+   * Has buffering transports, such as a {@link TcpTransport}, write out the packets they hold back.
+   */
+  final void flushTransports() {
+    for (Destination destination : destinations) {
+      destination.flush();
+    }
+  }
+
+  @Override
+  boolean sendsOnCallingThread() {
+    return true;
+  }
+
+  private boolean isConnected() {
+    for (Destination destination : destinations) {
+      if (destination.isConnected()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void sendPacket(final byte[] bytes, final int length, final int lines) {
+    // Only this thread writes the counters, so the increments don't need to be atomic.
+    sentLines += lines;
+    sentPackets++;
+    sentBytes += length;
+    final PacketListener listener = packetListener;
+    final long start = listener == null ? 0 : System.nanoTime();
+    for (Destination destination : destinations) {
+      destination.send(bytes, length);
+    }
+    if (listener != null) {
+      listener.packetSent(lines, length, System.nanoTime() - start);
+    }
   }
 }
@@ -0,0 +1,903 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * A thread-safe client for sending measurements to StatsD directly, without a metric registry.
+ *
+ * Measurements are aggregated in memory and sent on every {@link #flush()}, which a background thread calls at a
+ * fixed interval unless configured otherwise. Counts are summed in striped cells so that concurrent increments of the
+ * same counter don't contend, gauges keep their latest value, sets keep their distinct members, and timers keep a
+ * uniform sample of at most a fixed number of durations per flush, which is sent along with its sample rate. Recording
+ * a measurement does not block, and allocates only the first time a name is used.
+ *
+ * The aggregates of a name are forgotten once it has recorded nothing for {@link #DEFAULT_IDLE_FLUSHES} consecutive
+ * flushes, or as configured through {@link Builder#withIdleEviction(int)}, so that names containing IDs or status
+ * codes don't grow the client without bound. A forgotten name is flushed once more with the next flush, in case a
+ * measurement was recorded into it while it was being forgotten, and is recreated when it is used again.
+ *
+ * Counts and durations can also be sampled before they are recorded, either per call or for all names matching a
+ * pattern, so that skipped events cost no more than a thread-local random number. Sampled counts and durations are
+ * sent with the {@code |@rate} suffix, which tells StatsD to scale them back up.
+ */
+@ThreadSafe
+public class StatsDClient implements Closeable {
+
+  /**
+   * The default interval between flushes, in seconds.
+   */
+  public static final long DEFAULT_FLUSH_INTERVAL_SECONDS = 10;
+
+  /**
+   * The default maximum number of durations sent for each timer per flush.
+   */
+  public static final int DEFAULT_TIMER_SAMPLE_SIZE = 1024;
+
+  /**
+   * The default number of consecutive flushes without measurements after which a name is forgotten.
+   */
+  public static final int DEFAULT_IDLE_FLUSHES = 30;
+
+  private static final Logger LOG = LoggerFactory.getLogger(StatsDClient.class);
+
+  private final StatsDSender statsD;
+  private final String prefix;
+  private final int timerSampleSize;
+  private final int idleFlushes;
+  private final Map<Pattern, Double> sampleRates;
+  private final TagRules tagRules;
+  private final ConcurrentMap<String, CounterCell> counters = new ConcurrentHashMap<String, CounterCell>();
+  private final ConcurrentMap<String, TimerCell> timers = new ConcurrentHashMap<String, TimerCell>();
+  private final ConcurrentMap<String, GaugeCell> gauges = new ConcurrentHashMap<String, GaugeCell>();
+  private final ConcurrentMap<String, SetCell> sets = new ConcurrentHashMap<String, SetCell>();
+  /**
+   * The cells forgotten by the previous flush, which the next one flushes one last time. Only used by flush().
+   */
+  private final List<Cell> evicted = new ArrayList<Cell>();
+  @Nullable
+  private final ScheduledExecutorService executor;
+
+  private StatsDClient(final Builder builder, final StatsDSender statsD) {
+    this.statsD = statsD;
+    this.prefix = builder.prefix == null || builder.prefix.isEmpty() ? "" : builder.prefix + ".";
+    this.timerSampleSize = builder.timerSampleSize;
+    this.idleFlushes = builder.idleFlushes;
+    this.sampleRates = new LinkedHashMap<Pattern, Double>(builder.sampleRates);
+    this.tagRules = builder.tagRules;
+    if (builder.flushInterval > 0) {
+      this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+          final Thread thread = new Thread(r, "statsd-client-flusher");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          flush();
+        }
+      }, builder.flushInterval, builder.flushInterval, builder.flushIntervalUnit);
+    } else {
+      this.executor = null;
+    }
+  }
+
+  /**
+   * Returns a new {@link Builder} for {@link StatsDClient}.
+   *
+   * @return a {@link Builder} instance for a {@link StatsDClient}
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Adds one to the given counter, sampled at the rate configured for its name.
+   *
+   * @param name the name of the counter
+   */
+  public void increment(final String name) {
+    count(name, 1);
+  }
+
+  /**
+   * Adds one to the given counter with the given probability.
+   *
+   * @param name       the name of the counter
+   * @param sampleRate the probability of counting the call, greater than 0 and at most 1
+   */
+  public void increment(final String name, final double sampleRate) {
+    count(name, 1, sampleRate);
+  }
+
+  /**
+   * Adds the given amount to the given counter, sampled at the rate configured for its name.
+   *
+   * @param name  the name of the counter
+   * @param delta the amount to add, which may be negative
+   */
+  public void count(final String name, final long delta) {
+    final CounterCell cell = counter(name);
+    if (isSampled(cell.sampleRate)) {
+      cell.slot(cell.sampleRate).sum.add(delta);
+    }
+  }
+
+  /**
+   * Adds the given amount to the given counter with the given probability.
+   *
+   * @param name       the name of the counter
+   * @param delta      the amount to add, which may be negative
+   * @param sampleRate the probability of counting the call, greater than 0 and at most 1
+   */
+  public void count(final String name, final long delta, final double sampleRate) {
+    checkSampleRate(sampleRate);
+    if (isSampled(sampleRate)) {
+      counter(name).slot(sampleRate).sum.add(delta);
+    }
+  }
+
+  /**
+   * Records a duration for the given timer, sampled at the rate configured for its name.
+   *
+   * @param name     the name of the timer
+   * @param duration the duration, which is sent in whole milliseconds
+   * @param unit     the unit of {@code duration}
+   */
+  public void time(final String name, final long duration, final TimeUnit unit) {
+    final TimerCell cell = timer(name);
+    if (isSampled(cell.sampleRate)) {
+      cell.slot(cell.sampleRate).add(unit.toMillis(duration));
+    }
+  }
+
+  /**
+   * Records a duration for the given timer with the given probability.
+   *
+   * @param name       the name of the timer
+   * @param duration   the duration, which is sent in whole milliseconds
+   * @param unit       the unit of {@code duration}
+   * @param sampleRate the probability of recording the duration, greater than 0 and at most 1
+   */
+  public void time(final String name, final long duration, final TimeUnit unit, final double sampleRate) {
+    checkSampleRate(sampleRate);
+    if (isSampled(sampleRate)) {
+      timer(name).slot(sampleRate).add(unit.toMillis(duration));
+    }
+  }
+
+  /**
+   * Sets the given gauge to the given value. A negative value is sent after a reset of the gauge to zero, since StatsD
+   * would otherwise subtract it from the previous value.
+   *
+   * @param name  the name of the gauge
+   * @param value the value of the gauge
+   */
+  public void gauge(final String name, final double value) {
+    GaugeCell cell = gauges.get(name);
+    if (cell == null) {
+      cell = putIfAbsent(gauges, name, new GaugeCell(encode(name)));
+    }
+    cell.bits.set(Double.doubleToRawLongBits(value));
+    cell.updated.set(true);
+  }
+
+  /**
+   * Adds the given member to the given set, which StatsD reports the number of distinct members of.
+   *
+   * @param name  the name of the set
+   * @param value the member to add
+   */
+  public void set(final String name, final String value) {
+    SetCell cell = sets.get(name);
+    if (cell == null) {
+      cell = putIfAbsent(sets, name, new SetCell(encode(name)));
+    }
+    cell.add(value);
+  }
+
+  /**
+   * Sends all measurements recorded since the previous flush. Logs exceptions.
+   *
+   * Measurements recorded while a flush is running are either sent by it or by the next one. The flush waits for
+   * threads which are still adding a duration or set member to the sample or set it is about to send.
+   */
+  public synchronized void flush() {
+    try {
+      statsD.connect();
+
+      // Before the current cells, so that a late gauge value of a forgotten cell doesn't override a newer one.
+      for (Cell cell : evicted) {
+        cell.flush(statsD);
+      }
+      evicted.clear();
+
+      flush(counters);
+      flush(timers);
+      flush(gauges);
+      flush(sets);
+
+      statsD.flush();
+    } catch (IOException e) {
+      LOG.warn("Unable to flush to StatsD", e);
+    }
+  }
+
+  /**
+   * Stops the background flushes, sends any remaining measurements and closes the connection to StatsD.
+   *
+   * @throws IOException if there is an error closing the connection
+   */
+  @Override
+  public void close() throws IOException {
+    if (executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      flush();
+      statsD.close();
+    }
+  }
+
+  /**
+   * Returns the number of names whose aggregates are held, for tests.
+   *
+   * @return the number of counters, timers, gauges and sets
+   */
+  int getNameCount() {
+    return counters.size() + timers.size() + gauges.size() + sets.size();
+  }
+
+  private void flush(final ConcurrentMap<String, ? extends Cell> cells) {
+    for (Map.Entry<String, ? extends Cell> entry : cells.entrySet()) {
+      final Cell cell = entry.getValue();
+      if (cell.flush(statsD)) {
+        cell.idleFlushes = 0;
+      } else if (idleFlushes > 0 && ++cell.idleFlushes >= idleFlushes) {
+        cells.remove(entry.getKey(), cell);
+        evicted.add(cell);
+      }
+    }
+  }
+
+  private CounterCell counter(final String name) {
+    final CounterCell cell = counters.get(name);
+    if (cell != null) {
+      return cell;
+    }
+    return putIfAbsent(counters, name, new CounterCell(encode(name), sampleRateOf(name)));
+  }
+
+  private TimerCell timer(final String name) {
+    final TimerCell cell = timers.get(name);
+    if (cell != null) {
+      return cell;
+    }
+    return putIfAbsent(timers, name, new TimerCell(encode(name), sampleRateOf(name), timerSampleSize));
+  }
+
+  private EncodedName encode(final String name) {
+    return EncodedName.of(prefix + name, tagRules.tagsFor(name));
+  }
+
+  private double sampleRateOf(final String name) {
+    for (Map.Entry<Pattern, Double> entry : sampleRates.entrySet()) {
+      if (entry.getKey().matcher(name).matches()) {
+        return entry.getValue();
+      }
+    }
+    return 1;
+  }
+
+  private static boolean isSampled(final double sampleRate) {
+    return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+  }
+
+  private static void checkSampleRate(final double sampleRate) {
+    if (!(sampleRate > 0 && sampleRate <= 1)) {
+      throw new IllegalArgumentException("sampleRate must be greater than 0 and at most 1: " + sampleRate);
+    }
+  }
+
+  private static <T> T putIfAbsent(final ConcurrentMap<String, T> cells, final String name, final T cell) {
+    final T existing = cells.putIfAbsent(name, cell);
+    return existing == null ? cell : existing;
+  }
+
+  /**
+   * The aggregates of one name.
+   */
+  private abstract static class Cell {
+    final EncodedName name;
+    /**
+     * The number of consecutive flushes which found nothing to send. Only used by flush().
+     */
+    int idleFlushes;
+
+    Cell(final EncodedName name) {
+      this.name = name;
+    }
+
+    /**
+     * Sends the measurements recorded since the previous flush.
+     *
+     * @param statsD the client to send through
+     * @return whether there was anything to send
+     */
+    abstract boolean flush(StatsDSender statsD);
+  }
+
+  /**
+   * The aggregates of a counter or timer, one slot for each sample rate it has been recorded at.
+   *
+   * @param <S> the type of the slots
+   */
+  private abstract static class SampledCell<S extends Slot> extends Cell {
+    final double sampleRate;
+    final CopyOnWriteArrayList<S> slots = new CopyOnWriteArrayList<S>();
+
+    SampledCell(final EncodedName name, final double sampleRate) {
+      super(name);
+      this.sampleRate = sampleRate;
+    }
+
+    S slot(final double rate) {
+      // Slots are only ever appended, so indexing up to a stale size is safe.
+      for (int i = 0; i < slots.size(); i++) {
+        final S slot = slots.get(i);
+        if (slot.rate == rate) {
+          return slot;
+        }
+      }
+      synchronized (this) {
+        for (S slot : slots) {
+          if (slot.rate == rate) {
+            return slot;
+          }
+        }
+        final S slot = newSlot(rate);
+        slots.add(slot);
+        return slot;
+      }
+    }
+
+    abstract S newSlot(double rate);
+  }
+
+  private abstract static class Slot {
+    final double rate;
+
+    Slot(final double rate) {
+      this.rate = rate;
+    }
+  }
+
+  private static final class CounterCell extends SampledCell<CounterSlot> {
+    private CounterCell(final EncodedName name, final double sampleRate) {
+      super(name, sampleRate);
+    }
+
+    @Override
+    CounterSlot newSlot(final double rate) {
+      return new CounterSlot(rate);
+    }
+
+    @Override
+    boolean flush(final StatsDSender statsD) {
+      boolean sent = false;
+      for (CounterSlot slot : slots) {
+        final long sum = slot.sum.sumThenReset();
+        if (sum != 0) {
+          statsD.send(name, sum, MetricType.COUNTER, slot.rate);
+          sent = true;
+        }
+      }
+      return sent;
+    }
+  }
+
+  private static final class CounterSlot extends Slot {
+    private final StripedLong sum = new StripedLong();
+
+    private CounterSlot(final double rate) {
+      super(rate);
+    }
+  }
+
+  private static final class GaugeCell extends Cell {
+    private final AtomicLong bits = new AtomicLong();
+    private final AtomicBoolean updated = new AtomicBoolean();
+
+    private GaugeCell(final EncodedName name) {
+      super(name);
+    }
+
+    @Override
+    boolean flush(final StatsDSender statsD) {
+      if (!updated.getAndSet(false)) {
+        return false;
+      }
+      statsD.setGauge(name, Double.longBitsToDouble(bits.get()));
+      return true;
+    }
+  }
+
+  private static final class SetCell extends Cell {
+    private final AtomicReference<SetMembers> members = new AtomicReference<SetMembers>(new SetMembers());
+
+    private SetCell(final EncodedName name) {
+      super(name);
+    }
+
+    private void add(final String member) {
+      final SetMembers current = Interval.enter(members);
+      try {
+        current.members.add(member);
+      } finally {
+        current.exit();
+      }
+    }
+
+    @Override
+    boolean flush(final StatsDSender statsD) {
+      if (members.get().members.isEmpty()) {
+        return false;
+      }
+      final SetMembers flushed = members.getAndSet(new SetMembers());
+      flushed.awaitWriters();
+      for (String member : flushed.members) {
+        statsD.send(name, member, MetricType.SET);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The measurements of one flush interval, which is swapped out by the flush. Writers register while they add to it,
+   * so that the flush can wait for those which fetched it just before it was swapped out instead of losing their
+   * measurements.
+   */
+  private abstract static class Interval {
+    final AtomicInteger writers = new AtomicInteger();
+
+    /**
+     * Registers a writer with the current interval of the given reference, retrying with the new interval if it is
+     * swapped out in the meantime.
+     *
+     * @param current the reference to the current interval
+     * @param <I>     the type of the interval
+     * @return the interval the writer is registered with, which must be passed to {@link #exit()}
+     */
+    static <I extends Interval> I enter(final AtomicReference<I> current) {
+      while (true) {
+        final I interval = current.get();
+        interval.writers.incrementAndGet();
+        // A flush which swaps it out after this check sees the registration and waits for it.
+        if (current.get() == interval) {
+          return interval;
+        }
+        interval.writers.decrementAndGet();
+      }
+    }
+
+    void exit() {
+      writers.decrementAndGet();
+    }
+
+    /**
+     * Waits for the writers still registered with this interval, which is no longer current.
+     */
+    void awaitWriters() {
+      while (writers.get() != 0) {
+        Thread.yield();
+      }
+    }
+  }
+
+  private static final class SetMembers extends Interval {
+    private final Set<String> members = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  }
+
+  private static final class TimerCell extends SampledCell<TimerSlot> {
+    private final int sampleSize;
+
+    private TimerCell(final EncodedName name, final double sampleRate, final int sampleSize) {
+      super(name, sampleRate);
+      this.sampleSize = sampleSize;
+    }
+
+    @Override
+    TimerSlot newSlot(final double rate) {
+      return new TimerSlot(rate, sampleSize);
+    }
+
+    @Override
+    boolean flush(final StatsDSender statsD) {
+      boolean sent = false;
+      for (TimerSlot slot : slots) {
+        if (slot.samples.get().count.get() == 0) {
+          continue;
+        }
+        sent = true;
+        final TimerSamples flushed = slot.samples.getAndSet(new TimerSamples(sampleSize));
+        flushed.awaitWriters();
+        final long count = flushed.count.get();
+        final int kept = (int) Math.min(count, sampleSize);
+        final double sampleRate = slot.rate * kept / count;
+        for (int i = 0; i < kept; i++) {
+          statsD.send(name, flushed.values.get(i), MetricType.TIMER, sampleRate);
+        }
+      }
+      return sent;
+    }
+  }
+
+  private static final class TimerSlot extends Slot {
+    private final AtomicReference<TimerSamples> samples;
+
+    private TimerSlot(final double rate, final int sampleSize) {
+      super(rate);
+      this.samples = new AtomicReference<TimerSamples>(new TimerSamples(sampleSize));
+    }
+
+    private void add(final long value) {
+      final TimerSamples current = Interval.enter(samples);
+      try {
+        current.add(value);
+      } finally {
+        current.exit();
+      }
+    }
+  }
+
+  /**
+   * A uniform sample of the durations recorded during one flush interval, kept using Vitter's algorithm R.
+   */
+  private static final class TimerSamples extends Interval {
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLongArray values;
+
+    private TimerSamples(final int size) {
+      this.values = new AtomicLongArray(size);
+    }
+
+    private void add(final long value) {
+      final long n = count.getAndIncrement();
+      if (n < values.length()) {
+        values.set((int) n, value);
+      } else {
+        final long r = ThreadLocalRandom.current().nextLong(n + 1);
+        if (r < values.length()) {
+          values.set((int) r, value);
+        }
+      }
+    }
+  }
+
+  /**
+   * A builder for {@link StatsDClient} instances. Defaults to not using a prefix, not sampling, flushing every
+   * {@link #DEFAULT_FLUSH_INTERVAL_SECONDS} seconds, keeping at most {@link #DEFAULT_TIMER_SAMPLE_SIZE} durations per
+   * timer and flush, forgetting names after {@link #DEFAULT_IDLE_FLUSHES} flushes without measurements, and batching
+   * measurements into packets of at most {@link StatsD#DEFAULT_MAX_PACKET_SIZE} bytes sent through a blocking
+   * {@link java.net.DatagramSocket}.
+   */
+  @NotThreadSafe
+  public static final class Builder {
+    private final Map<Pattern, Double> sampleRates;
+    private TagRules tagRules;
+    private String prefix;
+    private long flushInterval;
+    private TimeUnit flushIntervalUnit;
+    private int timerSampleSize;
+    private int idleFlushes;
+    private int maxPacketSize;
+    private TransportFactory transportFactory;
+    private long addressTtl;
+    private TimeUnit addressTtlUnit;
+    private int failureThreshold;
+    private long minBackoff;
+    private long maxBackoff;
+    private TimeUnit backoffUnit;
+
+    private Builder() {
+      this.sampleRates = new LinkedHashMap<Pattern, Double>();
+      this.tagRules = TagRules.NONE;
+      this.prefix = null;
+      this.flushInterval = DEFAULT_FLUSH_INTERVAL_SECONDS;
+      this.flushIntervalUnit = TimeUnit.SECONDS;
+      this.timerSampleSize = DEFAULT_TIMER_SAMPLE_SIZE;
+      this.idleFlushes = DEFAULT_IDLE_FLUSHES;
+      this.maxPacketSize = StatsD.DEFAULT_MAX_PACKET_SIZE;
+      this.transportFactory = new DatagramSocketTransport.Factory();
+      this.addressTtl = AddressResolver.DEFAULT_TTL_SECONDS;
+      this.addressTtlUnit = TimeUnit.SECONDS;
+      this.failureThreshold = CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+      this.minBackoff = CircuitBreaker.DEFAULT_MIN_BACKOFF_MILLIS;
+      this.maxBackoff = CircuitBreaker.DEFAULT_MAX_BACKOFF_MILLIS;
+      this.backoffUnit = TimeUnit.MILLISECONDS;
+    }
+
+    /**
+     * Prefix all metric names with the given string.
+     *
+     * @param _prefix the prefix for all metric names
+     * @return {@code this}
+     */
+    public Builder prefixedWith(@Nullable final String _prefix) {
+      this.prefix = _prefix;
+      return this;
+    }
+
+    /**
+     * Flush measurements at the given interval from a background thread. An interval of 0 disables background
+     * flushes, leaving it to the caller to call {@link StatsDClient#flush()}.
+     *
+     * @param _flushInterval     the interval between flushes, or 0 to only flush when asked to
+     * @param _flushIntervalUnit the unit of {@code _flushInterval}
+     * @return {@code this}
+     */
+    public Builder withFlushInterval(final long _flushInterval, final TimeUnit _flushIntervalUnit) {
+      this.flushInterval = _flushInterval;
+      this.flushIntervalUnit = _flushIntervalUnit;
+      return this;
+    }
+
+    /**
+     * Send at most the given number of durations for each timer per flush. When more are recorded, a uniform sample
+     * of them is sent along with the sample rate, so that StatsD still counts all of them.
+     *
+     * @param _timerSampleSize the maximum number of durations per timer and flush
+     * @return {@code this}
+     */
+    public Builder withTimerSampleSize(final int _timerSampleSize) {
+      this.timerSampleSize = _timerSampleSize;
+      return this;
+    }
+
+    /**
+     * Forget the aggregates and the encoded name of a counter, timer, gauge or set once it has recorded nothing for
+     * the given number of consecutive flushes. Each name otherwise stays in memory and is visited by every flush for
+     * the lifetime of the client.
+     *
+     * @param _idleFlushes the number of flushes without measurements after which a name is forgotten, or 0 to keep
+     *                     every name
+     * @return {@code this}
+     */
+    public Builder withIdleEviction(final int _idleFlushes) {
+      if (_idleFlushes < 0) {
+        throw new IllegalArgumentException("idleFlushes must not be negative: " + _idleFlushes);
+      }
+      this.idleFlushes = _idleFlushes;
+      return this;
+    }
+
+    /**
+     * Sample the counts and durations of all counters and timers whose names match the given regular expression at
+     * the given rate, unless a call specifies its own rate. The first matching pattern applies, and the names are
+     * matched without the prefix.
+     *
+     * @param _namePattern a regular expression matching whole metric names
+     * @param _sampleRate  the probability of recording a count or duration, greater than 0 and at most 1
+     * @return {@code this}
+     */
+    public Builder withSampleRate(final String _namePattern, final double _sampleRate) {
+      checkSampleRate(_sampleRate);
+      this.sampleRates.put(Pattern.compile(_namePattern), _sampleRate);
+      return this;
+    }
+
+    /**
+     * Append the given DogStatsD tags to every line, e.g. {@code withGlobalTags("env:prod")}.
+     *
+     * @param _tags the tags, each either {@code key:value} or a bare value
+     * @return {@code this}
+     */
+    public Builder withGlobalTags(final String... _tags) {
+      this.tagRules = tagRules.withGlobal(Tags.of(_tags));
+      return this;
+    }
+
+    /**
+     * Append the given DogStatsD tags to every line of the metrics whose names match the given regular expression,
+     * after the global tags and the tags of earlier matching patterns. The names are matched without the prefix.
+     *
+     * @param _namePattern a regular expression matching whole metric names
+     * @param _tags        the tags, each either {@code key:value} or a bare value
+     * @return {@code this}
+     */
+    public Builder withTagsFor(final String _namePattern, final String... _tags) {
+      this.tagRules = tagRules.withPattern(_namePattern, Tags.of(_tags));
+      return this;
+    }
+
+    /**
+     * Batch measurements into packets of at most the given payload size.
+     *
+     * @param _maxPacketSize the maximum payload size of a single packet in bytes
+     * @return {@code this}
+     */
+    public Builder withMaxPacketSize(final int _maxPacketSize) {
+      this.maxPacketSize = _maxPacketSize;
+      return this;
+    }
+
+    /**
+     * Send packets through transports created by the given factory, e.g. a {@link DatagramChannelTransport.Factory}
+     * for non-blocking sends.
+     *
+     * @param _transportFactory a {@link TransportFactory}
+     * @return {@code this}
+     */
+    public Builder withTransport(final TransportFactory _transportFactory) {
+      this.transportFactory = _transportFactory;
+      return this;
+    }
+
+    /**
+     * Re-resolve the StatsD hostname in the background once the given time has passed since it was last resolved.
+     *
+     * @param _addressTtl     how long a resolved address is used before refreshing it
+     * @param _addressTtlUnit the unit of {@code _addressTtl}
+     * @return {@code this}
+     */
+    public Builder withAddressTtl(final long _addressTtl, final TimeUnit _addressTtlUnit) {
+      this.addressTtl = _addressTtl;
+      this.addressTtlUnit = _addressTtlUnit;
+      return this;
+    }
+
+    /**
+     * Stop sending to a server after {@code _failureThreshold} consecutive failed writes for the rest of the report,
+     * and probe it again once per report after a backoff which doubles from {@code _minBackoff} up to
+     * {@code _maxBackoff} while it stays unreachable. Defaults to 5 failures and 1 to 60 seconds. See
+     * {@link CircuitBreaker}.
+     *
+     * @param _failureThreshold the number of consecutive failed writes after which sends are suppressed
+     * @param _minBackoff       the time sends are suppressed after the first failures
+     * @param _maxBackoff       the maximum time sends are suppressed
+     * @param _backoffUnit      the unit of the backoffs
+     * @return {@code this}
+     */
+    public Builder withCircuitBreaker(final int _failureThreshold, final long _minBackoff, final long _maxBackoff,
+                                      final TimeUnit _backoffUnit) {
+      this.failureThreshold = _failureThreshold;
+      this.minBackoff = _minBackoff;
+      this.maxBackoff = _maxBackoff;
+      this.backoffUnit = _backoffUnit;
+      return this;
+    }
+
+    /**
+     * Builds a {@link StatsDClient} with the given properties, sending measurements to StatsD at the given host and
+     * port.
+     *
+     * @param host the hostname of the StatsD server.
+     * @param port the port of the StatsD server. This is typically 8125.
+     * @return a {@link StatsDClient}
+     */
+    public StatsDClient build(final String host, final int port) {
+      return build(newStatsD(Collections.singletonList(new AddressResolver(host, port, addressTtl, addressTtlUnit))));
+    }
+
+    /**
+     * Builds a {@link StatsDClient} with the given properties, sending measurements to a StatsD agent on the same host
+     * through the Unix domain socket at the given path. Needs the {@code metrics-statsd-unix} module on JDK 16 or
+     * later, and ignores {@link #withTransport(TransportFactory)}. See {@code UnixDomainSocketTransport}.
+     *
+     * @param socketPath the path of the socket file the agent listens on
+     * @return a {@link StatsDClient}
+     * @throws IllegalStateException if the {@code metrics-statsd-unix} module is not on the class path
+     */
+    public StatsDClient buildUnixSocket(final Path socketPath) {
+      return build(newStatsD(Collections.singletonList(UnixSockets.resolver(socketPath)),
+          UnixSockets.transportFactory(socketPath)));
+    }
+
+    /**
+     * Builds a {@link StatsDClient} with the given properties, sending each metric to one of the given StatsD servers
+     * chosen by consistent hashing of its name. See {@link ShardedStatsD}.
+     *
+     * @param endpoints the distinct hosts and ports of the StatsD servers, which may be unresolved
+     * @return a {@link StatsDClient}
+     */
+    public StatsDClient buildSharded(final List<InetSocketAddress> endpoints) {
+      final List<StatsD> shards = new ArrayList<StatsD>(endpoints.size());
+      for (InetSocketAddress endpoint : endpoints) {
+        shards.add(newStatsD(Collections.singletonList(new AddressResolver(endpoint.getHostString(),
+            endpoint.getPort(), addressTtl, addressTtlUnit))));
+      }
+      return build(new ShardedStatsD(shards));
+    }
+
+    /**
+     * Builds a {@link StatsDClient} with the given properties, sending every measurement to all of the given StatsD
+     * servers. Every packet is encoded once and sent to each server, which tracks its own failures. See
+     * {@link Destination}.
+     *
+     * @param endpoints the hosts and ports of the StatsD servers, which may be unresolved
+     * @return a {@link StatsDClient}
+     */
+    public StatsDClient buildFanOut(final List<InetSocketAddress> endpoints) {
+      final List<AddressResolver> resolvers = new ArrayList<AddressResolver>(endpoints.size());
+      for (InetSocketAddress endpoint : endpoints) {
+        resolvers.add(new AddressResolver(endpoint.getHostString(), endpoint.getPort(), addressTtl, addressTtlUnit));
+      }
+      return build(newStatsD(resolvers));
+    }
+
+    /**
+     * Builds a {@link StatsDClient} with the given properties, sending measurements through the given client, which
+     * the new client takes ownership of.
+     *
+     * @param statsD the client to send measurements through
+     * @return a {@link StatsDClient}
+     */
+    public StatsDClient build(final StatsDSender statsD) {
+      if (timerSampleSize <= 0) {
+        throw new IllegalArgumentException("timerSampleSize must be positive: " + timerSampleSize);
+      }
+      return new StatsDClient(this, statsD);
+    }
+
+    private StatsD newStatsD(final List<AddressResolver> resolvers) {
+      return newStatsD(resolvers, transportFactory);
+    }
+
+    private StatsD newStatsD(final List<AddressResolver> resolvers, final TransportFactory factory) {
+      final StatsD statsD = new StatsD(resolvers, factory, maxPacketSize);
+      statsD.setCircuitBreakers(failureThreshold, minBackoff, maxBackoff, backoffUnit);
+      return statsD;
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The client surface the reporters and {@link StatsDClient} send through: a {@link StatsD} client batching lines into
+ * packets for one server, or a {@link ShardedStatsD} routing each metric to one of several such clients.
+ *
+ * Only clients in this package can be implemented, since some of the methods are package-private. Like the
+ * implementations, this must only be called from one thread at a time, except for the counters.
+ */
+public abstract class StatsDSender implements Closeable {
+
+  StatsDSender() {
+  }
+
+  /**
+   * Resolves the server address and connects the transport, unless it is already connected to that address. Cheap
+   * to call at the start of every report.
+   *
+   * @throws IOException if there is an error resolving the address or connecting
+   */
+  public abstract void connect() throws IOException;
+
+  /**
+   * Queues the given measurement for sending to the server as a gauge. Measurements may be batched into packets, which
+   * are sent at the latest when {@link #flush()} is called.
+   *
+   * @param name  the name of the metric
+   * @param value the value of the metric
+   */
+  public abstract void send(String name, String value);
+
+  /**
+   * Queues the given measurement for sending to the server as a gauge.
+   *
+   * @param name  the name of the metric
+   * @param value the value of the metric
+   * @see #send(String, String)
+   */
+  public abstract void send(String name, long value);
+
+  /**
+   * Queues the given measurement for sending to the server as a gauge, rounded to two decimal places.
+   *
+   * @param name  the name of the metric
+   * @param value the value of the metric
+   * @see #send(String, String)
+   */
+  public abstract void send(String name, double value);
+
+  /**
+   * Queues the given measurement for sending to the server as a gauge, rounded to the given number of decimal
+   * places.
+   *
+   * @param name     the name of the metric
+   * @param value    the value of the metric
+   * @param decimals the number of decimal places, between 0 and {@link NumberFormatter#MAX_DECIMALS}
+   * @see #send(String, String)
+   */
+  public abstract void send(String name, double value, int decimals);
+
+  /**
+   * Queues the given measurement for sending to the server as a gauge.
+   *
+   * @param name  the pre-encoded name of the metric
+   * @param value the value of the metric
+   * @see #send(String, String)
+   */
+  public abstract void send(EncodedName name, String value);
+
+  /**
+   * Queues the given measurement for sending to the server as a gauge.
+   *
+   * @param name  the pre-encoded name of the metric
+   * @param value the value of the metric
+   * @see #send(String, String)
+   */
+  public abstract void send(EncodedName name, long value);
+
+  /**
+   * Queues the given measurement for sending to the server as a gauge, rounded to two decimal places.
+   *
+   * @param name  the pre-encoded name of the metric
+   * @param value the value of the metric
+   * @see #send(String, String)
+   */
+  public abstract void send(EncodedName name, double value);
+
+  /**
+   * Queues the given measurement for sending to the server as a gauge, rounded to the given number of decimal
+   * places.
+   *
+   * @param name     the pre-encoded name of the metric
+   * @param value    the value of the metric
+   * @param decimals the number of decimal places, between 0 and {@link NumberFormatter#MAX_DECIMALS}
+   * @see #send(String, String)
+   */
+  public abstract void send(EncodedName name, double value, int decimals);
+
+  /**
+   * Queues the given measurement for sending to the server as the given type, e.g. a {@link MetricType#COUNTER}
+   * delta.
+   *
+   * @param name  the name of the metric
+   * @param value the value of the metric
+   * @param type  the StatsD type of the metric
+   * @see #send(String, String)
+   */
+  public abstract void send(String name, long value, MetricType type);
+
+  /**
+   * Queues the given measurement for sending to the server as the given type, e.g. a {@link MetricType#COUNTER}
+   * delta.
+   *
+   * @param name  the pre-encoded name of the metric
+   * @param value the value of the metric
+   * @param type  the StatsD type of the metric
+   * @see #send(String, String)
+   */
+  public abstract void send(EncodedName name, long value, MetricType type);
+
+  /**
+   * Queues the given measurement for sending to the server as the given type, telling the server that only the given
+   * fraction of the measurements is sent, e.g. a sampled {@link MetricType#COUNTER} or {@link MetricType#TIMER}.
+   *
+   * @param name       the name of the metric
+   * @param value      the value of the metric
+   * @param type       the StatsD type of the metric
+   * @param sampleRate the fraction of measurements sent, greater than 0 and at most 1
+   * @see #send(String, String)
+   */
+  public abstract void send(String name, long value, MetricType type, double sampleRate);
+
+  /**
+   * Queues the given measurement for sending to the server as the given type, telling the server that only the given
+   * fraction of the measurements is sent, e.g. a sampled {@link MetricType#COUNTER} or {@link MetricType#TIMER}.
+   *
+   * @param name       the pre-encoded name of the metric
+   * @param value      the value of the metric
+   * @param type       the StatsD type of the metric
+   * @param sampleRate the fraction of measurements sent, greater than 0 and at most 1
+   * @see #send(String, String)
+   */
+  public abstract void send(EncodedName name, long value, MetricType type, double sampleRate);
+
+  /**
+   * Queues the given measurement for sending to the server as the given type, rounded to the given number of decimal
+   * places, telling the server that only the given fraction of the measurements is sent, e.g. a sampled
+   * {@link MetricType#TIMER} duration.
+   *
+   * @param name       the pre-encoded name of the metric
+   * @param value      the value of the metric
+   * @param decimals   the number of decimal places, between 0 and {@link NumberFormatter#MAX_DECIMALS}
+   * @param type       the StatsD type of the metric
+   * @param sampleRate the fraction of measurements sent, greater than 0 and at most 1
+   * @see #send(String, String)
+   */
+  public abstract void send(EncodedName name, double value, int decimals, MetricType type, double sampleRate);
+
+  /**
+   * Queues the given measurement for sending to the server as the given type, e.g. a member of a
+   * {@link MetricType#SET}.
+   *
+   * @param name  the pre-encoded name of the metric
+   * @param value the value of the metric
+   * @param type  the StatsD type of the metric
+   * @see #send(String, String)
+   */
+  public abstract void send(EncodedName name, String value, MetricType type);
+
+  /**
+   * Sends any buffered measurements to the server, and has buffering transports write them out. Logs exceptions.
+   */
+  public abstract void flush();
+
+  /**
+   * Returns the number of consecutive failed writes to the server, which is reset by a successful write. When
+   * sending to several servers, this is the largest number among them.
+   *
+   * @return the number of failed writes to the server
+   */
+  public abstract int getFailures();
+
+  /**
+   * Returns the total number of failed writes to the servers. Unlike {@link #getFailures()}, this is not reset by a
+   * successful write.
+   *
+   * @return the total number of failed writes
+   */
+  public abstract long getTotalFailures();
+
+  /**
+   * Returns the number of lines in the packets handed to the transport, including packets which then failed or were
+   * dropped.
+   *
+   * @return the number of sent lines
+   */
+  public abstract long getSentLines();
+
+  /**
+   * Returns the number of packets handed to the transport, including packets which then failed or were dropped.
+   *
+   * @return the number of sent packets
+   */
+  public abstract long getSentPackets();
+
+  /**
+   * Returns the number of payload bytes in the packets handed to the transport.
+   *
+   * @return the number of sent bytes
+   */
+  public abstract long getSentBytes();
+
+  /**
+   * Returns how full the packets sent so far were on average, relative to the maximum packet size. Low ratios mean
+   * that packets are sent before they fill up, e.g. because reports are small or flushed often.
+   *
+   * @return the average packet fill ratio, or 0 if no packets were sent
+   */
+  public abstract double getAverageFillRatio();
+
+  /**
+   * Returns the number of packets the transport dropped rather than block, e.g. because a non-blocking socket's
+   * send buffer was full.
+   *
+   * @return the number of dropped packets
+   */
+  public abstract long getDroppedPackets();
+
+  /**
+   * Returns the number of packets suppressed by the circuit breakers of the servers while they were unreachable.
+   *
+   * @return the number of suppressed packets
+   */
+  public abstract long getSuppressedSends();
+
+  /**
+   * Sets a listener which is told about every packet sent, along with the time the transport took to send it. The
+   * send is only timed while a listener is set.
+   *
+   * @param listener the listener, or {@code null} to remove it
+   */
+  public abstract void setPacketListener(@Nullable PacketListener listener);
+
+  /**
+   * Flushes any buffered measurements and closes the transport.
+   *
+   * @throws IOException if there is an error closing the transport
+   */
+  @Override
+  public abstract void close() throws IOException;
+
+  /**
+   * Queues a line setting the given gauge to the given value, as a whole number if it is one and otherwise rounded to
+   * two decimal places. StatsD reads a signed gauge value as an adjustment of the previous one, so a negative value is
+   * preceded by a line resetting the gauge to zero, in the same packet so that the two can't be reordered.
+   *
+   * @param name  the pre-encoded name of the gauge
+   * @param value the value of the gauge
+   */
+  abstract void setGauge(EncodedName name, double value);
+
+  /**
+   * Replaces the circuit breakers of the servers with ones using the given threshold and backoffs. Must be called
+   * before the client is connected.
+   *
+   * @param failureThreshold the number of consecutive failed sends after which a breaker opens
+   * @param minBackoff       the time a breaker stays open after it first opens
+   * @param maxBackoff       the maximum time a breaker stays open
+   * @param backoffUnit      the unit of the backoffs
+   */
+  abstract void setCircuitBreakers(int failureThreshold, long minBackoff, long maxBackoff, TimeUnit backoffUnit);
+
+  /**
+   * Returns whether packets are sent on the thread which calls {@link #send(String, String)} and {@link #flush()},
+   * rather than in the background.
+   *
+   * @return whether packets are sent on the calling thread
+   */
+  abstract boolean sendsOnCallingThread();
+}
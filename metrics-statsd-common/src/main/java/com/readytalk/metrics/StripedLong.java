@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A sum which many threads can add to concurrently, in the style of Java 8's {@code LongAdder}.
+ *
+ * Additions go to a single base value until two threads collide on it. From then on each thread adds to one of
+ * several cells, picked by its thread id and padded apart so that they don't share a cache line. Only
+ * {@link #sumThenReset()} reads all of them.
+ */
+@ThreadSafe
+final class StripedLong {
+
+  /**
+   * The number of longs between two cells, which keeps them 128 bytes apart.
+   */
+  private static final int PADDING = 16;
+
+  private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+  private final AtomicLong base = new AtomicLong();
+  private final AtomicReference<AtomicLongArray> cells = new AtomicReference<AtomicLongArray>();
+
+  /**
+   * Adds the given value.
+   *
+   * @param x the value to add
+   */
+  void add(final long x) {
+    AtomicLongArray cs = cells.get();
+    if (cs == null) {
+      final long b = base.get();
+      if (base.compareAndSet(b, b + x)) {
+        return;
+      }
+      // Contended, so spread the additions from now on.
+      cells.compareAndSet(null, new AtomicLongArray(STRIPES * PADDING));
+      cs = cells.get();
+    }
+    cs.getAndAdd(index() * PADDING, x);
+  }
+
+  /**
+   * Returns the sum of all additions since the previous call, and resets it to zero. Additions which happen during
+   * the call are either counted now or by the next call.
+   *
+   * @return the sum
+   */
+  long sumThenReset() {
+    long sum = base.getAndSet(0);
+    final AtomicLongArray cs = cells.get();
+    if (cs != null) {
+      for (int i = 0; i < STRIPES; i++) {
+        sum += cs.getAndSet(i * PADDING, 0);
+      }
+    }
+    return sum;
+  }
+
+  private static int index() {
+    // Spread sequential thread ids across the stripes.
+    final long id = Thread.currentThread().getId() * 0x9e3779b97f4a7c15L;
+    return (int) (id >>> 32) & (STRIPES - 1);
+  }
+
+  private static int stripes(final int processors) {
+    int n = 1;
+    while (n < processors && n < 64) {
+      n <<= 1;
+    }
+    return n;
+  }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The tags of each metric: global tags for every metric, followed by the tags of every name pattern the metric
+ * matches, in the order the patterns were added. Builders collect the rules, and the tags of a metric are looked up
+ * once when its name is encoded.
+ */
+@Immutable
+final class TagRules {
+
+  /**
+   * No tags for any metric.
+   */
+  static final TagRules NONE = new TagRules(Tags.NONE, Collections.<Pattern, Tags>emptyMap());
+
+  private final Tags global;
+  private final Map<Pattern, Tags> patterns;
+
+  private TagRules(final Tags global, final Map<Pattern, Tags> patterns) {
+    this.global = global;
+    this.patterns = patterns;
+  }
+
+  /**
+   * Returns a copy which also tags every metric with the given tags.
+   *
+   * @param tags the tags
+   * @return the new rules
+   */
+  TagRules withGlobal(final Tags tags) {
+    return new TagRules(global.and(tags), patterns);
+  }
+
+  /**
+   * Returns a copy which also tags the metrics whose names match the given regular expression.
+   *
+   * @param namePattern a regular expression matching whole metric names
+   * @param tags        the tags
+   * @return the new rules
+   */
+  TagRules withPattern(final String namePattern, final Tags tags) {
+    final Map<Pattern, Tags> newPatterns = new LinkedHashMap<Pattern, Tags>(patterns);
+    newPatterns.put(Pattern.compile(namePattern), tags);
+    return new TagRules(global, Collections.unmodifiableMap(newPatterns));
+  }
+
+  /**
+   * Returns whether no metric has any tags.
+   *
+   * @return whether there are no rules
+   */
+  boolean isEmpty() {
+    return global.isEmpty() && patterns.isEmpty();
+  }
+
+  /**
+   * Returns the tags of the metric with the given name.
+   *
+   * @param name the unprefixed name of the metric
+   * @return the tags
+   */
+  Tags tagsFor(final String name) {
+    Tags tags = global;
+    for (Map.Entry<Pattern, Tags> entry : patterns.entrySet()) {
+      if (entry.getKey().matcher(name).matches()) {
+        tags = tags.and(entry.getValue());
+      }
+    }
+    return tags;
+  }
+}
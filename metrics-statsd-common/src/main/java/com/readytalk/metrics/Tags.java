@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.Arrays;
+
+/**
+ * DogStatsD tags ({@code |#env:prod,region:us}) which are appended to every line of a metric, encoded as UTF-8 along
+ * with the {@code |#} separator once, so they can be written to packets again and again without any further string
+ * work.
+ *
+ * Whitespace and the {@code '|'} and {@code ','} separators within a tag are replaced by {@code '_'}. Tags count
+ * towards the maximum packet size like the rest of the line.
+ */
+@Immutable
+public final class Tags {
+
+  /**
+   * No tags, which appends nothing to a line.
+   */
+  public static final Tags NONE = new Tags(new byte[0]);
+
+  private static final byte[] SEPARATOR = {'|', '#'};
+
+  private final byte[] bytes;
+
+  private Tags(final byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  /**
+   * Returns the given tags, e.g. {@code Tags.of("env:prod", "canary")}.
+   *
+   * @param tags the tags, each either {@code key:value} or a bare value
+   * @return the encoded tags
+   */
+  public static Tags of(final String... tags) {
+    if (tags.length == 0) {
+      return NONE;
+    }
+    final StringBuilder sb = new StringBuilder("|#");
+    for (int i = 0; i < tags.length; i++) {
+      if (tags[i].isEmpty()) {
+        throw new IllegalArgumentException("tags must not be empty: " + Arrays.toString(tags));
+      }
+      if (i > 0) {
+        sb.append(',');
+      }
+      for (int j = 0; j < tags[i].length(); j++) {
+        final char c = tags[i].charAt(j);
+        sb.append(c == '|' || c == ',' || Character.isWhitespace(c) ? '_' : c);
+      }
+    }
+    return new Tags(sb.toString().getBytes(StatsD.UTF_8));
+  }
+
+  /**
+   * Returns these tags followed by the given ones.
+   *
+   * @param other the tags to append
+   * @return the combined tags
+   */
+  public Tags and(final Tags other) {
+    if (other.isEmpty()) {
+      return this;
+    }
+    if (isEmpty()) {
+      return other;
+    }
+    final byte[] combined = Arrays.copyOf(bytes, bytes.length + other.bytes.length - SEPARATOR.length + 1);
+    combined[bytes.length] = ',';
+    System.arraycopy(other.bytes, SEPARATOR.length, combined, bytes.length + 1,
+        other.bytes.length - SEPARATOR.length);
+    return new Tags(combined);
+  }
+
+  /**
+   * Returns whether there are no tags.
+   *
+   * @return whether there are no tags
+   */
+  public boolean isEmpty() {
+    return bytes.length == 0;
+  }
+
+  /**
+   * Returns the encoded line suffix, including the {@code |#} separator. The returned array must not be modified.
+   *
+   * @return the encoded bytes
+   */
+  byte[] bytes() {
+    return bytes;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    return this == o || (o instanceof Tags && Arrays.equals(bytes, ((Tags) o).bytes));
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(bytes);
+  }
+
+  @Override
+  public String toString() {
+    return new String(bytes, StatsD.UTF_8);
+  }
+}
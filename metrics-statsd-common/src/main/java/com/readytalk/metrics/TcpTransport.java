@@ -0,0 +1,357 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.BufferedOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Transport} which streams newline-delimited lines to a StatsD server over one persistent TCP connection, for
+ * networks which lose too many UDP packets.
+ *
+ * Packets are written through a large buffer which is only written to the socket when full or when the client is
+ * flushed, i.e. once per report. When the connection fails, the transport keeps the packets in a bounded in-memory
+ * backlog and reconnects with exponential backoff, sending the backlog first once the connection is back. Packets
+ * which don't fit into the backlog are dropped, as are those still in the write buffer when the connection fails.
+ * Connection failures are therefore logged instead of thrown, and only the connect attempts, which wait up to the
+ * connect timeout, block the calling thread.
+ */
+@NotThreadSafe
+public class TcpTransport implements Transport, Flushable {
+
+  /**
+   * The default size of the write buffer in bytes.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The default maximum size of the backlog in bytes.
+   */
+  public static final int DEFAULT_BACKLOG_SIZE = 1024 * 1024;
+
+  private static final Logger LOG = LoggerFactory.getLogger(TcpTransport.class);
+
+  private static final byte NEWLINE = '\n';
+
+  private final int bufferSize;
+  private final int backlogSize;
+  private final int connectTimeoutMillis;
+  private final long initialBackoffNanos;
+  private final long maxBackoffNanos;
+
+  private final ArrayDeque<byte[]> backlog = new ArrayDeque<byte[]>();
+  private int backlogBytes;
+  private SocketAddress address;
+  private Socket socket;
+  private OutputStream out;
+  private long backoffNanos;
+  private long reconnectAt;
+  private boolean failed;
+  private long reconnects;
+
+  /**
+   * Creates a new transport.
+   *
+   * @param bufferSize     the size of the write buffer in bytes
+   * @param backlogSize    the maximum number of bytes kept while disconnected
+   * @param connectTimeout the time to wait for a connection
+   * @param initialBackoff the time to wait before the first reconnect, doubled after each failed attempt
+   * @param maxBackoff     the maximum time to wait between reconnects
+   * @param unit           the unit of {@code connectTimeout}, {@code initialBackoff} and {@code maxBackoff}
+   */
+  public TcpTransport(final int bufferSize, final int backlogSize, final long connectTimeout,
+                      final long initialBackoff, final long maxBackoff, final TimeUnit unit) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+    }
+    if (backlogSize < 0) {
+      throw new IllegalArgumentException("backlogSize must not be negative: " + backlogSize);
+    }
+    if (initialBackoff <= 0 || maxBackoff < initialBackoff) {
+      throw new IllegalArgumentException("backoff must be positive and at most " + maxBackoff + ": "
+          + initialBackoff);
+    }
+    this.bufferSize = bufferSize;
+    this.backlogSize = backlogSize;
+    this.connectTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(connectTimeout));
+    this.initialBackoffNanos = unit.toNanos(initialBackoff);
+    this.maxBackoffNanos = unit.toNanos(maxBackoff);
+    this.backoffNanos = initialBackoffNanos;
+  }
+
+  /**
+   * Connects to the given address. If that fails, the packets sent in the meantime are kept in the backlog until a
+   * later attempt succeeds.
+   *
+   * @param socketAddress the address of the StatsD server
+   */
+  @Override
+  public void connect(final SocketAddress socketAddress) {
+    this.address = socketAddress;
+    disconnect();
+    this.reconnectAt = System.nanoTime();
+    reconnectIfDue();
+  }
+
+  /**
+   * Writes the packet followed by a newline into the write buffer, or into the backlog while disconnected.
+   *
+   * @param bytes  the packet payload
+   * @param length the number of bytes to send
+   * @return {@code false} if the packet was dropped because the backlog is full
+   */
+  @Override
+  public boolean send(final byte[] bytes, final int length) {
+    reconnectIfDue();
+    if (out != null) {
+      try {
+        write(bytes, length);
+        return true;
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+    return addToBacklog(bytes, length);
+  }
+
+  /**
+   * Writes the buffered packets to the socket.
+   */
+  @Override
+  public void flush() {
+    reconnectIfDue();
+    if (out != null) {
+      try {
+        out.flush();
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+  }
+
+  /**
+   * Flushes the buffered packets and closes the connection. Packets still in the backlog are discarded.
+   *
+   * @throws IOException if there is an error closing the socket
+   */
+  @Override
+  public void close() throws IOException {
+    flush();
+    backlog.clear();
+    backlogBytes = 0;
+    if (socket != null) {
+      final Socket closing = socket;
+      socket = null;
+      out = null;
+      closing.close();
+    }
+  }
+
+  /**
+   * Returns whether the transport is connected.
+   *
+   * @return whether the transport is connected
+   */
+  public boolean isConnected() {
+    return out != null;
+  }
+
+  /**
+   * Returns the number of bytes in the backlog, waiting for the connection to come back.
+   *
+   * @return the size of the backlog in bytes
+   */
+  public int getBacklogBytes() {
+    return backlogBytes;
+  }
+
+  /**
+   * Returns the number of successful reconnects after a failed connection.
+   *
+   * @return the number of reconnects
+   */
+  public long getReconnects() {
+    return reconnects;
+  }
+
+  /**
+   * Returns the time to wait after the next failed connect attempt.
+   */
+  long getBackoffNanos() {
+    return backoffNanos;
+  }
+
+  private void write(final byte[] bytes, final int length) throws IOException {
+    out.write(bytes, 0, length);
+    out.write(NEWLINE);
+  }
+
+  private boolean addToBacklog(final byte[] bytes, final int length) {
+    if (backlogBytes + length > backlogSize) {
+      return false;
+    }
+    backlog.addLast(Arrays.copyOf(bytes, length));
+    backlogBytes += length;
+    return true;
+  }
+
+  private void reconnectIfDue() {
+    if (out != null || address == null || System.nanoTime() - reconnectAt < 0) {
+      return;
+    }
+
+    final Socket newSocket = new Socket();
+    try {
+      newSocket.setTcpNoDelay(true);
+      newSocket.connect(address, connectTimeoutMillis);
+      this.socket = newSocket;
+      this.out = new BufferedOutputStream(newSocket.getOutputStream(), bufferSize);
+      if (failed) {
+        reconnects++;
+        failed = false;
+      }
+      this.backoffNanos = initialBackoffNanos;
+      while (!backlog.isEmpty()) {
+        final byte[] packet = backlog.peekFirst();
+        write(packet, packet.length);
+        backlog.removeFirst();
+        backlogBytes -= packet.length;
+      }
+    } catch (IOException e) {
+      try {
+        newSocket.close();
+      } catch (IOException ignored) {
+        LOG.debug("Error closing socket to statsd", ignored);
+      }
+      fail(e);
+    }
+  }
+
+  private void fail(final IOException e) {
+    if (!failed) {
+      failed = true;
+      LOG.warn("lost connection to statsd at {}, reconnecting in the background: {}", describe(), e.toString());
+    } else {
+      LOG.debug("unable to connect to statsd at {}", describe(), e);
+    }
+    disconnect();
+    this.reconnectAt = System.nanoTime() + backoffNanos;
+    this.backoffNanos = Math.min(maxBackoffNanos, backoffNanos * 2);
+  }
+
+  private String describe() {
+    if (address instanceof InetSocketAddress) {
+      final InetSocketAddress inet = (InetSocketAddress) address;
+      return "'" + inet.getHostString() + ":" + inet.getPort() + "'";
+    }
+    return String.valueOf(address);
+  }
+
+  private void disconnect() {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        LOG.debug("Error closing socket to statsd", e);
+      }
+    }
+    this.socket = null;
+    this.out = null;
+  }
+
+  /**
+   * A {@link TransportFactory} for {@link TcpTransport}s. Defaults to a {@value #DEFAULT_BUFFER_SIZE} byte write
+   * buffer, a {@value #DEFAULT_BACKLOG_SIZE} byte backlog, a one second connect timeout, and a backoff starting at
+   * 100 milliseconds and doubling up to 30 seconds.
+   */
+  public static final class Factory implements TransportFactory {
+    private static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = 30000;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int backlogSize = DEFAULT_BACKLOG_SIZE;
+    private long connectTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_CONNECT_TIMEOUT_MILLIS);
+    private long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_INITIAL_BACKOFF_MILLIS);
+    private long maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_BACKOFF_MILLIS);
+
+    /**
+     * Set the size of the write buffer. Packets are written to the socket once the buffer is full or on flush.
+     *
+     * @param _bufferSize the write buffer size in bytes
+     * @return {@code this}
+     */
+    public Factory withBufferSize(final int _bufferSize) {
+      this.bufferSize = _bufferSize;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of bytes kept while disconnected. Further packets are dropped.
+     *
+     * @param _backlogSize the backlog size in bytes, or {@code 0} to drop packets while disconnected
+     * @return {@code this}
+     */
+    public Factory withBacklogSize(final int _backlogSize) {
+      this.backlogSize = _backlogSize;
+      return this;
+    }
+
+    /**
+     * Set the time to wait for a connection.
+     *
+     * @param _connectTimeout the connect timeout
+     * @param _unit           the unit of {@code _connectTimeout}
+     * @return {@code this}
+     */
+    public Factory withConnectTimeout(final long _connectTimeout, final TimeUnit _unit) {
+      this.connectTimeoutNanos = _unit.toNanos(_connectTimeout);
+      return this;
+    }
+
+    /**
+     * Set the time to wait before reconnecting, which doubles after every failed attempt up to the given maximum.
+     *
+     * @param _initialBackoff the time to wait before the first reconnect
+     * @param _maxBackoff     the maximum time to wait between reconnects
+     * @param _unit           the unit of {@code _initialBackoff} and {@code _maxBackoff}
+     * @return {@code this}
+     */
+    public Factory withBackoff(final long _initialBackoff, final long _maxBackoff, final TimeUnit _unit) {
+      this.initialBackoffNanos = _unit.toNanos(_initialBackoff);
+      this.maxBackoffNanos = _unit.toNanos(_maxBackoff);
+      return this;
+    }
+
+    @Override
+    public Transport createTransport() {
+      return new TcpTransport(bufferSize, backlogSize, connectTimeoutNanos, initialBackoffNanos, maxBackoffNanos,
+          TimeUnit.NANOSECONDS);
+    }
+  }
+}
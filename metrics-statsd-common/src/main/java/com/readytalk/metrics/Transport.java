@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+
+/**
+ * Delivers encoded packets to a StatsD server. Transports are used by a single {@link StatsD} client at a time and
+ * need not be thread-safe.
+ */
+public interface Transport extends Closeable {
+
+  /**
+   * Opens the underlying socket and prepares it to send packets to the given address.
+   *
+   * @param address the address of the StatsD server
+   * @throws IOException if there is an error opening the socket
+   */
+  void connect(SocketAddress address) throws IOException;
+
+  /**
+   * Sends the first {@code length} bytes of {@code bytes} as a single packet. The array may be reused as soon as
+   * this method returns.
+   *
+   * @param bytes  the packet payload
+   * @param length the number of bytes to send
+   * @return {@code true} if the packet was handed to the operating system, {@code false} if it was dropped because
+   *         the transport could not accept it without blocking
+   * @throws IOException if there is an error sending the packet
+   */
+  boolean send(byte[] bytes, int length) throws IOException;
+}
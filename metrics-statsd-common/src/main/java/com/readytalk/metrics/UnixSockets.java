@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+
+/**
+ * Builds clients which send to a Unix domain socket through the {@code UnixDomainSocketTransport} of the
+ * {@code metrics-statsd-unix} module, which needs JDK 16 or later and is therefore looked up at runtime.
+ */
+final class UnixSockets {
+
+  private static final String FACTORY_CLASS = "com.readytalk.metrics.UnixDomainSocketTransport$Factory";
+
+  private UnixSockets() {
+  }
+
+  /**
+   * Returns a factory for transports to the given socket path.
+   *
+   * @param path the path of the socket file the agent listens on
+   * @return the transport factory
+   * @throws IllegalStateException if the {@code metrics-statsd-unix} module is not on the class path
+   */
+  static TransportFactory transportFactory(final Path path) {
+    try {
+      return (TransportFactory) Class.forName(FACTORY_CLASS).getConstructor(Path.class).newInstance(path);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Unix domain sockets need the metrics-statsd-unix module on JDK 16 or later", e);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Unable to create a Unix domain socket transport", e);
+    }
+  }
+
+  /**
+   * Returns a resolver for the given socket path, which never looks anything up and always returns the same
+   * placeholder address, since the transport connects to the path instead.
+   *
+   * @param path the path of the socket file the agent listens on
+   * @return the address resolver
+   */
+  static AddressResolver resolver(final Path path) {
+    final InetSocketAddress placeholder = InetSocketAddress.createUnresolved(path.toString(), 0);
+    return new AddressResolver(path.toString(), 0) {
+      @Override
+      public InetSocketAddress getAddress() {
+        return placeholder;
+      }
+    };
+  }
+}
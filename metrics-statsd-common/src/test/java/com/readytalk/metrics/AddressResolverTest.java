@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Fail.failBecauseExceptionWasNotThrown;
+
+public class AddressResolverTest {
+  private final InetAddress first = InetAddress.getByAddress("statsd", new byte[]{10, 0, 0, 1});
+  private final InetAddress second = InetAddress.getByAddress("statsd", new byte[]{10, 0, 0, 2});
+
+  private final List<Runnable> pending = new ArrayList<Runnable>();
+  private final Executor executor = new Executor() {
+    @Override
+    public void execute(final Runnable command) {
+      pending.add(command);
+    }
+  };
+
+  private final List<Object> answers = new ArrayList<Object>();
+
+  public AddressResolverTest() throws UnknownHostException {
+  }
+
+  @Test
+  public void resolvesSynchronouslyTheFirstTime() throws Exception {
+    answers.add(first);
+    final AddressResolver resolver = resolver(TimeUnit.HOURS.toNanos(1));
+
+    assertThat(resolver.getAddress()).isEqualTo(new InetSocketAddress(first, 8125));
+    assertThat(resolver.getResolutionCount()).isEqualTo(1);
+    assertThat(pending).isEmpty();
+  }
+
+  @Test
+  public void usesTheCachedAddressUntilItExpires() throws Exception {
+    answers.add(first);
+    final AddressResolver resolver = resolver(TimeUnit.HOURS.toNanos(1));
+
+    resolver.getAddress();
+    resolver.getAddress();
+
+    assertThat(resolver.getResolutionCount()).isEqualTo(1);
+    assertThat(pending).isEmpty();
+  }
+
+  @Test
+  public void refreshesExpiredAddressesInTheBackground() throws Exception {
+    answers.add(first);
+    answers.add(second);
+    final AddressResolver resolver = resolver(0);
+
+    resolver.getAddress();
+    assertThat(resolver.getAddress()).isEqualTo(new InetSocketAddress(first, 8125));
+    assertThat(pending).hasSize(1);
+
+    // Only one refresh is in flight at a time.
+    resolver.getAddress();
+    assertThat(pending).hasSize(1);
+
+    pending.remove(0).run();
+    assertThat(resolver.getAddress()).isEqualTo(new InetSocketAddress(second, 8125));
+  }
+
+  @Test
+  public void keepsTheLastGoodAddressWhenARefreshFails() throws Exception {
+    answers.add(first);
+    answers.add(new UnknownHostException("statsd"));
+    final AddressResolver resolver = resolver(0);
+
+    resolver.getAddress();
+    resolver.getAddress();
+    pending.remove(0).run();
+
+    assertThat(resolver.getAddress()).isEqualTo(new InetSocketAddress(first, 8125));
+    assertThat(resolver.getFailureCount()).isEqualTo(1);
+    assertThat(resolver.getResolutionCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void failsWhenTheAddressWasNeverResolved() throws Exception {
+    answers.add(new UnknownHostException("statsd"));
+    final AddressResolver resolver = resolver(0);
+
+    try {
+      resolver.getAddress();
+      failBecauseExceptionWasNotThrown(UnknownHostException.class);
+    } catch (UnknownHostException e) {
+      assertThat(resolver.getFailureCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void retriesAFailedFirstLookupOnlyAfterTheTtl() throws Exception {
+    answers.add(new UnknownHostException("statsd"));
+    final AddressResolver resolver = resolver(TimeUnit.HOURS.toNanos(1));
+
+    for (int i = 0; i < 3; i++) {
+      try {
+        resolver.getAddress();
+        failBecauseExceptionWasNotThrown(UnknownHostException.class);
+      } catch (UnknownHostException e) {
+        assertThat(e).hasMessage("statsd");
+      }
+    }
+    assertThat(resolver.getResolutionCount()).isEqualTo(1);
+    assertThat(resolver.getFailureCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void retriesAFailedFirstLookupOnceTheTtlHasPassed() throws Exception {
+    answers.add(new UnknownHostException("statsd"));
+    answers.add(first);
+    final AddressResolver resolver = resolver(0);
+
+    try {
+      resolver.getAddress();
+      failBecauseExceptionWasNotThrown(UnknownHostException.class);
+    } catch (UnknownHostException e) {
+      // The first lookup fails.
+    }
+
+    assertThat(resolver.getAddress()).isEqualTo(new InetSocketAddress(first, 8125));
+    assertThat(resolver.getResolutionCount()).isEqualTo(2);
+    assertThat(pending).isEmpty();
+  }
+
+  @Test
+  public void usesResolvedAddressesAsIs() throws Exception {
+    final InetSocketAddress address = new InetSocketAddress(first, 8125);
+    final AddressResolver resolver = new AddressResolver(address);
+
+    assertThat(resolver.getAddress()).isSameAs(address);
+    assertThat(resolver.getResolutionCount()).isZero();
+  }
+
+  private AddressResolver resolver(final long ttlNanos) {
+    return new AddressResolver("statsd", 8125, ttlNanos, executor) {
+      @Override
+      InetAddress lookup(final String hostname) throws UnknownHostException {
+        final Object answer = answers.remove(0);
+        if (answer instanceof UnknownHostException) {
+          throw (UnknownHostException) answer;
+        }
+        return (InetAddress) answer;
+      }
+    };
+  }
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class AsyncStatsDTest {
+  private final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 8125);
+  private final BlockingQueue<String> packets = new LinkedBlockingQueue<String>();
+  private final BlockingQueue<String> senders = new LinkedBlockingQueue<String>();
+  private final CountDownLatch sending = new CountDownLatch(1);
+  private final CountDownLatch released = new CountDownLatch(1);
+  private volatile boolean blocking;
+  private AsyncStatsD statsD;
+
+  private final TransportFactory transportFactory = new TransportFactory() {
+    @Override
+    public Transport createTransport() {
+      return new Transport() {
+        @Override
+        public void connect(final SocketAddress socketAddress) {
+        }
+
+        @Override
+        public boolean send(final byte[] bytes, final int length) throws IOException {
+          if (blocking) {
+            sending.countDown();
+            try {
+              released.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new InterruptedIOException();
+            }
+          }
+          senders.add(Thread.currentThread().getName());
+          packets.add(new String(bytes, 0, length, StatsD.UTF_8));
+          return true;
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+  };
+
+  @After
+  public void tearDown() throws Exception {
+    released.countDown();
+    if (statsD != null) {
+      statsD.close();
+    }
+  }
+
+  @Test
+  public void sendsBatchedLinesFromTheSenderThread() throws Exception {
+    statsD = create(16, OverflowPolicy.DROP_NEWEST);
+    statsD.connect();
+    statsD.send("a", 1L);
+    statsD.send("b", 2L);
+    statsD.flush();
+
+    assertThat(packets.poll(5, TimeUnit.SECONDS)).isEqualTo("a:1|g\nb:2|g");
+    assertThat(statsD.getEnqueuedLines()).isEqualTo(2);
+    assertThat(statsD.getSentLines()).isEqualTo(2);
+    assertThat(statsD.getDroppedLines()).isZero();
+  }
+
+  @Test
+  public void sendsQueuedLinesOnClose() throws Exception {
+    statsD = create(16, OverflowPolicy.DROP_NEWEST);
+    statsD.connect();
+    statsD.send("a", 1L);
+    statsD.close();
+
+    assertThat(packets).containsOnly("a:1|g");
+  }
+
+  @Test
+  public void dropsLinesSentAfterClose() throws Exception {
+    statsD = create(16, OverflowPolicy.DROP_NEWEST);
+    statsD.connect();
+    statsD.close();
+    statsD.send("a", 1L);
+    statsD.flush();
+
+    assertThat(statsD.getEnqueuedLines()).isZero();
+    assertThat(statsD.getDroppedLines()).isEqualTo(1);
+    assertThat(statsD.getQueueSize()).isZero();
+  }
+
+  @Test
+  public void interruptsASenderStuckOnClose() throws Exception {
+    statsD = create(16, OverflowPolicy.DROP_NEWEST);
+    statsD.setCloseTimeout(50, TimeUnit.MILLISECONDS);
+    stallSender();
+    statsD.send("b", 2L);
+
+    final long start = System.nanoTime();
+    statsD.close();
+
+    assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+    assertThat(packets).isEmpty();
+  }
+
+  @Test
+  public void namesEachSenderThread() throws Exception {
+    statsD = create(16, OverflowPolicy.DROP_NEWEST);
+    final AsyncStatsD other = create(16, OverflowPolicy.DROP_NEWEST);
+    statsD.connect();
+    other.connect();
+    statsD.send("a", 1L);
+    statsD.flush();
+    other.send("b", 2L);
+    other.flush();
+
+    final String first = senders.poll(5, TimeUnit.SECONDS);
+    final String second = senders.poll(5, TimeUnit.SECONDS);
+    other.close();
+    assertThat(first).startsWith("statsd-sender-");
+    assertThat(second).startsWith("statsd-sender-").isNotEqualTo(first);
+  }
+
+  @Test
+  public void dropsNewestLinesWhenFull() throws Exception {
+    statsD = create(2, OverflowPolicy.DROP_NEWEST);
+    stallSender();
+
+    statsD.send("b", 2L);
+    statsD.send("c", 3L);
+    statsD.send("d", 4L);
+    released.countDown();
+    statsD.close();
+
+    assertThat(statsD.getDroppedLines()).isEqualTo(1);
+    assertThat(packets).containsOnly("a:1|g", "b:2|g\nc:3|g");
+  }
+
+  @Test
+  public void dropsOldestLinesWhenFull() throws Exception {
+    statsD = create(2, OverflowPolicy.DROP_OLDEST);
+    stallSender();
+
+    statsD.send("b", 2L);
+    statsD.send("c", 3L);
+    statsD.send("d", 4L);
+    released.countDown();
+    statsD.close();
+
+    assertThat(statsD.getDroppedLines()).isEqualTo(1);
+    assertThat(packets).containsOnly("a:1|g", "c:3|g\nd:4|g");
+  }
+
+  @Test
+  public void blocksUntilTheTimeoutWhenFull() throws Exception {
+    statsD = new AsyncStatsD(new AddressResolver(address), transportFactory, StatsD.DEFAULT_MAX_PACKET_SIZE, 2,
+        OverflowPolicy.BLOCK, 20, TimeUnit.MILLISECONDS);
+    stallSender();
+
+    statsD.send("b", 2L);
+    statsD.send("c", 3L);
+    final long start = System.nanoTime();
+    statsD.send("d", 4L);
+
+    assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+    assertThat(statsD.getDroppedLines()).isEqualTo(1);
+    assertThat(statsD.getEnqueuedLines()).isEqualTo(3);
+  }
+
+  @Test
+  public void logsConnectionFailuresInsteadOfThrowing() throws Exception {
+    statsD = new AsyncStatsD(new AddressResolver("unresolvable.invalid", 8125), transportFactory,
+        StatsD.DEFAULT_MAX_PACKET_SIZE, 16, OverflowPolicy.DROP_NEWEST, 0, TimeUnit.MILLISECONDS);
+    statsD.connect();
+    statsD.send("a", 1L);
+    statsD.flush();
+    statsD.close();
+
+    assertThat(packets).isEmpty();
+  }
+
+  private AsyncStatsD create(final int capacity, final OverflowPolicy policy) {
+    return new AsyncStatsD(new AddressResolver(address), transportFactory, StatsD.DEFAULT_MAX_PACKET_SIZE, capacity,
+        policy, 0, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sends a first line and waits until the sender thread is stuck sending it.
+   */
+  private void stallSender() throws Exception {
+    blocking = true;
+    statsD.connect();
+    statsD.send("a", 1L);
+    statsD.flush();
+    assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+}
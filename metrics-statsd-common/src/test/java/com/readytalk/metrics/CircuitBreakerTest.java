@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class CircuitBreakerTest {
+
+  @Test
+  public void opensAfterTheGivenNumberOfConsecutiveFailures() {
+    final CircuitBreaker breaker = new CircuitBreaker(3, 1, 1, TimeUnit.HOURS);
+
+    assertThat(breaker.recordFailure()).isFalse();
+    assertThat(breaker.recordFailure()).isFalse();
+    breaker.recordSuccess();
+    assertThat(breaker.recordFailure()).isFalse();
+    assertThat(breaker.recordFailure()).isFalse();
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(breaker.recordFailure()).isTrue();
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  public void suppressesSendsWhileOpen() {
+    final CircuitBreaker breaker = new CircuitBreaker(1, 1, 1, TimeUnit.HOURS);
+    assertThat(breaker.allowsSend()).isTrue();
+    breaker.recordFailure();
+
+    assertThat(breaker.allowsSend()).isFalse();
+    assertThat(breaker.allowsSend()).isFalse();
+    assertThat(breaker.startCycle()).isFalse();
+    assertThat(breaker.getSuppressedSends()).isEqualTo(2);
+  }
+
+  @Test
+  public void probesOnceTheBackoffHasPassed() {
+    final CircuitBreaker breaker = new CircuitBreaker(1, 1, 1, TimeUnit.NANOSECONDS);
+    breaker.recordFailure();
+
+    assertThat(breaker.startCycle()).isTrue();
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    assertThat(breaker.allowsSend()).isTrue();
+    assertThat(breaker.recordSuccess()).isTrue();
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(breaker.getSuppressedSends()).isZero();
+  }
+
+  @Test
+  public void doublesTheBackoffAfterAFailedProbeUpToTheMaximum() {
+    final CircuitBreaker breaker = new CircuitBreaker(1, 1, 3, TimeUnit.NANOSECONDS);
+    breaker.recordFailure();
+    assertThat(breaker.getBackoffNanos()).isEqualTo(1);
+
+    breaker.startCycle();
+    assertThat(breaker.recordFailure()).isTrue();
+    assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(breaker.getBackoffNanos()).isEqualTo(2);
+    breaker.startCycle();
+    breaker.recordFailure();
+    assertThat(breaker.getBackoffNanos()).isEqualTo(3);
+
+    breaker.startCycle();
+    breaker.recordSuccess();
+    assertThat(breaker.getBackoffNanos()).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANonPositiveThreshold() {
+    new CircuitBreaker(0, 1, 1, TimeUnit.SECONDS);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAMaximumBackoffBelowTheMinimum() {
+    new CircuitBreaker(1, 2, 1, TimeUnit.SECONDS);
+  }
+}
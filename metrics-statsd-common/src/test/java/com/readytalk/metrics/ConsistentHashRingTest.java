@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ConsistentHashRingTest {
+  private static final int KEYS = 10000;
+
+  private final ConsistentHashRing ring = ring("a:8125", "b:8125", "c:8125", "d:8125");
+
+  @Test
+  public void mapsAKeyToTheSameNodeEveryTime() throws Exception {
+    final ConsistentHashRing other = ring("a:8125", "b:8125", "c:8125", "d:8125");
+
+    for (int i = 0; i < KEYS; i++) {
+      assertThat(node(other, "metric" + i)).isEqualTo(node(ring, "metric" + i));
+    }
+  }
+
+  @Test
+  public void spreadsKeysEvenlyAcrossNodes() throws Exception {
+    final int[] counts = new int[4];
+    for (int i = 0; i < KEYS; i++) {
+      counts[node(ring, "metric" + i)]++;
+    }
+
+    for (int count : counts) {
+      assertThat(count).isGreaterThan(KEYS / 4 * 3 / 4).isLessThan(KEYS / 4 * 5 / 4);
+    }
+  }
+
+  @Test
+  public void onlyMovesTheKeysOfARemovedNode() throws Exception {
+    final ConsistentHashRing withoutC = ring("a:8125", "b:8125", "d:8125");
+    final String[] before = {"a:8125", "b:8125", "c:8125", "d:8125"};
+    final String[] after = {"a:8125", "b:8125", "d:8125"};
+
+    for (int i = 0; i < KEYS; i++) {
+      final String node = before[node(ring, "metric" + i)];
+      if (!node.equals("c:8125")) {
+        assertThat(after[node(withoutC, "metric" + i)]).isEqualTo(node);
+      }
+    }
+  }
+
+  @Test
+  public void onlyMovesKeysToAnAddedNode() throws Exception {
+    final ConsistentHashRing withE = ring("a:8125", "b:8125", "c:8125", "d:8125", "e:8125");
+
+    int moved = 0;
+    for (int i = 0; i < KEYS; i++) {
+      final int node = node(withE, "metric" + i);
+      if (node != node(ring, "metric" + i)) {
+        assertThat(node).isEqualTo(4);
+        moved++;
+      }
+    }
+    assertThat(moved).isGreaterThan(KEYS / 5 * 3 / 4).isLessThan(KEYS / 5 * 5 / 4);
+  }
+
+  @Test
+  public void placesNodesByNameRatherThanPosition() throws Exception {
+    final ConsistentHashRing reordered = ring("d:8125", "c:8125", "b:8125", "a:8125");
+
+    for (int i = 0; i < KEYS; i++) {
+      assertThat(3 - node(reordered, "metric" + i)).isEqualTo(node(ring, "metric" + i));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsDuplicateNodes() throws Exception {
+    ring("a:8125", "a:8125");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAnEmptyRing() throws Exception {
+    ring();
+  }
+
+  private static ConsistentHashRing ring(final String... nodes) {
+    return new ConsistentHashRing(Arrays.asList(nodes), ConsistentHashRing.DEFAULT_POINTS_PER_NODE);
+  }
+
+  private static int node(final ConsistentHashRing ring, final String key) {
+    final byte[] bytes = key.getBytes(StatsD.UTF_8);
+    return ring.node(bytes, 0, bytes.length);
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class DatagramChannelTransportTest {
+  private DatagramChannel receiver;
+
+  @Before
+  public void setUp() throws Exception {
+    receiver = DatagramChannel.open();
+    receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    receiver.close();
+  }
+
+  @Test
+  public void sendsPacketsToTheServer() throws Exception {
+    final Transport transport = new DatagramChannelTransport.Factory().createTransport();
+    transport.connect(receiver.getLocalAddress());
+    try {
+      assertThat(transport.send("name:1|g".getBytes(StatsD.UTF_8), 6)).isTrue();
+      assertThat(receive()).isEqualTo("name:1");
+    } finally {
+      transport.close();
+    }
+  }
+
+  @Test
+  public void growsTheBufferForLargePackets() throws Exception {
+    final byte[] bytes = new byte[StatsD.DEFAULT_MAX_PACKET_SIZE * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = 'x';
+    }
+
+    final Transport transport = new DatagramChannelTransport(false, 0);
+    transport.connect(receiver.getLocalAddress());
+    try {
+      assertThat(transport.send(bytes, bytes.length)).isTrue();
+      assertThat(receive()).hasSize(bytes.length);
+    } finally {
+      transport.close();
+    }
+  }
+
+  @Test
+  public void sendsInNonBlockingMode() throws Exception {
+    final Transport transport = new DatagramChannelTransport.Factory().nonBlocking(true).createTransport();
+    transport.connect(receiver.getLocalAddress());
+    try {
+      assertThat(transport.send("a:1|g".getBytes(StatsD.UTF_8), 5)).isTrue();
+      assertThat(receive()).isEqualTo("a:1|g");
+    } finally {
+      transport.close();
+    }
+  }
+
+  @Test
+  public void setsTheSendBufferSize() throws Exception {
+    final DatagramChannelTransport transport = new DatagramChannelTransport(true, 65536);
+    transport.connect(receiver.getLocalAddress());
+    try {
+      // The operating system is free to round the size, but never below what a default socket gets.
+      assertThat(transport.getSendBufferSize()).isGreaterThanOrEqualTo(65536 / 2);
+    } finally {
+      transport.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeSendBufferSizes() throws Exception {
+    new DatagramChannelTransport(false, -1);
+  }
+
+  private String receive() throws Exception {
+    final ByteBuffer buffer = ByteBuffer.allocate(65536);
+    receiver.receive(buffer);
+    buffer.flip();
+    return StatsD.UTF_8.decode(buffer).toString();
+  }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DestinationTest {
+  private final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 8125);
+  private final TransportFactory transportFactory = mock(TransportFactory.class);
+  private final Transport transport = mock(Transport.class);
+  private final Destination destination = new Destination(new AddressResolver(address), transportFactory);
+  private final byte[] packet = "a:1|g".getBytes(StatsD.UTF_8);
+
+  @Test
+  public void reconnectsOnTheNextPacketAfterAFailedSend() throws Exception {
+    when(transportFactory.createTransport()).thenReturn(transport);
+    when(transport.send(any(byte[].class), anyInt())).thenThrow(new IOException()).thenReturn(true);
+    destination.connect();
+
+    destination.send(packet, packet.length);
+    destination.send(packet, packet.length);
+    destination.send(packet, packet.length);
+
+    verify(transportFactory, times(2)).createTransport();
+    assertThat(destination.getFailures()).isZero();
+    assertThat(destination.getTotalFailures()).isEqualTo(1);
+  }
+
+  @Test
+  public void waitsBeforeRetryingAFailedReconnect() throws Exception {
+    when(transportFactory.createTransport()).thenReturn(transport);
+    when(transport.send(any(byte[].class), anyInt())).thenThrow(new IOException());
+    doThrow(new IOException()).when(transport).connect(address);
+
+    destination.send(packet, packet.length);
+    destination.send(packet, packet.length);
+    destination.send(packet, packet.length);
+
+    verify(transportFactory, times(1)).createTransport();
+    assertThat(destination.getFailures()).isEqualTo(3);
+    assertThat(destination.getTotalFailures()).isEqualTo(3);
+  }
+
+  @Test
+  public void suppressesSendsForTheRestOfTheReportOnceTheBreakerOpens() throws Exception {
+    destination.setCircuitBreaker(new CircuitBreaker(2, 1, 1, TimeUnit.HOURS));
+    when(transportFactory.createTransport()).thenReturn(transport);
+    when(transport.send(any(byte[].class), anyInt())).thenThrow(new IOException());
+    destination.connect();
+
+    for (int i = 0; i < 5; i++) {
+      destination.send(packet, packet.length);
+    }
+    destination.connect();
+
+    verify(transport, times(2)).send(any(byte[].class), anyInt());
+    assertThat(destination.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(destination.getCircuitBreaker().getSuppressedSends()).isEqualTo(3);
+    assertThat(destination.isConnected()).isFalse();
+  }
+
+  @Test
+  public void closesTheBreakerOnceAProbeIsSent() throws Exception {
+    destination.setCircuitBreaker(new CircuitBreaker(1, 1, 1, TimeUnit.NANOSECONDS));
+    when(transportFactory.createTransport()).thenReturn(transport);
+    when(transport.send(any(byte[].class), anyInt())).thenThrow(new IOException()).thenReturn(true);
+    destination.connect();
+    destination.send(packet, packet.length);
+
+    destination.connect();
+    destination.send(packet, packet.length);
+    destination.send(packet, packet.length);
+
+    verify(transport, times(3)).send(any(byte[].class), anyInt());
+    assertThat(destination.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(destination.getFailures()).isZero();
+  }
+
+  @Test
+  public void opensTheBreakerForAClosedUdpPort() throws Exception {
+    final DatagramSocket closed = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    final int port = closed.getLocalPort();
+    closed.close();
+    final Destination unreachable = new Destination(
+        new AddressResolver(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)),
+        new DatagramChannelTransport.Factory());
+    unreachable.setCircuitBreaker(new CircuitBreaker(5, 1, 1, TimeUnit.HOURS));
+
+    try {
+      for (int cycle = 0; cycle < 3; cycle++) {
+        unreachable.connect();
+        for (int i = 0; i < 200; i++) {
+          unreachable.send(packet, packet.length);
+          // Give the ICMP port unreachable error time to arrive before the next write.
+          Thread.sleep(1);
+        }
+      }
+    } finally {
+      unreachable.close();
+    }
+
+    assertThat(unreachable.getCircuitBreaker().getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(unreachable.getTotalFailures()).isEqualTo(5);
+    assertThat(unreachable.getCircuitBreaker().getSuppressedSends()).isGreaterThan(580);
+  }
+
+  @Test
+  public void countsPacketsDroppedByTheTransport() throws Exception {
+    when(transportFactory.createTransport()).thenReturn(transport);
+    when(transport.send(any(byte[].class), anyInt())).thenReturn(false);
+    destination.connect();
+
+    destination.send(packet, packet.length);
+
+    assertThat(destination.getDroppedPackets()).isEqualTo(1);
+    assertThat(destination.getFailures()).isZero();
+  }
+}
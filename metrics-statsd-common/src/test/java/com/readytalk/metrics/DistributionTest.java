@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class DistributionTest {
+  private final StatsD statsD = mock(StatsD.class);
+  private final EncodedName name = EncodedName.of("latency");
+
+  @Test
+  public void sendsEvenlySpacedValuesWithTheSampleRateOfTheNewEvents() {
+    new Distribution(MetricType.DISTRIBUTION, 2).send(statsD, name, new long[] {1, 2, 3, 4, 5, 6, 7, 8}, 10);
+
+    verify(statsD).send(name, 3L, MetricType.DISTRIBUTION, 0.2);
+    verify(statsD).send(name, 7L, MetricType.DISTRIBUTION, 0.2);
+    verifyNoMoreInteractions(statsD);
+  }
+
+  @Test
+  public void sendsAtMostOneValuePerNewEvent() {
+    new Distribution(MetricType.TIMER, 100).send(statsD, name, new double[] {1.5, 2.5, 3.5}, 1, 1);
+
+    verify(statsD).send(name, 2.5, 1, MetricType.TIMER, 1.0);
+    verifyNoMoreInteractions(statsD);
+  }
+
+  @Test
+  public void sendsEveryValueOfASmallSnapshot() {
+    new Distribution(MetricType.TIMER, 100).send(statsD, name, new long[] {1000, 2000}, 0.001, 0, 4);
+
+    verify(statsD).send(name, 1.0, 0, MetricType.TIMER, 0.5);
+    verify(statsD).send(name, 2.0, 0, MetricType.TIMER, 0.5);
+    verifyNoMoreInteractions(statsD);
+  }
+
+  @Test
+  public void sendsNothingForAnEmptySnapshot() {
+    new Distribution(MetricType.TIMER, 100).send(statsD, name, new long[0], 5);
+
+    verifyZeroInteractions(statsD);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOtherTypes() {
+    new Distribution(MetricType.GAUGE, 100);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsANonPositiveMaximum() {
+    new Distribution(MetricType.TIMER, 0);
+  }
+}
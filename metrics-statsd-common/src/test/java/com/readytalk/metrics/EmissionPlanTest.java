@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class EmissionPlanTest {
+  private static final EmissionPlan.Layout TIMERS = new EmissionPlan.Layout()
+      .add(EmissionPlan.Field.MAX, "max")
+      .add(EmissionPlan.Field.P99, "p99")
+      .add(EmissionPlan.Field.COUNT, "samples")
+      .add(EmissionPlan.Field.M1_RATE, "m1_rate");
+  private static final EmissionPlan.Layout HISTOGRAMS = new EmissionPlan.Layout()
+      .add(EmissionPlan.Field.COUNT, "samples")
+      .add(EmissionPlan.Field.P99, "p99");
+  private static final EmissionPlan.Layout METERS = new EmissionPlan.Layout()
+      .add(EmissionPlan.Field.COUNT, "samples")
+      .add(EmissionPlan.Field.M1_RATE, "m1_rate");
+
+  @Test
+  public void selectsEveryFieldOfTheLayoutByDefault() throws Exception {
+    final EmissionPlan.Compiled plan = EmissionPlan.ALL.compile(TIMERS, HISTOGRAMS, METERS);
+
+    final EmissionPlan.Selection timers = plan.select(EmissionPlan.Kind.TIMER);
+    assertThat(timers.suffixes()).containsExactly("max", "p99", "samples", "m1_rate");
+    assertThat(timers.needsSnapshot()).isTrue();
+    assertThat(plan.select(EmissionPlan.Kind.METER).needsSnapshot()).isFalse();
+    assertThat(plan.hasOverrides()).isFalse();
+  }
+
+  @Test
+  public void keepsTheOrderOfTheLayout() throws Exception {
+    final EmissionPlan.Compiled plan = EmissionPlan.ALL
+        .withTimers(EmissionPlan.Field.M1_RATE, EmissionPlan.Field.P99, EmissionPlan.Field.P50)
+        .compile(TIMERS, HISTOGRAMS, METERS);
+
+    final EmissionPlan.Selection timers = plan.select(EmissionPlan.Kind.TIMER);
+    assertThat(timers.fields()).containsExactly(EmissionPlan.Field.P99, EmissionPlan.Field.M1_RATE);
+    assertThat(timers.suffixes()).containsExactly("p99", "m1_rate");
+  }
+
+  @Test
+  public void appliesTheFirstMatchingOverride() throws Exception {
+    final EmissionPlan.Compiled plan = EmissionPlan.ALL
+        .withOverride("db\\..*", EmissionPlan.Field.COUNT, EmissionPlan.Field.M1_RATE)
+        .withOverride(".*", EmissionPlan.Field.MAX)
+        .compile(TIMERS, HISTOGRAMS, METERS);
+
+    assertThat(plan.hasOverrides()).isTrue();
+    assertThat(plan.select(EmissionPlan.Kind.TIMER, "db.query").suffixes()).containsExactly("samples", "m1_rate");
+    assertThat(plan.select(EmissionPlan.Kind.HISTOGRAM, "db.rows").suffixes()).containsExactly("samples");
+    assertThat(plan.select(EmissionPlan.Kind.TIMER, "http.request").suffixes()).containsExactly("max");
+    assertThat(plan.select(EmissionPlan.Kind.METER, "http.request").isEmpty()).isTrue();
+  }
+
+  @Test
+  public void returnsTheSameSelectionForEveryMatch() throws Exception {
+    final EmissionPlan.Compiled plan = EmissionPlan.ALL
+        .withOverride("db\\..*", EmissionPlan.Field.COUNT)
+        .compile(TIMERS, HISTOGRAMS, METERS);
+
+    assertThat(plan.select(EmissionPlan.Kind.TIMER, "db.query"))
+        .isSameAs(plan.select(EmissionPlan.Kind.TIMER, "db.update"));
+    assertThat(plan.select(EmissionPlan.Kind.TIMER, "http.request"))
+        .isSameAs(plan.select(EmissionPlan.Kind.TIMER));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsRatesOfHistograms() throws Exception {
+    EmissionPlan.ALL.withHistograms(EmissionPlan.Field.M1_RATE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsSnapshotFieldsOfMeters() throws Exception {
+    EmissionPlan.ALL.withMeters(EmissionPlan.Field.COUNT, EmissionPlan.Field.P99);
+  }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class LineEncoderTest {
+  private final LineEncoder encoder = new LineEncoder();
+
+  @Test
+  public void encodesLongGauges() {
+    assertThat(encoder.reset().name("name").value(123L).type(MetricType.GAUGE).toString())
+        .isEqualTo("name:123|g");
+  }
+
+  @Test
+  public void encodesNegativeAndExtremeLongs() {
+    assertThat(encoder.reset().name("a").value(-5L).toString()).isEqualTo("a:-5");
+    assertThat(encoder.reset().name("a").value(0L).toString()).isEqualTo("a:0");
+    assertThat(encoder.reset().name("a").value(Long.MAX_VALUE).toString()).isEqualTo("a:" + Long.MAX_VALUE);
+    assertThat(encoder.reset().name("a").value(Long.MIN_VALUE).toString()).isEqualTo("a:" + Long.MIN_VALUE);
+  }
+
+  @Test
+  public void encodesDoublesLikeStringFormat() {
+    final double[] values = {0, 1.1, 2, 0.5, 0.125, 0.999, 12345.678, -3.14159, -0.001, 1e14 + 0.25,
+        123456789012.996, Double.NaN, Double.POSITIVE_INFINITY, 1e20};
+    for (double value : values) {
+      assertThat(encoder.reset().name("a").value(value).toString())
+          .isEqualTo("a:" + String.format(Locale.US, "%2.2f", value));
+    }
+  }
+
+  @Test
+  public void encodesDoublesWithTheGivenPrecision() {
+    assertThat(encoder.reset().name("a").value(12.3456, 0).toString()).isEqualTo("a:12");
+    assertThat(encoder.reset().name("a").value(0.0012, 4).toString()).isEqualTo("a:0.0012");
+    assertThat(encoder.reset().name("a").value(-1e300, 2).toString())
+        .isEqualTo("a:" + String.format(Locale.US, "%.2f", -1e300));
+  }
+
+  @Test
+  public void encodesTypeSuffixes() {
+    assertThat(encoder.reset().name("a").value(1L).type(MetricType.COUNTER).toString()).isEqualTo("a:1|c");
+    assertThat(encoder.reset().name("a").value(1L).type(MetricType.TIMER).toString()).isEqualTo("a:1|ms");
+    assertThat(encoder.reset().name("a").value(1L).type(MetricType.SET).toString()).isEqualTo("a:1|s");
+  }
+
+  @Test
+  public void sanitizesWhitespaceRuns() {
+    assertThat(encoder.reset().name("a b\t\n c").value("x  y").toString()).isEqualTo("a-b-c:x-y");
+  }
+
+  @Test
+  public void encodesUtf8() {
+    final String name = "caf\u00e9.\u20ac.\ud83d\ude00";
+    encoder.reset().name(name);
+
+    assertThat(encoder.toString()).isEqualTo(name);
+    assertThat(encoder.length()).isEqualTo(name.getBytes(StatsD.UTF_8).length);
+  }
+
+  @Test
+  public void growsForLongLines() {
+    final StringBuilder name = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      name.append('x');
+    }
+
+    assertThat(encoder.reset().name(name).value(1L).length()).isEqualTo(1002);
+  }
+
+  @Test
+  public void encodesSampleRatesWithoutTrailingZeros() {
+    assertThat(encoder.reset().name("a").value(1L).type(MetricType.COUNTER).sampleRate(0.1).toString())
+        .isEqualTo("a:1|c|@0.1");
+    assertThat(encoder.reset().name("a").value(1L).type(MetricType.TIMER).sampleRate(0.0625).toString())
+        .isEqualTo("a:1|ms|@0.0625");
+  }
+
+  @Test
+  public void appendsTagsAfterTheSampleRate() {
+    assertThat(encoder.reset().name("a").value(1L).type(MetricType.COUNTER).sampleRate(0.5)
+        .tags(Tags.of("env:prod")).toString()).isEqualTo("a:1|c|@0.5|#env:prod");
+    assertThat(encoder.reset().name("a").value(1L).type(MetricType.COUNTER).tags(Tags.NONE).toString())
+        .isEqualTo("a:1|c");
+  }
+
+  @Test
+  public void omitsASampleRateOfOne() {
+    assertThat(encoder.reset().name("a").value(1L).type(MetricType.COUNTER).sampleRate(1).toString())
+        .isEqualTo("a:1|c");
+  }
+
+  @Test
+  public void neverWritesASampleRateOfZero() {
+    assertThat(encoder.reset().name("a").value(1L).type(MetricType.TIMER).sampleRate(1e-12).toString())
+        .isEqualTo("a:1|ms|@0.000000001");
+  }
+}
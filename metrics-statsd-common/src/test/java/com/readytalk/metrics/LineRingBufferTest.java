@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class LineRingBufferTest {
+  private final LineRingBuffer queue = new LineRingBuffer(4, 8);
+  private final LineRingBuffer.Line line = new LineRingBuffer.Line(8);
+
+  @Test
+  public void roundsTheCapacityUpToAPowerOfTwo() {
+    assertThat(new LineRingBuffer(1, 8).capacity()).isEqualTo(1);
+    assertThat(new LineRingBuffer(3, 8).capacity()).isEqualTo(4);
+    assertThat(new LineRingBuffer(4, 8).capacity()).isEqualTo(4);
+    assertThat(new LineRingBuffer(1000, 8).capacity()).isEqualTo(1024);
+  }
+
+  @Test
+  public void returnsLinesInOrder() {
+    offer("a:1|g");
+    offer("b:2|g");
+
+    assertThat(poll()).isEqualTo("a:1|g");
+    assertThat(poll()).isEqualTo("b:2|g");
+    assertThat(queue.poll(line)).isFalse();
+  }
+
+  @Test
+  public void rejectsLinesWhenFull() {
+    for (int i = 0; i < 4; i++) {
+      assertThat(offer("line" + i)).isTrue();
+    }
+
+    assertThat(offer("line4")).isFalse();
+    assertThat(queue.size()).isEqualTo(4);
+    assertThat(poll()).isEqualTo("line0");
+  }
+
+  @Test
+  public void dropsTheOldestLine() {
+    for (int i = 0; i < 4; i++) {
+      offer("line" + i);
+    }
+
+    assertThat(queue.dropOldest()).isTrue();
+    assertThat(offer("line4")).isTrue();
+    assertThat(poll()).isEqualTo("line1");
+  }
+
+  @Test
+  public void growsSlotsForLongLines() {
+    final String longLine = "a-rather-long-metric-name:12345|g";
+    offer(longLine);
+
+    assertThat(poll()).isEqualTo(longLine);
+  }
+
+  @Test
+  public void handsOverEveryLineIntactBetweenThreads() throws Exception {
+    final LineRingBuffer shared = new LineRingBuffer(16, 8);
+    final int lines = 200000;
+    final AtomicReference<String> error = new AtomicReference<String>();
+
+    final Thread consumer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        final LineRingBuffer.Line received = new LineRingBuffer.Line(8);
+        int previous = -1;
+        while (previous < lines - 1) {
+          if (shared.poll(received)) {
+            final String s = new String(received.bytes(), 0, received.length(), StatsD.UTF_8);
+            final int n = Integer.parseInt(s.substring(0, s.indexOf(':')));
+            if (n <= previous || !s.equals(n + ":" + n + "|c")) {
+              error.set("received " + s + " after " + previous);
+              return;
+            }
+            previous = n;
+          }
+        }
+      }
+    });
+    consumer.start();
+
+    for (int i = 0; i < lines; i++) {
+      final byte[] bytes = (i + ":" + i + "|c").getBytes(StatsD.UTF_8);
+      while (!shared.offer(bytes, bytes.length)) {
+        shared.dropOldest();
+      }
+    }
+    consumer.join(10000);
+
+    assertThat(error.get()).isNull();
+    assertThat(consumer.isAlive()).isFalse();
+  }
+
+  private boolean offer(final String s) {
+    final byte[] bytes = s.getBytes(StatsD.UTF_8);
+    return queue.offer(bytes, bytes.length);
+  }
+
+  private String poll() {
+    assertThat(queue.poll(line)).isTrue();
+    return new String(line.bytes(), 0, line.length(), StatsD.UTF_8);
+  }
+}
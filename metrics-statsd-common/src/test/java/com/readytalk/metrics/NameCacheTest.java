@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class NameCacheTest {
+  private static final String[] SUFFIXES = {"min", "max"};
+
+  private final List<String> built = new ArrayList<String>();
+  private final NameCache.Namer<String> namer = new NameCache.Namer<String>() {
+    @Override
+    public String name(final String key, final String suffix) {
+      final String name = suffix.isEmpty() ? "prefix." + key : "prefix." + key + "." + suffix;
+      built.add(name);
+      return name;
+    }
+  };
+  private final NameCache<String> cache = new NameCache<String>(2, namer);
+
+  @Test
+  public void buildsOneNamePerSuffix() {
+    final EncodedName[] names = cache.get("timer one", SUFFIXES);
+
+    assertThat(names).containsExactly(EncodedName.of("prefix.timer-one.min"), EncodedName.of("prefix.timer-one.max"));
+  }
+
+  @Test
+  public void buildsNamesOnlyOnce() {
+    final EncodedName[] first = cache.get("timer", SUFFIXES);
+    final EncodedName[] second = cache.get("timer", SUFFIXES);
+
+    assertThat(second).isSameAs(first);
+    assertThat(built).hasSize(2);
+  }
+
+  @Test
+  public void rebuildsNamesForDifferentSuffixes() {
+    cache.get("metric", SUFFIXES);
+    final EncodedName[] names = cache.get("metric", NameCache.NO_SUFFIX);
+
+    assertThat(names).containsExactly(EncodedName.of("prefix.metric"));
+  }
+
+  @Test
+  public void remembersTheSelectionOfAMetric() {
+    final EmissionPlan.Layout layout = new EmissionPlan.Layout().add(EmissionPlan.Field.P99, "p99");
+    final EmissionPlan.Selection selection = EmissionPlan.ALL.compile(layout, layout, layout)
+        .select(EmissionPlan.Kind.TIMER);
+
+    assertThat(cache.selection("timer")).isNull();
+    assertThat(cache.get("timer", selection)).containsExactly(EncodedName.of("prefix.timer.p99"));
+    assertThat(cache.selection("timer")).isSameAs(selection);
+
+    cache.get("timer", SUFFIXES);
+    assertThat(cache.selection("timer")).isNull();
+  }
+
+  @Test
+  public void evictsMetricsWhichWereNotReported() {
+    cache.get("a", SUFFIXES);
+    cache.get("b", SUFFIXES);
+    cache.evictUnused();
+
+    cache.get("a", SUFFIXES);
+    cache.evictUnused();
+
+    assertThat(cache.size()).isEqualTo(1);
+    cache.get("a", SUFFIXES);
+    assertThat(built).hasSize(4);
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsedMetricsBeyondTheMaximumSize() {
+    cache.get("a", SUFFIXES);
+    cache.get("b", SUFFIXES);
+    cache.get("a", SUFFIXES);
+    cache.get("c", SUFFIXES);
+
+    assertThat(cache.size()).isEqualTo(2);
+
+    built.clear();
+    cache.get("a", SUFFIXES);
+    assertThat(built).isEmpty();
+    cache.get("b", SUFFIXES);
+    assertThat(built).hasSize(2);
+  }
+
+  @Test
+  public void tracksCountDeltas() {
+    cache.get("counter", NameCache.NO_SUFFIX);
+    assertThat(cache.delta("counter", 5)).isEqualTo(5);
+    assertThat(cache.delta("counter", 8)).isEqualTo(3);
+    assertThat(cache.delta("counter", 8)).isEqualTo(0);
+    assertThat(cache.delta("counter", 6)).isEqualTo(-2);
+  }
+
+  @Test
+  public void forgetsTheCountsOfEvictedMetrics() {
+    cache.get("counter", NameCache.NO_SUFFIX);
+    cache.delta("counter", 5);
+    cache.evictUnused();
+    cache.evictUnused();
+
+    cache.get("counter", NameCache.NO_SUFFIX);
+    assertThat(cache.delta("counter", 7)).isEqualTo(7);
+  }
+
+  @Test
+  public void keepsTheCountWhenSuffixesChange() {
+    cache.get("metric", NameCache.NO_SUFFIX);
+    cache.delta("metric", 5);
+    cache.get("metric", SUFFIXES);
+
+    assertThat(cache.delta("metric", 7)).isEqualTo(2);
+  }
+
+  @Test
+  public void reportsCountsOnlyWhenChangedOrOnHeartbeat() {
+    cache.get("timer", SUFFIXES);
+    assertThat(cache.shouldReport("timer", 1, 0, 100)).isTrue();
+    assertThat(cache.shouldReport("timer", 1, 50, 100)).isFalse();
+    assertThat(cache.shouldReport("timer", 2, 60, 100)).isTrue();
+    assertThat(cache.shouldReport("timer", 2, 159, 100)).isFalse();
+    assertThat(cache.shouldReport("timer", 2, 160, 100)).isTrue();
+  }
+
+  @Test
+  public void reportsFormattedValuesOnlyWhenChangedOrOnHeartbeat() {
+    final LineEncoder value = new LineEncoder();
+    cache.get("gauge", NameCache.NO_SUFFIX);
+    assertThat(cache.shouldReport("gauge", value.reset().value(1.001), 0, 100)).isTrue();
+    assertThat(cache.shouldReport("gauge", value.reset().value(1.002), 50, 100)).isFalse();
+    assertThat(cache.shouldReport("gauge", value.reset().value(10.0), 60, 100)).isTrue();
+    assertThat(cache.shouldReport("gauge", value.reset().value(1.0), 70, 100)).isTrue();
+    assertThat(cache.shouldReport("gauge", value.reset().value(1.0), 170, 100)).isTrue();
+  }
+
+  @Test
+  public void reportsEvictedMetricsAgain() {
+    cache.get("timer", SUFFIXES);
+    cache.shouldReport("timer", 1, 0, 100);
+    cache.evictUnused();
+    cache.evictUnused();
+
+    cache.get("timer", SUFFIXES);
+    assertThat(cache.shouldReport("timer", 1, 10, 100)).isTrue();
+  }
+
+  @Test
+  public void reusesSnapshotValuesWhileTheCountIsUnchanged() {
+    cache.get("timer", SUFFIXES);
+    assertThat(cache.cachedSnapshot("timer", 1)).isNull();
+
+    final double[] values = cache.snapshotBuffer("timer", 1, 2);
+    values[0] = 3.0;
+    values[1] = 4.0;
+
+    assertThat(cache.cachedSnapshot("timer", 1)).isSameAs(values).containsOnly(3.0, 4.0);
+    assertThat(cache.cachedSnapshot("timer", 2)).isNull();
+    assertThat(cache.snapshotBuffer("timer", 2, 2)).isSameAs(values);
+  }
+
+  @Test
+  public void keepsTheStateOfMoreMetricsThanTheMaximumSize() {
+    final String[] keys = {"a", "b", "c"};
+    final double[][] buffers = new double[keys.length][];
+    for (int report = 1; report <= 3; report++) {
+      for (int i = 0; i < keys.length; i++) {
+        cache.get(keys[i], NameCache.NO_SUFFIX);
+        assertThat(cache.delta(keys[i], 100 * report)).isEqualTo(100);
+        assertThat(cache.shouldReport(keys[i], 1, report, 100)).isEqualTo(report == 1);
+        if (report == 1) {
+          buffers[i] = cache.snapshotBuffer(keys[i], 1, 2);
+        } else {
+          assertThat(cache.cachedSnapshot(keys[i], 1)).isSameAs(buffers[i]);
+        }
+      }
+      cache.evictUnused();
+    }
+
+    assertThat(cache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void forgetsTheStateOfMetricsWhichWereNotReported() {
+    cache.delta("counter", 5);
+    cache.evictUnused();
+    cache.evictUnused();
+
+    assertThat(cache.delta("counter", 7)).isEqualTo(7);
+  }
+
+  @Test
+  public void keepsTheStateOfOtherMetricsWhenReusingFreedSlots() {
+    for (int i = 0; i < 100; i++) {
+      cache.delta("old" + i, 5);
+    }
+    cache.delta("kept", 5);
+    cache.evictUnused();
+    cache.delta("kept", 6);
+    cache.evictUnused();
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(cache.delta("new" + i, 3)).isEqualTo(3);
+    }
+    assertThat(cache.delta("kept", 10)).isEqualTo(4);
+    assertThat(cache.delta("new7", 8)).isEqualTo(5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveSizes() {
+    new NameCache<String>(0, namer);
+  }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class NumberFormatterTest {
+  private final byte[] buffer = new byte[NumberFormatter.MAX_DOUBLE_LENGTH + NumberFormatter.MAX_DECIMALS + 1];
+
+  @Test
+  public void formatsLongs() {
+    final long[] values = {0, 7, -7, 10, 99, 100, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE};
+    for (long value : values) {
+      assertThat(format(value)).isEqualTo(Long.toString(value));
+    }
+  }
+
+  @Test
+  public void formatsDoublesLikeStringFormatAtEveryPrecision() {
+    final double[] values = {0, 1.1, 2, 0.5, 0.125, 0.999, 12345.678, -3.14159, -0.001, 0.0004, 987654.321,
+        Double.NaN, Double.NEGATIVE_INFINITY, 1e20, -1e300};
+    for (int decimals = 0; decimals <= NumberFormatter.MAX_DECIMALS; decimals++) {
+      for (double value : values) {
+        assertThat(format(value, decimals))
+            .as(value + " to " + decimals + " decimals")
+            .isEqualTo(String.format(Locale.US, "%." + decimals + "f", value));
+      }
+    }
+  }
+
+  @Test
+  public void keepsSmallValuesWithEnoughDecimals() {
+    assertThat(format(0.00042, 2)).isEqualTo("0.00");
+    assertThat(format(0.00042, 4)).isEqualTo("0.0004");
+    assertThat(format(0.00042, 6)).isEqualTo("0.000420");
+  }
+
+  @Test
+  public void carriesRoundingIntoTheIntegerPart() {
+    assertThat(format(0.99999, 4)).isEqualTo("1.0000");
+    assertThat(format(-9.6, 0)).isEqualTo("-10");
+    assertThat(format(99.999, 2)).isEqualTo("100.00");
+  }
+
+  @Test
+  public void writesAtTheGivenOffset() {
+    buffer[0] = 'x';
+    final int end = NumberFormatter.format(1.5, 1, buffer, 1);
+
+    assertThat(new String(buffer, 0, end, StatsD.UTF_8)).isEqualTo("x1.5");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeDecimals() {
+    format(1.0, -1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsTooManyDecimals() {
+    format(1.0, NumberFormatter.MAX_DECIMALS + 1);
+  }
+
+  private String format(final long value) {
+    return new String(buffer, 0, NumberFormatter.format(value, buffer, 0), StatsD.UTF_8);
+  }
+
+  private String format(final double value, final int decimals) {
+    return new String(buffer, 0, NumberFormatter.format(value, decimals, buffer, 0), StatsD.UTF_8);
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ObjectIntMapTest {
+  private final ObjectIntMap<Object> map = new ObjectIntMap<Object>();
+
+  @Test
+  public void returnsMissingForUnknownKeys() {
+    map.put("a", 1);
+
+    assertThat(map.get("b")).isEqualTo(ObjectIntMap.MISSING);
+    assertThat(map.remove("b")).isEqualTo(ObjectIntMap.MISSING);
+    assertThat(map.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void replacesTheValueOfAKnownKey() {
+    map.put("a", 1);
+    map.put("a", 2);
+
+    assertThat(map.get("a")).isEqualTo(2);
+    assertThat(map.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void keepsEveryKeyWhenItGrows() {
+    for (int i = 0; i < 1000; i++) {
+      map.put("key" + i, i);
+    }
+
+    assertThat(map.size()).isEqualTo(1000);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(map.get("key" + i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void findsCollidingKeysAfterRemovingOneOfThem() {
+    final Object first = new Colliding(1);
+    final Object second = new Colliding(2);
+    final Object third = new Colliding(3);
+    map.put(first, 1);
+    map.put(second, 2);
+    map.put(third, 3);
+
+    assertThat(map.remove(first)).isEqualTo(1);
+
+    assertThat(map.get(first)).isEqualTo(ObjectIntMap.MISSING);
+    assertThat(map.get(second)).isEqualTo(2);
+    assertThat(map.get(third)).isEqualTo(3);
+    assertThat(map.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void agreesWithAHashMapUnderRandomUpdates() {
+    final Map<Object, Integer> expected = new HashMap<Object, Integer>();
+    final Random random = new Random(42);
+    for (int i = 0; i < 20000; i++) {
+      final Object key = new Colliding(random.nextInt(200));
+      if (random.nextInt(3) == 0) {
+        final Integer removed = expected.remove(key);
+        assertThat(map.remove(key)).isEqualTo(removed == null ? ObjectIntMap.MISSING : removed);
+      } else {
+        map.put(key, i);
+        expected.put(key, i);
+      }
+    }
+
+    assertThat(map.size()).isEqualTo(expected.size());
+    for (int k = 0; k < 200; k++) {
+      final Integer value = expected.get(new Colliding(k));
+      assertThat(map.get(new Colliding(k))).isEqualTo(value == null ? ObjectIntMap.MISSING : value);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNegativeValues() {
+    map.put("a", -1);
+  }
+
+  /**
+   * A key whose hash code puts a few keys on the same slot.
+   */
+  private static final class Colliding {
+    private final int id;
+
+    private Colliding(final int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof Colliding && ((Colliding) o).id == id;
+    }
+
+    @Override
+    public int hashCode() {
+      return id / 8;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ReportProfilerTest {
+  private final ReportProfiler<String> profiler = new ReportProfiler<String>(2, 1, TimeUnit.SECONDS);
+
+  @Test
+  public void keepsTheSlowestEvaluationsSlowestFirst() {
+    profiler.startCycle();
+    record("a", 10);
+    record("b", 30);
+    record("c", 20);
+    record("d", 5);
+    profiler.endCycle();
+
+    assertThat(keys(profiler.getSlowest())).containsExactly("b", "c");
+    assertThat(profiler.getSlowest().get(0).getNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+    assertThat(profiler.getOverThreshold()).isEmpty();
+  }
+
+  @Test
+  public void keepsEveryEvaluationOverTheThreshold() {
+    profiler.startCycle();
+    record("a", 1500);
+    record("b", 10);
+    record("c", 2000);
+    record("d", 1200);
+    profiler.endCycle();
+
+    assertThat(keys(profiler.getOverThreshold())).containsExactly("a", "c", "d");
+    assertThat(keys(profiler.getSlowest())).containsExactly("c", "a");
+  }
+
+  @Test
+  public void publishesOnlyCompletedCycles() {
+    profiler.startCycle();
+    record("a", 10);
+    profiler.endCycle();
+
+    profiler.startCycle();
+    record("b", 10);
+
+    assertThat(keys(profiler.getSlowest())).containsExactly("a");
+  }
+
+  @Test
+  public void recordsWhatWasEvaluated() {
+    profiler.startCycle();
+    profiler.record("a", ReportProfiler.Kind.SNAPSHOT, profiler.start());
+    profiler.endCycle();
+
+    assertThat(profiler.getSlowest().get(0).getKind()).isEqualTo(ReportProfiler.Kind.SNAPSHOT);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveTopN() {
+    new ReportProfiler<String>(0, 1, TimeUnit.SECONDS);
+  }
+
+  private void record(final String key, final long millis) {
+    profiler.record(key, ReportProfiler.Kind.GAUGE, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+
+  private static List<String> keys(final List<ReportProfiler.Timing<String>> timings) {
+    final List<String> keys = new ArrayList<String>();
+    for (ReportProfiler.Timing<String> timing : timings) {
+      keys.add(timing.getKey());
+    }
+    return keys;
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class ReporterMetricsTest {
+  private static final long SEND_MILLIS = 50;
+
+  private final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 8125);
+  private final List<Long> sends = new ArrayList<Long>();
+  private final List<Long> encodes = new ArrayList<Long>();
+
+  private final TransportFactory slowTransport = new TransportFactory() {
+    @Override
+    public Transport createTransport() {
+      return new Transport() {
+        @Override
+        public void connect(final SocketAddress socketAddress) {
+        }
+
+        @Override
+        public boolean send(final byte[] bytes, final int length) {
+          try {
+            Thread.sleep(SEND_MILLIS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return true;
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+  };
+
+  @Test
+  public void recordsTheTimeOfEachSend() throws Exception {
+    final StatsD statsD = new StatsD(address, slowTransport, StatsD.DEFAULT_MAX_PACKET_SIZE);
+    final ReporterMetrics metrics = new RecordingMetrics(statsD);
+
+    metrics.startCycle();
+    statsD.connect();
+    statsD.send("a", 1L);
+    statsD.flush();
+    metrics.endCycle();
+
+    assertThat(sends).hasSize(1);
+    assertThat(sends.get(0)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(SEND_MILLIS));
+  }
+
+  @Test
+  public void excludesSendsFromTheEncodeTime() throws Exception {
+    final StatsD statsD = new StatsD(address, slowTransport, StatsD.DEFAULT_MAX_PACKET_SIZE);
+    final ReporterMetrics metrics = new RecordingMetrics(statsD);
+
+    metrics.startCycle();
+    statsD.connect();
+    statsD.send("a", 1L);
+    statsD.flush();
+    metrics.endCycle();
+
+    assertThat(encodes).hasSize(1);
+    assertThat(encodes.get(0)).isLessThan(TimeUnit.MILLISECONDS.toNanos(SEND_MILLIS));
+  }
+
+  @Test
+  public void recordsSendsOfOtherClientsWithoutCountingThemAgainstTheCycle() throws Exception {
+    final StatsD statsD = new StatsD(address, slowTransport, StatsD.DEFAULT_MAX_PACKET_SIZE);
+    final StatsD other = new StatsD(address, slowTransport, StatsD.DEFAULT_MAX_PACKET_SIZE);
+    final ReporterMetrics metrics = new RecordingMetrics(statsD);
+    metrics.listenTo(other);
+
+    metrics.startCycle();
+    other.connect();
+    other.send("a", 1L);
+    other.flush();
+    metrics.endCycle();
+
+    assertThat(sends).hasSize(1);
+    assertThat(encodes.get(0)).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(SEND_MILLIS));
+  }
+
+  private final class RecordingMetrics extends ReporterMetrics {
+    private RecordingMetrics(final StatsD statsD) {
+      super(statsD);
+    }
+
+    @Override
+    protected void recordSend(final long nanos) {
+      sends.add(nanos);
+    }
+
+    @Override
+    protected void recordEncode(final long nanos) {
+      encodes.add(nanos);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.fest.assertions.api.Assertions.fail;
+import static org.fest.assertions.data.Offset.offset;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ShardedStatsDTest {
+  private final StatsD first = shard("first", 8125);
+  private final StatsD second = shard("second", 8125);
+  private final ShardedStatsD statsD = new ShardedStatsD(Arrays.asList(first, second));
+
+  @Test
+  public void sendsEachNameToOneShard() throws Exception {
+    int toFirst = 0;
+    for (int i = 0; i < 100; i++) {
+      final EncodedName name = EncodedName.of("metric" + i);
+      final StatsD shard = statsD.shardFor(name);
+      statsD.send(name, (long) i);
+
+      verify(shard).send(name, (long) i);
+      verify(shard == first ? second : first, never()).send(name, (long) i);
+      toFirst += shard == first ? 1 : 0;
+    }
+    assertThat(toFirst).isGreaterThan(0).isLessThan(100);
+  }
+
+  @Test
+  public void routesStringAndEncodedNamesAlike() throws Exception {
+    for (int i = 0; i < 100; i++) {
+      assertThat(statsD.shardFor("metric " + i)).isSameAs(statsD.shardFor(EncodedName.of("metric " + i)));
+    }
+  }
+
+  @Test
+  public void connectsFlushesAndClosesEveryShard() throws Exception {
+    statsD.connect();
+    statsD.flush();
+    statsD.close();
+
+    verify(first).connect();
+    verify(second).connect();
+    verify(first).flush();
+    verify(second).flush();
+    verify(first).close();
+    verify(second).close();
+  }
+
+  @Test
+  public void connectsTheOtherShardsWhenOneFails() throws Exception {
+    final IOException failure = new IOException("unreachable");
+    doThrow(failure).when(first).connect();
+
+    try {
+      statsD.connect();
+      fail("expected the connect failure");
+    } catch (IOException e) {
+      assertThat(e).isSameAs(failure);
+    }
+    verify(second).connect();
+  }
+
+  @Test
+  public void sumsTheCountersOfTheShards() throws Exception {
+    when(first.getSentLines()).thenReturn(3L);
+    when(second.getSentLines()).thenReturn(4L);
+    when(first.getSentPackets()).thenReturn(1L);
+    when(second.getSentPackets()).thenReturn(3L);
+    when(first.getAverageFillRatio()).thenReturn(1.0);
+    when(second.getAverageFillRatio()).thenReturn(0.2);
+
+    assertThat(statsD.getSentLines()).isEqualTo(7);
+    assertThat(statsD.getSentPackets()).isEqualTo(4);
+    assertThat(statsD.getAverageFillRatio()).isEqualTo(0.4, offset(1e-9));
+  }
+
+  @Test
+  public void reportsTheFailuresOfTheWorstShard() throws Exception {
+    when(first.getFailures()).thenReturn(2);
+    when(second.getFailures()).thenReturn(3);
+    when(first.getTotalFailures()).thenReturn(5L);
+    when(second.getTotalFailures()).thenReturn(4L);
+
+    assertThat(statsD.getFailures()).isEqualTo(3);
+    assertThat(statsD.getTotalFailures()).isEqualTo(9);
+  }
+
+  @Test
+  public void listensToEveryShard() throws Exception {
+    final PacketListener listener = mock(PacketListener.class);
+
+    statsD.setPacketListener(listener);
+
+    verify(first).setPacketListener(listener);
+    verify(second).setPacketListener(listener);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsShardsWithTheSameAddress() throws Exception {
+    new ShardedStatsD(Arrays.asList(first, shard("first", 8125)));
+  }
+
+  private static StatsD shard(final String host, final int port) {
+    final StatsD shard = mock(StatsD.class);
+    when(shard.getAddressResolver()).thenReturn(new AddressResolver(host, port));
+    return shard;
+  }
+}
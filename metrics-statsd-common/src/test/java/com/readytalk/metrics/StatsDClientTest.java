@@ -0,0 +1,372 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class StatsDClientTest {
+  private final InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 8125);
+  private final List<String> lines = new ArrayList<String>();
+  private StatsDClient client;
+
+  private final TransportFactory transportFactory = new TransportFactory() {
+    @Override
+    public Transport createTransport() {
+      return new Transport() {
+        @Override
+        public void connect(final SocketAddress socketAddress) {
+        }
+
+        @Override
+        public boolean send(final byte[] bytes, final int length) {
+          synchronized (lines) {
+            lines.addAll(Arrays.asList(new String(bytes, 0, length, StatsD.UTF_8).split("\n")));
+          }
+          return true;
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+  };
+
+  @Before
+  public void setUp() {
+    client = StatsDClient.builder()
+        .prefixedWith("app")
+        .withFlushInterval(0, TimeUnit.SECONDS)
+        .withTimerSampleSize(4)
+        .build(new StatsD(address, transportFactory, StatsD.DEFAULT_MAX_PACKET_SIZE));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    client.close();
+  }
+
+  @Test
+  public void sendsSummedCountsAsCounters() {
+    client.increment("requests");
+    client.increment("requests");
+    client.count("requests", 5);
+    client.count("bytes", 1024);
+    client.flush();
+
+    assertThat(lines).containsOnly("app.requests:7|c", "app.bytes:1024|c");
+  }
+
+  @Test
+  public void onlySendsCountsRecordedSinceThePreviousFlush() {
+    client.increment("requests");
+    client.flush();
+    lines.clear();
+
+    client.flush();
+    assertThat(lines).isEmpty();
+
+    client.count("requests", 2);
+    client.flush();
+    assertThat(lines).containsExactly("app.requests:2|c");
+  }
+
+  @Test
+  public void sendsEveryDurationBelowTheSampleSize() {
+    client.time("latency", 5, TimeUnit.MILLISECONDS);
+    client.time("latency", 2, TimeUnit.SECONDS);
+    client.flush();
+
+    assertThat(lines).containsExactly("app.latency:5|ms", "app.latency:2000|ms");
+  }
+
+  @Test
+  public void sendsASampleOfDurationsWithItsSampleRate() {
+    for (int i = 0; i < 16; i++) {
+      client.time("latency", i, TimeUnit.MILLISECONDS);
+    }
+    client.flush();
+
+    assertThat(lines).hasSize(4);
+    for (String line : lines) {
+      assertThat(line).matches("app\\.latency:\\d+\\|ms\\|@0\\.25");
+    }
+  }
+
+  @Test
+  public void sendsSampledCountsWithTheirSampleRate() {
+    for (int i = 0; i < 1000; i++) {
+      client.increment("requests", 0.5);
+    }
+    client.increment("requests");
+    client.count("requests", 2, 1);
+    client.flush();
+
+    assertThat(lines).hasSize(2);
+    assertThat(lines).contains("app.requests:3|c");
+    for (String line : lines) {
+      assertThat(line).matches("app\\.requests:(3\\|c|\\d{3}\\|c\\|@0\\.5)");
+    }
+  }
+
+  @Test
+  public void appendsGlobalTagsAndTheTagsOfMatchingPatterns() throws Exception {
+    client.close();
+    client = StatsDClient.builder()
+        .withFlushInterval(0, TimeUnit.SECONDS)
+        .withGlobalTags("env:prod")
+        .withTagsFor("db\\..*", "tier:db")
+        .build(new StatsD(address, transportFactory, StatsD.DEFAULT_MAX_PACKET_SIZE));
+
+    client.increment("db.queries");
+    client.increment("requests");
+    client.flush();
+
+    assertThat(lines).containsOnly("db.queries:1|c|#env:prod,tier:db", "requests:1|c|#env:prod");
+  }
+
+  @Test
+  public void samplesNamesMatchingAPattern() throws IOException {
+    client.close();
+    client = StatsDClient.builder()
+        .withFlushInterval(0, TimeUnit.SECONDS)
+        .withSampleRate("db\\..*", 0.1)
+        .build(new StatsD(address, transportFactory, StatsD.DEFAULT_MAX_PACKET_SIZE));
+
+    for (int i = 0; i < 10000; i++) {
+      client.increment("db.queries");
+      client.increment("requests");
+    }
+    client.flush();
+
+    assertThat(lines).hasSize(2);
+    assertThat(lines).contains("requests:10000|c");
+    for (String line : lines) {
+      assertThat(line).matches("requests:10000\\|c|db\\.queries:\\d{3,4}\\|c\\|@0\\.1");
+    }
+  }
+
+  @Test
+  public void combinesCallAndReservoirSampleRatesOfDurations() {
+    for (int i = 0; i < 1000; i++) {
+      client.time("latency", i, TimeUnit.MILLISECONDS, 0.5);
+    }
+    client.flush();
+
+    assertThat(lines).isNotEmpty();
+    final String rate = lines.get(0).substring(lines.get(0).indexOf('@') + 1);
+    assertThat(Double.parseDouble(rate)).isLessThan(0.5 * 4 / 400).isGreaterThan(0.5 * 4 / 600);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsSampleRatesAboveOne() {
+    client.increment("requests", 1.5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsSampleRatesOfZero() {
+    client.time("latency", 1, TimeUnit.MILLISECONDS, 0);
+  }
+
+  @Test
+  public void sendsTheLatestGaugeValueOnceUpdated() {
+    client.gauge("queue", 3);
+    client.gauge("queue", 4);
+    client.gauge("ratio", 0.5);
+    client.flush();
+
+    assertThat(lines).containsOnly("app.queue:4|g", "app.ratio:0.50|g");
+
+    lines.clear();
+    client.flush();
+    assertThat(lines).isEmpty();
+  }
+
+  @Test
+  public void resetsNegativeGaugesToZeroFirst() {
+    client.gauge("balance", -5);
+    client.gauge("delta", -0.25);
+    client.flush();
+
+    assertThat(lines).containsOnly("app.balance:0|g", "app.balance:-5|g", "app.delta:0|g", "app.delta:-0.25|g");
+    assertThat(lines.indexOf("app.balance:-5|g")).isEqualTo(lines.indexOf("app.balance:0|g") + 1);
+    assertThat(lines.indexOf("app.delta:-0.25|g")).isEqualTo(lines.indexOf("app.delta:0|g") + 1);
+  }
+
+  @Test
+  public void losesNoSetMembersOrDurationsRecordedDuringAFlush() throws Exception {
+    client.close();
+    client = StatsDClient.builder()
+        .withFlushInterval(0, TimeUnit.SECONDS)
+        .withTimerSampleSize(1 << 16)
+        .build(new StatsD(address, transportFactory, StatsD.DEFAULT_MAX_PACKET_SIZE));
+    final int threads = 4;
+    final int measurements = 5000;
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      final int thread = i;
+      new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < measurements; j++) {
+            client.set("users", thread + "-" + j);
+            client.time("latency", j, TimeUnit.MILLISECONDS);
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+    while (!done.await(100, TimeUnit.MICROSECONDS)) {
+      client.flush();
+    }
+    client.flush();
+
+    int members = 0;
+    int durations = 0;
+    for (String line : lines) {
+      members += line.startsWith("users:") ? 1 : 0;
+      durations += line.startsWith("latency:") && line.endsWith("|ms") ? 1 : 0;
+    }
+    assertThat(members).isEqualTo(threads * measurements);
+    assertThat(durations).isEqualTo(threads * measurements);
+  }
+
+  @Test
+  public void forgetsNamesWhichStayedIdle() throws IOException {
+    client.close();
+    client = StatsDClient.builder()
+        .withFlushInterval(0, TimeUnit.SECONDS)
+        .withIdleEviction(2)
+        .build(new StatsD(address, transportFactory, StatsD.DEFAULT_MAX_PACKET_SIZE));
+    client.increment("requests");
+    client.gauge("queue", 1);
+    client.set("users", "alice");
+    client.time("latency", 5, TimeUnit.MILLISECONDS);
+    client.flush();
+    client.increment("requests");
+    client.flush();
+    assertThat(client.getNameCount()).isEqualTo(4);
+
+    client.flush();
+    assertThat(client.getNameCount()).isEqualTo(1);
+    client.flush();
+    assertThat(client.getNameCount()).isZero();
+
+    lines.clear();
+    client.increment("requests");
+    client.flush();
+    assertThat(lines).containsOnly("requests:1|c");
+    assertThat(client.getNameCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void keepsIdleNamesWhenEvictionIsDisabled() throws IOException {
+    client.close();
+    client = StatsDClient.builder()
+        .withFlushInterval(0, TimeUnit.SECONDS)
+        .withIdleEviction(0)
+        .build(new StatsD(address, transportFactory, StatsD.DEFAULT_MAX_PACKET_SIZE));
+    client.increment("requests");
+    for (int i = 0; i < StatsDClient.DEFAULT_IDLE_FLUSHES + 1; i++) {
+      client.flush();
+    }
+
+    assertThat(client.getNameCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void sendsDistinctSetMembers() {
+    client.set("users", "alice");
+    client.set("users", "bob");
+    client.set("users", "alice");
+    client.flush();
+
+    assertThat(lines).containsOnly("app.users:alice|s", "app.users:bob|s");
+    assertThat(lines).hasSize(2);
+  }
+
+  @Test
+  public void aggregatesConcurrentIncrements() throws Exception {
+    final int threads = 8;
+    final int increments = 10000;
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < increments; j++) {
+            client.increment("requests");
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+    done.await();
+    client.flush();
+
+    assertThat(lines).containsExactly("app.requests:" + threads * increments + "|c");
+  }
+
+  @Test
+  public void flushesFromTheBackgroundThread() throws Exception {
+    client.close();
+    client = StatsDClient.builder()
+        .withFlushInterval(10, TimeUnit.MILLISECONDS)
+        .build(new StatsD(address, transportFactory, StatsD.DEFAULT_MAX_PACKET_SIZE));
+
+    client.increment("requests");
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (System.nanoTime() < deadline) {
+      synchronized (lines) {
+        if (!lines.isEmpty()) {
+          break;
+        }
+      }
+      Thread.sleep(5);
+    }
+
+    synchronized (lines) {
+      assertThat(lines).containsExactly("requests:1|c");
+    }
+  }
+
+  @Test
+  public void flushesWhenClosed() throws IOException {
+    client.increment("requests");
+    client.close();
+
+    assertThat(lines).containsExactly("app.requests:1|c");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveTimerSampleSize() {
+    StatsDClient.builder().withTimerSampleSize(0).build(new StatsD(address, transportFactory, 1432));
+  }
+}
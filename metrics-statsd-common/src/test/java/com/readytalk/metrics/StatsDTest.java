@@ -18,15 +18,28 @@ package com.readytalk.metrics;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.fest.assertions.api.Assertions.assertThat;
-import static org.fest.assertions.api.Fail.failBecauseExceptionWasNotThrown;
+import static org.fest.assertions.api.Assertions.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -37,15 +50,25 @@ public class StatsDTest {
 
   private final DatagramSocket socket = mock(DatagramSocket.class);
 
-  private final ArgumentCaptor<byte[]> bytesCaptor = ArgumentCaptor.forClass(byte[].class);
+  private final List<String> packets = new ArrayList<String>();
   private final ArgumentCaptor<InetSocketAddress> addressCaptor = ArgumentCaptor.forClass(InetSocketAddress.class);
 
   @Before
   public void setUp() throws Exception {
     when(socketFactory.createSocket()).thenReturn(socket);
 
-    when(socketFactory.createPacket(bytesCaptor.capture(), anyInt(),
+    when(socketFactory.createPacket(any(byte[].class), anyInt(),
         addressCaptor.capture())).thenCallRealMethod();
+
+    // Packet buffers are reused, so record the payload at the time it is sent.
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) throws Throwable {
+        final DatagramPacket packet = (DatagramPacket) invocation.getArguments()[0];
+        packets.add(new String(packet.getData(), packet.getOffset(), packet.getLength(), "UTF-8"));
+        return null;
+      }
+    }).when(socket).send(any(DatagramPacket.class));
   }
 
   @Test
@@ -69,45 +92,424 @@ public class StatsDTest {
   }
 
   @Test
-  public void doesNotAllowDoubleConnections() throws Exception {
+  public void connectsTheSocketToTheServer() throws Exception {
     statsD.connect();
-    try {
-      statsD.connect();
-      failBecauseExceptionWasNotThrown(IllegalStateException.class);
-    } catch (IllegalStateException e) {
-      assertThat(e.getMessage()).isEqualTo("Already connected");
-    }
+
+    verify(socket).connect(address);
+  }
+
+  @Test
+  public void keepsTheConnectionAcrossCalls() throws Exception {
+    statsD.connect();
+    statsD.connect();
+
+    verify(socketFactory).createSocket();
+    verify(socket, never()).close();
+  }
+
+  @Test
+  public void reconnectsAfterClosing() throws Exception {
+    statsD.connect();
+    statsD.close();
+    statsD.connect();
+
+    verify(socketFactory, times(2)).createSocket();
+  }
+
+  @Test
+  public void reconnectsAfterAFailedSend() throws Exception {
+    statsD.connect();
+    doThrow(new IOException()).doNothing().when(socket).send(any(DatagramPacket.class));
+
+    statsD.send("a", 1L);
+    statsD.flush();
+
+    assertThat(statsD.getFailures()).isEqualTo(1);
+    verify(socket).close();
+
+    statsD.send("b", 2L);
+    statsD.flush();
+
+    // The first write through the new socket is only confirmed by the next one.
+    assertThat(statsD.getFailures()).isEqualTo(1);
+    statsD.send("c", 3L);
+    statsD.flush();
+
+    assertThat(statsD.getFailures()).isZero();
+    verify(socketFactory, times(2)).createSocket();
+  }
+
+  @Test
+  public void keepsCountingFailuresAfterASuccessfulSend() throws Exception {
+    statsD.connect();
+    doThrow(new IOException()).doNothing().when(socket).send(any(DatagramPacket.class));
+
+    statsD.send("a", 1L);
+    statsD.flush();
+    statsD.send("b", 2L);
+    statsD.flush();
+    statsD.send("c", 3L);
+    statsD.flush();
+
+    assertThat(statsD.getFailures()).isZero();
+    assertThat(statsD.getTotalFailures()).isEqualTo(1);
+  }
+
+  @Test
+  public void countsSentLinesPacketsAndBytes() throws Exception {
+    final StatsD small = new StatsD(address, socketFactory, 12);
+    small.connect();
+    small.send("a", 1L);
+    small.send("b", 2L);
+    small.send("c", 3L);
+    small.flush();
+
+    assertThat(packets).containsExactly("a:1|g\nb:2|g", "c:3|g");
+    assertThat(small.getSentLines()).isEqualTo(3);
+    assertThat(small.getSentPackets()).isEqualTo(2);
+    assertThat(small.getSentBytes()).isEqualTo(16);
+    assertThat(small.getAverageFillRatio()).isEqualTo(16.0 / 24);
+  }
+
+  @Test
+  public void tellsThePacketListenerAboutSentPackets() throws Exception {
+    final List<String> sent = new ArrayList<String>();
+    statsD.setPacketListener(new PacketListener() {
+      @Override
+      public void packetSent(final int lines, final int bytes, final long nanos) {
+        sent.add(lines + "/" + bytes);
+        assertThat(nanos).isGreaterThanOrEqualTo(0);
+      }
+    });
+    statsD.connect();
+    statsD.send("a", 1L);
+    statsD.send("b", 2L);
+    statsD.flush();
+
+    assertThat(sent).containsExactly("2/11");
   }
 
   @Test
   public void writesValuesToStatsD() throws Exception {
     statsD.connect();
     statsD.send("name", "value");
+    statsD.flush();
 
-    assertThat(new String(bytesCaptor.getValue())).isEqualTo("name:value|g");
+    assertThat(packet()).isEqualTo("name:value|g");
   }
 
   @Test
   public void sanitizesNames() throws Exception {
     statsD.connect();
     statsD.send("name woo", "value");
+    statsD.flush();
 
-    assertThat(new String(bytesCaptor.getValue())).isEqualTo("name-woo:value|g");
+    assertThat(packet()).isEqualTo("name-woo:value|g");
   }
 
   @Test
   public void sanitizesValues() throws Exception {
     statsD.connect();
     statsD.send("name", "value woo");
+    statsD.flush();
+
+    assertThat(packet()).isEqualTo("name:value-woo|g");
+  }
+
+  @Test
+  public void writesLongValuesToStatsD() throws Exception {
+    statsD.connect();
+    statsD.send("name", 42L);
+    statsD.flush();
+
+    assertThat(packet()).isEqualTo("name:42|g");
+  }
+
+  @Test
+  public void writesDoubleValuesToStatsD() throws Exception {
+    statsD.connect();
+    statsD.send("name", 1.1);
+    statsD.flush();
+
+    assertThat(packet()).isEqualTo("name:1.10|g");
+  }
+
+  @Test
+  public void writesPreEncodedNamesToStatsD() throws Exception {
+    statsD.connect();
+    statsD.send(EncodedName.of("name woo"), 42L);
+    statsD.send(EncodedName.of("name"), 1.5);
+    statsD.send(EncodedName.of("name"), "value");
+    statsD.flush();
+
+    assertThat(packet()).isEqualTo("name-woo:42|g\nname:1.50|g\nname:value|g");
+  }
+
+  @Test
+  public void writesTheGivenType() throws Exception {
+    statsD.connect();
+    statsD.send("counter", 3L, MetricType.COUNTER);
+    statsD.send(EncodedName.of("timer"), 12L, MetricType.TIMER);
+    statsD.flush();
+
+    assertThat(packet()).isEqualTo("counter:3|c\ntimer:12|ms");
+  }
+
+  @Test
+  public void writesTheGivenSampleRate() throws Exception {
+    statsD.connect();
+    statsD.send("counter", 3L, MetricType.COUNTER, 0.1);
+    statsD.send(EncodedName.of("timer"), 12L, MetricType.TIMER, 0.25);
+    statsD.send("unsampled", 1L, MetricType.COUNTER, 1);
+    statsD.flush();
+
+    assertThat(packet()).isEqualTo("counter:3|c|@0.1\ntimer:12|ms|@0.25\nunsampled:1|c");
+  }
+
+  @Test
+  public void writesFloatingPointDistributionsWithTheGivenSampleRate() throws Exception {
+    statsD.connect();
+    statsD.send(EncodedName.of("latency"), 12.345, 2, MetricType.DISTRIBUTION, 0.5);
+    statsD.send(EncodedName.of("latency"), 1.5, 1, MetricType.TIMER, 1);
+    statsD.flush();
+
+    assertThat(packet()).isEqualTo("latency:12.35|d|@0.5\nlatency:1.5|ms");
+  }
+
+  @Test
+  public void appendsTheTagsOfPreEncodedNames() throws Exception {
+    statsD.connect();
+    final EncodedName timer = EncodedName.of("timer", Tags.of("env:prod", "canary"));
+    statsD.send(timer, 12L, MetricType.TIMER, 0.25);
+    statsD.send(timer, 1.5, 1);
+    statsD.send(EncodedName.of("untagged"), 1L);
+    statsD.flush();
 
-    assertThat(new String(bytesCaptor.getValue())).isEqualTo("name:value-woo|g");
+    assertThat(packet()).isEqualTo("timer:12|ms|@0.25|#env:prod,canary\ntimer:1.5|g|#env:prod,canary\nuntagged:1|g");
+  }
+
+  @Test
+  public void countsTagsTowardsThePacketSize() throws Exception {
+    final StatsD small = new StatsD(address, socketFactory, 24);
+    small.connect();
+    final EncodedName name = EncodedName.of("a", Tags.of("k:v"));
+    small.send(name, 1L);
+    small.send(name, 2L);
+
+    verify(socket, never()).send(any(DatagramPacket.class));
+
+    small.send(name, 3L);
+
+    verify(socket).send(any(DatagramPacket.class));
+    assertThat(packet()).isEqualTo("a:1|g|#k:v\na:2|g|#k:v");
+  }
+
+  @Test
+  public void reusesThePacketAcrossFlushes() throws Exception {
+    statsD.connect();
+    statsD.send("a", 1L);
+    statsD.flush();
+    statsD.send("b", 2L);
+    statsD.flush();
+
+    verify(socketFactory).createPacket(any(byte[].class), anyInt(), any(InetSocketAddress.class));
+    assertThat(packets).containsExactly("a:1|g", "b:2|g");
+  }
+
+  @Test
+  public void countsPacketsDroppedByTheTransport() throws Exception {
+    final Transport transport = mock(Transport.class);
+    when(transport.send(any(byte[].class), anyInt())).thenReturn(false);
+    final StatsD nonBlocking = new StatsD(address, new TransportFactory() {
+      @Override
+      public Transport createTransport() {
+        return transport;
+      }
+    }, StatsD.DEFAULT_MAX_PACKET_SIZE);
+
+    nonBlocking.connect();
+    verify(transport).connect(address);
+
+    nonBlocking.send("name", 1L);
+    nonBlocking.flush();
+
+    assertThat(nonBlocking.getDroppedPackets()).isEqualTo(1);
+    assertThat(nonBlocking.getFailures()).isZero();
   }
 
   @Test
   public void address() throws IOException {
     statsD.connect();
     statsD.send("name", "value");
+    statsD.flush();
 
     assertThat(addressCaptor.getValue()).isEqualTo(address);
   }
+
+  @Test
+  public void batchesMeasurementsIntoASinglePacket() throws Exception {
+    statsD.connect();
+    statsD.send("a", "1");
+    statsD.send("b", "2");
+    statsD.send("c", "3");
+
+    verify(socket, never()).send(any(DatagramPacket.class));
+
+    statsD.flush();
+
+    verify(socket).send(any(DatagramPacket.class));
+    assertThat(packet()).isEqualTo("a:1|g\nb:2|g\nc:3|g");
+  }
+
+  @Test
+  public void flushesWhenPacketIsFull() throws Exception {
+    final StatsD small = new StatsD(address, socketFactory, 12);
+    small.connect();
+    small.send("a", "1");
+    small.send("b", "2");
+
+    verify(socket, never()).send(any(DatagramPacket.class));
+
+    small.send("c", "3");
+
+    verify(socket).send(any(DatagramPacket.class));
+    assertThat(packet()).isEqualTo("a:1|g\nb:2|g");
+  }
+
+  @Test
+  public void resetsNegativeGaugesToZeroInTheSamePacket() throws Exception {
+    final StatsD small = new StatsD(address, socketFactory, 16);
+    small.connect();
+    small.send("a", "1");
+    small.setGauge(EncodedName.of("b"), -2);
+    small.flush();
+
+    assertThat(packets).containsExactly("a:1|g", "b:0|g\nb:-2|g");
+  }
+
+  @Test
+  public void setsGaugesToWholeOrRoundedValues() throws Exception {
+    statsD.connect();
+    statsD.setGauge(EncodedName.of("a"), 3);
+    statsD.setGauge(EncodedName.of("b"), 0.125);
+    statsD.flush();
+
+    assertThat(packet()).isEqualTo("a:3|g\nb:0.13|g");
+  }
+
+  @Test
+  public void sendsOversizedMeasurementsOnTheirOwn() throws Exception {
+    final StatsD small = new StatsD(address, socketFactory, 8);
+    small.connect();
+    small.send("a", "1");
+    small.send("name", "value");
+
+    verify(socket, times(2)).send(any(DatagramPacket.class));
+    assertThat(packet()).isEqualTo("name:value|g");
+  }
+
+  @Test
+  public void flushesOnClose() throws Exception {
+    statsD.connect();
+    statsD.send("name", "value");
+    statsD.close();
+
+    verify(socket).send(any(DatagramPacket.class));
+    assertThat(packet()).isEqualTo("name:value|g");
+  }
+
+  @Test
+  public void doesNotSendEmptyPackets() throws Exception {
+    statsD.connect();
+    statsD.flush();
+
+    verify(socket, never()).send(any(DatagramPacket.class));
+  }
+
+  @Test
+  public void sendsTheSamePacketToEveryDestination() throws Exception {
+    final List<String> sent = new ArrayList<String>();
+    final StatsD mirrored = new StatsD(Arrays.asList(loopback(8125), loopback(8126)), recordingTransports(sent, 0),
+        StatsD.DEFAULT_MAX_PACKET_SIZE);
+
+    mirrored.connect();
+    mirrored.send("a", 1L);
+    mirrored.send("b", 2L);
+    mirrored.flush();
+
+    assertThat(sent).containsExactly("8125:a:1|g\nb:2|g", "8126:a:1|g\nb:2|g");
+    assertThat(mirrored.getSentLines()).isEqualTo(2);
+    assertThat(mirrored.getDestinations()).hasSize(2);
+  }
+
+  @Test
+  public void tracksFailuresPerDestination() throws Exception {
+    final List<String> sent = new ArrayList<String>();
+    final StatsD mirrored = new StatsD(Arrays.asList(loopback(8125), loopback(8126)), recordingTransports(sent, 8125),
+        StatsD.DEFAULT_MAX_PACKET_SIZE);
+
+    mirrored.connect();
+    mirrored.send("a", 1L);
+    mirrored.flush();
+
+    assertThat(sent).containsExactly("8126:a:1|g");
+    assertThat(mirrored.getDestinations().get(0).getTotalFailures()).isEqualTo(1);
+    assertThat(mirrored.getDestinations().get(1).getTotalFailures()).isZero();
+    assertThat(mirrored.getTotalFailures()).isEqualTo(1);
+  }
+
+  @Test
+  public void connectsTheOtherDestinationsWhenOneFails() throws Exception {
+    final StatsD mirrored = new StatsD(Arrays.asList(new AddressResolver("unresolvable.invalid", 1234),
+        new AddressResolver(address)), new DatagramSocketTransport.Factory(socketFactory),
+        StatsD.DEFAULT_MAX_PACKET_SIZE);
+
+    try {
+      mirrored.connect();
+      fail("expected the connect failure");
+    } catch (IOException e) {
+      verify(socket).connect(address);
+    }
+  }
+
+  private static AddressResolver loopback(final int port) {
+    return new AddressResolver(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+  }
+
+  /**
+   * Returns transports which record the port they are connected to along with every packet, and fail to send to the
+   * given port.
+   */
+  private static TransportFactory recordingTransports(final List<String> sent, final int failingPort) {
+    return new TransportFactory() {
+      @Override
+      public Transport createTransport() {
+        return new Transport() {
+          private int port;
+
+          @Override
+          public void connect(final SocketAddress socketAddress) {
+            port = ((InetSocketAddress) socketAddress).getPort();
+          }
+
+          @Override
+          public boolean send(final byte[] bytes, final int length) throws IOException {
+            if (port == failingPort) {
+              throw new IOException("unreachable");
+            }
+            sent.add(port + ":" + new String(bytes, 0, length, StatsD.UTF_8));
+            return true;
+          }
+
+          @Override
+          public void close() {
+          }
+        };
+      }
+    };
+  }
+
+  private String packet() {
+    return packets.get(packets.size() - 1);
+  }
 }
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class StripedLongTest {
+  private final StripedLong sum = new StripedLong();
+
+  @Test
+  public void sumsAdditions() {
+    sum.add(3);
+    sum.add(-1);
+    sum.add(5);
+
+    assertThat(sum.sumThenReset()).isEqualTo(7);
+  }
+
+  @Test
+  public void resetsAfterSumming() {
+    sum.add(3);
+    sum.sumThenReset();
+
+    assertThat(sum.sumThenReset()).isEqualTo(0);
+    sum.add(2);
+    assertThat(sum.sumThenReset()).isEqualTo(2);
+  }
+
+  @Test
+  public void countsEveryConcurrentAddition() throws Exception {
+    final int threads = 8;
+    final int additions = 100000;
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> workers = new ArrayList<Thread>();
+    for (int i = 0; i < threads; i++) {
+      final Thread worker = new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int j = 0; j < additions; j++) {
+            sum.add(1);
+          }
+        }
+      };
+      worker.start();
+      workers.add(worker);
+    }
+
+    long total = 0;
+    start.countDown();
+    for (Thread worker : workers) {
+      while (worker.isAlive()) {
+        total += sum.sumThenReset();
+      }
+      worker.join();
+    }
+    total += sum.sumThenReset();
+
+    assertThat(total).isEqualTo((long) threads * additions);
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class TagRulesTest {
+
+  @Test
+  public void hasNoTagsByDefault() {
+    assertThat(TagRules.NONE.isEmpty()).isTrue();
+    assertThat(TagRules.NONE.tagsFor("metric")).isSameAs(Tags.NONE);
+  }
+
+  @Test
+  public void appendsTheTagsOfEveryMatchingPatternToTheGlobalTags() {
+    final TagRules rules = TagRules.NONE
+        .withGlobal(Tags.of("env:prod"))
+        .withPattern("db\\..*", Tags.of("tier:db"))
+        .withPattern(".*\\.queries", Tags.of("kind:query"))
+        .withGlobal(Tags.of("region:us"));
+
+    assertThat(rules.isEmpty()).isFalse();
+    assertThat(rules.tagsFor("db.queries").toString()).isEqualTo("|#env:prod,region:us,tier:db,kind:query");
+    assertThat(rules.tagsFor("db.rows").toString()).isEqualTo("|#env:prod,region:us,tier:db");
+    assertThat(rules.tagsFor("requests").toString()).isEqualTo("|#env:prod,region:us");
+  }
+
+  @Test
+  public void matchesWholeNames() {
+    final TagRules rules = TagRules.NONE.withPattern("db", Tags.of("tier:db"));
+
+    assertThat(rules.tagsFor("db.queries").isEmpty()).isTrue();
+  }
+}
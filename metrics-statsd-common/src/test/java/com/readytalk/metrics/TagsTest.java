@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.Test;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class TagsTest {
+
+  @Test
+  public void encodesTheLineSuffix() {
+    assertThat(Tags.of("env:prod", "canary").toString()).isEqualTo("|#env:prod,canary");
+  }
+
+  @Test
+  public void encodesNothingWithoutTags() {
+    assertThat(Tags.of()).isSameAs(Tags.NONE);
+    assertThat(Tags.NONE.isEmpty()).isTrue();
+    assertThat(Tags.NONE.bytes()).isEmpty();
+  }
+
+  @Test
+  public void replacesSeparatorsAndWhitespace() {
+    assertThat(Tags.of("path:/a|b,c d").toString()).isEqualTo("|#path:/a_b_c_d");
+  }
+
+  @Test
+  public void encodesAsUtf8() {
+    assertThat(Tags.of("city:zürich").bytes()).hasSize("|#city:zürich".length() + 1);
+  }
+
+  @Test
+  public void combinesTags() {
+    final Tags env = Tags.of("env:prod");
+
+    assertThat(env.and(Tags.of("tier:db", "canary")).toString()).isEqualTo("|#env:prod,tier:db,canary");
+    assertThat(env.and(Tags.NONE)).isSameAs(env);
+    assertThat(Tags.NONE.and(env)).isSameAs(env);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyTags() {
+    Tags.of("env:prod", "");
+  }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class TcpTransportTest {
+  private Server server;
+  private TcpTransport transport;
+
+  @After
+  public void tearDown() throws Exception {
+    if (transport != null) {
+      transport.close();
+    }
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void writesNewlineDelimitedPacketsOnFlush() throws Exception {
+    server = new Server(0);
+    transport = create(8);
+    transport.connect(server.address());
+
+    send("a:1|g\nb:2|g");
+    send("c:3|g");
+    assertThat(server.lines.poll(50, TimeUnit.MILLISECONDS)).isNull();
+    transport.flush();
+
+    assertThat(server.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("a:1|g");
+    assertThat(server.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("b:2|g");
+    assertThat(server.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("c:3|g");
+  }
+
+  @Test
+  public void sendsTheBacklogOnceTheServerIsBack() throws Exception {
+    final InetSocketAddress address = unusedAddress();
+    transport = create(64);
+    transport.connect(address);
+    assertThat(transport.isConnected()).isFalse();
+
+    assertThat(send("a:1|g")).isTrue();
+    assertThat(transport.getBacklogBytes()).isEqualTo(5);
+
+    server = new Server(address.getPort());
+    Thread.sleep(20);
+    send("b:2|g");
+    transport.flush();
+
+    assertThat(server.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("a:1|g");
+    assertThat(server.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("b:2|g");
+    assertThat(transport.getBacklogBytes()).isZero();
+    assertThat(transport.getReconnects()).isEqualTo(1);
+  }
+
+  @Test
+  public void dropsPacketsWhichDoNotFitIntoTheBacklog() throws Exception {
+    transport = create(8);
+    transport.connect(unusedAddress());
+
+    assertThat(send("a:1|g")).isTrue();
+    assertThat(send("b:2|g")).isFalse();
+    assertThat(transport.getBacklogBytes()).isEqualTo(5);
+  }
+
+  @Test
+  public void doublesTheBackoffUpToTheMaximum() throws Exception {
+    transport = new TcpTransport(TcpTransport.DEFAULT_BUFFER_SIZE, 0, 1000, 1, 4, TimeUnit.MILLISECONDS);
+    transport.connect(unusedAddress());
+    assertThat(transport.getBackoffNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(2));
+
+    Thread.sleep(5);
+    send("a:1|g");
+    assertThat(transport.getBackoffNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(4));
+
+    Thread.sleep(5);
+    send("a:1|g");
+    assertThat(transport.getBackoffNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(4));
+  }
+
+  @Test
+  public void streamsTheMeasurementsOfAClient() throws Exception {
+    server = new Server(0);
+    final StatsD statsD = new StatsD(server.address(), new TcpTransport.Factory(), StatsD.DEFAULT_MAX_PACKET_SIZE);
+    statsD.connect();
+    statsD.send("a", 1L);
+    statsD.send("b", 2L);
+    statsD.flush();
+
+    assertThat(server.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("a:1|g");
+    assertThat(server.lines.poll(5, TimeUnit.SECONDS)).isEqualTo("b:2|g");
+    statsD.close();
+  }
+
+  private TcpTransport create(final int backlogSize) {
+    return new TcpTransport(TcpTransport.DEFAULT_BUFFER_SIZE, backlogSize, 1000, 10, 100, TimeUnit.MILLISECONDS);
+  }
+
+  private boolean send(final String packet) {
+    final byte[] bytes = packet.getBytes(StatsD.UTF_8);
+    return transport.send(bytes, bytes.length);
+  }
+
+  private static InetSocketAddress unusedAddress() throws IOException {
+    final ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    final int port = socket.getLocalPort();
+    socket.close();
+    return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+  }
+
+  /**
+   * An in-process StatsD server which accepts connections one at a time and queues the lines it receives.
+   */
+  private static final class Server implements Runnable {
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+    private final ServerSocket socket;
+    private final Thread thread;
+
+    private Server(final int port) throws IOException {
+      this.socket = new ServerSocket();
+      socket.setReuseAddress(true);
+      socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      this.thread = new Thread(this, "tcp-statsd-server");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    private InetSocketAddress address() {
+      return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+    }
+
+    @Override
+    public void run() {
+      while (!socket.isClosed()) {
+        try {
+          final Socket connection = socket.accept();
+          final BufferedReader reader = new BufferedReader(
+              new InputStreamReader(connection.getInputStream(), StatsD.UTF_8));
+          String line;
+          while ((line = reader.readLine()) != null) {
+            lines.add(line);
+          }
+          connection.close();
+        } catch (IOException e) {
+          // Closed.
+        }
+      }
+    }
+
+    private void close() throws IOException {
+      socket.close();
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.Flushable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * A {@link Transport} which sends packets to a StatsD agent on the same host through a Unix domain stream socket,
+ * skipping the checksums, routing and loopback of the UDP/IP stack.
+ *
+ * The JDK has no Unix domain {@code DatagramChannel}, even on JDK 16, so this uses a stream socket with the framing of
+ * the DogStatsD agent's {@code dogstatsd_socket} in stream mode ({@code unixstream}): every packet is preceded by its
+ * length as a 4-byte little-endian integer. Agents which only listen on Unix datagram sockets, and StatsD servers
+ * without a Unix stream listener, such as Etsy's, cannot read it.
+ *
+ * Frames are written through a large direct buffer which is written to the socket when full or when the client is
+ * flushed, i.e. once per report. A packet is not limited to the size of a datagram, so clients may use a much larger
+ * maximum packet size, up to the agent's buffer size. The socket path is fixed when the transport is created, so the
+ * address passed to {@link #connect(SocketAddress)} is ignored. Errors are thrown, so that the client reconnects on
+ * the next packet.
+ */
+@NotThreadSafe
+public class UnixDomainSocketTransport implements Transport, Flushable {
+
+  /**
+   * The default size of the write buffer in bytes.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  private static final int LENGTH_PREFIX = 4;
+
+  private final UnixDomainSocketAddress address;
+  private final ByteBuffer buffer;
+
+  private SocketChannel channel;
+
+  /**
+   * Creates a new transport.
+   *
+   * @param path       the path of the socket file the agent listens on
+   * @param bufferSize the size of the write buffer in bytes
+   */
+  public UnixDomainSocketTransport(final Path path, final int bufferSize) {
+    if (bufferSize < LENGTH_PREFIX) {
+      throw new IllegalArgumentException("bufferSize must be at least " + LENGTH_PREFIX + ": " + bufferSize);
+    }
+    this.address = UnixDomainSocketAddress.of(path);
+    this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Connects to the socket path of this transport.
+   *
+   * @param ignored the address of the StatsD server, which is not used
+   * @throws IOException if there is an error connecting
+   */
+  @Override
+  public void connect(final SocketAddress ignored) throws IOException {
+    final SocketChannel newChannel = SocketChannel.open(StandardProtocolFamily.UNIX);
+    try {
+      newChannel.connect(address);
+    } catch (IOException e) {
+      newChannel.close();
+      throw e;
+    }
+    this.channel = newChannel;
+    buffer.clear();
+  }
+
+  /**
+   * Writes the length of the packet followed by the packet into the write buffer, writing the buffer to the socket
+   * first if the frame doesn't fit.
+   *
+   * @param bytes  the packet payload
+   * @param length the number of bytes to send
+   * @return {@code true}
+   * @throws IOException if there is an error writing to the socket
+   */
+  @Override
+  public boolean send(final byte[] bytes, final int length) throws IOException {
+    if (LENGTH_PREFIX + length > buffer.remaining()) {
+      flush();
+    }
+    if (LENGTH_PREFIX + length > buffer.capacity()) {
+      // Larger than the whole buffer, so write it on its own.
+      buffer.putInt(length).flip();
+      try {
+        writeFully(buffer);
+      } finally {
+        buffer.clear();
+      }
+      writeFully(ByteBuffer.wrap(bytes, 0, length));
+      return true;
+    }
+    buffer.putInt(length);
+    buffer.put(bytes, 0, length);
+    return true;
+  }
+
+  /**
+   * Writes the buffered packets to the socket.
+   *
+   * @throws IOException if there is an error writing to the socket
+   */
+  @Override
+  public void flush() throws IOException {
+    if (buffer.position() > 0) {
+      buffer.flip();
+      try {
+        writeFully(buffer);
+      } finally {
+        buffer.clear();
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered packets and closes the socket.
+   *
+   * @throws IOException if there is an error writing to or closing the socket
+   */
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      try {
+        flush();
+      } finally {
+        channel.close();
+        channel = null;
+      }
+    }
+  }
+
+  private void writeFully(final ByteBuffer src) throws IOException {
+    while (src.hasRemaining()) {
+      channel.write(src);
+    }
+  }
+
+  /**
+   * A {@link TransportFactory} for {@link UnixDomainSocketTransport}s.
+   */
+  public static final class Factory implements TransportFactory {
+    private final Path path;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * Creates a new factory for transports to the given socket path.
+     *
+     * @param path the path of the socket file the agent listens on
+     */
+    public Factory(final Path path) {
+      this.path = path;
+    }
+
+    /**
+     * Set the size of the write buffer. Frames are written to the socket once the buffer is full or on flush.
+     *
+     * @param _bufferSize the write buffer size in bytes
+     * @return {@code this}
+     */
+    public Factory withBufferSize(final int _bufferSize) {
+      this.bufferSize = _bufferSize;
+      return this;
+    }
+
+    @Override
+    public Transport createTransport() {
+      return new UnixDomainSocketTransport(path, bufferSize);
+    }
+  }
+}
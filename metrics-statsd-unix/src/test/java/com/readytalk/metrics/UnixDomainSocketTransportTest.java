@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2013 metrics-statsd contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package com.readytalk.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class UnixDomainSocketTransportTest {
+  private static final InetSocketAddress UNUSED = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+  private final BlockingQueue<String> frames = new LinkedBlockingQueue<String>();
+  private Path directory;
+  private Path path;
+  private ServerSocketChannel server;
+  private UnixDomainSocketTransport transport;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("statsd");
+    path = directory.resolve("statsd.sock");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (transport != null) {
+      transport.close();
+    }
+    if (server != null) {
+      server.close();
+    }
+    Files.deleteIfExists(path);
+    Files.delete(directory);
+  }
+
+  @Test
+  public void writesLengthPrefixedPacketsOnFlush() throws Exception {
+    listen();
+    transport = new UnixDomainSocketTransport(path, UnixDomainSocketTransport.DEFAULT_BUFFER_SIZE);
+    transport.connect(UNUSED);
+
+    send("a:1|g\nb:2|g");
+    send("c:3|g");
+    assertThat(frames.poll(50, TimeUnit.MILLISECONDS)).isNull();
+    transport.flush();
+
+    assertThat(frames.poll(5, TimeUnit.SECONDS)).isEqualTo("a:1|g\nb:2|g");
+    assertThat(frames.poll(5, TimeUnit.SECONDS)).isEqualTo("c:3|g");
+  }
+
+  @Test
+  public void writesPacketsLargerThanTheBuffer() throws Exception {
+    listen();
+    transport = new UnixDomainSocketTransport(path, 8);
+    transport.connect(UNUSED);
+    final char[] name = new char[100];
+    Arrays.fill(name, 'x');
+
+    send("a:1|g");
+    send(new String(name) + ":1|g");
+    transport.flush();
+
+    assertThat(frames.poll(5, TimeUnit.SECONDS)).isEqualTo("a:1|g");
+    assertThat(frames.poll(5, TimeUnit.SECONDS)).isEqualTo(new String(name) + ":1|g");
+  }
+
+  @Test(expected = IOException.class)
+  public void failsToConnectWhenNothingListens() throws Exception {
+    transport = new UnixDomainSocketTransport(path, UnixDomainSocketTransport.DEFAULT_BUFFER_SIZE);
+    transport.connect(UNUSED);
+  }
+
+  @Test
+  public void sendsPacketsLargerThanADatagramFromAClient() throws Exception {
+    listen();
+    final StatsD statsD = new StatsD(UNUSED, new UnixDomainSocketTransport.Factory(path), 8192);
+    statsD.connect();
+    for (int i = 0; i < 1000; i++) {
+      statsD.send("metric" + i, (long) i);
+    }
+    statsD.flush();
+
+    final StringBuilder received = new StringBuilder();
+    String frame;
+    while ((frame = frames.poll(500, TimeUnit.MILLISECONDS)) != null) {
+      received.append(frame).append('\n');
+    }
+    final String[] lines = received.toString().split("\n");
+    assertThat(lines).hasSize(1000);
+    for (int i = 0; i < 1000; i++) {
+      assertThat(lines[i]).isEqualTo("metric" + i + ":" + i + "|g");
+    }
+    assertThat(statsD.getSentPackets()).isLessThan(1000 * 12 / StatsD.DEFAULT_MAX_PACKET_SIZE);
+    statsD.close();
+  }
+
+  @Test
+  public void buildsAClientFromTheSocketPath() throws Exception {
+    listen();
+    final StatsDClient client = StatsDClient.builder().withMaxPacketSize(64 * 1024).buildUnixSocket(path);
+    client.gauge("a", 1L);
+    client.flush();
+
+    assertThat(frames.poll(5, TimeUnit.SECONDS)).isEqualTo("a:1|g");
+    client.close();
+  }
+
+  private void send(final String packet) throws IOException {
+    final byte[] bytes = packet.getBytes(StatsD.UTF_8);
+    transport.send(bytes, bytes.length);
+  }
+
+  /**
+   * Starts a receiver on the socket path, which queues the packets of the first connection as DogStatsD reads them.
+   */
+  private void listen() throws IOException {
+    server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(path));
+    final Thread receiver = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try (SocketChannel connection = server.accept();
+             DataInputStream input = new DataInputStream(Channels.newInputStream(connection))) {
+          while (true) {
+            final int length = Integer.reverseBytes(input.readInt());
+            final byte[] packet = new byte[length];
+            input.readFully(packet);
+            frames.add(new String(packet, StatsD.UTF_8));
+          }
+        } catch (EOFException e) {
+          // Closed by the client.
+        } catch (IOException e) {
+          // Closed.
+        }
+      }
+    }, "unix-statsd-server");
+    receiver.setDaemon(true);
+    receiver.start();
+  }
+}
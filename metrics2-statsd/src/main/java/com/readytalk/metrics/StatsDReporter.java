@@ -36,12 +36,24 @@ import com.yammer.metrics.stats.Snapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class StatsDReporter extends AbstractPollingReporter implements MetricProcessor<Long> {
   private static final Logger LOG = LoggerFactory.getLogger(StatsDReporter.class);
@@ -51,7 +63,43 @@ public class StatsDReporter extends AbstractPollingReporter implements MetricPro
   protected final Clock clock;
   protected final VirtualMachineMetrics vm;
 
-  private final StatsD statsD;
+  private static final EmissionPlan.Layout METER_LAYOUT = meterLayout(new EmissionPlan.Layout());
+  private static final EmissionPlan.Layout TIMER_LAYOUT = samplingLayout(meterLayout(new EmissionPlan.Layout()));
+  private static final EmissionPlan.Layout HISTOGRAM_LAYOUT = samplingLayout(new EmissionPlan.Layout());
+
+  /**
+   * The number of percentiles taken from a snapshot.
+   */
+  private static final int SNAPSHOT_VALUES = 6;
+
+  private final Precision precision;
+  private final boolean deltaCounters;
+  private final boolean suppressIdle;
+  private final long heartbeatNanos;
+  private final boolean reuseSnapshots;
+  private final EmissionPlan.Compiled emissionPlan;
+  private final TagRules tagRules;
+  @Nullable
+  private final Distribution distribution;
+  @Nullable
+  private final ReporterMetrics selfMetrics;
+  /**
+   * Shared by all partitions, whose workers record into it concurrently, which {@link ReportProfiler} allows.
+   */
+  @Nullable
+  private final ReportProfiler<MetricName> profiler;
+  private final Partition[] partitions;
+  /**
+   * Whether a subclass overrides {@link #sendSummarizable(String, Summarizable)} or
+   * {@link #sendSampling(String, Sampling)}, in which case histograms and timers are sent through them.
+   */
+  private final boolean summaryHooks;
+  /**
+   * The partition reporting on the current thread while it calls the summary hooks, which send through it.
+   */
+  private final ThreadLocal<Partition> hookPartition = new ThreadLocal<Partition>();
+  @Nullable
+  private final ExecutorService workers;
 
   public StatsDReporter(String host, int port) {
     this(Metrics.defaultRegistry(), host, port, null);
@@ -73,47 +121,723 @@ public class StatsDReporter extends AbstractPollingReporter implements MetricPro
         new StatsD(host, port));
   }
 
-  public StatsDReporter(MetricsRegistry metricsRegistry, String prefix, MetricPredicate predicate, Clock clock, StatsD statsD) {
+  public StatsDReporter(MetricsRegistry metricsRegistry, String prefix, MetricPredicate predicate, Clock clock, StatsDSender statsD) {
     this(metricsRegistry, prefix, predicate, clock, VirtualMachineMetrics.getInstance(), statsD);
   }
 
-  public StatsDReporter(MetricsRegistry metricsRegistry, String prefix, MetricPredicate predicate, Clock clock, VirtualMachineMetrics vm, StatsD statsD) {
+  public StatsDReporter(MetricsRegistry metricsRegistry, String prefix, MetricPredicate predicate, Clock clock, VirtualMachineMetrics vm, StatsDSender statsD) {
     this(metricsRegistry, prefix, predicate, clock, vm, "statsd-reporter", statsD);
   }
 
-  public StatsDReporter(MetricsRegistry metricsRegistry, String prefix, MetricPredicate predicate, Clock clock, VirtualMachineMetrics vm, String name, StatsD statsD) {
-    super(metricsRegistry, name);
+  public StatsDReporter(MetricsRegistry metricsRegistry, String prefix, MetricPredicate predicate, Clock clock, VirtualMachineMetrics vm, String name, StatsDSender statsD) {
+    this(forRegistry(metricsRegistry).prefixedWith(prefix).filter(predicate).withClock(clock).named(name), vm,
+        Collections.singletonList(statsD));
+  }
+
+  private StatsDReporter(Builder builder, VirtualMachineMetrics vm, List<? extends StatsDSender> statsDs) {
+    super(builder.registry, builder.name);
+    if (statsDs.isEmpty()) {
+      throw new IllegalArgumentException("at least one StatsD client is required");
+    }
 
     this.vm = vm;
 
-    this.clock = clock;
+    this.clock = builder.clock;
 
-    if (prefix != null) {
+    if (builder.prefix != null) {
       // Pre-append the "." so that we don't need to make anything conditional later.
-      this.prefix = prefix + ".";
+      this.prefix = builder.prefix + ".";
     } else {
       this.prefix = "";
     }
-    this.predicate = predicate;
-    this.statsD = statsD;
+    this.predicate = builder.predicate;
+    this.precision = builder.precision;
+    this.deltaCounters = builder.deltaCounters;
+    this.suppressIdle = builder.heartbeatUnit != null;
+    this.heartbeatNanos = suppressIdle ? builder.heartbeatUnit.toNanos(builder.heartbeat) : 0;
+    this.reuseSnapshots = builder.reuseSnapshots;
+    this.emissionPlan = builder.emissionPlan.compile(TIMER_LAYOUT, HISTOGRAM_LAYOUT, METER_LAYOUT);
+    this.tagRules = builder.tagRules;
+    this.distribution = builder.distribution;
+    this.selfMetrics = builder.selfRegistry == null ? null : new SelfMetrics(builder.selfRegistry, statsDs);
+    this.profiler = builder.profileTopN == 0 ? null
+        : new ReportProfiler<MetricName>(builder.profileTopN, builder.profileThreshold, builder.profileThresholdUnit);
+    this.partitions = new Partition[statsDs.size()];
+    for (int i = 0; i < partitions.length; i++) {
+      partitions[i] = new Partition(i, statsDs.get(i), builder.nameCacheSize);
+    }
+    this.summaryHooks = overrides("sendSummarizable", Summarizable.class) || overrides("sendSampling", Sampling.class);
+    final String workerName = builder.name + "-worker-";
+    this.workers = partitions.length == 1 ? null : Executors.newFixedThreadPool(partitions.length - 1,
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, workerName + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+
+  /**
+   * Returns whether a subclass declares the given protected hook.
+   */
+  private boolean overrides(String method, Class<?> metricType) {
+    for (Class<?> type = getClass(); type != StatsDReporter.class; type = type.getSuperclass()) {
+      try {
+        type.getDeclaredMethod(method, String.class, metricType);
+        return true;
+      } catch (NoSuchMethodException e) {
+        // Not declared at this level.
+      }
+    }
+    return false;
+  }
+
+  private static EmissionPlan.Layout meterLayout(EmissionPlan.Layout layout) {
+    return layout
+        .add(EmissionPlan.Field.COUNT, "samples")
+        .add(EmissionPlan.Field.MEAN_RATE, "meanRate")
+        .add(EmissionPlan.Field.M1_RATE, "1MinuteRate")
+        .add(EmissionPlan.Field.M5_RATE, "5MinuteRate")
+        .add(EmissionPlan.Field.M15_RATE, "15MinuteRate");
+  }
+
+  private static EmissionPlan.Layout samplingLayout(EmissionPlan.Layout layout) {
+    return layout
+        .add(EmissionPlan.Field.MIN, "min")
+        .add(EmissionPlan.Field.MAX, "max")
+        .add(EmissionPlan.Field.MEAN, "mean")
+        .add(EmissionPlan.Field.STDDEV, "stddev")
+        .add(EmissionPlan.Field.P50, "median")
+        .add(EmissionPlan.Field.P75, "75percentile")
+        .add(EmissionPlan.Field.P95, "95percentile")
+        .add(EmissionPlan.Field.P98, "98percentile")
+        .add(EmissionPlan.Field.P99, "99percentile")
+        .add(EmissionPlan.Field.P999, "999percentile");
+  }
+
+  /**
+   * Returns a new {@link Builder} for {@link StatsDReporter}.
+   *
+   * @param registry the registry to report
+   * @return a {@link Builder} instance for a {@link StatsDReporter}
+   */
+  public static Builder forRegistry(final MetricsRegistry registry) {
+    return new Builder(registry);
+  }
+
+  /**
+   * A builder for {@link StatsDReporter} instances. Defaults to not using a prefix, not filtering metrics, using the
+   * default clock, rounding to two decimal places, sending counts as gauges, reporting every metric every run, and
+   * batching measurements into packets of at most {@link StatsD#DEFAULT_MAX_PACKET_SIZE} bytes sent through a
+   * blocking {@link java.net.DatagramSocket}.
+   */
+  public static final class Builder {
+    private final MetricsRegistry registry;
+    private String prefix;
+    private MetricPredicate predicate;
+    private Clock clock;
+    private String name;
+    private int maxPacketSize;
+    private TransportFactory transportFactory;
+    private long addressTtl;
+    private TimeUnit addressTtlUnit;
+    private int failureThreshold;
+    private long minBackoff;
+    private long maxBackoff;
+    private TimeUnit backoffUnit;
+    private int nameCacheSize;
+    private Precision precision;
+    private boolean deltaCounters;
+    private long heartbeat;
+    private TimeUnit heartbeatUnit;
+    private boolean reuseSnapshots;
+    private EmissionPlan emissionPlan;
+    private TagRules tagRules;
+    private Distribution distribution;
+    private int asyncQueueCapacity;
+    private OverflowPolicy overflowPolicy;
+    private long blockTimeout;
+    private TimeUnit blockTimeoutUnit;
+    private MetricsRegistry selfRegistry;
+    private int profileTopN;
+    private long profileThreshold;
+    private TimeUnit profileThresholdUnit;
+    private int parallelism;
+
+    private Builder(final MetricsRegistry registry) {
+      this.registry = registry;
+      this.prefix = null;
+      this.predicate = MetricPredicate.ALL;
+      this.clock = Clock.defaultClock();
+      this.name = "statsd-reporter";
+      this.maxPacketSize = StatsD.DEFAULT_MAX_PACKET_SIZE;
+      this.transportFactory = new DatagramSocketTransport.Factory();
+      this.addressTtl = AddressResolver.DEFAULT_TTL_SECONDS;
+      this.addressTtlUnit = TimeUnit.SECONDS;
+      this.failureThreshold = CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+      this.minBackoff = CircuitBreaker.DEFAULT_MIN_BACKOFF_MILLIS;
+      this.maxBackoff = CircuitBreaker.DEFAULT_MAX_BACKOFF_MILLIS;
+      this.backoffUnit = TimeUnit.MILLISECONDS;
+      this.nameCacheSize = NameCache.DEFAULT_MAX_SIZE;
+      this.precision = Precision.DEFAULT;
+      this.deltaCounters = false;
+      this.heartbeat = 0;
+      this.heartbeatUnit = null;
+      this.reuseSnapshots = false;
+      this.emissionPlan = EmissionPlan.ALL;
+      this.tagRules = TagRules.NONE;
+      this.distribution = null;
+      this.asyncQueueCapacity = 0;
+      this.overflowPolicy = OverflowPolicy.DROP_NEWEST;
+      this.blockTimeout = 0;
+      this.blockTimeoutUnit = TimeUnit.MILLISECONDS;
+      this.selfRegistry = null;
+      this.profileTopN = 0;
+      this.profileThreshold = 0;
+      this.profileThresholdUnit = TimeUnit.MILLISECONDS;
+      this.parallelism = 1;
+    }
+
+    /**
+     * Prefix all metric names with the given string.
+     *
+     * @param _prefix the prefix for all metric names
+     * @return {@code this}
+     */
+    public Builder prefixedWith(final String _prefix) {
+      this.prefix = _prefix;
+      return this;
+    }
+
+    /**
+     * Only report metrics which match the given predicate.
+     *
+     * @param _predicate a {@link MetricPredicate}
+     * @return {@code this}
+     */
+    public Builder filter(final MetricPredicate _predicate) {
+      this.predicate = _predicate;
+      return this;
+    }
+
+    /**
+     * Use the given clock for timestamps.
+     *
+     * @param _clock a {@link Clock}
+     * @return {@code this}
+     */
+    public Builder withClock(final Clock _clock) {
+      this.clock = _clock;
+      return this;
+    }
+
+    /**
+     * Use the given name for the reporter thread.
+     *
+     * @param _name the name of the reporter
+     * @return {@code this}
+     */
+    public Builder named(final String _name) {
+      this.name = _name;
+      return this;
+    }
+
+    /**
+     * Batch measurements into packets of at most the given number of bytes. Use a value that fits the path MTU,
+     * e.g. 1432 for WAN links or up to 8932 for loopback and jumbo frames.
+     *
+     * @param _maxPacketSize the maximum payload size of a single packet in bytes
+     * @return {@code this}
+     */
+    public Builder withMaxPacketSize(final int _maxPacketSize) {
+      this.maxPacketSize = _maxPacketSize;
+      return this;
+    }
+
+    /**
+     * Send packets through transports created by the given factory, e.g. a {@link DatagramChannelTransport.Factory}
+     * for non-blocking sends.
+     *
+     * @param _transportFactory a {@link TransportFactory}
+     * @return {@code this}
+     */
+    public Builder withTransport(final TransportFactory _transportFactory) {
+      this.transportFactory = _transportFactory;
+      return this;
+    }
+
+    /**
+     * Refresh the resolved address of the StatsD server in the background once it is older than the given
+     * time-to-live. The last good address is kept if a refresh fails.
+     *
+     * @param _addressTtl     how long a resolved address is used before it is refreshed
+     * @param _addressTtlUnit the unit of {@code _addressTtl}
+     * @return {@code this}
+     */
+    public Builder withAddressTtl(final long _addressTtl, final TimeUnit _addressTtlUnit) {
+      this.addressTtl = _addressTtl;
+      this.addressTtlUnit = _addressTtlUnit;
+      return this;
+    }
+
+    /**
+     * Stop sending to a server after {@code _failureThreshold} consecutive failed writes for the rest of the report,
+     * and probe it again once per report after a backoff which doubles from {@code _minBackoff} up to
+     * {@code _maxBackoff} while it stays unreachable. Defaults to 5 failures and 1 to 60 seconds. See
+     * {@link CircuitBreaker}.
+     *
+     * @param _failureThreshold the number of consecutive failed writes after which sends are suppressed
+     * @param _minBackoff       the time sends are suppressed after the first failures
+     * @param _maxBackoff       the maximum time sends are suppressed
+     * @param _backoffUnit      the unit of the backoffs
+     * @return {@code this}
+     */
+    public Builder withCircuitBreaker(final int _failureThreshold, final long _minBackoff, final long _maxBackoff,
+                                      final TimeUnit _backoffUnit) {
+      this.failureThreshold = _failureThreshold;
+      this.minBackoff = _minBackoff;
+      this.maxBackoff = _maxBackoff;
+      this.backoffUnit = _backoffUnit;
+      return this;
+    }
+
+    /**
+     * Cache the encoded StatsD names of at most the given number of metrics. Names of metrics beyond that are
+     * rebuilt on every run. The previous counts of delta counters, idle suppression and reused snapshots are kept for
+     * every metric regardless.
+     *
+     * @param _nameCacheSize the maximum number of metrics whose names are cached
+     * @return {@code this}
+     */
+    public Builder withNameCacheSize(final int _nameCacheSize) {
+      this.nameCacheSize = _nameCacheSize;
+      return this;
+    }
+
+    /**
+     * Round durations, rates, histogram values and floating point gauges to the given numbers of decimal places.
+     *
+     * @param _precision a {@link Precision}
+     * @return {@code this}
+     */
+    public Builder withPrecision(final Precision _precision) {
+      this.precision = _precision;
+      return this;
+    }
+
+    /**
+     * Send counters and the {@code samples} counts of meters and timers as StatsD counters ({@code |c}) holding the
+     * change since the previous run, rather than as gauges holding the running total. This lets the StatsD server sum
+     * counts across instances.
+     *
+     * @param _deltaCounters whether to send counts as deltas
+     * @return {@code this}
+     */
+    public Builder withDeltaCounters(final boolean _deltaCounters) {
+      this.deltaCounters = _deltaCounters;
+      return this;
+    }
+
+    /**
+     * Skip gauges whose formatted value is the same as in the previous run, and counters, histograms, meters and
+     * timers whose count hasn't changed. Each skipped metric is still reported once the given heartbeat interval has
+     * passed since it was last reported, so that dashboards don't go stale.
+     *
+     * @param _heartbeat     the longest time an unchanged metric goes unreported
+     * @param _heartbeatUnit the unit of {@code _heartbeat}
+     * @return {@code this}
+     */
+    public Builder withIdleSuppression(final long _heartbeat, final TimeUnit _heartbeatUnit) {
+      this.heartbeat = _heartbeat;
+      this.heartbeatUnit = _heartbeatUnit;
+      return this;
+    }
+
+    /**
+     * Reuse the percentiles computed from the last snapshot of a timer or histogram as long as its count hasn't
+     * changed, rather than copying and sorting its sample again. This is exact for the default exponentially decaying
+     * and uniform samples, whose values only change on updates.
+     *
+     * @param _reuseSnapshots whether to reuse the snapshots of idle timers and histograms
+     * @return {@code this}
+     */
+    public Builder withSnapshotReuse(final boolean _reuseSnapshots) {
+      this.reuseSnapshots = _reuseSnapshots;
+      return this;
+    }
+
+    /**
+     * Send only the given fields of timers, histograms and meters, e.g. the count, {@code 1MinuteRate} and
+     * {@code 99percentile} of timers rather than all fifteen. Histograms have no count. Snapshots are only taken of
+     * metrics which send a percentile.
+     *
+     * @param _emissionPlan an {@link EmissionPlan}
+     * @return {@code this}
+     */
+    public Builder withEmissionPlan(final EmissionPlan _emissionPlan) {
+      this.emissionPlan = _emissionPlan;
+      return this;
+    }
+
+    /**
+     * Also send values of the samples of timers and histograms as individual samples under the bare metric name, e.g.
+     * {@code prefix.timer:12.5|ms|@0.1}, so that the StatsD server can compute percentiles across every instance. Each
+     * report sends evenly spaced values of a snapshot, at most one per event recorded since the previous report and at
+     * most {@code _maxSamples} per metric, with the sample rate that scales them up to the number of events. Use an
+     * {@link EmissionPlan} to stop sending the per-instance percentiles.
+     *
+     * @param _type       {@link MetricType#TIMER} for {@code |ms} or {@link MetricType#DISTRIBUTION} for {@code |d}
+     * @param _maxSamples the maximum number of samples sent per metric and report
+     * @return {@code this}
+     */
+    public Builder withDistributions(final MetricType _type, final int _maxSamples) {
+      this.distribution = new Distribution(_type, _maxSamples);
+      return this;
+    }
+
+    /**
+     * Append the given DogStatsD tags to every line, e.g. {@code withGlobalTags("env:prod")}, instead of encoding
+     * them into metric names.
+     *
+     * @param _tags the tags, each either {@code key:value} or a bare value
+     * @return {@code this}
+     */
+    public Builder withGlobalTags(final String... _tags) {
+      this.tagRules = tagRules.withGlobal(Tags.of(_tags));
+      return this;
+    }
+
+    /**
+     * Append the given DogStatsD tags to every line of the metrics whose names match the given regular expression,
+     * after the global tags and the tags of earlier matching patterns. The names are matched in their
+     * {@code group.type.scope.name} form without the prefix, once per metric.
+     *
+     * @param _namePattern a regular expression matching whole metric names
+     * @param _tags        the tags, each either {@code key:value} or a bare value
+     * @return {@code this}
+     */
+    public Builder withTagsFor(final String _namePattern, final String... _tags) {
+      this.tagRules = tagRules.withPattern(_namePattern, Tags.of(_tags));
+      return this;
+    }
+
+    /**
+     * Hand encoded measurements to a dedicated sender thread through a bounded queue, so that a slow network doesn't
+     * stretch the reporter run. See {@link AsyncStatsD}.
+     *
+     * @param _queueCapacity  the maximum number of queued measurements, e.g. {@link AsyncStatsD#DEFAULT_QUEUE_CAPACITY}
+     * @param _overflowPolicy what to do with a measurement when the queue is full
+     * @return {@code this}
+     */
+    public Builder withAsyncSender(final int _queueCapacity, final OverflowPolicy _overflowPolicy) {
+      this.asyncQueueCapacity = _queueCapacity;
+      this.overflowPolicy = _overflowPolicy;
+      return this;
+    }
+
+    /**
+     * Wait up to the given time for room in the queue of the sender thread when using
+     * {@link OverflowPolicy#BLOCK}.
+     *
+     * @param _blockTimeout     how long to wait for room in the queue
+     * @param _blockTimeoutUnit the unit of {@code _blockTimeout}
+     * @return {@code this}
+     */
+    public Builder withAsyncBlockTimeout(final long _blockTimeout, final TimeUnit _blockTimeoutUnit) {
+      this.blockTimeout = _blockTimeout;
+      this.blockTimeoutUnit = _blockTimeoutUnit;
+      return this;
+    }
+
+    /**
+     * Publish the reporter's own metrics into the given registry, which may be the one being reported: the lines,
+     * packets and bytes sent, failed writes, dropped packets and lines, the average packet fill ratio, and timers of
+     * the time each run spends encoding and each packet takes to send. They are registered with the
+     * {@code com.readytalk.metrics.StatsDReporter} group and type.
+     *
+     * @param _selfRegistry the registry to register the reporter's metrics in
+     * @return {@code this}
+     */
+    public Builder withSelfMetrics(final MetricsRegistry _selfRegistry) {
+      this.selfRegistry = _selfRegistry;
+      return this;
+    }
+
+    /**
+     * Time the evaluation of every gauge and the snapshot of every timer and histogram, keeping the slowest ones of
+     * each run and logging any which take longer than the given threshold. See {@link #getProfiler()}.
+     *
+     * @param _topN                 the number of slowest metrics to keep per run, or 0 to disable profiling
+     * @param _profileThreshold     the time above which an evaluation is logged
+     * @param _profileThresholdUnit the unit of {@code _profileThreshold}
+     * @return {@code this}
+     */
+    public Builder withProfiling(final int _topN, final long _profileThreshold, final TimeUnit _profileThresholdUnit) {
+      this.profileTopN = _topN;
+      this.profileThreshold = _profileThreshold;
+      this.profileThresholdUnit = _profileThresholdUnit;
+      return this;
+    }
+
+    /**
+     * Split the metrics into the given number of partitions by name, and report them in parallel: each partition reads
+     * its metrics, encodes them into its own buffer and sends them through its own client, the first on the reporting
+     * thread and the others on worker threads. A run finishes once all partitions have been sent. The same lines are
+     * sent as with a single partition, though in a different order and grouped into different packets. Parallel runs
+     * don't go through {@link #printRegularMetrics(long)}, so subclasses overriding it should not enable this.
+     *
+     * @param _parallelism the number of partitions, 1 to report sequentially
+     * @return {@code this}
+     */
+    public Builder withParallelism(final int _parallelism) {
+      if (_parallelism < 1) {
+        throw new IllegalArgumentException("parallelism must be at least 1: " + _parallelism);
+      }
+      this.parallelism = _parallelism;
+      return this;
+    }
+
+    /**
+     * Builds a {@link StatsDReporter} with the given properties, sending metrics to StatsD at the given host and port.
+     *
+     * @param host the hostname of the StatsD server.
+     * @param port the port of the StatsD server. This is typically 8125.
+     * @return a {@link StatsDReporter}
+     */
+    public StatsDReporter build(final String host, final int port) {
+      final AddressResolver resolver = new AddressResolver(host, port, addressTtl, addressTtlUnit);
+      final List<StatsDSender> statsDs = new ArrayList<StatsDSender>(parallelism);
+      for (int i = 0; i < parallelism; i++) {
+        statsDs.add(newStatsD(Collections.singletonList(resolver)));
+      }
+      return build(statsDs);
+    }
+
+    /**
+     * Builds a {@link StatsDReporter} with the given properties, sending metrics to a StatsD agent on the same host
+     * through the Unix domain socket at the given path. Needs the {@code metrics-statsd-unix} module on JDK 16 or
+     * later, and ignores {@link #withTransport(TransportFactory)}. See {@code UnixDomainSocketTransport}.
+     *
+     * @param socketPath the path of the socket file the agent listens on
+     * @return a {@link StatsDReporter}
+     * @throws IllegalStateException if the {@code metrics-statsd-unix} module is not on the class path
+     */
+    public StatsDReporter buildUnixSocket(final Path socketPath) {
+      final AddressResolver resolver = UnixSockets.resolver(socketPath);
+      final TransportFactory factory = UnixSockets.transportFactory(socketPath);
+      final List<StatsDSender> statsDs = new ArrayList<StatsDSender>(parallelism);
+      for (int i = 0; i < parallelism; i++) {
+        statsDs.add(newStatsD(Collections.singletonList(resolver), factory));
+      }
+      return build(statsDs);
+    }
+
+    /**
+     * Builds a {@link StatsDReporter} with the given properties, sending each metric to one of the given StatsD
+     * servers chosen by consistent hashing of its name. See {@link ShardedStatsD}.
+     *
+     * @param endpoints the distinct hosts and ports of the StatsD servers, which may be unresolved
+     * @return a {@link StatsDReporter}
+     */
+    public StatsDReporter buildSharded(final List<InetSocketAddress> endpoints) {
+      final List<AddressResolver> resolvers = resolvers(endpoints);
+      final List<StatsDSender> statsDs = new ArrayList<StatsDSender>(parallelism);
+      for (int i = 0; i < parallelism; i++) {
+        final List<StatsD> shards = new ArrayList<StatsD>(resolvers.size());
+        for (AddressResolver resolver : resolvers) {
+          shards.add(newStatsD(Collections.singletonList(resolver)));
+        }
+        statsDs.add(new ShardedStatsD(shards));
+      }
+      return build(statsDs);
+    }
+
+    /**
+     * Builds a {@link StatsDReporter} with the given properties, sending every metric to all of the given StatsD
+     * servers, e.g. to mirror them to a new backend during a migration. Every packet is encoded once and sent to each
+     * server, which tracks its own failures. See {@link Destination}.
+     *
+     * @param endpoints the hosts and ports of the StatsD servers, which may be unresolved
+     * @return a {@link StatsDReporter}
+     */
+    public StatsDReporter buildFanOut(final List<InetSocketAddress> endpoints) {
+      final List<AddressResolver> resolvers = resolvers(endpoints);
+      final List<StatsDSender> statsDs = new ArrayList<StatsDSender>(parallelism);
+      for (int i = 0; i < parallelism; i++) {
+        statsDs.add(newStatsD(resolvers));
+      }
+      return build(statsDs);
+    }
+
+    /**
+     * Builds a {@link StatsDReporter} with the given properties, sending metrics using the
+     * given {@link StatsD} client.
+     *
+     * @param statsD a {@link StatsD} client
+     * @return a {@link StatsDReporter}
+     */
+    public StatsDReporter build(final StatsDSender statsD) {
+      return build(Collections.singletonList(statsD));
+    }
+
+    /**
+     * Builds a {@link StatsDReporter} with the given properties, reporting one partition of the metrics through each of
+     * the given {@link StatsD} clients, in parallel if there is more than one. Ignores
+     * {@link #withParallelism(int)}.
+     *
+     * @param statsDs one {@link StatsD} client per partition, none of them shared with another reporter
+     * @return a {@link StatsDReporter}
+     */
+    public StatsDReporter build(final List<? extends StatsDSender> statsDs) {
+      return new StatsDReporter(this, VirtualMachineMetrics.getInstance(), new ArrayList<StatsDSender>(statsDs));
+    }
+
+    private StatsD newStatsD(final List<AddressResolver> resolvers) {
+      return newStatsD(resolvers, transportFactory);
+    }
+
+    private StatsD newStatsD(final List<AddressResolver> resolvers, final TransportFactory factory) {
+      final StatsD statsD = asyncQueueCapacity > 0
+          ? new AsyncStatsD(resolvers, factory, maxPacketSize, asyncQueueCapacity, overflowPolicy, blockTimeout,
+              blockTimeoutUnit)
+          : new StatsD(resolvers, factory, maxPacketSize);
+      statsD.setCircuitBreakers(failureThreshold, minBackoff, maxBackoff, backoffUnit);
+      return statsD;
+    }
+
+    private List<AddressResolver> resolvers(final List<InetSocketAddress> endpoints) {
+      final List<AddressResolver> resolvers = new ArrayList<AddressResolver>(endpoints.size());
+      for (InetSocketAddress endpoint : endpoints) {
+        resolvers.add(new AddressResolver(endpoint.getHostString(), endpoint.getPort(), addressTtl, addressTtlUnit));
+      }
+      return resolvers;
+    }
   }
 
   @Override
   public void run() {
+    if (selfMetrics != null) {
+      selfMetrics.startCycle();
+    }
+    if (profiler != null) {
+      profiler.startCycle();
+    }
     try {
-      statsD.connect();
+      if (workers == null) {
+        reportSequentially();
+      } else {
+        reportInParallel();
+      }
+    } finally {
+      // A failed partition still completes the cycle, only an abandoned one is left out.
+      if (!Thread.currentThread().isInterrupted()) {
+        if (selfMetrics != null) {
+          selfMetrics.endCycle();
+        }
+        if (profiler != null) {
+          profiler.endCycle();
+        }
+      }
+    }
+  }
+
+  private void reportSequentially() {
+    final Partition partition = partitions[0];
+    try {
+      partition.statsD.connect();
       final long epoch = clock.time() / 1000;
       printRegularMetrics(epoch);
+      partition.statsD.flush();
+      partition.evictUnused();
     } catch (IOException e) {
       LOG.info("Failed to connect or print metrics to statsd", e);
-    } finally {
+    }
+  }
+
+  /**
+   * Reports every partition, the first one on the calling thread and the others on the workers, and waits for them
+   * unless interrupted. {@link #printRegularMetrics(long)} is not called.
+   */
+  private void reportInParallel() {
+    final long epoch = clock.time() / 1000;
+    final SortedMap<String, SortedMap<MetricName, Metric>> groupedMetrics =
+        getMetricsRegistry().groupedMetrics(predicate);
+    final List<Future<?>> results = new ArrayList<Future<?>>(partitions.length - 1);
+    for (int i = 1; i < partitions.length; i++) {
+      final Partition partition = partitions[i];
+      results.add(workers.submit(new Runnable() {
+        @Override
+        public void run() {
+          partition.report(groupedMetrics, epoch);
+        }
+      }));
+    }
+    partitions[0].report(groupedMetrics, epoch);
+    for (Future<?> result : results) {
       try {
-        statsD.close();
-      } catch (IOException e) {
-        LOG.info("Failure when closing statsd connection", e);
+        result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel(results);
+        return;
+      } catch (ExecutionException e) {
+        LOG.info("Failed to print metrics to statsd", e.getCause());
       }
     }
+  }
+
+  /**
+   * Interrupts the workers still reporting an abandoned cycle, so that they don't overlap with the next one.
+   */
+  private static void cancel(final List<Future<?>> results) {
+    for (Future<?> result : results) {
+      result.cancel(true);
+    }
+  }
+
+  /**
+   * Returns the profiler which times the evaluation of each metric, if enabled through
+   * {@link Builder#withProfiling(int, long, TimeUnit)}.
+   *
+   * @return the profiler, or {@code null} if profiling is disabled
+   */
+  @Nullable
+  public ReportProfiler<MetricName> getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * Stops the reporter and its worker threads, and closes the connections to StatsD, which are otherwise kept open
+   * across runs.
+   */
+  @Override
+  public void shutdown() {
+    try {
+      super.shutdown();
+    } finally {
+      closeStatsD();
+    }
+  }
 
+  /**
+   * Stops the reporter and its worker threads, waiting up to the given time for a running report to finish, and
+   * closes the connections to StatsD.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit    the unit of {@code timeout}
+   * @throws InterruptedException if interrupted while waiting
+   */
+  @Override
+  public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+    try {
+      super.shutdown(timeout, unit);
+    } finally {
+      closeStatsD();
+    }
   }
 
   protected void printRegularMetrics(long epoch) {
@@ -133,57 +857,61 @@ public class StatsDReporter extends AbstractPollingReporter implements MetricPro
 
   @Override
   public void processMeter(MetricName name, Metered meter, Long epoch) {
-    final String sanitizedName = sanitizeName(name);
-    sendToStatsD(sanitizedName + ".samples", formatNumber(meter.count()));
-    sendToStatsD(sanitizedName + ".meanRate", formatNumber(meter.meanRate()));
-    sendToStatsD(sanitizedName + ".1MinuteRate", formatNumber(meter.oneMinuteRate()));
-    sendToStatsD(sanitizedName + ".5MinuteRate", formatNumber(meter.fiveMinuteRate()));
-    sendToStatsD(sanitizedName + ".15MinuteRate", formatNumber(meter.fifteenMinuteRate()));
+    partitions[0].processMeter(name, meter, epoch);
   }
 
   @Override
   public void processCounter(MetricName name, Counter counter, Long epoch) {
-    sendToStatsD(sanitizeName(name), formatNumber(counter.count()));
+    partitions[0].processCounter(name, counter, epoch);
   }
 
   @Override
   public void processHistogram(MetricName name, Histogram histogram, Long epoch) {
-    final String sanitizedName = sanitizeName(name);
-    sendSummarizable(sanitizedName, histogram);
-    sendSampling(sanitizedName, histogram);
+    partitions[0].processHistogram(name, histogram, epoch);
   }
 
   @Override
   public void processTimer(MetricName name, Timer timer, Long epoch) {
-    processMeter(name, timer, epoch);
-    final String sanitizedName = sanitizeName(name);
-    sendSummarizable(sanitizedName, timer);
-    sendSampling(sanitizedName, timer);
+    partitions[0].processTimer(name, timer, epoch);
   }
 
   @Override
   public void processGauge(MetricName name, Gauge<?> gauge, Long epoch) {
-    String stringValue = format(gauge.value());
-    if (stringValue != null) {
-      sendToStatsD(sanitizeName(name), stringValue);
-    }
+    partitions[0].processGauge(name, gauge, epoch);
   }
 
+  /**
+   * Sends the summary of the given histogram or timer under the given name.
+   *
+   * The reporter sends cached names without calling this. Only if a subclass overrides this or
+   * {@link #sendSampling(String, Sampling)} is every histogram and timer sent through both hooks instead, which
+   * bypasses the emission plan, tags, idle suppression and distributions for them.
+   *
+   * @param sanitizedName the name, without the prefix
+   * @param metric        the metric
+   */
   protected void sendSummarizable(String sanitizedName, Summarizable metric) {
-    sendToStatsD(sanitizedName + ".min", formatNumber(metric.min()));
-    sendToStatsD(sanitizedName + ".max", formatNumber(metric.max()));
-    sendToStatsD(sanitizedName + ".mean", formatNumber(metric.mean()));
-    sendToStatsD(sanitizedName + ".stddev", formatNumber(metric.stdDev()));
+    sendToStatsD(sanitizedName + ".min", metric.min());
+    sendToStatsD(sanitizedName + ".max", metric.max());
+    sendToStatsD(sanitizedName + ".mean", metric.mean());
+    sendToStatsD(sanitizedName + ".stddev", metric.stdDev());
   }
 
+  /**
+   * Sends the percentiles of the given histogram or timer under the given name. See
+   * {@link #sendSummarizable(String, Summarizable)} for when the reporter calls this.
+   *
+   * @param sanitizedName the name, without the prefix
+   * @param metric        the metric
+   */
   protected void sendSampling(String sanitizedName, Sampling metric) {
     final Snapshot snapshot = metric.getSnapshot();
-    sendToStatsD(sanitizedName + ".median", formatNumber(snapshot.getMedian()));
-    sendToStatsD(sanitizedName + ".75percentile", formatNumber(snapshot.get75thPercentile()));
-    sendToStatsD(sanitizedName + ".95percentile", formatNumber(snapshot.get95thPercentile()));
-    sendToStatsD(sanitizedName + ".98percentile", formatNumber(snapshot.get98thPercentile()));
-    sendToStatsD(sanitizedName + ".99percentile", formatNumber(snapshot.get99thPercentile()));
-    sendToStatsD(sanitizedName + ".999percentile", formatNumber(snapshot.get999thPercentile()));
+    sendToStatsD(sanitizedName + ".median", snapshot.getMedian());
+    sendToStatsD(sanitizedName + ".75percentile", snapshot.get75thPercentile());
+    sendToStatsD(sanitizedName + ".95percentile", snapshot.get95thPercentile());
+    sendToStatsD(sanitizedName + ".98percentile", snapshot.get98thPercentile());
+    sendToStatsD(sanitizedName + ".99percentile", snapshot.get99thPercentile());
+    sendToStatsD(sanitizedName + ".999percentile", snapshot.get999thPercentile());
   }
 
   protected String sanitizeName(MetricName name) {
@@ -199,40 +927,470 @@ public class StatsDReporter extends AbstractPollingReporter implements MetricPro
     return sb.append(name.getName()).toString();
   }
 
-  private void sendToStatsD(String metricName, String metricValue) {
-    statsD.send(prefix + metricName, metricValue);
+  private void closeStatsD() {
+    if (workers != null) {
+      workers.shutdown();
+    }
+    for (Partition partition : partitions) {
+      try {
+        partition.statsD.close();
+      } catch (IOException e) {
+        LOG.info("Failure when closing statsd connection", e);
+      }
+    }
   }
 
-  private String format(final Object o) {
-    if (o instanceof Float) {
-      return formatNumber(((Float) o).doubleValue());
-    } else if (o instanceof Double) {
-      return formatNumber((Double) o);
-    } else if (o instanceof Byte) {
-      return formatNumber(((Byte) o).longValue());
-    } else if (o instanceof Short) {
-      return formatNumber(((Short) o).longValue());
-    } else if (o instanceof Integer) {
-      return formatNumber(((Integer) o).longValue());
-    } else if (o instanceof Long) {
-      return formatNumber((Long) o);
-    } else if (o instanceof BigInteger) {
-      return formatNumber((BigInteger) o);
-    } else if (o instanceof BigDecimal) {
-      return formatNumber(((BigDecimal) o).doubleValue());
-    }
-    return null;
+  private void sendToStatsD(String metricName, long metricValue) {
+    hookStatsD().send(prefix + metricName, metricValue);
   }
 
-  private String formatNumber(final BigInteger n) {
-    return String.valueOf(n);
+  private void sendToStatsD(String metricName, double metricValue) {
+    hookStatsD().send(prefix + metricName, metricValue);
   }
 
-  private String formatNumber(final long n) {
-    return Long.toString(n);
+  private StatsDSender hookStatsD() {
+    final Partition partition = hookPartition.get();
+    return partition == null ? partitions[0].statsD : partition.statsD;
   }
 
-  private String formatNumber(final double v) {
-    return String.format(Locale.US, "%2.2f", v);
+  /**
+   * The metrics whose names hash to one partition, along with the client, name cache and buffers used to report
+   * them. Each partition is only ever used by one thread at a time.
+   */
+  private final class Partition implements MetricProcessor<Long> {
+    private final int index;
+    private final StatsDSender statsD;
+    private final NameCache<MetricName> names;
+    @Nullable
+    private final NameCache<MetricName> distributionNames;
+    private final LineEncoder gaugeValue = new LineEncoder();
+    private final double[] snapshotValues = new double[SNAPSHOT_VALUES];
+
+    private Partition(int index, StatsDSender statsD, int nameCacheSize) {
+      this.index = index;
+      this.statsD = statsD;
+      this.names = new NameCache<MetricName>(nameCacheSize, namer(), tagger());
+      // Kept apart from the names of the fields, so that the count of new samples doesn't clash with delta counters.
+      this.distributionNames = distribution == null ? null
+          : new NameCache<MetricName>(nameCacheSize, namer(), tagger());
+    }
+
+    private NameCache.Namer<MetricName> namer() {
+      return new NameCache.Namer<MetricName>() {
+        @Override
+        public String name(MetricName key, String suffix) {
+          final String sanitizedName = StatsDReporter.this.prefix + sanitizeName(key);
+          return suffix.isEmpty() ? sanitizedName : sanitizedName + "." + suffix;
+        }
+      };
+    }
+
+    @Nullable
+    private NameCache.Tagger<MetricName> tagger() {
+      return tagRules.isEmpty() ? null : new NameCache.Tagger<MetricName>() {
+        @Override
+        public Tags tags(MetricName key) {
+          return tagRules.tagsFor(sanitizeName(key));
+        }
+      };
+    }
+
+    /**
+     * Reports the metrics of this partition out of the given grouped metrics.
+     */
+    private void report(SortedMap<String, SortedMap<MetricName, Metric>> groupedMetrics, long epoch) {
+      try {
+        statsD.connect();
+        for (SortedMap<MetricName, Metric> group : groupedMetrics.values()) {
+          for (Map.Entry<MetricName, Metric> entry : group.entrySet()) {
+            final Metric metric = entry.getValue();
+            if (metric != null && owns(entry.getKey())) {
+              try {
+                metric.processWith(this, entry.getKey(), epoch);
+              } catch (Exception ignored) {
+                LOG.error("Error printing regular metrics:", ignored);
+              }
+            }
+          }
+        }
+        statsD.flush();
+        evictUnused();
+      } catch (IOException e) {
+        LOG.info("Failed to connect or print metrics to statsd", e);
+      }
+    }
+
+    private void evictUnused() {
+      names.evictUnused();
+      if (distributionNames != null) {
+        distributionNames.evictUnused();
+      }
+    }
+
+    private boolean owns(MetricName name) {
+      return (name.hashCode() & Integer.MAX_VALUE) % partitions.length == index;
+    }
+
+    private <T extends Summarizable & Sampling> void sendThroughHooks(MetricName name, T metric) {
+      hookPartition.set(this);
+      try {
+        final String sanitizedName = sanitizeName(name);
+        StatsDReporter.this.sendSummarizable(sanitizedName, metric);
+        StatsDReporter.this.sendSampling(sanitizedName, metric);
+      } finally {
+        hookPartition.remove();
+      }
+    }
+
+    @Override
+    public void processMeter(MetricName name, Metered meter, Long epoch) {
+      final EmissionPlan.Selection selection = select(EmissionPlan.Kind.METER, name);
+      final EncodedName[] meterNames = names.get(name, selection);
+      final long count = meter.count();
+      if (selection.isEmpty() || isIdle(name, count)) {
+        return;
+      }
+      final EmissionPlan.Field[] fields = selection.fields();
+      for (int i = 0; i < fields.length; i++) {
+        sendMetered(name, meterNames[i], fields[i], count, meter);
+      }
+    }
+
+    @Override
+    public void processCounter(MetricName name, Counter counter, Long epoch) {
+      final EncodedName counterName = names.get(name, NameCache.NO_SUFFIX)[0];
+      final long count = counter.count();
+      if (isIdle(name, count)) {
+        return;
+      }
+      sendCount(name, counterName, count);
+    }
+
+    @Override
+    public void processHistogram(MetricName name, Histogram histogram, Long epoch) {
+      if (summaryHooks) {
+        sendThroughHooks(name, histogram);
+        return;
+      }
+      final EmissionPlan.Selection selection = select(EmissionPlan.Kind.HISTOGRAM, name);
+      final EncodedName[] histogramNames = names.get(name, selection);
+      final long count = histogram.count();
+      if ((selection.isEmpty() && distribution == null) || isIdle(name, count)) {
+        return;
+      }
+      sendFields(name, histogramNames, selection.fields(), count, histogram, precision.getValues());
+    }
+
+    @Override
+    public void processTimer(MetricName name, Timer timer, Long epoch) {
+      if (summaryHooks) {
+        processMeter(name, timer, epoch);
+        sendThroughHooks(name, timer);
+        return;
+      }
+      final EmissionPlan.Selection selection = select(EmissionPlan.Kind.TIMER, name);
+      final EncodedName[] timerNames = names.get(name, selection);
+      final long count = timer.count();
+      if ((selection.isEmpty() && distribution == null) || isIdle(name, count)) {
+        return;
+      }
+      sendFields(name, timerNames, selection.fields(), count, timer, precision.getDurations());
+    }
+
+    @Override
+    public void processGauge(MetricName name, Gauge<?> gauge, Long epoch) {
+      final long start = profiler == null ? 0 : profiler.start();
+      final Object value = gauge.value();
+      if (profiler != null) {
+        profiler.record(name, ReportProfiler.Kind.GAUGE, start);
+      }
+      if (value instanceof Float || value instanceof Double || value instanceof BigDecimal) {
+        final EncodedName gaugeName = names.get(name, NameCache.NO_SUFFIX)[0];
+        final double doubleValue = ((Number) value).doubleValue();
+        if (!isIdle(name, doubleValue)) {
+          statsD.send(gaugeName, doubleValue, precision.getGauges());
+        }
+      } else if (value instanceof Byte || value instanceof Short || value instanceof Integer
+          || value instanceof Long) {
+        final EncodedName gaugeName = names.get(name, NameCache.NO_SUFFIX)[0];
+        final long longValue = ((Number) value).longValue();
+        if (!isIdle(name, longValue)) {
+          statsD.send(gaugeName, longValue);
+        }
+      } else if (value instanceof BigInteger) {
+        final EncodedName gaugeName = names.get(name, NameCache.NO_SUFFIX)[0];
+        if (!isIdle(name, value.toString())) {
+          statsD.send(gaugeName, value.toString());
+        }
+      }
+    }
+
+    /**
+     * Sends the given fields of a histogram or timer, taking a snapshot only for the first percentile or for
+     * distribution mode, followed by its samples in distribution mode. The count and rates are only in the layout of
+     * timers.
+     */
+    private <T extends Summarizable & Sampling> void sendFields(MetricName name, EncodedName[] metricNames,
+                                                                EmissionPlan.Field[] fields, long count, T metric,
+                                                                int decimals) {
+      final long newSamples = newSamples(name, count);
+      final Snapshot samples = newSamples > 0 ? snapshot(name, metric) : null;
+      double[] percentiles = null;
+      for (int i = 0; i < fields.length; i++) {
+        final EmissionPlan.Field field = fields[i];
+        if (!field.isSnapshot()) {
+          sendMetered(name, metricNames[i], field, count, (Metered) metric);
+        } else if (field.compareTo(EmissionPlan.Field.P50) < 0) {
+          sendSummarizable(metricNames[i], field, metric, decimals);
+        } else {
+          if (percentiles == null) {
+            percentiles = snapshotValues(name, count, metric, samples);
+          }
+          statsD.send(metricNames[i], percentiles[field.ordinal() - EmissionPlan.Field.P50.ordinal()], decimals);
+        }
+      }
+
+      if (samples != null) {
+        distribution.send(statsD, distributionNames.get(name, NameCache.NO_SUFFIX)[0], samples.getValues(), decimals,
+            newSamples);
+      }
+    }
+
+    /**
+     * Returns the number of events recorded since the previous run in distribution mode, or 0 otherwise.
+     */
+    private long newSamples(MetricName name, long count) {
+      if (distributionNames == null) {
+        return 0;
+      }
+      distributionNames.get(name, NameCache.NO_SUFFIX);
+      return distributionNames.delta(name, count);
+    }
+
+    private Snapshot snapshot(MetricName name, Sampling metric) {
+      final long start = profiler == null ? 0 : profiler.start();
+      final Snapshot snapshot = metric.getSnapshot();
+      if (profiler != null) {
+        profiler.record(name, ReportProfiler.Kind.SNAPSHOT, start);
+      }
+      return snapshot;
+    }
+
+    private void sendMetered(MetricName name, EncodedName fieldName, EmissionPlan.Field field, long count,
+                             Metered meter) {
+      switch (field) {
+        case COUNT:
+          sendCount(name, fieldName, count);
+          break;
+        case MEAN_RATE:
+          statsD.send(fieldName, meter.meanRate(), precision.getRates());
+          break;
+        case M1_RATE:
+          statsD.send(fieldName, meter.oneMinuteRate(), precision.getRates());
+          break;
+        case M5_RATE:
+          statsD.send(fieldName, meter.fiveMinuteRate(), precision.getRates());
+          break;
+        case M15_RATE:
+        default:
+          statsD.send(fieldName, meter.fifteenMinuteRate(), precision.getRates());
+          break;
+      }
+    }
+
+    private void sendSummarizable(EncodedName fieldName, EmissionPlan.Field field, Summarizable metric,
+                                  int decimals) {
+      switch (field) {
+        case MIN:
+          statsD.send(fieldName, metric.min(), decimals);
+          break;
+        case MAX:
+          statsD.send(fieldName, metric.max(), decimals);
+          break;
+        case MEAN:
+          statsD.send(fieldName, metric.mean(), decimals);
+          break;
+        case STDDEV:
+        default:
+          statsD.send(fieldName, metric.stdDev(), decimals);
+          break;
+      }
+    }
+
+    /**
+     * Returns the fields to send for the given metric, matching its name against the overrides of the emission plan
+     * only when it is first reported.
+     */
+    private EmissionPlan.Selection select(EmissionPlan.Kind kind, MetricName name) {
+      if (!emissionPlan.hasOverrides()) {
+        return emissionPlan.select(kind);
+      }
+      final EmissionPlan.Selection cached = names.selection(name);
+      return cached != null && cached.kind() == kind ? cached : emissionPlan.select(kind, sanitizeName(name));
+    }
+
+    /**
+     * Returns the percentiles of the given metric's snapshot, reusing the ones computed for the previous run if enabled
+     * and the count hasn't changed since. Uses the given snapshot if one was already taken for distribution mode.
+     */
+    private double[] snapshotValues(MetricName name, long count, Sampling metric, @Nullable Snapshot taken) {
+      if (reuseSnapshots) {
+        final double[] cached = names.cachedSnapshot(name, count);
+        if (cached != null) {
+          return cached;
+        }
+      }
+
+      final long start = profiler == null ? 0 : profiler.start();
+      final Snapshot snapshot = taken == null ? metric.getSnapshot() : taken;
+      final double[] values = reuseSnapshots ? names.snapshotBuffer(name, count, SNAPSHOT_VALUES) : snapshotValues;
+      int i = 0;
+      values[i++] = snapshot.getMedian();
+      values[i++] = snapshot.get75thPercentile();
+      values[i++] = snapshot.get95thPercentile();
+      values[i++] = snapshot.get98thPercentile();
+      values[i++] = snapshot.get99thPercentile();
+      values[i] = snapshot.get999thPercentile();
+      if (profiler != null && taken == null) {
+        profiler.record(name, ReportProfiler.Kind.SNAPSHOT, start);
+      }
+      return values;
+    }
+
+    /**
+     * Returns whether idle suppression is enabled and the metric with the given count or integral value can be skipped.
+     */
+    private boolean isIdle(MetricName name, long count) {
+      return suppressIdle && !names.shouldReport(name, count, clock.tick(), heartbeatNanos);
+    }
+
+    private boolean isIdle(MetricName name, double value) {
+      return suppressIdle
+          && !names.shouldReport(name, gaugeValue.reset().value(value, precision.getGauges()), clock.tick(),
+              heartbeatNanos);
+    }
+
+    private boolean isIdle(MetricName name, String value) {
+      return suppressIdle && !names.shouldReport(name, gaugeValue.reset().value(value), clock.tick(), heartbeatNanos);
+    }
+
+    private void sendCount(MetricName name, EncodedName countName, long count) {
+      if (deltaCounters) {
+        statsD.send(countName, names.delta(name, count), MetricType.COUNTER);
+      } else {
+        statsD.send(countName, count);
+      }
+    }
+  }
+
+  /**
+   * Publishes the reporter's own metrics, reading the counters of the {@link StatsD} clients only when reported and
+   * summing them across the clients of a parallel reporter.
+   */
+  private static final class SelfMetrics extends ReporterMetrics {
+    private final Timer send;
+    private final Timer encode;
+
+    private SelfMetrics(final MetricsRegistry registry, final List<? extends StatsDSender> statsDs) {
+      super(statsDs.get(0));
+      for (int i = 1; i < statsDs.size(); i++) {
+        listenTo(statsDs.get(i));
+      }
+      this.send = registry.newTimer(new MetricName(StatsDReporter.class, "send"), TimeUnit.MILLISECONDS,
+          TimeUnit.SECONDS);
+      this.encode = registry.newTimer(new MetricName(StatsDReporter.class, "encode"), TimeUnit.MILLISECONDS,
+          TimeUnit.SECONDS);
+      registry.newGauge(new MetricName(StatsDReporter.class, "lines"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getSentLines();
+        }
+      });
+      registry.newGauge(new MetricName(StatsDReporter.class, "packets"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getSentPackets();
+        }
+      });
+      registry.newGauge(new MetricName(StatsDReporter.class, "bytes"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getSentBytes();
+        }
+      });
+      registry.newGauge(new MetricName(StatsDReporter.class, "failures"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getTotalFailures();
+        }
+      });
+      registry.newGauge(new MetricName(StatsDReporter.class, "dropped-packets"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getDroppedPackets();
+        }
+      });
+      registry.newGauge(new MetricName(StatsDReporter.class, "suppressed-packets"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getSuppressedSends();
+        }
+      });
+      registry.newGauge(new MetricName(StatsDReporter.class, "fill-ratio"), new Gauge<Double>() {
+        @Override
+        public Double value() {
+          if (statsDs.size() == 1) {
+            return statsDs.get(0).getAverageFillRatio();
+          }
+          double filled = 0;
+          long packets = 0;
+          for (StatsDSender statsD : statsDs) {
+            filled += statsD.getAverageFillRatio() * statsD.getSentPackets();
+            packets += statsD.getSentPackets();
+          }
+          return packets == 0 ? 0.0 : filled / packets;
+        }
+      });
+      if (statsDs.get(0) instanceof AsyncStatsD) {
+        registry.newGauge(new MetricName(StatsDReporter.class, "dropped-lines"), new Sum(statsDs) {
+          @Override
+          long value(final StatsDSender statsD) {
+            return statsD instanceof AsyncStatsD ? ((AsyncStatsD) statsD).getDroppedLines() : 0;
+          }
+        });
+      }
+    }
+
+    @Override
+    protected void recordSend(final long nanos) {
+      send.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    protected void recordEncode(final long nanos) {
+      encode.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A gauge of the sum of one counter across all clients.
+     */
+    private abstract static class Sum extends Gauge<Long> {
+      private final List<? extends StatsDSender> statsDs;
+
+      private Sum(final List<? extends StatsDSender> statsDs) {
+        this.statsDs = statsDs;
+      }
+
+      @Override
+      public Long value() {
+        long sum = 0;
+        for (StatsDSender statsD : statsDs) {
+          sum += value(statsD);
+        }
+        return sum;
+      }
+
+      abstract long value(StatsDSender statsD);
+    }
   }
 }
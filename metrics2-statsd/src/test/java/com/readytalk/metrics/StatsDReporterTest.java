@@ -34,6 +34,8 @@ import com.yammer.metrics.reporting.AbstractPollingReporter;
 import com.yammer.metrics.stats.Snapshot;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.AdditionalMatchers;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
@@ -41,16 +43,26 @@ import org.mockito.stubbing.Answer;
 import org.mockito.stubbing.Stubber;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
+import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -96,11 +108,23 @@ public class StatsDReporterTest {
   }
 
   private void verifySend(String metricNameSuffix, String metricValue) {
-    verify(statsD).send(METRIC_BASE_NAME + "." + metricNameSuffix, metricValue);
+    verifyValue(METRIC_BASE_NAME + "." + metricNameSuffix, metricValue);
   }
 
   private void verifySend(String metricValue) {
-    verify(statsD).send(METRIC_BASE_NAME, metricValue);
+    verifyValue(METRIC_BASE_NAME, metricValue);
+  }
+
+  /**
+   * Verifies a numeric send, where values containing a decimal point are compared to two decimal places.
+   */
+  private void verifyValue(String metricName, String metricValue) {
+    final EncodedName name = EncodedName.of(metricName);
+    if (metricValue.contains(".")) {
+      verify(statsD).send(eq(name), AdditionalMatchers.eq(Double.parseDouble(metricValue), 0.005), eq(2));
+    } else {
+      verify(statsD).send(name, Long.parseLong(metricValue));
+    }
   }
 
   public void verifyTimer() {
@@ -150,7 +174,10 @@ public class StatsDReporterTest {
   public void exceptionOnConnect() throws IOException {
     doThrow(new IOException()).when(statsD).connect();
     reporter.run();
-    verify(statsD, never()).send(anyString(), anyString());
+    verify(statsD, never()).send(any(EncodedName.class), anyString());
+    verify(statsD, never()).send(any(EncodedName.class), anyLong());
+    verify(statsD, never()).send(any(EncodedName.class), anyDouble());
+    verify(statsD, never()).send(any(EncodedName.class), anyDouble(), anyInt());
   }
 
   @Test
@@ -158,6 +185,224 @@ public class StatsDReporterTest {
     //Exception should not bubble up.
     doThrow(new IOException()).when(statsD).close();
     reporter.run();
+    reporter.shutdown();
+  }
+
+  @Test
+  public void keepsTheConnectionOpenAcrossRuns() throws IOException {
+    reporter.run();
+    reporter.run();
+
+    verify(statsD, times(2)).connect();
+    verify(statsD, never()).close();
+
+    reporter.shutdown();
+    verify(statsD).close();
+  }
+
+  @Test
+  public void flushesBatchedMeasurementsBeforeClosing() throws Exception {
+    addMetricAndRunReporter(
+        new Callable<Counter>() {
+          @Override
+          public Counter call() throws Exception {
+            return createCounter(1);
+          }
+        });
+
+    final InOrder inOrder = inOrder(statsD);
+    inOrder.verify(statsD).connect();
+    inOrder.verify(statsD).send(EncodedName.of(METRIC_BASE_NAME), 1L);
+    inOrder.verify(statsD).flush();
+    inOrder.verify(statsD).close();
+  }
+
+  @Test
+  public void builderCreatesReporter() throws Exception {
+    reporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .filter(MetricPredicate.ALL)
+        .withClock(clock)
+        .build(statsD);
+
+    addMetricAndRunReporter(
+        new Callable<Counter>() {
+          @Override
+          public Counter call() throws Exception {
+            return createCounter(42);
+          }
+        });
+    verifyCounter(42);
+  }
+
+  @Test
+  public void roundsGaugesToTheConfiguredPrecision() throws Exception {
+    reporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withClock(clock)
+        .withPrecision(Precision.decimals(2).withGauges(4))
+        .build(statsD);
+
+    addMetricAndRunReporter(
+        new Callable<Gauge<Object>>() {
+          @Override
+          public Gauge<Object> call() throws Exception {
+            return createGauge(0.0012);
+          }
+        });
+    verify(statsD).send(EncodedName.of(METRIC_BASE_NAME), 0.0012, 4);
+  }
+
+  @Test
+  public void reportsCountersAsDeltas() throws Exception {
+    reporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withClock(clock)
+        .withDeltaCounters(true)
+        .build(statsD);
+
+    final Counter counter = createCounter(100);
+    when(counter.count()).thenReturn(100L, 130L);
+    registry.add(new MetricName(Object.class, "metric"), counter);
+    reporter.run();
+    reporter.run();
+
+    final InOrder inOrder = inOrder(statsD);
+    inOrder.verify(statsD).send(EncodedName.of(METRIC_BASE_NAME), 100L, MetricType.COUNTER);
+    inOrder.verify(statsD).send(EncodedName.of(METRIC_BASE_NAME), 30L, MetricType.COUNTER);
+    verify(statsD, never()).send(any(EncodedName.class), anyLong());
+  }
+
+  @Test
+  public void skipsIdleMetricsUntilTheHeartbeat() throws Exception {
+    reporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withClock(clock)
+        .withIdleSuppression(1, TimeUnit.MINUTES)
+        .build(statsD);
+    when(clock.tick()).thenReturn(0L, TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(60));
+
+    registry.add(new MetricName(Object.class, "metric"), createCounter(7));
+    reporter.run();
+    reporter.run();
+    reporter.run();
+
+    verify(statsD, times(2)).send(EncodedName.of(METRIC_BASE_NAME), 7L);
+  }
+
+  @Test
+  public void reusesTheSnapshotsOfIdleHistograms() throws Exception {
+    reporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withClock(clock)
+        .withSnapshotReuse(true)
+        .build(statsD);
+
+    final Histogram histogram = createHistogram();
+    when(histogram.count()).thenReturn(1L, 1L, 2L);
+    registry.add(new MetricName(Object.class, "metric"), histogram);
+    reporter.run();
+    reporter.run();
+    verify(histogram, times(1)).getSnapshot();
+
+    reporter.run();
+    verify(histogram, times(2)).getSnapshot();
+  }
+
+  @Test
+  public void sendsOnlyTheFieldsOfTheEmissionPlan() throws Exception {
+    reporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withClock(clock)
+        .withEmissionPlan(EmissionPlan.ALL
+            .withTimers(EmissionPlan.Field.COUNT, EmissionPlan.Field.M1_RATE, EmissionPlan.Field.MAX,
+                EmissionPlan.Field.P99)
+            .withHistograms(EmissionPlan.Field.MEAN)
+            .withOverride("java\\.lang\\.Object\\.db", EmissionPlan.Field.COUNT))
+        .build(statsD);
+
+    final Timer dbTimer = createTimer();
+    final Histogram histogram = createHistogram();
+    registry.add(new MetricName(Object.class, "metric"), createTimer());
+    registry.add(new MetricName(Object.class, "db"), dbTimer);
+    registry.add(new MetricName(Object.class, "histogram"), histogram);
+    reporter.run();
+
+    verifySend("samples", "1");
+    verifySend("1MinuteRate", "1.00");
+    verifySend("max", "3.00");
+    verifySend("99percentile", "0.99");
+    verifyValue("prefix.java.lang.Object.db.samples", "1");
+    verifyValue("prefix.java.lang.Object.histogram.mean", "2.00");
+    verify(statsD, times(2)).send(any(EncodedName.class), anyLong());
+    verify(statsD, times(4)).send(any(EncodedName.class), anyDouble(), anyInt());
+    verify(dbTimer, never()).getSnapshot();
+    verify(histogram, never()).getSnapshot();
+  }
+  @Test
+  public void sendsSamplesOfTheNewEventsInDistributionMode() throws Exception {
+    reporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withClock(clock)
+        .withEmissionPlan(EmissionPlan.ALL.withTimers().withHistograms())
+        .withDistributions(MetricType.TIMER, 10)
+        .build(statsD);
+
+    final Timer timer = createTimer();
+    when(timer.count()).thenReturn(1L, 3L, 3L);
+    final Histogram histogram = createHistogram();
+    registry.add(new MetricName(Object.class, "metric"), timer);
+    registry.add(new MetricName(Object.class, "histogram"), histogram);
+    for (int i = 0; i < 3; i++) {
+      reporter.run();
+    }
+
+    final EncodedName name = EncodedName.of(METRIC_BASE_NAME);
+    verify(statsD).send(name, 0.5, 2, MetricType.TIMER, 1.0);
+    verify(statsD).send(name, 0.25, 2, MetricType.TIMER, 1.0);
+    verify(statsD).send(name, 0.75, 2, MetricType.TIMER, 1.0);
+    verify(statsD, times(3)).send(any(EncodedName.class), anyDouble(), anyInt(), any(MetricType.class), anyDouble());
+    verify(timer, times(2)).getSnapshot();
+    verify(histogram, never()).getSnapshot();
+  }
+
+
+  @Test
+  public void sendsHistogramsAndTimersThroughOverriddenHooks() throws Exception {
+    final List<String> sampled = new ArrayList<String>();
+    reporter = new StatsDReporter(registry, "prefix", MetricPredicate.ALL, clock, statsD) {
+      @Override
+      protected void sendSampling(String sanitizedName, Sampling metric) {
+        sampled.add(sanitizedName);
+      }
+    };
+
+    registry.add(new MetricName(Object.class, "metric"), createHistogram());
+    registry.add(new MetricName(Object.class, "timer"), createTimer());
+    reporter.run();
+
+    assertThat(sampled).containsOnly("java.lang.Object.metric", "java.lang.Object.timer");
+    verify(statsD).send("prefix.java.lang.Object.metric.min", 1.0);
+    verify(statsD).send("prefix.java.lang.Object.timer.stddev", 1.5);
+    verifyValue("prefix.java.lang.Object.timer.samples", "1");
+    verify(statsD, never()).send(eq(EncodedName.of(METRIC_BASE_NAME + ".median")), anyDouble(), anyInt());
+  }
+
+  @Test
+  public void tagsMetricsWithGlobalTagsAndTheTagsOfMatchingPatterns() throws Exception {
+    reporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withClock(clock)
+        .withGlobalTags("env:prod")
+        .withTagsFor("java\\.lang\\.Object\\.db", "tier:db")
+        .build(statsD);
+
+    registry.add(new MetricName(Object.class, "db"), createCounter(7));
+    registry.add(new MetricName(Object.class, "metric"), createCounter(8));
+    reporter.run();
+
+    verify(statsD).send(EncodedName.of("prefix.java.lang.Object.db", Tags.of("env:prod", "tier:db")), 7L);
+    verify(statsD).send(EncodedName.of(METRIC_BASE_NAME, Tags.of("env:prod")), 8L);
   }
 
   @Test
@@ -232,7 +477,141 @@ public class StatsDReporterTest {
             return createGauge(value);
           }
         });
-    verify(statsD, never()).send(anyString(), anyString());
+    verify(statsD, never()).send(any(EncodedName.class), anyString());
+    verify(statsD, never()).send(any(EncodedName.class), anyLong());
+    verify(statsD, never()).send(any(EncodedName.class), anyDouble());
+    verify(statsD, never()).send(any(EncodedName.class), anyDouble(), anyInt());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void publishesItsOwnMetrics() throws Exception {
+    final MetricsRegistry selfRegistry = new MetricsRegistry();
+    when(statsD.getSentLines()).thenReturn(12L);
+    final StatsDReporter instrumentedReporter = StatsDReporter.forRegistry(registry)
+        .withClock(clock)
+        .withSelfMetrics(selfRegistry)
+        .build(statsD);
+    try {
+      instrumentedReporter.run();
+
+      verify(statsD).setPacketListener(any(PacketListener.class));
+      assertThat(selfRegistry.allMetrics().keySet()).containsOnly(
+          new MetricName(StatsDReporter.class, "lines"), new MetricName(StatsDReporter.class, "packets"),
+          new MetricName(StatsDReporter.class, "bytes"), new MetricName(StatsDReporter.class, "failures"),
+          new MetricName(StatsDReporter.class, "dropped-packets"),
+          new MetricName(StatsDReporter.class, "suppressed-packets"),
+          new MetricName(StatsDReporter.class, "fill-ratio"),
+          new MetricName(StatsDReporter.class, "send"), new MetricName(StatsDReporter.class, "encode"));
+      final Gauge<Long> lines = (Gauge<Long>) selfRegistry.allMetrics().get(new MetricName(StatsDReporter.class,
+          "lines"));
+      assertThat(lines.value()).isEqualTo(12L);
+      final Timer encode = (Timer) selfRegistry.allMetrics().get(new MetricName(StatsDReporter.class, "encode"));
+      assertThat(encode.count()).isEqualTo(1);
+    } finally {
+      instrumentedReporter.shutdown();
+      selfRegistry.shutdown();
+    }
+  }
+
+  @Test
+  public void profilesSlowGauges() throws Exception {
+    final StatsDReporter profilingReporter = StatsDReporter.forRegistry(registry)
+        .withClock(clock)
+        .withProfiling(1, 10, TimeUnit.MILLISECONDS)
+        .build(statsD);
+    registry.add(new MetricName(Object.class, "slow"), new Gauge<Long>() {
+      @Override
+      public Long value() {
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return 1L;
+      }
+    });
+    registry.add(new MetricName(Object.class, "fast"), createGauge(2L));
+    try {
+      profilingReporter.run();
+
+      assertThat(profilingReporter.getProfiler().getSlowest()).hasSize(1);
+      assertThat(profilingReporter.getProfiler().getSlowest().get(0).getKey())
+          .isEqualTo(new MetricName(Object.class, "slow"));
+      assertThat(profilingReporter.getProfiler().getOverThreshold()).hasSize(1);
+    } finally {
+      profilingReporter.shutdown();
+    }
+  }
+
+  @Test
+  public void profilesTheCycleWhenAPartitionFails() throws Exception {
+    final MetricName slowName = new MetricName(Object.class, "slow");
+    final StatsD owner = mock(StatsD.class);
+    final StatsD failing = mock(StatsD.class);
+    doThrow(new IOException()).when(failing).connect();
+    final boolean ownedByFirst = (slowName.hashCode() & Integer.MAX_VALUE) % 2 == 0;
+    final StatsDReporter parallelReporter = StatsDReporter.forRegistry(registry)
+        .withClock(clock)
+        .withProfiling(1, 10, TimeUnit.MILLISECONDS)
+        .build(ownedByFirst ? Arrays.asList(owner, failing) : Arrays.asList(failing, owner));
+    registry.add(slowName, new Gauge<Long>() {
+      @Override
+      public Long value() {
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return 1L;
+      }
+    });
+    try {
+      parallelReporter.run();
+
+      assertThat(parallelReporter.getProfiler().getSlowest()).hasSize(1);
+      assertThat(parallelReporter.getProfiler().getSlowest().get(0).getKey()).isEqualTo(slowName);
+    } finally {
+      parallelReporter.shutdown();
+    }
+  }
+
+  @Test
+  public void reportsEachMetricThroughExactlyOnePartition() throws Exception {
+    final StatsD first = mock(StatsD.class);
+    final StatsD second = mock(StatsD.class);
+    final StatsDReporter parallelReporter = StatsDReporter.forRegistry(registry)
+        .withClock(clock)
+        .build(Arrays.asList(first, second));
+    for (int i = 0; i < 16; i++) {
+      registry.add(new MetricName(Object.class, "gauge" + i), createGauge((long) i));
+    }
+    try {
+      parallelReporter.run();
+
+      verify(first).connect();
+      verify(first).flush();
+      verify(second).connect();
+      verify(second).flush();
+      int reportedByFirst = 0;
+      for (int i = 0; i < 16; i++) {
+        final boolean owned = new MetricName(Object.class, "gauge" + i).hashCode() % 2 == 0;
+        final EncodedName name = EncodedName.of("java.lang.Object.gauge" + i);
+        verify(owned ? first : second).send(name, (long) i);
+        verify(owned ? second : first, never()).send(name, (long) i);
+        reportedByFirst += owned ? 1 : 0;
+      }
+      assertThat(reportedByFirst).isGreaterThan(0).isLessThan(16);
+    } finally {
+      parallelReporter.shutdown();
+    }
+    verify(first).close();
+    verify(second).close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsParallelismBelowOne() throws Exception {
+    StatsDReporter.forRegistry(registry).withParallelism(0);
   }
 
   static Counter createCounter(long count) throws Exception {
@@ -15,6 +15,7 @@
  */
 package com.readytalk.metrics;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
@@ -22,6 +23,7 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.Metered;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Sampling;
 import com.codahale.metrics.ScheduledReporter;
 import com.codahale.metrics.Snapshot;
 import com.codahale.metrics.Timer;
@@ -31,12 +33,22 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A reporter which publishes metric values to a StatsD server.
@@ -47,18 +59,95 @@ import java.util.concurrent.TimeUnit;
 public class StatsDReporter extends ScheduledReporter {
   private static final Logger LOG = LoggerFactory.getLogger(StatsDReporter.class);
 
-  private final StatsD statsD;
+  private static final EmissionPlan.Layout TIMER_LAYOUT = snapshotLayout(new EmissionPlan.Layout())
+      .add(EmissionPlan.Field.COUNT, "samples")
+      .add(EmissionPlan.Field.M1_RATE, "m1_rate")
+      .add(EmissionPlan.Field.M5_RATE, "m5_rate")
+      .add(EmissionPlan.Field.M15_RATE, "m15_rate")
+      .add(EmissionPlan.Field.MEAN_RATE, "mean_rate");
+  private static final EmissionPlan.Layout METERED_LAYOUT = new EmissionPlan.Layout()
+      .add(EmissionPlan.Field.COUNT, "samples")
+      .add(EmissionPlan.Field.M1_RATE, "m1_rate")
+      .add(EmissionPlan.Field.M5_RATE, "m5_rate")
+      .add(EmissionPlan.Field.M15_RATE, "m15_rate")
+      .add(EmissionPlan.Field.MEAN_RATE, "mean_rate");
+  private static final EmissionPlan.Layout HISTOGRAM_LAYOUT = snapshotLayout(new EmissionPlan.Layout()
+      .add(EmissionPlan.Field.COUNT, "samples"));
+
+  /**
+   * The number of values taken from a snapshot: max, mean, min, stddev and six percentiles.
+   */
+  private static final int SNAPSHOT_VALUES = 10;
+
   private final String prefix;
+  private final Precision precision;
+  private final boolean deltaCounters;
+  private final Clock clock;
+  private final boolean suppressIdle;
+  private final long heartbeatNanos;
+  private final boolean reuseSnapshots;
+  private final EmissionPlan.Compiled emissionPlan;
+  private final TagRules tagRules;
+  @Nullable
+  private final Distribution distribution;
+  @Nullable
+  private final ReporterMetrics selfMetrics;
+  /**
+   * Shared by all partitions, whose workers record into it concurrently, which {@link ReportProfiler} allows.
+   */
+  @Nullable
+  private final ReportProfiler<String> profiler;
+  private final Partition[] partitions;
+  @Nullable
+  private final ExecutorService workers;
 
-  private StatsDReporter(final MetricRegistry registry,
-                         final StatsD statsD,
-                         final String prefix,
-                         final TimeUnit rateUnit,
-                         final TimeUnit durationUnit,
-                         final MetricFilter filter) {
-    super(registry, "statsd-reporter", filter, rateUnit, durationUnit);
-    this.statsD = statsD;
-    this.prefix = prefix;
+  private StatsDReporter(final Builder builder, final List<? extends StatsDSender> statsDs) {
+    super(builder.registry, "statsd-reporter", builder.filter, builder.rateUnit, builder.durationUnit);
+    if (statsDs.isEmpty()) {
+      throw new IllegalArgumentException("at least one StatsD client is required");
+    }
+    this.prefix = builder.prefix;
+    this.precision = builder.precision;
+    this.deltaCounters = builder.deltaCounters;
+    this.clock = builder.clock;
+    this.suppressIdle = builder.heartbeatUnit != null;
+    this.heartbeatNanos = suppressIdle ? builder.heartbeatUnit.toNanos(builder.heartbeat) : 0;
+    this.reuseSnapshots = builder.reuseSnapshots;
+    this.emissionPlan = builder.emissionPlan.compile(TIMER_LAYOUT, HISTOGRAM_LAYOUT, METERED_LAYOUT);
+    this.tagRules = builder.tagRules;
+    this.distribution = builder.distribution;
+    this.selfMetrics = builder.selfRegistry == null ? null : new SelfMetrics(builder.selfRegistry, statsDs);
+    this.profiler = builder.profileTopN == 0 ? null
+        : new ReportProfiler<String>(builder.profileTopN, builder.profileThreshold, builder.profileThresholdUnit);
+    this.partitions = new Partition[statsDs.size()];
+    for (int i = 0; i < partitions.length; i++) {
+      partitions[i] = new Partition(i, statsDs.get(i), builder.nameCacheSize);
+    }
+    this.workers = partitions.length == 1 ? null : Executors.newFixedThreadPool(partitions.length - 1,
+        new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(final Runnable r) {
+            final Thread thread = new Thread(r, "statsd-reporter-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+
+  private static EmissionPlan.Layout snapshotLayout(final EmissionPlan.Layout layout) {
+    return layout
+        .add(EmissionPlan.Field.MAX, "max")
+        .add(EmissionPlan.Field.MEAN, "mean")
+        .add(EmissionPlan.Field.MIN, "min")
+        .add(EmissionPlan.Field.STDDEV, "stddev")
+        .add(EmissionPlan.Field.P50, "p50")
+        .add(EmissionPlan.Field.P75, "p75")
+        .add(EmissionPlan.Field.P95, "p95")
+        .add(EmissionPlan.Field.P98, "p98")
+        .add(EmissionPlan.Field.P99, "p99")
+        .add(EmissionPlan.Field.P999, "p999");
   }
 
   /**
@@ -73,8 +162,10 @@ public class StatsDReporter extends ScheduledReporter {
 
   /**
    * A builder for {@link StatsDReporter} instances. Defaults to not using a prefix,
-   * converting rates to events/second, converting durations to milliseconds, and not
-   * filtering metrics.
+   * converting rates to events/second, converting durations to milliseconds, not
+   * filtering metrics, rounding to two decimal places, sending counts as gauges, reporting every metric every time,
+   * and batching measurements into packets of at most {@link StatsD#DEFAULT_MAX_PACKET_SIZE} bytes sent through a
+   * blocking {@link java.net.DatagramSocket}.
    */
   @NotThreadSafe
   public static final class Builder {
@@ -83,6 +174,33 @@ public class StatsDReporter extends ScheduledReporter {
     private TimeUnit rateUnit;
     private TimeUnit durationUnit;
     private MetricFilter filter;
+    private int maxPacketSize;
+    private TransportFactory transportFactory;
+    private long addressTtl;
+    private TimeUnit addressTtlUnit;
+    private int failureThreshold;
+    private long minBackoff;
+    private long maxBackoff;
+    private TimeUnit backoffUnit;
+    private int nameCacheSize;
+    private Precision precision;
+    private boolean deltaCounters;
+    private Clock clock;
+    private long heartbeat;
+    private TimeUnit heartbeatUnit;
+    private boolean reuseSnapshots;
+    private EmissionPlan emissionPlan;
+    private TagRules tagRules;
+    private Distribution distribution;
+    private int asyncQueueCapacity;
+    private OverflowPolicy overflowPolicy;
+    private long blockTimeout;
+    private TimeUnit blockTimeoutUnit;
+    private MetricRegistry selfRegistry;
+    private int profileTopN;
+    private long profileThreshold;
+    private TimeUnit profileThresholdUnit;
+    private int parallelism;
 
     private Builder(final MetricRegistry registry) {
       this.registry = registry;
@@ -90,6 +208,33 @@ public class StatsDReporter extends ScheduledReporter {
       this.rateUnit = TimeUnit.SECONDS;
       this.durationUnit = TimeUnit.MILLISECONDS;
       this.filter = MetricFilter.ALL;
+      this.maxPacketSize = StatsD.DEFAULT_MAX_PACKET_SIZE;
+      this.transportFactory = new DatagramSocketTransport.Factory();
+      this.addressTtl = AddressResolver.DEFAULT_TTL_SECONDS;
+      this.addressTtlUnit = TimeUnit.SECONDS;
+      this.failureThreshold = CircuitBreaker.DEFAULT_FAILURE_THRESHOLD;
+      this.minBackoff = CircuitBreaker.DEFAULT_MIN_BACKOFF_MILLIS;
+      this.maxBackoff = CircuitBreaker.DEFAULT_MAX_BACKOFF_MILLIS;
+      this.backoffUnit = TimeUnit.MILLISECONDS;
+      this.nameCacheSize = NameCache.DEFAULT_MAX_SIZE;
+      this.precision = Precision.DEFAULT;
+      this.deltaCounters = false;
+      this.clock = Clock.defaultClock();
+      this.heartbeat = 0;
+      this.heartbeatUnit = null;
+      this.reuseSnapshots = false;
+      this.emissionPlan = EmissionPlan.ALL;
+      this.tagRules = TagRules.NONE;
+      this.distribution = null;
+      this.asyncQueueCapacity = 0;
+      this.overflowPolicy = OverflowPolicy.DROP_NEWEST;
+      this.blockTimeout = 0;
+      this.blockTimeoutUnit = TimeUnit.MILLISECONDS;
+      this.selfRegistry = null;
+      this.profileTopN = 0;
+      this.profileThreshold = 0;
+      this.profileThresholdUnit = TimeUnit.MILLISECONDS;
+      this.parallelism = 1;
     }
 
     /**
@@ -136,6 +281,271 @@ public class StatsDReporter extends ScheduledReporter {
       return this;
     }
 
+    /**
+     * Batch measurements into packets of at most the given number of bytes. Use a value that fits the path MTU,
+     * e.g. 1432 for WAN links or up to 8932 for loopback and jumbo frames.
+     *
+     * @param _maxPacketSize the maximum payload size of a single packet in bytes
+     * @return {@code this}
+     */
+    public Builder withMaxPacketSize(final int _maxPacketSize) {
+      this.maxPacketSize = _maxPacketSize;
+      return this;
+    }
+
+    /**
+     * Send packets through transports created by the given factory, e.g. a {@link DatagramChannelTransport.Factory}
+     * for non-blocking sends.
+     *
+     * @param _transportFactory a {@link TransportFactory}
+     * @return {@code this}
+     */
+    public Builder withTransport(final TransportFactory _transportFactory) {
+      this.transportFactory = _transportFactory;
+      return this;
+    }
+
+    /**
+     * Refresh the resolved address of the StatsD server in the background once it is older than the given
+     * time-to-live. The last good address is kept if a refresh fails.
+     *
+     * @param _addressTtl     how long a resolved address is used before it is refreshed
+     * @param _addressTtlUnit the unit of {@code _addressTtl}
+     * @return {@code this}
+     */
+    public Builder withAddressTtl(final long _addressTtl, final TimeUnit _addressTtlUnit) {
+      this.addressTtl = _addressTtl;
+      this.addressTtlUnit = _addressTtlUnit;
+      return this;
+    }
+
+    /**
+     * Stop sending to a server after {@code _failureThreshold} consecutive failed writes for the rest of the report,
+     * and probe it again once per report after a backoff which doubles from {@code _minBackoff} up to
+     * {@code _maxBackoff} while it stays unreachable. Defaults to 5 failures and 1 to 60 seconds. See
+     * {@link CircuitBreaker}.
+     *
+     * @param _failureThreshold the number of consecutive failed writes after which sends are suppressed
+     * @param _minBackoff       the time sends are suppressed after the first failures
+     * @param _maxBackoff       the maximum time sends are suppressed
+     * @param _backoffUnit      the unit of the backoffs
+     * @return {@code this}
+     */
+    public Builder withCircuitBreaker(final int _failureThreshold, final long _minBackoff, final long _maxBackoff,
+                                      final TimeUnit _backoffUnit) {
+      this.failureThreshold = _failureThreshold;
+      this.minBackoff = _minBackoff;
+      this.maxBackoff = _maxBackoff;
+      this.backoffUnit = _backoffUnit;
+      return this;
+    }
+
+    /**
+     * Cache the encoded StatsD names of at most the given number of metrics. Names of metrics beyond that are
+     * rebuilt on every report. The previous counts of delta counters, idle suppression and reused snapshots are kept
+     * for every metric regardless.
+     *
+     * @param _nameCacheSize the maximum number of metrics whose names are cached
+     * @return {@code this}
+     */
+    public Builder withNameCacheSize(final int _nameCacheSize) {
+      this.nameCacheSize = _nameCacheSize;
+      return this;
+    }
+
+    /**
+     * Round durations, rates, histogram values and floating point gauges to the given numbers of decimal places.
+     *
+     * @param _precision a {@link Precision}
+     * @return {@code this}
+     */
+    public Builder withPrecision(final Precision _precision) {
+      this.precision = _precision;
+      return this;
+    }
+
+    /**
+     * Send counters and the {@code samples} counts of histograms, meters and timers as StatsD counters ({@code |c})
+     * holding the change since the previous report, rather than as gauges holding the running total. This lets the
+     * StatsD server sum counts across instances.
+     *
+     * @param _deltaCounters whether to send counts as deltas
+     * @return {@code this}
+     */
+    public Builder withDeltaCounters(final boolean _deltaCounters) {
+      this.deltaCounters = _deltaCounters;
+      return this;
+    }
+
+    /**
+     * Skip gauges whose formatted value is the same as in the previous report, and counters, histograms, meters and
+     * timers whose count hasn't changed. Each skipped metric is still reported once the given heartbeat interval has
+     * passed since it was last reported, so that dashboards don't go stale.
+     *
+     * @param _heartbeat     the longest time an unchanged metric goes unreported
+     * @param _heartbeatUnit the unit of {@code _heartbeat}
+     * @return {@code this}
+     */
+    public Builder withIdleSuppression(final long _heartbeat, final TimeUnit _heartbeatUnit) {
+      this.heartbeat = _heartbeat;
+      this.heartbeatUnit = _heartbeatUnit;
+      return this;
+    }
+
+    /**
+     * Reuse the values computed from the last snapshot of a timer or histogram as long as its count hasn't changed,
+     * rather than copying and sorting its reservoir again. This is exact for the default exponentially decaying and
+     * uniform reservoirs, whose samples only change on updates, but keeps reporting expired samples of a sliding time
+     * window reservoir until the next update.
+     *
+     * @param _reuseSnapshots whether to reuse the snapshots of idle timers and histograms
+     * @return {@code this}
+     */
+    public Builder withSnapshotReuse(final boolean _reuseSnapshots) {
+      this.reuseSnapshots = _reuseSnapshots;
+      return this;
+    }
+
+    /**
+     * Send only the given fields of timers, histograms and meters, e.g. the count, {@code m1_rate} and {@code p99} of
+     * timers rather than all fifteen. Snapshots are only taken of metrics which send a snapshot field.
+     *
+     * @param _emissionPlan an {@link EmissionPlan}
+     * @return {@code this}
+     */
+    public Builder withEmissionPlan(final EmissionPlan _emissionPlan) {
+      this.emissionPlan = _emissionPlan;
+      return this;
+    }
+
+    /**
+     * Append the given DogStatsD tags to every line, e.g. {@code withGlobalTags("env:prod")}, instead of encoding
+     * them into metric names.
+     *
+     * @param _tags the tags, each either {@code key:value} or a bare value
+     * @return {@code this}
+     */
+    public Builder withGlobalTags(final String... _tags) {
+      this.tagRules = tagRules.withGlobal(Tags.of(_tags));
+      return this;
+    }
+
+    /**
+     * Append the given DogStatsD tags to every line of the metrics whose names match the given regular expression,
+     * after the global tags and the tags of earlier matching patterns. The names are matched without the prefix, once
+     * per metric.
+     *
+     * @param _namePattern a regular expression matching whole metric names
+     * @param _tags        the tags, each either {@code key:value} or a bare value
+     * @return {@code this}
+     */
+    public Builder withTagsFor(final String _namePattern, final String... _tags) {
+      this.tagRules = tagRules.withPattern(_namePattern, Tags.of(_tags));
+      return this;
+    }
+
+    /**
+     * Also send values of the reservoirs of timers and histograms as individual samples under the bare metric name,
+     * e.g. {@code prefix.timer:12.5|ms|@0.1}, so that the StatsD server can compute percentiles across every instance.
+     * Each report sends evenly spaced values of a snapshot, at most one per event recorded since the previous report
+     * and at most {@code _maxSamples} per metric, with the sample rate that scales them up to the number of events.
+     * Use an {@link EmissionPlan} to stop sending the per-instance percentiles.
+     *
+     * @param _type       {@link MetricType#TIMER} for {@code |ms} or {@link MetricType#DISTRIBUTION} for {@code |d}
+     * @param _maxSamples the maximum number of samples sent per metric and report
+     * @return {@code this}
+     */
+    public Builder withDistributions(final MetricType _type, final int _maxSamples) {
+      this.distribution = new Distribution(_type, _maxSamples);
+      return this;
+    }
+
+    /**
+     * Use the given clock to decide when a heartbeat of an idle metric is due.
+     *
+     * @param _clock a {@link Clock}
+     * @return {@code this}
+     */
+    public Builder withClock(final Clock _clock) {
+      this.clock = _clock;
+      return this;
+    }
+
+    /**
+     * Hand encoded measurements to a dedicated sender thread through a bounded queue, so that a slow network doesn't
+     * stretch the report cycle. See {@link AsyncStatsD}.
+     *
+     * @param _queueCapacity  the maximum number of queued measurements, e.g. {@link AsyncStatsD#DEFAULT_QUEUE_CAPACITY}
+     * @param _overflowPolicy what to do with a measurement when the queue is full
+     * @return {@code this}
+     */
+    public Builder withAsyncSender(final int _queueCapacity, final OverflowPolicy _overflowPolicy) {
+      this.asyncQueueCapacity = _queueCapacity;
+      this.overflowPolicy = _overflowPolicy;
+      return this;
+    }
+
+    /**
+     * Wait up to the given time for room in the queue of the sender thread when using
+     * {@link OverflowPolicy#BLOCK}.
+     *
+     * @param _blockTimeout     how long to wait for room in the queue
+     * @param _blockTimeoutUnit the unit of {@code _blockTimeout}
+     * @return {@code this}
+     */
+    public Builder withAsyncBlockTimeout(final long _blockTimeout, final TimeUnit _blockTimeoutUnit) {
+      this.blockTimeout = _blockTimeout;
+      this.blockTimeoutUnit = _blockTimeoutUnit;
+      return this;
+    }
+
+    /**
+     * Publish the reporter's own metrics into the given registry, which may be the one being reported: the lines,
+     * packets and bytes sent, failed writes, dropped packets and lines, the average packet fill ratio, and timers of
+     * the time each report spends encoding and each packet takes to send. They are registered under
+     * {@code com.readytalk.metrics.StatsDReporter}, so only one reporter per registry can publish them.
+     *
+     * @param _selfRegistry the registry to register the reporter's metrics in
+     * @return {@code this}
+     */
+    public Builder withSelfMetrics(final MetricRegistry _selfRegistry) {
+      this.selfRegistry = _selfRegistry;
+      return this;
+    }
+
+    /**
+     * Time the evaluation of every gauge and the snapshot of every timer and histogram, keeping the slowest ones of
+     * each report and logging any which take longer than the given threshold. See {@link #getProfiler()}.
+     *
+     * @param _topN                 the number of slowest metrics to keep per report, or 0 to disable profiling
+     * @param _profileThreshold     the time above which an evaluation is logged
+     * @param _profileThresholdUnit the unit of {@code _profileThreshold}
+     * @return {@code this}
+     */
+    public Builder withProfiling(final int _topN, final long _profileThreshold, final TimeUnit _profileThresholdUnit) {
+      this.profileTopN = _topN;
+      this.profileThreshold = _profileThreshold;
+      this.profileThresholdUnit = _profileThresholdUnit;
+      return this;
+    }
+
+    /**
+     * Split the metrics into the given number of partitions by name, and report them in parallel: each partition reads
+     * its metrics, encodes them into its own buffer and sends them through its own client, the first on the reporting
+     * thread and the others on worker threads. A report finishes once all partitions have been sent. The same lines
+     * are sent as with a single partition, though in a different order and grouped into different packets.
+     *
+     * @param _parallelism the number of partitions, 1 to report sequentially
+     * @return {@code this}
+     */
+    public Builder withParallelism(final int _parallelism) {
+      if (_parallelism < 1) {
+        throw new IllegalArgumentException("parallelism must be at least 1: " + _parallelism);
+      }
+      this.parallelism = _parallelism;
+      return this;
+    }
+
     /**
      * Builds a {@link StatsDReporter} with the given properties, sending metrics to StatsD at the given host and port.
      *
@@ -144,7 +554,68 @@ public class StatsDReporter extends ScheduledReporter {
      * @return a {@link StatsDReporter}
      */
     public StatsDReporter build(final String host, final int port) {
-      return build(new StatsD(host, port));
+      final AddressResolver resolver = new AddressResolver(host, port, addressTtl, addressTtlUnit);
+      final List<StatsDSender> statsDs = new ArrayList<StatsDSender>(parallelism);
+      for (int i = 0; i < parallelism; i++) {
+        statsDs.add(newStatsD(Collections.singletonList(resolver)));
+      }
+      return build(statsDs);
+    }
+
+    /**
+     * Builds a {@link StatsDReporter} with the given properties, sending metrics to a StatsD agent on the same host
+     * through the Unix domain socket at the given path. Needs the {@code metrics-statsd-unix} module on JDK 16 or
+     * later, and ignores {@link #withTransport(TransportFactory)}. See {@code UnixDomainSocketTransport}.
+     *
+     * @param socketPath the path of the socket file the agent listens on
+     * @return a {@link StatsDReporter}
+     * @throws IllegalStateException if the {@code metrics-statsd-unix} module is not on the class path
+     */
+    public StatsDReporter buildUnixSocket(final Path socketPath) {
+      final AddressResolver resolver = UnixSockets.resolver(socketPath);
+      final TransportFactory factory = UnixSockets.transportFactory(socketPath);
+      final List<StatsDSender> statsDs = new ArrayList<StatsDSender>(parallelism);
+      for (int i = 0; i < parallelism; i++) {
+        statsDs.add(newStatsD(Collections.singletonList(resolver), factory));
+      }
+      return build(statsDs);
+    }
+
+    /**
+     * Builds a {@link StatsDReporter} with the given properties, sending each metric to one of the given StatsD
+     * servers chosen by consistent hashing of its name. See {@link ShardedStatsD}.
+     *
+     * @param endpoints the distinct hosts and ports of the StatsD servers, which may be unresolved
+     * @return a {@link StatsDReporter}
+     */
+    public StatsDReporter buildSharded(final List<InetSocketAddress> endpoints) {
+      final List<AddressResolver> resolvers = resolvers(endpoints);
+      final List<StatsDSender> statsDs = new ArrayList<StatsDSender>(parallelism);
+      for (int i = 0; i < parallelism; i++) {
+        final List<StatsD> shards = new ArrayList<StatsD>(resolvers.size());
+        for (AddressResolver resolver : resolvers) {
+          shards.add(newStatsD(Collections.singletonList(resolver)));
+        }
+        statsDs.add(new ShardedStatsD(shards));
+      }
+      return build(statsDs);
+    }
+
+    /**
+     * Builds a {@link StatsDReporter} with the given properties, sending every metric to all of the given StatsD
+     * servers, e.g. to mirror them to a new backend during a migration. Every packet is encoded once and sent to each
+     * server, which tracks its own failures. See {@link Destination}.
+     *
+     * @param endpoints the hosts and ports of the StatsD servers, which may be unresolved
+     * @return a {@link StatsDReporter}
+     */
+    public StatsDReporter buildFanOut(final List<InetSocketAddress> endpoints) {
+      final List<AddressResolver> resolvers = resolvers(endpoints);
+      final List<StatsDSender> statsDs = new ArrayList<StatsDSender>(parallelism);
+      for (int i = 0; i < parallelism; i++) {
+        statsDs.add(newStatsD(resolvers));
+      }
+      return build(statsDs);
     }
 
     /**
@@ -154,8 +625,41 @@ public class StatsDReporter extends ScheduledReporter {
      * @param statsD a {@link StatsD} client
      * @return a {@link StatsDReporter}
      */
-    public StatsDReporter build(final StatsD statsD) {
-      return new StatsDReporter(registry, statsD, prefix, rateUnit, durationUnit, filter);
+    public StatsDReporter build(final StatsDSender statsD) {
+      return build(Collections.singletonList(statsD));
+    }
+
+    /**
+     * Builds a {@link StatsDReporter} with the given properties, reporting one partition of the metrics through each of
+     * the given {@link StatsD} clients, in parallel if there is more than one. Ignores
+     * {@link #withParallelism(int)}.
+     *
+     * @param statsDs one {@link StatsD} client per partition, none of them shared with another reporter
+     * @return a {@link StatsDReporter}
+     */
+    public StatsDReporter build(final List<? extends StatsDSender> statsDs) {
+      return new StatsDReporter(this, new ArrayList<StatsDSender>(statsDs));
+    }
+
+    private StatsD newStatsD(final List<AddressResolver> resolvers) {
+      return newStatsD(resolvers, transportFactory);
+    }
+
+    private StatsD newStatsD(final List<AddressResolver> resolvers, final TransportFactory factory) {
+      final StatsD statsD = asyncQueueCapacity > 0
+          ? new AsyncStatsD(resolvers, factory, maxPacketSize, asyncQueueCapacity, overflowPolicy, blockTimeout,
+              blockTimeoutUnit)
+          : new StatsD(resolvers, factory, maxPacketSize);
+      statsD.setCircuitBreakers(failureThreshold, minBackoff, maxBackoff, backoffUnit);
+      return statsD;
+    }
+
+    private List<AddressResolver> resolvers(final List<InetSocketAddress> endpoints) {
+      final List<AddressResolver> resolvers = new ArrayList<AddressResolver>(endpoints.size());
+      for (InetSocketAddress endpoint : endpoints) {
+        resolvers.add(new AddressResolver(endpoint.getHostString(), endpoint.getPort(), addressTtl, addressTtlUnit));
+      }
+      return resolvers;
     }
   }
 
@@ -168,126 +672,542 @@ public class StatsDReporter extends ScheduledReporter {
                      final SortedMap<String, Meter> meters,
                      final SortedMap<String, Timer> timers) {
 
+    if (selfMetrics != null) {
+      selfMetrics.startCycle();
+    }
+    if (profiler != null) {
+      profiler.startCycle();
+    }
+    try {
+      reportPartitions(gauges, counters, histograms, meters, timers);
+    } finally {
+      // A failed partition still completes the cycle, only an abandoned one is left out.
+      if (!Thread.currentThread().isInterrupted()) {
+        if (selfMetrics != null) {
+          selfMetrics.endCycle();
+        }
+        if (profiler != null) {
+          profiler.endCycle();
+        }
+      }
+    }
+  }
+
+  /**
+   * Reports every partition, the first one on the calling thread and the others on the workers, and waits for them
+   * unless interrupted.
+   */
+  @SuppressWarnings("rawtypes") //Metrics 3.0 interface specifies the raw Gauge type
+  private void reportPartitions(final SortedMap<String, Gauge> gauges,
+                                final SortedMap<String, Counter> counters,
+                                final SortedMap<String, Histogram> histograms,
+                                final SortedMap<String, Meter> meters,
+                                final SortedMap<String, Timer> timers) {
+    if (workers == null) {
+      partitions[0].report(gauges, counters, histograms, meters, timers);
+      return;
+    }
+
+    final List<Future<?>> results = new ArrayList<Future<?>>(partitions.length - 1);
+    for (int i = 1; i < partitions.length; i++) {
+      final Partition partition = partitions[i];
+      results.add(workers.submit(new Runnable() {
+        @Override
+        public void run() {
+          partition.report(gauges, counters, histograms, meters, timers);
+        }
+      }));
+    }
+    partitions[0].report(gauges, counters, histograms, meters, timers);
+    for (Future<?> result : results) {
+      try {
+        result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel(results);
+        return;
+      } catch (ExecutionException e) {
+        LOG.warn("Unable to report to StatsD", e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Interrupts the workers still reporting an abandoned cycle, so that they don't overlap with the next one.
+   */
+  private static void cancel(final List<Future<?>> results) {
+    for (Future<?> result : results) {
+      result.cancel(true);
+    }
+  }
+
+  /**
+   * Returns the profiler which times the evaluation of each metric, if enabled through
+   * {@link Builder#withProfiling(int, long, TimeUnit)}.
+   *
+   * @return the profiler, or {@code null} if profiling is disabled
+   */
+  @Nullable
+  public ReportProfiler<String> getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * Stops the reporter and its worker threads, and closes the connections to StatsD, which are otherwise kept open
+   * across reports.
+   */
+  @Override
+  public void stop() {
     try {
-      statsD.connect();
+      super.stop();
+    } finally {
+      if (workers != null) {
+        workers.shutdown();
+      }
+      for (Partition partition : partitions) {
+        try {
+          partition.statsD.close();
+        } catch (IOException e) {
+          LOG.debug("Error disconnecting from StatsD", partition.statsD, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * The metrics whose names hash to one partition, along with the client, name cache and buffers used to report
+   * them. Each partition is only ever used by one thread at a time.
+   */
+  private final class Partition {
+    private final int index;
+    private final StatsDSender statsD;
+    private final NameCache<String> names;
+    @Nullable
+    private final NameCache<String> distributionNames;
+    private final LineEncoder gaugeValue = new LineEncoder();
+    private final double[] snapshotValues = new double[SNAPSHOT_VALUES];
+
+    private Partition(final int index, final StatsDSender statsD, final int nameCacheSize) {
+      this.index = index;
+      this.statsD = statsD;
+      this.names = new NameCache<String>(nameCacheSize, namer(), tagger());
+      // Kept apart from the names of the fields, so that the count of new samples doesn't clash with delta counters.
+      this.distributionNames = distribution == null ? null
+          : new NameCache<String>(nameCacheSize, namer(), tagger());
+    }
+
+    private NameCache.Namer<String> namer() {
+      return new NameCache.Namer<String>() {
+        @Override
+        public String name(final String key, final String suffix) {
+          return MetricRegistry.name(prefix, key, suffix);
+        }
+      };
+    }
+
+    @Nullable
+    private NameCache.Tagger<String> tagger() {
+      return tagRules.isEmpty() ? null : new NameCache.Tagger<String>() {
+        @Override
+        public Tags tags(final String key) {
+          return tagRules.tagsFor(key);
+        }
+      };
+    }
+
+    /**
+     * Reports the metrics of this partition.
+     */
+    @SuppressWarnings("rawtypes") //Metrics 3.0 interface specifies the raw Gauge type
+    private void report(final SortedMap<String, Gauge> gauges,
+                        final SortedMap<String, Counter> counters,
+                        final SortedMap<String, Histogram> histograms,
+                        final SortedMap<String, Meter> meters,
+                        final SortedMap<String, Timer> timers) {
+      try {
+        statsD.connect();
+
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+          if (owns(entry.getKey())) {
+            reportGauge(entry.getKey(), entry.getValue());
+          }
+        }
+
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+          if (owns(entry.getKey())) {
+            reportCounter(entry.getKey(), entry.getValue());
+          }
+        }
+
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+          if (owns(entry.getKey())) {
+            reportHistogram(entry.getKey(), entry.getValue());
+          }
+        }
+
+        for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+          if (owns(entry.getKey())) {
+            reportMetered(entry.getKey(), entry.getValue());
+          }
+        }
+
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+          if (owns(entry.getKey())) {
+            reportTimer(entry.getKey(), entry.getValue());
+          }
+        }
 
-      for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
-        reportGauge(entry.getKey(), entry.getValue());
+        statsD.flush();
+        names.evictUnused();
+        if (distributionNames != null) {
+          distributionNames.evictUnused();
+        }
+      } catch (IOException e) {
+        LOG.warn("Unable to report to StatsD", statsD, e);
       }
+    }
 
-      for (Map.Entry<String, Counter> entry : counters.entrySet()) {
-        reportCounter(entry.getKey(), entry.getValue());
+    private boolean owns(final String name) {
+      return partitions.length == 1 || (name.hashCode() & Integer.MAX_VALUE) % partitions.length == index;
+    }
+
+    private void reportTimer(final String name, final Timer timer) {
+      final EmissionPlan.Selection selection = select(EmissionPlan.Kind.TIMER, name);
+      final EncodedName[] timerNames = names.get(name, selection);
+      final long count = timer.getCount();
+      if ((selection.isEmpty() && distribution == null) || isIdle(name, count)) {
+        return;
       }
+      final long newSamples = newSamples(name, count);
+      final Snapshot samples = newSamples > 0 ? snapshot(name, timer) : null;
+      final double[] values = selection.needsSnapshot() ? snapshotValues(name, count, timer, samples) : null;
 
-      for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
-        reportHistogram(entry.getKey(), entry.getValue());
+      final EmissionPlan.Field[] fields = selection.fields();
+      for (int i = 0; i < fields.length; i++) {
+        if (fields[i].isSnapshot()) {
+          statsD.send(timerNames[i], convertDuration(values[snapshotIndex(fields[i])]), precision.getDurations());
+        } else {
+          reportMetered(name, timerNames[i], fields[i], count, timer);
+        }
       }
 
-      for (Map.Entry<String, Meter> entry : meters.entrySet()) {
-        reportMetered(entry.getKey(), entry.getValue());
+      if (samples != null) {
+        distribution.send(statsD, distributionNames.get(name, NameCache.NO_SUFFIX)[0], samples.getValues(),
+            convertDuration(1), precision.getDurations(), newSamples);
       }
+    }
 
-      for (Map.Entry<String, Timer> entry : timers.entrySet()) {
-        reportTimer(entry.getKey(), entry.getValue());
+    private void reportMetered(final String name, final Meter meter) {
+      final EmissionPlan.Selection selection = select(EmissionPlan.Kind.METER, name);
+      final EncodedName[] meteredNames = names.get(name, selection);
+      final long count = meter.getCount();
+      if (selection.isEmpty() || isIdle(name, count)) {
+        return;
       }
-    } catch (IOException e) {
-      LOG.warn("Unable to report to StatsD", statsD, e);
-    } finally {
-      try {
-        statsD.close();
-      } catch (IOException e) {
-        LOG.debug("Error disconnecting from StatsD", statsD, e);
+
+      final EmissionPlan.Field[] fields = selection.fields();
+      for (int i = 0; i < fields.length; i++) {
+        reportMetered(name, meteredNames[i], fields[i], count, meter);
       }
     }
-  }
 
-  private void reportTimer(final String name, final Timer timer) {
-    final Snapshot snapshot = timer.getSnapshot();
-
-    statsD.send(prefix(name, "max"), formatNumber(convertDuration(snapshot.getMax())));
-    statsD.send(prefix(name, "mean"), formatNumber(convertDuration(snapshot.getMean())));
-    statsD.send(prefix(name, "min"), formatNumber(convertDuration(snapshot.getMin())));
-    statsD.send(prefix(name, "stddev"), formatNumber(convertDuration(snapshot.getStdDev())));
-    statsD.send(prefix(name, "p50"), formatNumber(convertDuration(snapshot.getMedian())));
-    statsD.send(prefix(name, "p75"), formatNumber(convertDuration(snapshot.get75thPercentile())));
-    statsD.send(prefix(name, "p95"), formatNumber(convertDuration(snapshot.get95thPercentile())));
-    statsD.send(prefix(name, "p98"), formatNumber(convertDuration(snapshot.get98thPercentile())));
-    statsD.send(prefix(name, "p99"), formatNumber(convertDuration(snapshot.get99thPercentile())));
-    statsD.send(prefix(name, "p999"), formatNumber(convertDuration(snapshot.get999thPercentile())));
-
-    reportMetered(name, timer);
-  }
+    private void reportMetered(final String name, final EncodedName fieldName, final EmissionPlan.Field field,
+                               final long count, final Metered meter) {
+      switch (field) {
+        case COUNT:
+          reportCount(name, fieldName, count);
+          break;
+        case M1_RATE:
+          statsD.send(fieldName, convertRate(meter.getOneMinuteRate()), precision.getRates());
+          break;
+        case M5_RATE:
+          statsD.send(fieldName, convertRate(meter.getFiveMinuteRate()), precision.getRates());
+          break;
+        case M15_RATE:
+          statsD.send(fieldName, convertRate(meter.getFifteenMinuteRate()), precision.getRates());
+          break;
+        case MEAN_RATE:
+        default:
+          statsD.send(fieldName, convertRate(meter.getMeanRate()), precision.getRates());
+          break;
+      }
+    }
 
-  private void reportMetered(final String name, final Metered meter) {
-    statsD.send(prefix(name, "samples"), formatNumber(meter.getCount()));
-    statsD.send(prefix(name, "m1_rate"), formatNumber(convertRate(meter.getOneMinuteRate())));
-    statsD.send(prefix(name, "m5_rate"), formatNumber(convertRate(meter.getFiveMinuteRate())));
-    statsD.send(prefix(name, "m15_rate"), formatNumber(convertRate(meter.getFifteenMinuteRate())));
-    statsD.send(prefix(name, "mean_rate"), formatNumber(convertRate(meter.getMeanRate())));
-  }
+    private void reportHistogram(final String name, final Histogram histogram) {
+      final EmissionPlan.Selection selection = select(EmissionPlan.Kind.HISTOGRAM, name);
+      final EncodedName[] histogramNames = names.get(name, selection);
+      final long count = histogram.getCount();
+      if ((selection.isEmpty() && distribution == null) || isIdle(name, count)) {
+        return;
+      }
+      final long newSamples = newSamples(name, count);
+      final Snapshot samples = newSamples > 0 ? snapshot(name, histogram) : null;
+      final double[] values = selection.needsSnapshot() ? snapshotValues(name, count, histogram, samples) : null;
 
-  private void reportHistogram(final String name, final Histogram histogram) {
-    final Snapshot snapshot = histogram.getSnapshot();
-    statsD.send(prefix(name, "samples"), formatNumber(histogram.getCount()));
-    statsD.send(prefix(name, "max"), formatNumber(snapshot.getMax()));
-    statsD.send(prefix(name, "mean"), formatNumber(snapshot.getMean()));
-    statsD.send(prefix(name, "min"), formatNumber(snapshot.getMin()));
-    statsD.send(prefix(name, "stddev"), formatNumber(snapshot.getStdDev()));
-    statsD.send(prefix(name, "p50"), formatNumber(snapshot.getMedian()));
-    statsD.send(prefix(name, "p75"), formatNumber(snapshot.get75thPercentile()));
-    statsD.send(prefix(name, "p95"), formatNumber(snapshot.get95thPercentile()));
-    statsD.send(prefix(name, "p98"), formatNumber(snapshot.get98thPercentile()));
-    statsD.send(prefix(name, "p99"), formatNumber(snapshot.get99thPercentile()));
-    statsD.send(prefix(name, "p999"), formatNumber(snapshot.get999thPercentile()));
-  }
+      final EmissionPlan.Field[] fields = selection.fields();
+      for (int i = 0; i < fields.length; i++) {
+        final EmissionPlan.Field field = fields[i];
+        if (field == EmissionPlan.Field.COUNT) {
+          reportCount(name, histogramNames[i], count);
+        } else if (field == EmissionPlan.Field.MAX || field == EmissionPlan.Field.MIN) {
+          // The max and min are the integral values of samples.
+          statsD.send(histogramNames[i], (long) values[snapshotIndex(field)]);
+        } else {
+          statsD.send(histogramNames[i], values[snapshotIndex(field)], precision.getValues());
+        }
+      }
 
-  private void reportCounter(final String name, final Counter counter) {
-    statsD.send(prefix(name), formatNumber(counter.getCount()));
-  }
+      if (samples != null) {
+        distribution.send(statsD, distributionNames.get(name, NameCache.NO_SUFFIX)[0], samples.getValues(),
+            newSamples);
+      }
+    }
 
-  @SuppressWarnings("rawtypes") //Metrics 3.0 passes us the raw Gauge type
-  private void reportGauge(final String name, final Gauge gauge) {
-    final String value = format(gauge.getValue());
-    if (value != null) {
-      statsD.send(prefix(name), value);
+    /**
+     * Returns the number of events recorded since the previous report in distribution mode, or 0 otherwise.
+     */
+    private long newSamples(final String name, final long count) {
+      if (distributionNames == null) {
+        return 0;
+      }
+      distributionNames.get(name, NameCache.NO_SUFFIX);
+      return distributionNames.delta(name, count);
     }
-  }
 
-  @Nullable
-  private String format(final Object o) {
-    if (o instanceof Float) {
-      return formatNumber(((Float) o).doubleValue());
-    } else if (o instanceof Double) {
-      return formatNumber((Double) o);
-    } else if (o instanceof Byte) {
-      return formatNumber(((Byte) o).longValue());
-    } else if (o instanceof Short) {
-      return formatNumber(((Short) o).longValue());
-    } else if (o instanceof Integer) {
-      return formatNumber(((Integer) o).longValue());
-    } else if (o instanceof Long) {
-      return formatNumber((Long) o);
-    } else if (o instanceof BigInteger) {
-      return formatNumber((BigInteger) o);
-    } else if (o instanceof BigDecimal) {
-      return formatNumber(((BigDecimal) o).doubleValue());
-    }
-    return null;
-  }
+    private Snapshot snapshot(final String name, final Sampling sampling) {
+      final long start = profiler == null ? 0 : profiler.start();
+      final Snapshot snapshot = sampling.getSnapshot();
+      if (profiler != null) {
+        profiler.record(name, ReportProfiler.Kind.SNAPSHOT, start);
+      }
+      return snapshot;
+    }
 
-  private String prefix(final String... components) {
-    return MetricRegistry.name(prefix, components);
-  }
+    /**
+     * Returns the fields to send for the given metric, matching its name against the overrides of the emission plan
+     * only when it is first reported.
+     */
+    private EmissionPlan.Selection select(final EmissionPlan.Kind kind, final String name) {
+      if (!emissionPlan.hasOverrides()) {
+        return emissionPlan.select(kind);
+      }
+      final EmissionPlan.Selection cached = names.selection(name);
+      return cached != null && cached.kind() == kind ? cached : emissionPlan.select(kind, name);
+    }
 
-  private String formatNumber(final BigInteger n) {
-    return String.valueOf(n);
-  }
+    /**
+     * Returns the max, mean, min, stddev and percentiles of the given metric's snapshot, reusing the ones computed for
+     * the previous report if enabled and the count hasn't changed since. Uses the given snapshot if one was already
+     * taken for distribution mode.
+     */
+    private double[] snapshotValues(final String name, final long count, final Sampling sampling,
+                                    @Nullable final Snapshot taken) {
+      if (reuseSnapshots) {
+        final double[] cached = names.cachedSnapshot(name, count);
+        if (cached != null) {
+          return cached;
+        }
+      }
+
+      final long start = profiler == null ? 0 : profiler.start();
+      final Snapshot snapshot = taken == null ? sampling.getSnapshot() : taken;
+      final double[] values = reuseSnapshots ? names.snapshotBuffer(name, count, SNAPSHOT_VALUES) : snapshotValues;
+      int i = 0;
+      values[i++] = snapshot.getMax();
+      values[i++] = snapshot.getMean();
+      values[i++] = snapshot.getMin();
+      values[i++] = snapshot.getStdDev();
+      values[i++] = snapshot.getMedian();
+      values[i++] = snapshot.get75thPercentile();
+      values[i++] = snapshot.get95thPercentile();
+      values[i++] = snapshot.get98thPercentile();
+      values[i++] = snapshot.get99thPercentile();
+      values[i] = snapshot.get999thPercentile();
+      if (profiler != null && taken == null) {
+        profiler.record(name, ReportProfiler.Kind.SNAPSHOT, start);
+      }
+      return values;
+    }
 
-  private String formatNumber(final long n) {
-    return Long.toString(n);
+    /**
+     * Returns the index of a snapshot field in the values returned by
+     * {@link #snapshotValues(String, long, Sampling, Snapshot)}, which follow the order of {@link EmissionPlan.Field}
+     * from {@code MAX} to {@code P999}.
+     */
+    private int snapshotIndex(final EmissionPlan.Field field) {
+      return field.ordinal() - EmissionPlan.Field.MAX.ordinal();
+    }
+
+    private void reportCounter(final String name, final Counter counter) {
+      final EncodedName counterName = names.get(name, NameCache.NO_SUFFIX)[0];
+      final long count = counter.getCount();
+      if (isIdle(name, count)) {
+        return;
+      }
+      reportCount(name, counterName, count);
+    }
+
+    private void reportCount(final String name, final EncodedName countName, final long count) {
+      if (deltaCounters) {
+        statsD.send(countName, names.delta(name, count), MetricType.COUNTER);
+      } else {
+        statsD.send(countName, count);
+      }
+    }
+
+    @SuppressWarnings("rawtypes") //Metrics 3.0 passes us the raw Gauge type
+    private void reportGauge(final String name, final Gauge gauge) {
+      final long start = profiler == null ? 0 : profiler.start();
+      final Object value = gauge.getValue();
+      if (profiler != null) {
+        profiler.record(name, ReportProfiler.Kind.GAUGE, start);
+      }
+      if (value instanceof Float || value instanceof Double || value instanceof BigDecimal) {
+        final EncodedName gaugeName = names.get(name, NameCache.NO_SUFFIX)[0];
+        final double doubleValue = ((Number) value).doubleValue();
+        if (!isIdle(name, doubleValue)) {
+          statsD.send(gaugeName, doubleValue, precision.getGauges());
+        }
+      } else if (value instanceof Byte || value instanceof Short || value instanceof Integer
+          || value instanceof Long) {
+        final EncodedName gaugeName = names.get(name, NameCache.NO_SUFFIX)[0];
+        final long longValue = ((Number) value).longValue();
+        if (!isIdle(name, longValue)) {
+          statsD.send(gaugeName, longValue);
+        }
+      } else if (value instanceof BigInteger) {
+        final EncodedName gaugeName = names.get(name, NameCache.NO_SUFFIX)[0];
+        if (!isIdle(name, value.toString())) {
+          statsD.send(gaugeName, value.toString());
+        }
+      }
+    }
+
+    /**
+     * Returns whether idle suppression is enabled and the metric with the given count or integral value can be skipped.
+     */
+    private boolean isIdle(final String name, final long count) {
+      return suppressIdle && !names.shouldReport(name, count, clock.getTick(), heartbeatNanos);
+    }
+
+    private boolean isIdle(final String name, final double value) {
+      return suppressIdle
+          && !names.shouldReport(name, gaugeValue.reset().value(value, precision.getGauges()), clock.getTick(),
+              heartbeatNanos);
+    }
+
+    private boolean isIdle(final String name, final String value) {
+      return suppressIdle
+          && !names.shouldReport(name, gaugeValue.reset().value(value), clock.getTick(), heartbeatNanos);
+    }
   }
 
-  private String formatNumber(final double v) {
-    return String.format(Locale.US, "%2.2f", v);
+  /**
+   * Publishes the reporter's own metrics, reading the counters of the {@link StatsD} clients only when reported and
+   * summing them across the clients of a parallel reporter.
+   */
+  private static final class SelfMetrics extends ReporterMetrics {
+    private final Timer send;
+    private final Timer encode;
+
+    private SelfMetrics(final MetricRegistry registry, final List<? extends StatsDSender> statsDs) {
+      super(statsDs.get(0));
+      for (int i = 1; i < statsDs.size(); i++) {
+        listenTo(statsDs.get(i));
+      }
+      this.send = registry.timer(MetricRegistry.name(StatsDReporter.class, "send"));
+      this.encode = registry.timer(MetricRegistry.name(StatsDReporter.class, "encode"));
+      registry.register(MetricRegistry.name(StatsDReporter.class, "lines"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getSentLines();
+        }
+      });
+      registry.register(MetricRegistry.name(StatsDReporter.class, "packets"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getSentPackets();
+        }
+      });
+      registry.register(MetricRegistry.name(StatsDReporter.class, "bytes"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getSentBytes();
+        }
+      });
+      registry.register(MetricRegistry.name(StatsDReporter.class, "failures"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getTotalFailures();
+        }
+      });
+      registry.register(MetricRegistry.name(StatsDReporter.class, "dropped-packets"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getDroppedPackets();
+        }
+      });
+      registry.register(MetricRegistry.name(StatsDReporter.class, "suppressed-packets"), new Sum(statsDs) {
+        @Override
+        long value(final StatsDSender statsD) {
+          return statsD.getSuppressedSends();
+        }
+      });
+      registry.register(MetricRegistry.name(StatsDReporter.class, "fill-ratio"), new Gauge<Double>() {
+        @Override
+        public Double getValue() {
+          if (statsDs.size() == 1) {
+            return statsDs.get(0).getAverageFillRatio();
+          }
+          double filled = 0;
+          long packets = 0;
+          for (StatsDSender statsD : statsDs) {
+            filled += statsD.getAverageFillRatio() * statsD.getSentPackets();
+            packets += statsD.getSentPackets();
+          }
+          return packets == 0 ? 0.0 : filled / packets;
+        }
+      });
+      if (statsDs.get(0) instanceof AsyncStatsD) {
+        registry.register(MetricRegistry.name(StatsDReporter.class, "dropped-lines"), new Sum(statsDs) {
+          @Override
+          long value(final StatsDSender statsD) {
+            return statsD instanceof AsyncStatsD ? ((AsyncStatsD) statsD).getDroppedLines() : 0;
+          }
+        });
+      }
+    }
+
+    @Override
+    protected void recordSend(final long nanos) {
+      send.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    protected void recordEncode(final long nanos) {
+      encode.update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A gauge of the sum of one counter across all clients.
+     */
+    private abstract static class Sum implements Gauge<Long> {
+      private final List<? extends StatsDSender> statsDs;
+
+      private Sum(final List<? extends StatsDSender> statsDs) {
+        this.statsDs = statsDs;
+      }
+
+      @Override
+      public Long getValue() {
+        long sum = 0;
+        for (StatsDSender statsD : statsDs) {
+          sum += value(statsD);
+        }
+        return sum;
+      }
+
+      abstract long value(StatsDSender statsD);
+    }
   }
 }
@@ -15,6 +15,7 @@
  */
 package com.readytalk.metrics;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
@@ -26,14 +27,23 @@ import com.codahale.metrics.Timer;
 import org.junit.Test;
 import org.mockito.InOrder;
 
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
+import static org.fest.assertions.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 public class StatsDReporterTest {
@@ -56,8 +66,19 @@ public class StatsDReporterTest {
 
     final InOrder inOrder = inOrder(statsD);
     inOrder.verify(statsD).connect();
-    inOrder.verify(statsD, never()).send("prefix.gauge", "value");
-    inOrder.verify(statsD).close();
+    inOrder.verify(statsD, never()).send(name("prefix.gauge"), "value");
+    inOrder.verify(statsD).flush();
+  }
+
+  @Test
+  public void reportsBigIntegerGaugeValues() throws Exception {
+    reporter.report(map("gauge", gauge(BigInteger.TEN)), this.<Counter>map(), this.<Histogram>map(),
+        this.<Meter>map(), this.<Timer>map());
+
+    final InOrder inOrder = inOrder(statsD);
+    inOrder.verify(statsD).connect();
+    inOrder.verify(statsD).send(name("prefix.gauge"), "10");
+    inOrder.verify(statsD).flush();
   }
 
   @Test
@@ -67,8 +88,8 @@ public class StatsDReporterTest {
 
     final InOrder inOrder = inOrder(statsD);
     inOrder.verify(statsD).connect();
-    inOrder.verify(statsD).send("prefix.gauge", "1");
-    inOrder.verify(statsD).close();
+    inOrder.verify(statsD).send(name("prefix.gauge"), 1L);
+    inOrder.verify(statsD).flush();
   }
 
   @Test
@@ -78,8 +99,8 @@ public class StatsDReporterTest {
 
     final InOrder inOrder = inOrder(statsD);
     inOrder.verify(statsD).connect();
-    inOrder.verify(statsD).send("prefix.gauge", "1");
-    inOrder.verify(statsD).close();
+    inOrder.verify(statsD).send(name("prefix.gauge"), 1L);
+    inOrder.verify(statsD).flush();
   }
 
   @Test
@@ -89,8 +110,8 @@ public class StatsDReporterTest {
 
     final InOrder inOrder = inOrder(statsD);
     inOrder.verify(statsD).connect();
-    inOrder.verify(statsD).send("prefix.gauge", "1");
-    inOrder.verify(statsD).close();
+    inOrder.verify(statsD).send(name("prefix.gauge"), 1L);
+    inOrder.verify(statsD).flush();
   }
 
   @Test
@@ -100,8 +121,8 @@ public class StatsDReporterTest {
 
     final InOrder inOrder = inOrder(statsD);
     inOrder.verify(statsD).connect();
-    inOrder.verify(statsD).send("prefix.gauge", "1");
-    inOrder.verify(statsD).close();
+    inOrder.verify(statsD).send(name("prefix.gauge"), 1L);
+    inOrder.verify(statsD).flush();
   }
 
   @Test
@@ -111,8 +132,8 @@ public class StatsDReporterTest {
 
     final InOrder inOrder = inOrder(statsD);
     inOrder.verify(statsD).connect();
-    inOrder.verify(statsD).send("prefix.gauge", "1.10");
-    inOrder.verify(statsD).close();
+    inOrder.verify(statsD).send(name("prefix.gauge"), (double) 1.1f, 2);
+    inOrder.verify(statsD).flush();
   }
 
   @Test
@@ -122,8 +143,8 @@ public class StatsDReporterTest {
 
     final InOrder inOrder = inOrder(statsD);
     inOrder.verify(statsD).connect();
-    inOrder.verify(statsD).send("prefix.gauge", "1.10");
-    inOrder.verify(statsD).close();
+    inOrder.verify(statsD).send(name("prefix.gauge"), 1.1, 2);
+    inOrder.verify(statsD).flush();
   }
 
   @Test
@@ -136,8 +157,102 @@ public class StatsDReporterTest {
 
     final InOrder inOrder = inOrder(statsD);
     inOrder.verify(statsD).connect();
-    inOrder.verify(statsD).send("prefix.counter", "100");
-    inOrder.verify(statsD).close();
+    inOrder.verify(statsD).send(name("prefix.counter"), 100L);
+    inOrder.verify(statsD).flush();
+  }
+
+  @Test
+  public void reportsCountsAsDeltas() throws Exception {
+    final StatsDReporter deltaReporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withDeltaCounters(true)
+        .build(statsD);
+
+    final Counter counter = mock(Counter.class);
+    when(counter.getCount()).thenReturn(100L, 130L);
+    final Meter meter = mock(Meter.class);
+    when(meter.getCount()).thenReturn(5L, 5L);
+
+    deltaReporter.report(emptyGaugeMap, this.<Counter>map("counter", counter), this.<Histogram>map(),
+        this.<Meter>map("meter", meter), this.<Timer>map());
+    deltaReporter.report(emptyGaugeMap, this.<Counter>map("counter", counter), this.<Histogram>map(),
+        this.<Meter>map("meter", meter), this.<Timer>map());
+
+    final InOrder inOrder = inOrder(statsD);
+    inOrder.verify(statsD).send(name("prefix.counter"), 100L, MetricType.COUNTER);
+    inOrder.verify(statsD).send(name("prefix.meter.samples"), 5L, MetricType.COUNTER);
+    inOrder.verify(statsD).send(name("prefix.counter"), 30L, MetricType.COUNTER);
+    inOrder.verify(statsD).send(name("prefix.meter.samples"), 0L, MetricType.COUNTER);
+    verify(statsD, never()).send(name("prefix.counter"), 100L);
+  }
+
+  @Test
+  public void skipsIdleMetricsUntilTheHeartbeat() throws Exception {
+    final Clock clock = mock(Clock.class);
+    when(clock.getTick()).thenReturn(0L, TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(60));
+    final StatsDReporter idleReporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withIdleSuppression(1, TimeUnit.MINUTES)
+        .withClock(clock)
+        .build(statsD);
+
+    final Meter meter = mock(Meter.class);
+    when(meter.getCount()).thenReturn(5L);
+
+    for (int i = 0; i < 3; i++) {
+      idleReporter.report(emptyGaugeMap, this.<Counter>map(), this.<Histogram>map(),
+          this.<Meter>map("meter", meter), this.<Timer>map());
+    }
+
+    verify(statsD, times(2)).send(name("prefix.meter.samples"), 5L);
+  }
+
+  @Test
+  public void skipsGaugesWithTheSameFormattedValue() throws Exception {
+    final Clock clock = mock(Clock.class);
+    final StatsDReporter idleReporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withIdleSuppression(1, TimeUnit.MINUTES)
+        .withClock(clock)
+        .build(statsD);
+
+    idleReporter.report(map("gauge", gauge(1.001)), this.<Counter>map(), this.<Histogram>map(),
+        this.<Meter>map(), this.<Timer>map());
+    idleReporter.report(map("gauge", gauge(1.002)), this.<Counter>map(), this.<Histogram>map(),
+        this.<Meter>map(), this.<Timer>map());
+    idleReporter.report(map("gauge", gauge(1.5)), this.<Counter>map(), this.<Histogram>map(),
+        this.<Meter>map(), this.<Timer>map());
+
+    final InOrder inOrder = inOrder(statsD);
+    inOrder.verify(statsD).send(name("prefix.gauge"), 1.001, 2);
+    inOrder.verify(statsD).send(name("prefix.gauge"), 1.5, 2);
+    verify(statsD, never()).send(name("prefix.gauge"), 1.002, 2);
+  }
+
+  @Test
+  public void reusesTheSnapshotsOfIdleTimers() throws Exception {
+    final StatsDReporter reusingReporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withSnapshotReuse(true)
+        .build(statsD);
+
+    final Timer timer = mock(Timer.class);
+    when(timer.getCount()).thenReturn(1L);
+    final Snapshot snapshot = mock(Snapshot.class);
+    when(snapshot.getMedian()).thenReturn((double) TimeUnit.MILLISECONDS.toNanos(500));
+    when(timer.getSnapshot()).thenReturn(snapshot);
+
+    reusingReporter.report(emptyGaugeMap, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(),
+        map("timer", timer));
+    reusingReporter.report(emptyGaugeMap, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(),
+        map("timer", timer));
+    verify(timer, times(1)).getSnapshot();
+    verify(statsD, times(2)).send(name("prefix.timer.p50"), 500.0, 2);
+
+    when(timer.getCount()).thenReturn(2L);
+    reusingReporter.report(emptyGaugeMap, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(),
+        map("timer", timer));
+    verify(timer, times(2)).getSnapshot();
   }
 
   @Test
@@ -165,19 +280,19 @@ public class StatsDReporterTest {
     final InOrder inOrder = inOrder(statsD);
 
     inOrder.verify(statsD).connect();
-    verify(statsD).send("prefix.histogram.samples", "1");
-    verify(statsD).send("prefix.histogram.max", "2");
-    verify(statsD).send("prefix.histogram.mean", "3.00");
-    verify(statsD).send("prefix.histogram.min", "4");
-    verify(statsD).send("prefix.histogram.stddev", "5.00");
-    verify(statsD).send("prefix.histogram.p50", "6.00");
-    verify(statsD).send("prefix.histogram.p75", "7.00");
-    verify(statsD).send("prefix.histogram.p95", "8.00");
-    verify(statsD).send("prefix.histogram.p98", "9.00");
-    verify(statsD).send("prefix.histogram.p99", "10.00");
-    inOrder.verify(statsD).send("prefix.histogram.p999", "11.00");
-
-    inOrder.verify(statsD).close();
+    verify(statsD).send(name("prefix.histogram.samples"), 1L);
+    verify(statsD).send(name("prefix.histogram.max"), 2L);
+    verify(statsD).send(name("prefix.histogram.mean"), 3.0, 2);
+    verify(statsD).send(name("prefix.histogram.min"), 4L);
+    verify(statsD).send(name("prefix.histogram.stddev"), 5.0, 2);
+    verify(statsD).send(name("prefix.histogram.p50"), 6.0, 2);
+    verify(statsD).send(name("prefix.histogram.p75"), 7.0, 2);
+    verify(statsD).send(name("prefix.histogram.p95"), 8.0, 2);
+    verify(statsD).send(name("prefix.histogram.p98"), 9.0, 2);
+    verify(statsD).send(name("prefix.histogram.p99"), 10.0, 2);
+    inOrder.verify(statsD).send(name("prefix.histogram.p999"), 11.0, 2);
+
+    inOrder.verify(statsD).flush();
   }
 
   @Test
@@ -194,14 +309,137 @@ public class StatsDReporterTest {
 
     final InOrder inOrder = inOrder(statsD);
     inOrder.verify(statsD).connect();
-    verify(statsD).send("prefix.meter.samples", "1");
-    verify(statsD).send("prefix.meter.m1_rate", "2.00");
-    verify(statsD).send("prefix.meter.m5_rate", "3.00");
-    verify(statsD).send("prefix.meter.m15_rate", "4.00");
-    inOrder.verify(statsD).send("prefix.meter.mean_rate", "5.00");
-    inOrder.verify(statsD).close();
+    verify(statsD).send(name("prefix.meter.samples"), 1L);
+    verify(statsD).send(name("prefix.meter.m1_rate"), 2.0, 2);
+    verify(statsD).send(name("prefix.meter.m5_rate"), 3.0, 2);
+    verify(statsD).send(name("prefix.meter.m15_rate"), 4.0, 2);
+    inOrder.verify(statsD).send(name("prefix.meter.mean_rate"), 5.0, 2);
+    inOrder.verify(statsD).flush();
+
+
+  }
+
+  @Test
+  public void sendsOnlyTheFieldsOfTheEmissionPlan() throws Exception {
+    final StatsDReporter plannedReporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withEmissionPlan(EmissionPlan.ALL
+            .withTimers(EmissionPlan.Field.COUNT, EmissionPlan.Field.M1_RATE, EmissionPlan.Field.P99)
+            .withHistograms()
+            .withOverride("db\\..*", EmissionPlan.Field.COUNT))
+        .build(statsD);
+
+    final Timer timer = mock(Timer.class);
+    when(timer.getCount()).thenReturn(1L);
+    when(timer.getOneMinuteRate()).thenReturn(2.0);
+    final Snapshot snapshot = mock(Snapshot.class);
+    when(snapshot.get99thPercentile()).thenReturn((double) TimeUnit.MILLISECONDS.toNanos(3));
+    when(timer.getSnapshot()).thenReturn(snapshot);
+    final Timer dbTimer = mock(Timer.class);
+    when(dbTimer.getCount()).thenReturn(4L);
+    final Histogram histogram = mock(Histogram.class);
+    final SortedMap<String, Timer> timers = map("timer", timer);
+    timers.put("db.query", dbTimer);
+
+    for (int i = 0; i < 2; i++) {
+      plannedReporter.report(emptyGaugeMap, this.<Counter>map(), map("histogram", histogram), this.<Meter>map(),
+          timers);
+    }
+
+    verify(statsD, times(2)).connect();
+    verify(statsD, times(2)).send(name("prefix.timer.samples"), 1L);
+    verify(statsD, times(2)).send(name("prefix.timer.m1_rate"), 2.0, 2);
+    verify(statsD, times(2)).send(name("prefix.timer.p99"), 3.0, 2);
+    verify(statsD, times(2)).send(name("prefix.db.query.samples"), 4L);
+    verify(statsD, times(2)).flush();
+    verifyNoMoreInteractions(statsD);
+    verify(dbTimer, never()).getSnapshot();
+    verify(histogram, never()).getSnapshot();
+  }
+  @Test
+  public void sendsSamplesOfTheNewEventsInDistributionMode() throws Exception {
+    final StatsDReporter distributionReporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withEmissionPlan(EmissionPlan.ALL.withTimers(EmissionPlan.Field.COUNT).withHistograms())
+        .withDistributions(MetricType.DISTRIBUTION, 2)
+        .build(statsD);
+
+    final Timer timer = mock(Timer.class);
+    when(timer.getCount()).thenReturn(1L, 5L, 5L);
+    final Snapshot timerSnapshot = mock(Snapshot.class);
+    when(timerSnapshot.getValues()).thenReturn(new long[] {1000000L, 2000000L, 3000000L, 4000000L});
+    when(timer.getSnapshot()).thenReturn(timerSnapshot);
+    final Histogram histogram = mock(Histogram.class);
+    when(histogram.getCount()).thenReturn(2L);
+    final Snapshot histogramSnapshot = mock(Snapshot.class);
+    when(histogramSnapshot.getValues()).thenReturn(new long[] {10L, 20L});
+    when(histogram.getSnapshot()).thenReturn(histogramSnapshot);
+
+    for (int i = 0; i < 3; i++) {
+      distributionReporter.report(emptyGaugeMap, this.<Counter>map(), map("histogram", histogram), this.<Meter>map(),
+          map("timer", timer));
+    }
+
+    verify(statsD).send(name("prefix.timer"), 3.0, 2, MetricType.DISTRIBUTION, 1.0);
+    verify(statsD).send(name("prefix.timer"), 2.0, 2, MetricType.DISTRIBUTION, 0.5);
+    verify(statsD).send(name("prefix.timer"), 4.0, 2, MetricType.DISTRIBUTION, 0.5);
+    verify(statsD).send(name("prefix.histogram"), 10L, MetricType.DISTRIBUTION, 1.0);
+    verify(statsD).send(name("prefix.histogram"), 20L, MetricType.DISTRIBUTION, 1.0);
+    verify(timer, times(2)).getSnapshot();
+    verify(histogram, times(1)).getSnapshot();
+  }
+
 
+  @Test
+  public void tagsMetricsWithGlobalTagsAndTheTagsOfMatchingPatterns() throws Exception {
+    final StatsDReporter taggingReporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withGlobalTags("env:prod")
+        .withTagsFor("db\\..*", "tier:db")
+        .build(statsD);
+
+    final Counter counter = mock(Counter.class);
+    when(counter.getCount()).thenReturn(100L);
+    final SortedMap<String, Counter> counters = map("db.queries", counter);
+    counters.put("requests", counter);
+
+    taggingReporter.report(emptyGaugeMap, counters, this.<Histogram>map(), this.<Meter>map(), this.<Timer>map());
 
+    verify(statsD).send(EncodedName.of("prefix.db.queries", Tags.of("env:prod", "tier:db")), 100L);
+    verify(statsD).send(EncodedName.of("prefix.requests", Tags.of("env:prod")), 100L);
+  }
+
+  @Test
+  public void flushesBatchedMeasurementsBeforeClosing() throws Exception {
+    final Counter counter = mock(Counter.class);
+    when(counter.getCount()).thenReturn(100L);
+
+    reporter.report(emptyGaugeMap, this.<Counter>map("counter", counter), this.<Histogram>map(),
+        this.<Meter>map(), this.<Timer>map());
+
+    final InOrder inOrder = inOrder(statsD);
+    inOrder.verify(statsD).connect();
+    inOrder.verify(statsD).send(name("prefix.counter"), 100L);
+    inOrder.verify(statsD).flush();
+  }
+
+  @Test
+  public void keepsTheConnectionOpenAcrossReports() throws Exception {
+    reporter.report(emptyGaugeMap, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(), this.<Timer>map());
+    reporter.report(emptyGaugeMap, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(), this.<Timer>map());
+
+    verify(statsD, times(2)).connect();
+    verify(statsD, never()).close();
+  }
+
+  @Test
+  public void closesTheConnectionWhenStopped() throws Exception {
+    reporter.report(emptyGaugeMap, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(), this.<Timer>map());
+    reporter.stop();
+
+    final InOrder inOrder = inOrder(statsD);
+    inOrder.verify(statsD).flush();
+    inOrder.verify(statsD).close();
   }
 
   @Test
@@ -232,22 +470,227 @@ public class StatsDReporterTest {
 
     final InOrder inOrder = inOrder(statsD);
     inOrder.verify(statsD).connect();
-    verify(statsD).send("prefix.timer.max", "100.00");
-    verify(statsD).send("prefix.timer.mean", "200.00");
-    verify(statsD).send("prefix.timer.min", "300.00");
-    verify(statsD).send("prefix.timer.stddev", "400.00");
-    verify(statsD).send("prefix.timer.p50", "500.00");
-    verify(statsD).send("prefix.timer.p75", "600.00");
-    verify(statsD).send("prefix.timer.p95", "700.00");
-    verify(statsD).send("prefix.timer.p98", "800.00");
-    verify(statsD).send("prefix.timer.p99", "900.00");
-    verify(statsD).send("prefix.timer.p999", "1000.00");
-    verify(statsD).send("prefix.timer.samples", "1");
-    verify(statsD).send("prefix.timer.m1_rate", "3.00");
-    verify(statsD).send("prefix.timer.m5_rate", "4.00");
-    verify(statsD).send("prefix.timer.m15_rate", "5.00");
-    inOrder.verify(statsD).send("prefix.timer.mean_rate", "2.00");
-    inOrder.verify(statsD).close();
+    verify(statsD).send(name("prefix.timer.max"), 100.0, 2);
+    verify(statsD).send(name("prefix.timer.mean"), 200.0, 2);
+    verify(statsD).send(name("prefix.timer.min"), 300.0, 2);
+    verify(statsD).send(name("prefix.timer.stddev"), 400.0, 2);
+    verify(statsD).send(name("prefix.timer.p50"), 500.0, 2);
+    verify(statsD).send(name("prefix.timer.p75"), 600.0, 2);
+    verify(statsD).send(name("prefix.timer.p95"), 700.0, 2);
+    verify(statsD).send(name("prefix.timer.p98"), 800.0, 2);
+    verify(statsD).send(name("prefix.timer.p99"), 900.0, 2);
+    verify(statsD).send(name("prefix.timer.p999"), 1000.0, 2);
+    verify(statsD).send(name("prefix.timer.samples"), 1L);
+    verify(statsD).send(name("prefix.timer.m1_rate"), 3.0, 2);
+    verify(statsD).send(name("prefix.timer.m5_rate"), 4.0, 2);
+    verify(statsD).send(name("prefix.timer.m15_rate"), 5.0, 2);
+    inOrder.verify(statsD).send(name("prefix.timer.mean_rate"), 2.0, 2);
+    inOrder.verify(statsD).flush();
+  }
+
+  @Test
+  public void publishesItsOwnMetrics() throws Exception {
+    final MetricRegistry selfRegistry = new MetricRegistry();
+    when(statsD.getSentLines()).thenReturn(12L);
+    when(statsD.getAverageFillRatio()).thenReturn(0.5);
+    final StatsDReporter instrumentedReporter = StatsDReporter.forRegistry(registry)
+        .withSelfMetrics(selfRegistry)
+        .build(statsD);
+
+    instrumentedReporter.report(emptyGaugeMap, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(),
+        this.<Timer>map());
+
+    verify(statsD).setPacketListener(any(PacketListener.class));
+    assertThat(selfRegistry.getGauges().keySet()).containsOnly(
+        "com.readytalk.metrics.StatsDReporter.lines", "com.readytalk.metrics.StatsDReporter.packets",
+        "com.readytalk.metrics.StatsDReporter.bytes", "com.readytalk.metrics.StatsDReporter.failures",
+        "com.readytalk.metrics.StatsDReporter.dropped-packets",
+        "com.readytalk.metrics.StatsDReporter.suppressed-packets", "com.readytalk.metrics.StatsDReporter.fill-ratio");
+    assertThat(selfRegistry.getGauges().get("com.readytalk.metrics.StatsDReporter.lines").getValue())
+        .isEqualTo(12L);
+    assertThat(selfRegistry.getGauges().get("com.readytalk.metrics.StatsDReporter.fill-ratio").getValue())
+        .isEqualTo(0.5);
+    assertThat(selfRegistry.timer("com.readytalk.metrics.StatsDReporter.encode").getCount()).isEqualTo(1);
+    assertThat(selfRegistry.timer("com.readytalk.metrics.StatsDReporter.send").getCount()).isZero();
+  }
+
+  @Test
+  public void profilesSlowGauges() throws Exception {
+    final StatsDReporter profilingReporter = StatsDReporter.forRegistry(registry)
+        .withProfiling(1, 10, TimeUnit.MILLISECONDS)
+        .build(statsD);
+    final Gauge<Long> slow = new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return 1L;
+      }
+    };
+    @SuppressWarnings("rawtypes")
+    final SortedMap<String, Gauge> gauges = this.<Gauge>map("slow", slow);
+    gauges.put("fast", gauge(2L));
+
+    profilingReporter.report(gauges, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(),
+        this.<Timer>map());
+
+    assertThat(profilingReporter.getProfiler().getSlowest()).hasSize(1);
+    assertThat(profilingReporter.getProfiler().getSlowest().get(0).getKey()).isEqualTo("slow");
+    assertThat(profilingReporter.getProfiler().getOverThreshold()).hasSize(1);
+  }
+
+  @Test
+  public void profilesTheCycleWhenAPartitionFails() throws Exception {
+    final StatsD first = mock(StatsD.class);
+    doThrow(new IOException()).when(first).connect();
+    final StatsDReporter parallelReporter = StatsDReporter.forRegistry(registry)
+        .withProfiling(1, 10, TimeUnit.MILLISECONDS)
+        .build(Arrays.asList(first, mock(StatsD.class)));
+    final Gauge<Long> slow = new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        try {
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return 1L;
+      }
+    };
+    // "slow" is reported by the second partition, while the first one can't connect.
+    assertThat(("slow".hashCode() & Integer.MAX_VALUE) % 2).isEqualTo(1);
+    @SuppressWarnings("rawtypes")
+    final SortedMap<String, Gauge> gauges = this.<Gauge>map("slow", slow);
+
+    parallelReporter.report(gauges, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(),
+        this.<Timer>map());
+
+    assertThat(parallelReporter.getProfiler().getSlowest()).hasSize(1);
+    assertThat(parallelReporter.getProfiler().getSlowest().get(0).getKey()).isEqualTo("slow");
+    parallelReporter.stop();
+  }
+
+  @Test
+  public void reportsEachMetricThroughExactlyOnePartition() throws Exception {
+    final StatsD first = mock(StatsD.class);
+    final StatsD second = mock(StatsD.class);
+    final StatsDReporter parallelReporter = StatsDReporter.forRegistry(registry)
+        .build(Arrays.asList(first, second));
+    @SuppressWarnings("rawtypes")
+    final SortedMap<String, Gauge> gauges = this.<Gauge>map();
+    for (int i = 0; i < 16; i++) {
+      gauges.put("gauge" + i, gauge((long) i));
+    }
+
+    parallelReporter.report(gauges, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(),
+        this.<Timer>map());
+
+    verify(first).connect();
+    verify(first).flush();
+    verify(second).connect();
+    verify(second).flush();
+    int reportedByFirst = 0;
+    for (int i = 0; i < 16; i++) {
+      final boolean owned = ("gauge" + i).hashCode() % 2 == 0;
+      verify(owned ? first : second).send(name("gauge" + i), (long) i);
+      verify(owned ? second : first, never()).send(name("gauge" + i), (long) i);
+      reportedByFirst += owned ? 1 : 0;
+    }
+    assertThat(reportedByFirst).isGreaterThan(0).isLessThan(16);
+    parallelReporter.stop();
+  }
+
+  @Test
+  public void interruptsTheWorkersWhenInterrupted() throws Exception {
+    final StatsDReporter parallelReporter = StatsDReporter.forRegistry(registry)
+        .build(Arrays.asList(mock(StatsD.class), mock(StatsD.class)));
+    final CountDownLatch evaluating = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    @SuppressWarnings("rawtypes")
+    final SortedMap<String, Gauge> gauges = this.<Gauge>map();
+    // "a" is reported by the worker, "b" on the calling thread.
+    gauges.put("a", new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        evaluating.countDown();
+        try {
+          new CountDownLatch(1).await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+        return 1L;
+      }
+    });
+    gauges.put("b", new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        try {
+          evaluating.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+        Thread.currentThread().interrupt();
+        return 2L;
+      }
+    });
+
+    parallelReporter.report(gauges, this.<Counter>map(), this.<Histogram>map(), this.<Meter>map(),
+        this.<Timer>map());
+
+    assertThat(Thread.interrupted()).isTrue();
+    assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+    parallelReporter.stop();
+  }
+
+  @Test
+  public void closesEveryPartitionOnStop() throws Exception {
+    final StatsD first = mock(StatsD.class);
+    final StatsD second = mock(StatsD.class);
+    final StatsDReporter parallelReporter = StatsDReporter.forRegistry(registry)
+        .build(Arrays.asList(first, second));
+
+    parallelReporter.stop();
+
+    verify(first).close();
+    verify(second).close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsParallelismBelowOne() throws Exception {
+    StatsDReporter.forRegistry(registry).withParallelism(0);
+  }
+
+  @Test
+  public void doesNotProfileByDefault() throws Exception {
+    assertThat(reporter.getProfiler()).isNull();
+  }
+
+  @Test
+  public void roundsEachKindOfMeasurementToItsPrecision() throws Exception {
+    final StatsDReporter preciseReporter = StatsDReporter.forRegistry(registry)
+        .prefixedWith("prefix")
+        .withPrecision(Precision.decimals(1).withDurations(0).withRates(4))
+        .build(statsD);
+
+    final Timer timer = mock(Timer.class);
+    when(timer.getMeanRate()).thenReturn(0.001);
+    final Snapshot snapshot = mock(Snapshot.class);
+    when(snapshot.getMean()).thenReturn((double) TimeUnit.MILLISECONDS.toNanos(200));
+    when(timer.getSnapshot()).thenReturn(snapshot);
+
+    preciseReporter.report(map("gauge", gauge(1.5)), this.<Counter>map(), this.<Histogram>map(),
+        this.<Meter>map(), map("timer", timer));
+
+    verify(statsD).send(name("prefix.gauge"), 1.5, 1);
+    verify(statsD).send(name("prefix.timer.mean"), 200.0, 0);
+    verify(statsD).send(name("prefix.timer.mean_rate"), 0.001, 4);
+  }
+
+  private static EncodedName name(String name) {
+    return EncodedName.of(name);
   }
 
   private <T> SortedMap<String, T> map() {